@@ -0,0 +1,52 @@
+package net.ansinn.ByteBarista;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bulk copies in {@link ArrayHelpers} against reading a float array one element at a time.
+ *
+ * @author Gunter Ansinn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayBenchmark {
+
+    @Param({"16", "1024", "16384"})
+    public int length;
+
+    @Param({"BIG_ENDIAN", "LITTLE_ENDIAN"})
+    public String order;
+
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        var byteOrder = order.equals("BIG_ENDIAN") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        buffer = ByteBuffer.allocateDirect(length * Float.BYTES).order(byteOrder);
+        for (var i = 0; i < length; i++)
+            buffer.putFloat(i * 0.5f);
+        buffer.flip();
+    }
+
+    @Benchmark
+    public float[] perElement() {
+        var source = buffer.rewind();
+        var values = new float[length];
+        for (var i = 0; i < length; i++)
+            values[i] = source.getFloat();
+        return values;
+    }
+
+    @Benchmark
+    public float[] bulk() {
+        return ArrayHelpers.getFloats(buffer.rewind(), length);
+    }
+}
@@ -0,0 +1,84 @@
+package net.ansinn.ByteBarista;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the branch-light LEB128 decoders in {@link NumericHelpers} against plain fixed width reads over the same
+ * values. Values are drawn so that most of them are small, mirroring the ids and counters the annotations target.
+ *
+ * @author Gunter Ansinn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarIntBenchmark {
+
+    private static final int VALUES = 4096;
+
+    @Param({"7", "14", "28"})
+    public int maxBits;
+
+    private ByteBuffer fixedInts;
+    private ByteBuffer fixedLongs;
+    private ByteBuffer varInts;
+    private ByteBuffer varLongs;
+
+    @Setup
+    public void setup() {
+        var random = new SplittableRandom(42);
+
+        fixedInts = ByteBuffer.allocateDirect(VALUES * Integer.BYTES);
+        fixedLongs = ByteBuffer.allocateDirect(VALUES * Long.BYTES);
+        varInts = ByteBuffer.allocateDirect(VALUES * 5);
+        varLongs = ByteBuffer.allocateDirect(VALUES * 10);
+
+        for (var i = 0; i < VALUES; i++) {
+            var value = random.nextInt(1 << maxBits);
+            fixedInts.putInt(value);
+            fixedLongs.putLong(value);
+            NumericHelpers.putVarInt(varInts, value);
+            NumericHelpers.putVarLong(varLongs, value);
+        }
+
+        fixedInts.flip();
+        fixedLongs.flip();
+        varInts.flip();
+        varLongs.flip();
+    }
+
+    @Benchmark
+    public void fixedInt(Blackhole blackhole) {
+        var buffer = fixedInts.rewind();
+        for (var i = 0; i < VALUES; i++)
+            blackhole.consume(buffer.getInt());
+    }
+
+    @Benchmark
+    public void varInt(Blackhole blackhole) {
+        var buffer = varInts.rewind();
+        for (var i = 0; i < VALUES; i++)
+            blackhole.consume(NumericHelpers.getVarInt(buffer));
+    }
+
+    @Benchmark
+    public void fixedLong(Blackhole blackhole) {
+        var buffer = fixedLongs.rewind();
+        for (var i = 0; i < VALUES; i++)
+            blackhole.consume(buffer.getLong());
+    }
+
+    @Benchmark
+    public void varLong(Blackhole blackhole) {
+        var buffer = varLongs.rewind();
+        for (var i = 0; i < VALUES; i++)
+            blackhole.consume(NumericHelpers.getVarLong(buffer));
+    }
+}
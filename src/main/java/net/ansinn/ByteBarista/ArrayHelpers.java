@@ -0,0 +1,470 @@
+package net.ansinn.ByteBarista;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes primitive array components in bulk.
+ * <p>
+ * Arrays are copied between the buffer and the heap in one go with {@link MemorySegment#copy}, which swaps bytes as
+ * needed for the buffer's {@link ByteOrder}, followed by a single position update, instead of a get or put call per
+ * element. Streams are always big endian, like every other value written to them. {@code boolean} arrays are packed
+ * eight elements to a byte, the first element taking the most significant bit.
+ * <p>
+ * Methods taking a {@code count} read or write exactly that many elements without a length prefix, as used for
+ * {@link net.ansinn.ByteBarista.annotations.FixedLength} components; arrays shorter than it are padded with zeros,
+ * longer ones are rejected. The remaining methods prefix the array with its length as a varint. Either way a
+ * {@link BufferOverflowException} is thrown without writing anything if the prefix and the array don't both fit.
+ * <p>
+ * Lengths are validated against the remaining input before anything is allocated, so a corrupt length prefix can't
+ * cause a huge allocation.
+ *
+ * @author Gunter Ansinn
+ */
+public final class ArrayHelpers {
+
+    private ArrayHelpers() {}
+
+    public static byte[] getBytes(ByteBuffer buffer) {
+        return getBytes(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static byte[] getBytes(ByteBuffer buffer, int count) {
+        var values = new byte[checkCount(buffer.remaining(), count, ValueLayout.JAVA_BYTE)];
+        read(buffer, ValueLayout.JAVA_BYTE, values, count);
+        return values;
+    }
+
+    public static short[] getShorts(ByteBuffer buffer) {
+        return getShorts(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static short[] getShorts(ByteBuffer buffer, int count) {
+        var values = new short[checkCount(buffer.remaining(), count, ValueLayout.JAVA_SHORT_UNALIGNED)];
+        read(buffer, ValueLayout.JAVA_SHORT_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static char[] getChars(ByteBuffer buffer) {
+        return getChars(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static char[] getChars(ByteBuffer buffer, int count) {
+        var values = new char[checkCount(buffer.remaining(), count, ValueLayout.JAVA_CHAR_UNALIGNED)];
+        read(buffer, ValueLayout.JAVA_CHAR_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static int[] getInts(ByteBuffer buffer) {
+        return getInts(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static int[] getInts(ByteBuffer buffer, int count) {
+        var values = new int[checkCount(buffer.remaining(), count, ValueLayout.JAVA_INT_UNALIGNED)];
+        read(buffer, ValueLayout.JAVA_INT_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static long[] getLongs(ByteBuffer buffer) {
+        return getLongs(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static long[] getLongs(ByteBuffer buffer, int count) {
+        var values = new long[checkCount(buffer.remaining(), count, ValueLayout.JAVA_LONG_UNALIGNED)];
+        read(buffer, ValueLayout.JAVA_LONG_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static float[] getFloats(ByteBuffer buffer) {
+        return getFloats(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static float[] getFloats(ByteBuffer buffer, int count) {
+        var values = new float[checkCount(buffer.remaining(), count, ValueLayout.JAVA_FLOAT_UNALIGNED)];
+        read(buffer, ValueLayout.JAVA_FLOAT_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static double[] getDoubles(ByteBuffer buffer) {
+        return getDoubles(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static double[] getDoubles(ByteBuffer buffer, int count) {
+        var values = new double[checkCount(buffer.remaining(), count, ValueLayout.JAVA_DOUBLE_UNALIGNED)];
+        read(buffer, ValueLayout.JAVA_DOUBLE_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static boolean[] getBooleans(ByteBuffer buffer) {
+        return getBooleans(buffer, NumericHelpers.getVarInt(buffer));
+    }
+
+    public static boolean[] getBooleans(ByteBuffer buffer, int count) {
+        var values = new boolean[checkPackedCount(buffer.remaining(), count)];
+        for (var i = 0; i < count; i += Byte.SIZE)
+            unpack(buffer.get(), values, i);
+        return values;
+    }
+
+    public static void putBytes(ByteBuffer buffer, byte[] values) {
+        putLength(buffer, values.length, values.length);
+        putBytes(buffer, values, values.length);
+    }
+
+    public static void putBytes(ByteBuffer buffer, byte[] values, int count) {
+        write(buffer, ValueLayout.JAVA_BYTE, values, values.length, count);
+    }
+
+    public static void putShorts(ByteBuffer buffer, short[] values) {
+        putLength(buffer, values.length, values.length * (long) Short.BYTES);
+        putShorts(buffer, values, values.length);
+    }
+
+    public static void putShorts(ByteBuffer buffer, short[] values, int count) {
+        write(buffer, ValueLayout.JAVA_SHORT_UNALIGNED, values, values.length, count);
+    }
+
+    public static void putChars(ByteBuffer buffer, char[] values) {
+        putLength(buffer, values.length, values.length * (long) Character.BYTES);
+        putChars(buffer, values, values.length);
+    }
+
+    public static void putChars(ByteBuffer buffer, char[] values, int count) {
+        write(buffer, ValueLayout.JAVA_CHAR_UNALIGNED, values, values.length, count);
+    }
+
+    public static void putInts(ByteBuffer buffer, int[] values) {
+        putLength(buffer, values.length, values.length * (long) Integer.BYTES);
+        putInts(buffer, values, values.length);
+    }
+
+    public static void putInts(ByteBuffer buffer, int[] values, int count) {
+        write(buffer, ValueLayout.JAVA_INT_UNALIGNED, values, values.length, count);
+    }
+
+    public static void putLongs(ByteBuffer buffer, long[] values) {
+        putLength(buffer, values.length, values.length * (long) Long.BYTES);
+        putLongs(buffer, values, values.length);
+    }
+
+    public static void putLongs(ByteBuffer buffer, long[] values, int count) {
+        write(buffer, ValueLayout.JAVA_LONG_UNALIGNED, values, values.length, count);
+    }
+
+    public static void putFloats(ByteBuffer buffer, float[] values) {
+        putLength(buffer, values.length, values.length * (long) Float.BYTES);
+        putFloats(buffer, values, values.length);
+    }
+
+    public static void putFloats(ByteBuffer buffer, float[] values, int count) {
+        write(buffer, ValueLayout.JAVA_FLOAT_UNALIGNED, values, values.length, count);
+    }
+
+    public static void putDoubles(ByteBuffer buffer, double[] values) {
+        putLength(buffer, values.length, values.length * (long) Double.BYTES);
+        putDoubles(buffer, values, values.length);
+    }
+
+    public static void putDoubles(ByteBuffer buffer, double[] values, int count) {
+        write(buffer, ValueLayout.JAVA_DOUBLE_UNALIGNED, values, values.length, count);
+    }
+
+    public static void putBooleans(ByteBuffer buffer, boolean[] values) {
+        putLength(buffer, values.length, packedBytes(values.length));
+        putBooleans(buffer, values, values.length);
+    }
+
+    public static void putBooleans(ByteBuffer buffer, boolean[] values, int count) {
+        checkLength(values.length, count);
+        if (packedBytes(count) > buffer.remaining())
+            throw new BufferOverflowException();
+
+        for (var i = 0; i < count; i += Byte.SIZE)
+            buffer.put(pack(values, i));
+    }
+
+    public static byte[] readBytes(ByteArrayInputStream stream) {
+        return readBytes(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static byte[] readBytes(ByteArrayInputStream stream, int count) {
+        var values = new byte[checkCount(stream.available(), count, ValueLayout.JAVA_BYTE)];
+        read(stream, ValueLayout.JAVA_BYTE, values, count);
+        return values;
+    }
+
+    public static short[] readShorts(ByteArrayInputStream stream) {
+        return readShorts(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static short[] readShorts(ByteArrayInputStream stream, int count) {
+        var values = new short[checkCount(stream.available(), count, ValueLayout.JAVA_SHORT_UNALIGNED)];
+        read(stream, ValueLayout.JAVA_SHORT_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static char[] readChars(ByteArrayInputStream stream) {
+        return readChars(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static char[] readChars(ByteArrayInputStream stream, int count) {
+        var values = new char[checkCount(stream.available(), count, ValueLayout.JAVA_CHAR_UNALIGNED)];
+        read(stream, ValueLayout.JAVA_CHAR_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static int[] readInts(ByteArrayInputStream stream) {
+        return readInts(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static int[] readInts(ByteArrayInputStream stream, int count) {
+        var values = new int[checkCount(stream.available(), count, ValueLayout.JAVA_INT_UNALIGNED)];
+        read(stream, ValueLayout.JAVA_INT_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static long[] readLongs(ByteArrayInputStream stream) {
+        return readLongs(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static long[] readLongs(ByteArrayInputStream stream, int count) {
+        var values = new long[checkCount(stream.available(), count, ValueLayout.JAVA_LONG_UNALIGNED)];
+        read(stream, ValueLayout.JAVA_LONG_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static float[] readFloats(ByteArrayInputStream stream) {
+        return readFloats(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static float[] readFloats(ByteArrayInputStream stream, int count) {
+        var values = new float[checkCount(stream.available(), count, ValueLayout.JAVA_FLOAT_UNALIGNED)];
+        read(stream, ValueLayout.JAVA_FLOAT_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static double[] readDoubles(ByteArrayInputStream stream) {
+        return readDoubles(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static double[] readDoubles(ByteArrayInputStream stream, int count) {
+        var values = new double[checkCount(stream.available(), count, ValueLayout.JAVA_DOUBLE_UNALIGNED)];
+        read(stream, ValueLayout.JAVA_DOUBLE_UNALIGNED, values, count);
+        return values;
+    }
+
+    public static boolean[] readBooleans(ByteArrayInputStream stream) {
+        return readBooleans(stream, NumericHelpers.readVarInt(stream));
+    }
+
+    public static boolean[] readBooleans(ByteArrayInputStream stream, int count) {
+        var values = new boolean[checkPackedCount(stream.available(), count)];
+        for (var i = 0; i < count; i += Byte.SIZE)
+            unpack((byte) stream.read(), values, i);
+        return values;
+    }
+
+    public static void writeBytes(ByteArrayOutputStream stream, byte[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeBytes(stream, values, values.length);
+    }
+
+    public static void writeBytes(ByteArrayOutputStream stream, byte[] values, int count) {
+        write(stream, ValueLayout.JAVA_BYTE, values, values.length, count);
+    }
+
+    public static void writeShorts(ByteArrayOutputStream stream, short[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeShorts(stream, values, values.length);
+    }
+
+    public static void writeShorts(ByteArrayOutputStream stream, short[] values, int count) {
+        write(stream, ValueLayout.JAVA_SHORT_UNALIGNED, values, values.length, count);
+    }
+
+    public static void writeChars(ByteArrayOutputStream stream, char[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeChars(stream, values, values.length);
+    }
+
+    public static void writeChars(ByteArrayOutputStream stream, char[] values, int count) {
+        write(stream, ValueLayout.JAVA_CHAR_UNALIGNED, values, values.length, count);
+    }
+
+    public static void writeInts(ByteArrayOutputStream stream, int[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeInts(stream, values, values.length);
+    }
+
+    public static void writeInts(ByteArrayOutputStream stream, int[] values, int count) {
+        write(stream, ValueLayout.JAVA_INT_UNALIGNED, values, values.length, count);
+    }
+
+    public static void writeLongs(ByteArrayOutputStream stream, long[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeLongs(stream, values, values.length);
+    }
+
+    public static void writeLongs(ByteArrayOutputStream stream, long[] values, int count) {
+        write(stream, ValueLayout.JAVA_LONG_UNALIGNED, values, values.length, count);
+    }
+
+    public static void writeFloats(ByteArrayOutputStream stream, float[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeFloats(stream, values, values.length);
+    }
+
+    public static void writeFloats(ByteArrayOutputStream stream, float[] values, int count) {
+        write(stream, ValueLayout.JAVA_FLOAT_UNALIGNED, values, values.length, count);
+    }
+
+    public static void writeDoubles(ByteArrayOutputStream stream, double[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeDoubles(stream, values, values.length);
+    }
+
+    public static void writeDoubles(ByteArrayOutputStream stream, double[] values, int count) {
+        write(stream, ValueLayout.JAVA_DOUBLE_UNALIGNED, values, values.length, count);
+    }
+
+    public static void writeBooleans(ByteArrayOutputStream stream, boolean[] values) {
+        NumericHelpers.writeVarInt(stream, values.length);
+        writeBooleans(stream, values, values.length);
+    }
+
+    public static void writeBooleans(ByteArrayOutputStream stream, boolean[] values, int count) {
+        checkLength(values.length, count);
+        for (var i = 0; i < count; i += Byte.SIZE)
+            stream.write(pack(values, i));
+    }
+
+    /**
+     * Advances past a length prefixed array without copying it.
+     *
+     * @param buffer       the buffer to read from
+     * @param elementBytes the size of an element in bytes, {@code 0} for packed booleans
+     * @throws IllegalStateException if the length prefix exceeds the remaining bytes
+     */
+    public static void skipArray(ByteBuffer buffer, int elementBytes) {
+        var count = NumericHelpers.getVarInt(buffer);
+        if (count < 0)
+            throw new IllegalStateException("Negative array length: " + count);
+
+        var bytes = elementBytes == 0 ? packedBytes(count) : (long) count * elementBytes;
+        if (bytes > buffer.remaining())
+            throw new IllegalStateException("Array of " + bytes + " bytes exceeds the " + buffer.remaining() + " remaining bytes.");
+
+        buffer.position(buffer.position() + (int) bytes);
+    }
+
+    /**
+     * Counts the bytes a length prefixed array of {@code count} elements takes.
+     *
+     * @param count        the number of elements
+     * @param elementBytes the size of an element in bytes, {@code 0} for packed booleans
+     * @return the encoded size of the array, its length prefix included
+     */
+    public static int arraySize(int count, int elementBytes) {
+        var bytes = elementBytes == 0 ? packedBytes(count) : Math.multiplyExact(count, elementBytes);
+        return Math.addExact(NumericHelpers.varIntSize(count), bytes);
+    }
+
+    /**
+     * @return the number of bytes {@code count} packed booleans take
+     */
+    public static int packedBytes(int count) {
+        return (int) ((count + Byte.SIZE - 1L) / Byte.SIZE);
+    }
+
+    /**
+     * Writes the length prefix of an array, after making sure the prefix and the array's bytes both fit.
+     *
+     * @throws BufferOverflowException if they don't, in which case nothing is written
+     */
+    private static void putLength(ByteBuffer buffer, int count, long bytes) {
+        if (NumericHelpers.varIntSize(count) + bytes > buffer.remaining())
+            throw new BufferOverflowException();
+
+        NumericHelpers.putVarInt(buffer, count);
+    }
+
+    private static void read(ByteBuffer buffer, ValueLayout layout, Object values, int count) {
+        MemorySegment.copy(MemorySegment.ofBuffer(buffer), layout.withOrder(buffer.order()), 0, values, 0, count);
+        buffer.position(buffer.position() + (int) (count * layout.byteSize()));
+    }
+
+    /**
+     * Writes exactly {@code count} elements, padding an array shorter than that with zeros.
+     *
+     * @throws IllegalStateException if the array holds more than {@code count} elements
+     * @throws BufferOverflowException if the elements don't fit, in which case nothing is written
+     */
+    private static void write(ByteBuffer buffer, ValueLayout layout, Object values, int length, int count) {
+        checkLength(length, count);
+        var bytes = count * layout.byteSize();
+        if (bytes > buffer.remaining())
+            throw new BufferOverflowException();
+
+        var segment = MemorySegment.ofBuffer(buffer);
+        MemorySegment.copy(values, 0, segment, layout.withOrder(buffer.order()), 0, length);
+        segment.asSlice(length * layout.byteSize(), (count - length) * layout.byteSize()).fill((byte) 0);
+        buffer.position(buffer.position() + (int) bytes);
+    }
+
+    private static void read(ByteArrayInputStream stream, ValueLayout layout, Object values, int count) {
+        var bytes = new byte[(int) (count * layout.byteSize())];
+        stream.read(bytes, 0, bytes.length);
+        MemorySegment.copy(MemorySegment.ofArray(bytes), layout.withOrder(ByteOrder.BIG_ENDIAN), 0, values, 0, count);
+    }
+
+    private static void write(ByteArrayOutputStream stream, ValueLayout layout, Object values, int length, int count) {
+        checkLength(length, count);
+        // Trailing padding is already zeroed by the allocation
+        var bytes = new byte[(int) (count * layout.byteSize())];
+        MemorySegment.copy(values, 0, MemorySegment.ofArray(bytes), layout.withOrder(ByteOrder.BIG_ENDIAN), 0, length);
+        stream.write(bytes, 0, bytes.length);
+    }
+
+    private static byte pack(boolean[] values, int first) {
+        var packed = 0;
+        for (var bit = 0; bit < Byte.SIZE; bit++)
+            if (first + bit < values.length && values[first + bit])
+                packed |= 0x80 >>> bit;
+        return (byte) packed;
+    }
+
+    private static void unpack(byte packed, boolean[] values, int first) {
+        for (var bit = 0; bit < Byte.SIZE && first + bit < values.length; bit++)
+            values[first + bit] = (packed & 0x80 >>> bit) != 0;
+    }
+
+    private static int checkCount(int remaining, int count, ValueLayout layout) {
+        if (count < 0)
+            throw new IllegalStateException("Negative array length: " + count);
+
+        var bytes = count * layout.byteSize();
+        if (bytes > remaining)
+            throw new IllegalStateException("Array of " + bytes + " bytes exceeds the " + remaining + " remaining bytes.");
+        return count;
+    }
+
+    private static int checkPackedCount(int remaining, int count) {
+        if (count < 0)
+            throw new IllegalStateException("Negative array length: " + count);
+
+        var bytes = packedBytes(count);
+        if (bytes > remaining)
+            throw new IllegalStateException("Array of " + bytes + " bytes exceeds the " + remaining + " remaining bytes.");
+        return count;
+    }
+
+    private static void checkLength(int length, int count) {
+        if (length > count)
+            throw new IllegalStateException("Array of " + length + " elements exceeds its fixed length of " + count + ".");
+    }
+}
@@ -0,0 +1,133 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Describes how {@code boolean} components and components annotated with {@link Bits} are packed together.
+ * <p>
+ * A run of adjacent bit fields is greedily gathered into a {@link Group} of at most 64 bits, which is written as the
+ * smallest whole number of bytes holding it, most significant byte first. Within a group the first component takes
+ * the most significant bits. A field never straddles two groups; a run longer than 64 bits simply starts a new group.
+ * Both the size computation in {@link ClassUtils} and the generated encoders and decoders derive their layout from
+ * here, so they always agree.
+ *
+ * @author Gunter Ansinn
+ */
+public final class BitFieldLayout {
+
+    private BitFieldLayout() {}
+
+    /**
+     * A run of bit fields sharing one packed word.
+     *
+     * @param first index of the first component in the group
+     * @param end   index one past the last component in the group
+     * @param bits  total number of bits used by the group
+     */
+    public record Group(int first, int end, int bits) {
+
+        /**
+         * @return the number of bytes the group occupies on the wire
+         */
+        public int bytes() {
+            return (bits + Byte.SIZE - 1) / Byte.SIZE;
+        }
+    }
+
+    /**
+     * @param component the record component to inspect
+     * @return {@code true} if the component is a {@code boolean} or carries {@link Bits}
+     */
+    public static boolean isBitField(RecordComponent component) {
+        return component.getType() == boolean.class || component.isAnnotationPresent(Bits.class);
+    }
+
+    /**
+     * Determines the number of bits a bit field occupies.
+     *
+     * @param component the bit field to inspect
+     * @return the width of the component in bits
+     * @throws IllegalStateException if the width does not fit the component type or conflicts with other annotations
+     */
+    public static int bitWidth(RecordComponent component) {
+        var type = component.getType();
+        var bits = component.getAnnotation(Bits.class);
+
+        if (bits == null) {
+            if (type != boolean.class)
+                throw new IllegalStateException("Component " + component.getName() + " is not a bit field.");
+            return 1;
+        }
+
+        if (ClassUtils.isVariableLength(component) || component.isAnnotationPresent(UnsignedByte.class)
+                || component.isAnnotationPresent(UnsignedShort.class) || component.isAnnotationPresent(UnsignedInteger.class))
+            throw new IllegalStateException("@Bits can't be combined with other encoding annotations on " + component.getName() + ".");
+
+        var maximum = switch (type.getName()) {
+            case "long" -> Long.SIZE;
+            case "int" -> Integer.SIZE;
+            case "short" -> Short.SIZE;
+            case "char" -> Character.SIZE;
+            case "byte" -> Byte.SIZE;
+            case "boolean" -> 1;
+            default -> throw new IllegalStateException("@Bits is only permitted on integral types, not " + type.getName() + ".");
+        };
+
+        if (bits.value() < 1 || bits.value() > maximum)
+            throw new IllegalStateException("@Bits(" + bits.value() + ") on " + component.getName()
+                    + " must be between 1 and " + maximum + ".");
+
+        return bits.value();
+    }
+
+    /**
+     * Gathers the group of bit fields starting at the given component.
+     *
+     * @param components the components of the record
+     * @param first      index of the bit field starting the group
+     * @return the group starting at {@code first}
+     */
+    public static Group groupAt(RecordComponent[] components, int first) {
+        var bits = bitWidth(components[first]);
+        var end = first + 1;
+
+        while (end < components.length && isBitField(components[end])) {
+            var width = bitWidth(components[end]);
+            if (bits + width > Long.SIZE)
+                break;
+            bits += width;
+            end++;
+        }
+
+        return new Group(first, end, bits);
+    }
+
+    /**
+     * Computes how far a member of a group is shifted within the group's packed word.
+     *
+     * @param components the components of the record
+     * @param group      the group containing the component
+     * @param index      index of the component within the record
+     * @return the left shift of the component's bits
+     */
+    public static int shiftOf(RecordComponent[] components, Group group, int index) {
+        var offset = 0;
+        for (var i = group.first(); i <= index; i++)
+            offset += bitWidth(components[i]);
+
+        return group.bytes() * Byte.SIZE - offset;
+    }
+
+    /**
+     * @param width the width of a bit field
+     * @return a mask covering the lowest {@code width} bits
+     */
+    public static long maskOf(int width) {
+        return width == Long.SIZE ? -1L : (1L << width) - 1;
+    }
+}
@@ -1,8 +1,13 @@
 package net.ansinn.ByteBarista;
 
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.Sparse;
 import net.ansinn.ByteBarista.annotations.UnsignedByte;
 import net.ansinn.ByteBarista.annotations.UnsignedInteger;
 import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
 
 import java.lang.classfile.ClassFile;
 import java.lang.constant.ClassDesc;
@@ -25,24 +30,81 @@ public class ClassUtils {
      *
      * @param recordClazz record to read
      * @return number of bytes in record
+     * @throws IllegalStateException if the record refers back to itself, which leaves its size unbounded
      */
     public static int getRecordSize(final Class<? extends Record> recordClazz) {
-        SizeCache.computeIfAbsent(recordClazz, _ -> sumFieldSizes(recordClazz.getRecordComponents()));
-        return SizeCache.get(recordClazz);
+        // Not computeIfAbsent, as sizing a nested record updates the map from within the mapping function
+        var size = SizeCache.get(recordClazz);
+        if (size == null) {
+            if (isRecursive(recordClazz))
+                throw new IllegalStateException("Recursive record " + recordClazz.getName() + " has no upper bound on its size.");
+            size = sumFieldSizes(recordClazz.getRecordComponents());
+            SizeCache.putIfAbsent(recordClazz, size);
+        }
+        return size;
     }
 
     /**
      * Sum sizes of fixed sized variables to assist in faster computation of variables.
-     * Enums *are* also allowed on the condition that there's less than 255 enum ordinals.
+     * Enums take one, two or four bytes depending on the number of their constants, see {@link #enumWidth(Class)}.
+     * Variable length integers count with their maximum encoded length, making the sum an upper bound for such records.
+     * Booleans and {@link Bits} fields are counted per packed group as laid out by {@link BitFieldLayout}, so the size
+     * of a record made up of bit fields is exact to the byte its bits end in. Nested records count with their own size,
+     * as they are written in place without any framing. Optional components count with the size of a present value
+     * plus their share of the {@link PresenceBitmap}, making the sum an upper bound for records with optional components.
+     * The same holds for components of {@link Sparse} records, whose booleans live in the bitmap alone, and for
+     * components declared as a sealed interface, which count with their tag and the size of their largest record.
      *
      * @param components component fields to be summed up
      * @return size of object fields
      */
     private static int sumFieldSizes(final RecordComponent[] components) {
-        return Arrays.stream(components).mapToInt(field -> field.getType().isEnum()
-                ? Byte.BYTES : switch (field.getType().getTypeName()) {
+        var size = PresenceBitmap.bytes(components);
+
+        for (var i = 0; i < components.length; i++) {
+            if (PresenceBitmap.isElidable(components[i]))
+                size += components[i].getType() == boolean.class ? 0 : fieldSize(components[i], components[i].getType());
+            else if (BitFieldLayout.isBitField(components[i])) {
+                var group = BitFieldLayout.groupAt(components, i);
+                size += group.bytes();
+                i = group.end() - 1;
+            } else if (PresenceBitmap.isOptional(components[i]))
+                size += fieldSize(components[i], PresenceBitmap.valueType(components[i]));
+            else
+                size += fieldSize(components[i], components[i].getType());
+        }
+
+        return size;
+    }
+
+    /**
+     * Computes the number of bytes a value of the given type takes for a component, which is an upper bound for
+     * variable length integers and sealed interfaces.
+     *
+     * @param field the record component the value belongs to
+     * @param type  the type of the value, which differs from the component's type for optional components
+     * @return the encoded size of the value in bytes
+     */
+    @SuppressWarnings("unchecked")
+    public static int fieldSize(final RecordComponent field, final Class<?> type) {
+        if (field.isAnnotationPresent(FixedLength.class))
+            return fixedLengthSize(field);
+        if (type.isRecord())
+            return getRecordSize((Class<? extends Record>) type);
+        if (SealedTypes.isSealed(type)) {
+            var hierarchy = SealedTypes.of(type);
+            var largest = 0;
+            for (var subtype : hierarchy.subtypes())
+                largest = Math.max(largest, getRecordSize(subtype));
+            return hierarchy.width() + largest;
+        }
+
+        return type.isEnum()
+                ? enumWidth(type) : switch (type.getTypeName()) {
             case "long" -> {
-                if (field.isAnnotationPresent(UnsignedByte.class))
+                if (isVariableLength(field))
+                    yield 10;
+                else if (field.isAnnotationPresent(UnsignedByte.class))
                     yield Byte.BYTES;
                 else if (field.isAnnotationPresent(UnsignedShort.class))
                     yield Short.BYTES;
@@ -51,7 +113,9 @@ public class ClassUtils {
                 yield Long.BYTES;
             }
             case "int" -> {
-                if (field.isAnnotationPresent(UnsignedByte.class))
+                if (isVariableLength(field))
+                    yield 5;
+                else if (field.isAnnotationPresent(UnsignedByte.class))
                     yield Byte.BYTES;
                 else if (field.isAnnotationPresent(UnsignedShort.class))
                     yield Short.BYTES;
@@ -65,56 +129,87 @@ public class ClassUtils {
 
             case "char" -> Character.BYTES;
 
-            case "boolean" -> throw new IllegalStateException("Type 'Boolean' is not a permitted value");
-            default -> throw new IllegalStateException("Unexpected value: " + field.getType().getTypeName());
-        }).sum();
+            default -> throw new IllegalStateException("Unexpected value: " + type.getTypeName());
+        };
     }
 
     /**
      * Detects whether a record is infinitely nested, i.e., contains a direct or indirect cycle
-     * of record components referencing itself or each other.
-     * <p>
-     * This is a conservative check that assumes all record components are non-nullable. It will treat
-     * any cyclic structure (e.g. {@code record A(B b)}, {@code record B(A a)}) as an infinite nesting pattern.
+     * of required record components referencing itself or each other.
      * <p>
-     * In the future, if Java introduces official nullability support,
-     * this method may be revised to account for potentially-null references, allowing for legitimate
-     * recursive structures like trees or linked lists where components may be {@code null}.
-     * <p>
-     * For now, this method errs on the side of safety and disallows recursive nesting unless clearly finite.
+     * Any cyclic structure made of required components (e.g. {@code record A(B b)}, {@code record B(A a)}) is treated
+     * as an infinite nesting pattern, as no instance of it could ever be written out. Cycles passing through an
+     * optional component, one annotated with {@link net.ansinn.ByteBarista.annotations.Nullable} or declared as
+     * {@link java.util.Optional}, are legitimate recursive structures like trees or linked lists and are allowed. The
+     * same goes for cycles through a sealed interface, unless every record it permits leads back into the cycle.
      *
-     * @param clazz the class to analyze (must be a record)
+     * @param recordClazz the class to analyze (must be a record)
      * @return {@code true} if the record structure is cyclic; {@code false} otherwise
+     * @see #isRecursive(Class)
      */
     public static <T extends Record> boolean isInfinitelyNested(Class<T> recordClazz) {
-        return isInfinitelyNested(recordClazz, new HashSet<>());
+        return hasCycle(recordClazz, new HashSet<>(), false);
     }
 
-    private static boolean isInfinitelyNested(Class<?> recordClazz, Set<Class<?>> visitedClasses) {
+    /**
+     * Detects whether a record refers back to itself through any of its components, including optional ones. Such
+     * records can't be decoded by a single method with all nested records inlined.
+     *
+     * @param recordClazz the class to analyze (must be a record)
+     * @return {@code true} if the record structure is cyclic, even if only through optional components
+     * @see #isInfinitelyNested(Class)
+     */
+    public static <T extends Record> boolean isRecursive(Class<T> recordClazz) {
+        return hasCycle(recordClazz, new HashSet<>(), true);
+    }
+
+    private static boolean hasCycle(Class<?> recordClazz, Set<Class<?>> visitedClasses, boolean throughOptional) {
         if (!visitedClasses.add(recordClazz)) return true; // cycle detected
 
-        for (RecordComponent component : recordClazz.getRecordComponents()) {
-            Class<?> type = component.getType();
+        // Every exit has to leave the record unvisited, or a sibling component reaching it again would see a cycle
+        try {
+            for (RecordComponent component : recordClazz.getRecordComponents()) {
+                var optional = PresenceBitmap.isOptional(component);
+                if (optional && !throughOptional)
+                    continue;
 
-            // Only recurse into nested records
-            if (type.isPrimitive() || type.isEnum() || type == String.class)
-                continue;
+                var type = optional ? PresenceBitmap.valueType(component) : component.getType();
 
-            // TODO: When nullability annotations or value constraints exist, refine this logic
-            if (isInfinitelyNested(type, visitedClasses))
-                return true;
-        }
+                // A sealed interface only nests infinitely if every one of its records does, as any other ends the chain
+                if (SealedTypes.isSealed(type)) {
+                    var cycles = 0;
+                    var subtypes = SealedTypes.of(type).subtypes();
+                    for (var subtype : subtypes)
+                        if (hasCycle(subtype, visitedClasses, throughOptional))
+                            cycles++;
+
+                    if (throughOptional ? cycles > 0 : cycles == subtypes.size())
+                        return true;
+                    continue;
+                }
 
-        visitedClasses.remove(recordClazz);
-        return false;
+                // Only recurse into nested records
+                if (!type.isRecord())
+                    continue;
+
+                if (hasCycle(type, visitedClasses, throughOptional))
+                    return true;
+            }
+
+            return false;
+        } finally {
+            visitedClasses.remove(recordClazz);
+        }
     }
 
     /**
      * Determines whether the given record class has a fixed size when serialized.
      * <p>
      * A record is considered fixed-size if all of its components are of known, constant-width types:
-     * primitive types, enums, or other fixed-size records. Arrays and reference types other than enums
-     * are treated as variable-sized and will cause this method to return {@code false}.
+     * primitive types, enums, other fixed-size records, or strings and arrays annotated with {@link FixedLength}.
+     * Other arrays and strings, sealed interfaces and other reference types, integers annotated with {@link VarInt}
+     * or {@link ZigZag}, optional components and {@link Sparse} records are treated as variable-sized and will cause
+     * this method to return {@code false}.
      * </p>
      *
      * <p>
@@ -124,17 +219,30 @@ public class ClassUtils {
      *
      * @param recordClazz the record class to inspect
      * @return {@code true} if all components are fixed-size; {@code false} otherwise
+     * @see SealedTypes
      */
     public static <T extends Record> boolean isFixedSize(Class<T> recordClazz) {
+        // sparse records only write what differs from the defaults
+        if (recordClazz.isAnnotationPresent(Sparse.class))
+            return false;
+
         // TODO: rewrite this including some form of caching so that it doesn't
         //  sift through an entire line of pre-computed classes each time.
         for (RecordComponent component : recordClazz.getRecordComponents()) {
             Class<?> type = component.getType();
 
+            // variable length integers and optional components are dynamic
+            if (isVariableLength(component) || PresenceBitmap.isOptional(component)) {
+                return false;
+            }
             // primitives and enums are always fixed-size
             if (type.isPrimitive() || type.isEnum()) {
                 continue;
             }
+            // Strings and arrays with a fixed length take a constant number of bytes
+            if (component.isAnnotationPresent(FixedLength.class)) {
+                continue;
+            }
             // Strings are dynamic
             if (type.equals(String.class)) {
                 return false;
@@ -158,18 +266,84 @@ public class ClassUtils {
         return true;
     }
 
+    /**
+     * Chooses the number of bytes an enum's ordinal is encoded in: one byte for up to 256 constants, two bytes for up
+     * to 65536 and four bytes otherwise. Ordinals are stored unsigned.
+     *
+     * @param enumType the enum to inspect
+     * @return the encoded width of the enum in bytes
+     */
+    public static int enumWidth(Class<?> enumType) {
+        var constants = enumType.getEnumConstants().length;
+
+        if (constants <= 1 << Byte.SIZE)
+            return Byte.BYTES;
+        else if (constants <= 1 << Short.SIZE)
+            return Short.BYTES;
+        return Integer.BYTES;
+    }
+
+    /**
+     * Computes the encoded size of a component annotated with {@link FixedLength}: its length in bytes for strings,
+     * its length times the element size for primitive arrays, or one byte per eight elements for packed
+     * {@code boolean} arrays.
+     *
+     * @param component the record component to inspect
+     * @return the number of bytes the component occupies
+     * @throws IllegalStateException if the length is not positive or the component is neither a string nor a
+     *                               primitive array
+     */
+    public static int fixedLengthSize(RecordComponent component) {
+        var type = component.getType();
+        var length = component.getAnnotation(FixedLength.class).value();
+
+        if (length <= 0)
+            throw new IllegalStateException("@FixedLength(" + length + ") on " + component.getName() + " must be positive.");
+
+        if (type.equals(String.class))
+            return length;
+        if (type.equals(boolean[].class))
+            return ArrayHelpers.packedBytes(length);
+
+        var elementSize = switch (type.isArray() ? type.getComponentType().getName() : "") {
+            case "long" -> Long.BYTES;
+            case "int" -> Integer.BYTES;
+            case "short" -> Short.BYTES;
+            case "byte" -> Byte.BYTES;
+            case "double" -> Double.BYTES;
+            case "float" -> Float.BYTES;
+            case "char" -> Character.BYTES;
+            default -> throw new IllegalStateException("@FixedLength is only permitted on strings and primitive arrays, not "
+                    + type.getTypeName() + ".");
+        };
+
+        return Math.multiplyExact(length, elementSize);
+    }
+
+    /**
+     * Determines whether a component is encoded as a variable length integer, i.e. carries {@link VarInt} or
+     * {@link ZigZag}.
+     *
+     * @param component the record component to inspect
+     * @return {@code true} if the component's encoded size depends on its value
+     */
+    public static boolean isVariableLength(RecordComponent component) {
+        return component.isAnnotationPresent(VarInt.class) || component.isAnnotationPresent(ZigZag.class);
+    }
+
     /**
      * Returns the JVM descriptor string for the given record component's type.
      * <p>
      * This method handles all primitive types supported by Java records, as well as reference types.
      * For primitive types, it returns the corresponding single-letter descriptor (e.g., {@code "I"} for {@code int}).
-     * For reference types, it returns a descriptor of the form {@code "Lfully/qualified/ClassName;"}.
+     * For reference types, it returns a descriptor of the form {@code "Lfully/qualified/ClassName;"}, or
+     * {@code "[I"} and the like for arrays.
      * <p>
-     * Unsupported types such as {@code boolean} and {@code void} will result in an {@link IllegalArgumentException}.
+     * The type {@code void} will result in an {@link IllegalArgumentException}.
      *
      * @param component the {@link RecordComponent} whose type descriptor should be emitted
      * @return the JVM descriptor string for the component's type
-     * @throws IllegalArgumentException if the type is {@code boolean}, {@code void}, or otherwise unsupported
+     * @throws IllegalArgumentException if the type is {@code void}, or otherwise unsupported
      */
     public static String getDescriptor(RecordComponent component) {
         var type = component.getType();
@@ -186,14 +360,14 @@ public class ClassUtils {
 
                 case "char" -> "C";
 
-                case "boolean" -> throw new IllegalArgumentException("Type boolean is currently unsupported.");
+                case "boolean" -> "Z";
                 case "void" -> throw new IllegalArgumentException("Type void is not permitted within record encoders and decoders.");
                 default -> {
                     // TODO add support for nested records with this
                     throw new IllegalArgumentException("Unknown primitive: " + type);
                 }
             };
-        } else return "L" + type.getName() + ";";
+        } else return type.descriptorString();
     }
 
     public static MethodTypeDesc getField(RecordComponent component) {
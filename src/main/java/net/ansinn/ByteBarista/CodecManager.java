@@ -2,12 +2,15 @@ package net.ansinn.ByteBarista;
 
 import net.ansinn.ByteBarista.codecs.Codec;
 import net.ansinn.ByteBarista.codecs.DynamicCodec;
+import net.ansinn.ByteBarista.codecs.FieldComparator;
 import net.ansinn.ByteBarista.codecs.FixedCodec;
+import net.ansinn.ByteBarista.codecs.KeyCodec;
+import net.ansinn.ByteBarista.codecs.KeyExtractor;
+import net.ansinn.ByteBarista.codegen.FieldComparatorBuilder;
+import net.ansinn.ByteBarista.codegen.KeyCodecBuilder;
+import net.ansinn.ByteBarista.codegen.KeyExtractorBuilder;
 import net.ansinn.ByteBarista.codegen.RecordCodecBuilder;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -15,32 +18,122 @@ import java.util.concurrent.ConcurrentMap;
 /**
  * The Codec manager organizes coders and encoders into a unified Codec class which wraps up the decode and encode
  * operations into a singular unified
+ * <p>
+ * Codecs are generated once per record type and cached for the lifetime of the application. Records with a fixed size
+ * are handed out as a {@link FixedCodec}, all others as a {@link DynamicCodec}.
  *
  * @author Gunter Ansinn
  */
 public class CodecManager {
 
-    private static ConcurrentMap<Class<? extends Record>, Codec<? extends Record>> CODEC_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<? extends Record>, Codec<? extends Record>> CODEC_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<? extends Record>, KeyCodec<? extends Record>> KEY_CODEC_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<? extends Record>, ConcurrentMap<List<String>, FieldComparator>> COMPARATOR_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<? extends Record>, ConcurrentMap<Class<? extends Record>, KeyExtractor>> EXTRACTOR_CACHE = new ConcurrentHashMap<>();
 
-    public static <T extends Record> T getCodec(Class<T> codecType) {
+    /**
+     * Returns the codec of a record type, generating it on first use.
+     *
+     * @param codecType the record type
+     * @return a {@link FixedCodec} if the record has a fixed size, a {@link DynamicCodec} otherwise
+     * @param <T> the record type
+     * @throws IllegalStateException if the record infinitely nests itself or can't be encoded
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Record> Codec<T> getCodec(Class<T> codecType) {
         Objects.requireNonNull(codecType, "Codec type key cannot be null.");
 
-        if (ClassUtils.isInfinitelyNested(codecType))
-            throw new IllegalStateException("This record codec is invalid as it infinitely nests itself or subclasses.");
-
-        return null;
+        return (Codec<T>) CODEC_CACHE.computeIfAbsent(codecType, CodecManager::createCodec);
     }
 
+    /**
+     * @param codecType the record type
+     * @return the size checked codec of the record type
+     * @param <T> the record type
+     * @throws IllegalStateException if the record doesn't have a fixed size
+     */
     public static <T extends Record> FixedCodec<T> getSafe(Class<T> codecType) {
-        return null;
+        return getSafeOptionally(codecType)
+                .orElseThrow(() -> new IllegalStateException("Record " + codecType.getName() + " doesn't have a fixed size."));
     }
 
+    /**
+     * @param codecType the record type
+     * @return the size checked codec of the record type, or nothing if the record doesn't have a fixed size
+     * @param <T> the record type
+     */
     public static <T extends Record> Optional<FixedCodec<T>> getSafeOptionally(Class<T> codecType) {
-        return Optional.empty();
+        return getCodec(codecType) instanceof FixedCodec<T> fixed ? Optional.of(fixed) : Optional.empty();
     }
 
+    /**
+     * @param codecType the record type
+     * @return the codec of the record type without any size checks, which is available for every record
+     * @param <T> the record type
+     */
     public static <T extends Record> DynamicCodec<T> getUnsafe(Class<T> codecType) {
-        return null;
+        return switch (getCodec(codecType)) {
+            case FixedCodec<T> fixed -> fixed.internalCodec();
+            case DynamicCodec<T> dynamic -> dynamic;
+        };
+    }
+
+    /**
+     * Returns the order preserving key codec of a record type, generating it on first use.
+     *
+     * @param codecType the record type
+     * @return the key codec of the record type
+     * @param <T> the record type
+     * @throws IllegalStateException if the record can't be written as a key
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Record> KeyCodec<T> getKeyCodec(Class<T> codecType) {
+        Objects.requireNonNull(codecType, "Codec type key cannot be null.");
+
+        return (KeyCodec<T>) KEY_CODEC_CACHE.computeIfAbsent(codecType, KeyCodecBuilder::build);
+    }
+
+    /**
+     * Returns a comparator of encoded records of a fixed size record type, generating it on first use for each list
+     * of components.
+     *
+     * @param codecType the record type
+     * @param fields    the paths of the compared components in order of precedence, prefixed with {@code '-'} to sort
+     *                  descending
+     * @return the comparator reading the components in place
+     * @throws IllegalStateException if the record doesn't have a fixed size, or a component can't be compared in place
+     */
+    public static FieldComparator getFieldComparator(Class<? extends Record> codecType, String... fields) {
+        Objects.requireNonNull(codecType, "Codec type key cannot be null.");
+
+        return COMPARATOR_CACHE.computeIfAbsent(codecType, _ -> new ConcurrentHashMap<>())
+                .computeIfAbsent(List.of(fields), list -> FieldComparatorBuilder.build(codecType, list));
+    }
+
+    /**
+     * Returns the extractor writing the key of an encoded record, generating it on first use for each key record.
+     *
+     * @param codecType the encoded record type
+     * @param keyType   the key record type, whose components name the key components of the encoded record
+     * @return the extractor writing the same bytes as the key codec of the key record
+     * @throws IllegalStateException if a key component is missing from the encoded record, differs in type or can't
+     * be part of a key
+     * @see #getKeyCodec(Class)
+     */
+    public static KeyExtractor getKeyExtractor(Class<? extends Record> codecType, Class<? extends Record> keyType) {
+        Objects.requireNonNull(codecType, "Codec type key cannot be null.");
+        Objects.requireNonNull(keyType, "Key type cannot be null.");
+
+        return EXTRACTOR_CACHE.computeIfAbsent(codecType, _ -> new ConcurrentHashMap<>())
+                .computeIfAbsent(keyType, key -> KeyExtractorBuilder.build(codecType, key));
+    }
+
+    private static Codec<? extends Record> createCodec(Class<? extends Record> codecType) {
+        if (ClassUtils.isInfinitelyNested(codecType))
+            throw new IllegalStateException("This record codec is invalid as it infinitely nests itself or subclasses.");
+
+        var codec = RecordCodecBuilder.build(codecType);
+        return ClassUtils.isFixedSize(codecType) ? new FixedCodec<>(ClassUtils.getRecordSize(codecType), codec) : codec;
     }
 
 }
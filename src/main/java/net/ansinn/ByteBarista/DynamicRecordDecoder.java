@@ -48,10 +48,15 @@ public class DynamicRecordDecoder {
         var type = component.getType();
 
         if (type.isEnum()) {
-            var valueHandle = lookup.findStatic(type, "values", MethodType.methodType(type.arrayType()));
-            var ordinal = lookup.findVirtual(ByteBuffer.class, "getInt", MethodType.methodType(int.class));
-
-            return MethodHandles.filterReturnValue(ordinal, valueHandle);
+            // Bind the constants once, values() would clone the array on every decode
+            var constants = MethodHandles.arrayElementGetter(type.arrayType()).bindTo(type.getEnumConstants());
+            var ordinal = switch (ClassUtils.enumWidth(type)) {
+                case Byte.BYTES -> lookup.findStatic(NumericHelpers.class, "getUnsignedByteAsInt", MethodType.methodType(int.class, ByteBuffer.class));
+                case Short.BYTES -> lookup.findStatic(NumericHelpers.class, "getUnsignedShortAsInt", MethodType.methodType(int.class, ByteBuffer.class));
+                default -> lookup.findVirtual(ByteBuffer.class, "getInt", MethodType.methodType(int.class));
+            };
+
+            return MethodHandles.filterReturnValue(ordinal, constants);
         }
 
         return switch (type.getTypeName().toLowerCase()) {
@@ -0,0 +1,97 @@
+package net.ansinn.ByteBarista;
+
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Locates components within the encoding of a fixed size record, so that they can be read in place without decoding
+ * the record around them.
+ * <p>
+ * Fixed size records have neither a presence bitmap nor any variable length component, so every component sits at
+ * the same offset in every encoded record: the sum of the sizes of the components written before it. Booleans and
+ * {@link net.ansinn.ByteBarista.annotations.Bits} fields share the packed word of their {@link BitFieldLayout} group,
+ * and are located by the offset of that word and their shift within it. Components of nested records are addressed by
+ * a dotted path such as {@code "time.seconds"}.
+ *
+ * @author Gunter Ansinn
+ */
+public final class FixedLayout {
+
+    private FixedLayout() {}
+
+    /**
+     * The place of a component within an encoded record.
+     *
+     * @param offset     the offset of the component, or of the packed word holding it, from the start of the record
+     * @param component  the located component
+     * @param groupBytes the number of bytes of the packed word holding the component, {@code 0} if it isn't a bit field
+     * @param shift      the right shift moving the component's bits to the bottom of its packed word
+     */
+    public record Slot(int offset, RecordComponent component, int groupBytes, int shift) {
+
+        /**
+         * @return {@code true} if the component is a bit field read out of a packed word
+         */
+        public boolean isPacked() {
+            return groupBytes > 0;
+        }
+    }
+
+    /**
+     * Locates a component of a fixed size record.
+     *
+     * @param clazz the record type
+     * @param path  the name of the component, with the names of enclosing nested records separated by dots
+     * @return the place of the component within the encoded record
+     * @throws IllegalStateException if the record isn't fixed size, or the path doesn't name a component
+     */
+    @SuppressWarnings("unchecked")
+    public static Slot locate(Class<? extends Record> clazz, String path) {
+        if (!ClassUtils.isFixedSize(clazz))
+            throw new IllegalStateException("Record " + clazz.getName() + " doesn't have a fixed size.");
+
+        var names = path.split("\\.", -1);
+        var current = clazz;
+        var base = 0;
+
+        for (var i = 0; ; i++) {
+            var slot = find(current, names[i], base);
+            if (i == names.length - 1)
+                return slot;
+
+            var type = slot.component().getType();
+            if (!type.isRecord())
+                throw new IllegalStateException("Component " + names[i] + " of " + current.getName() + " in path " + path
+                        + " is not a record.");
+
+            current = (Class<? extends Record>) type;
+            base = slot.offset();
+        }
+    }
+
+    private static Slot find(Class<? extends Record> clazz, String name, int base) {
+        var components = clazz.getRecordComponents();
+        var offset = base;
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+
+            if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                for (var j = group.first(); j < group.end(); j++)
+                    if (components[j].getName().equals(name))
+                        return new Slot(offset, components[j], group.bytes(), BitFieldLayout.shiftOf(components, group, j));
+
+                offset += group.bytes();
+                i = group.end() - 1;
+                continue;
+            }
+
+            if (component.getName().equals(name))
+                return new Slot(offset, component, 0, 0);
+
+            offset += ClassUtils.fieldSize(component, component.getType());
+        }
+
+        throw new IllegalStateException("Record " + clazz.getName() + " has no component named " + name + ".");
+    }
+}
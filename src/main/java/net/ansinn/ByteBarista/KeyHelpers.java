@@ -0,0 +1,289 @@
+package net.ansinn.ByteBarista;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads and writes values in an order preserving form: the encoded bytes of two values compare as unsigned bytes,
+ * e.g. through {@link Arrays#compareUnsigned(byte[], byte[])}, in the same order as the values themselves.
+ * <p>
+ * Numbers are written most significant byte first regardless of the buffer's byte order. Signed integers have their
+ * sign bit flipped, so negative values sort below positive ones. Floating point values have their sign bit flipped if
+ * positive and all bits flipped if negative, which orders them like {@link Double#compare(double, double)}, with
+ * {@code -0.0} below {@code 0.0} and all NaNs collapsed above positive infinity. Strings and byte arrays are written
+ * with every zero byte escaped as {@code 0x00 0x01} and end with {@code 0x00 0x00}, so a value sorts before every
+ * value it is a prefix of, and the bytes following it never affect the order. Strings therefore sort by code point.
+ * <p>
+ * Every value is prefix free, so a sequence of values is ordered by its first differing value, which is what makes
+ * records written by a {@link net.ansinn.ByteBarista.codecs.KeyCodec} sort by their components in declaration order.
+ *
+ * @author Gunter Ansinn
+ */
+public final class KeyHelpers {
+
+    private static final byte ESCAPE = 0x00;
+    private static final byte ESCAPED_ZERO = 0x01;
+    private static final byte TERMINATOR = 0x00;
+
+    private KeyHelpers() {}
+
+    public static void putKeyBoolean(ByteBuffer buffer, boolean value) {
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    public static boolean getKeyBoolean(ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+
+    public static void putKeyByte(ByteBuffer buffer, byte value) {
+        buffer.put((byte) (value ^ Byte.MIN_VALUE));
+    }
+
+    public static byte getKeyByte(ByteBuffer buffer) {
+        return (byte) (buffer.get() ^ Byte.MIN_VALUE);
+    }
+
+    public static void putKeyShort(ByteBuffer buffer, short value) {
+        putShort(buffer, (short) (value ^ Short.MIN_VALUE));
+    }
+
+    public static short getKeyShort(ByteBuffer buffer) {
+        return (short) (getShort(buffer) ^ Short.MIN_VALUE);
+    }
+
+    public static void putKeyChar(ByteBuffer buffer, char value) {
+        putShort(buffer, (short) value);
+    }
+
+    public static char getKeyChar(ByteBuffer buffer) {
+        return (char) getShort(buffer);
+    }
+
+    public static void putKeyInt(ByteBuffer buffer, int value) {
+        putInt(buffer, value ^ Integer.MIN_VALUE);
+    }
+
+    public static int getKeyInt(ByteBuffer buffer) {
+        return getInt(buffer) ^ Integer.MIN_VALUE;
+    }
+
+    public static void putKeyLong(ByteBuffer buffer, long value) {
+        putLong(buffer, value ^ Long.MIN_VALUE);
+    }
+
+    public static long getKeyLong(ByteBuffer buffer) {
+        return getLong(buffer) ^ Long.MIN_VALUE;
+    }
+
+    public static void putKeyFloat(ByteBuffer buffer, float value) {
+        var bits = Float.floatToIntBits(value);
+        putInt(buffer, bits ^ ((bits >> (Integer.SIZE - 1)) | Integer.MIN_VALUE));
+    }
+
+    public static float getKeyFloat(ByteBuffer buffer) {
+        var bits = getInt(buffer);
+        return Float.intBitsToFloat(bits ^ (~(bits >> (Integer.SIZE - 1)) | Integer.MIN_VALUE));
+    }
+
+    public static void putKeyDouble(ByteBuffer buffer, double value) {
+        var bits = Double.doubleToLongBits(value);
+        putLong(buffer, bits ^ ((bits >> (Long.SIZE - 1)) | Long.MIN_VALUE));
+    }
+
+    public static double getKeyDouble(ByteBuffer buffer) {
+        var bits = getLong(buffer);
+        return Double.longBitsToDouble(bits ^ (~(bits >> (Long.SIZE - 1)) | Long.MIN_VALUE));
+    }
+
+    /**
+     * Writes an unsigned value, such as an enum ordinal, in the given number of bytes.
+     *
+     * @param buffer the buffer to write into
+     * @param value  the value to write
+     * @param bytes  the width of the value, one, two or four bytes
+     */
+    public static void putKeyUnsigned(ByteBuffer buffer, int value, int bytes) {
+        NumericHelpers.putBits(buffer, Integer.toUnsignedLong(value), bytes);
+    }
+
+    /**
+     * @param buffer the buffer to read from
+     * @param bytes  the width of the value, one, two or four bytes
+     * @return the unsigned value read
+     */
+    public static int getKeyUnsigned(ByteBuffer buffer, int bytes) {
+        return (int) NumericHelpers.getBits(buffer, bytes);
+    }
+
+    public static void putKeyString(ByteBuffer buffer, String value) {
+        putKeyBytes(buffer, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String getKeyString(ByteBuffer buffer) {
+        return new String(getKeyBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a byte array with its zero bytes escaped, followed by the terminator.
+     *
+     * @param buffer the buffer to write into
+     * @param value  the bytes to write
+     */
+    public static void putKeyBytes(ByteBuffer buffer, byte[] value) {
+        var start = 0;
+        for (var i = 0; i < value.length; i++) {
+            if (value[i] != 0)
+                continue;
+
+            buffer.put(value, start, i - start).put(ESCAPE).put(ESCAPED_ZERO);
+            start = i + 1;
+        }
+
+        buffer.put(value, start, value.length - start).put(ESCAPE).put(TERMINATOR);
+    }
+
+    /**
+     * Reads a byte array written by {@link #putKeyBytes(ByteBuffer, byte[])}.
+     *
+     * @param buffer the buffer to read from
+     * @return the unescaped bytes
+     * @throws IllegalStateException if the bytes aren't terminated or hold an invalid escape
+     */
+    public static byte[] getKeyBytes(ByteBuffer buffer) {
+        var output = new ByteArrayOutputStream();
+
+        while (true) {
+            if (!buffer.hasRemaining())
+                throw new IllegalStateException("Key bytes end without a terminator.");
+
+            var value = buffer.get();
+            if (value != ESCAPE) {
+                output.write(value);
+                continue;
+            }
+
+            if (!buffer.hasRemaining())
+                throw new IllegalStateException("Key bytes end within an escape.");
+
+            var escaped = buffer.get();
+            if (escaped == TERMINATOR)
+                return output.toByteArray();
+            if (escaped != ESCAPED_ZERO)
+                throw new IllegalStateException("Invalid key escape 0x00 0x" + Integer.toHexString(escaped & 0xFF) + ".");
+
+            output.write(0);
+        }
+    }
+
+    /**
+     * Skips a byte array written by {@link #putKeyBytes(ByteBuffer, byte[])} without decoding it.
+     *
+     * @param buffer the buffer to read from, positioned after the bytes once done
+     * @throws IllegalStateException if the bytes aren't terminated
+     */
+    public static void skipKeyBytes(ByteBuffer buffer) {
+        var position = buffer.position();
+        var limit = buffer.limit();
+
+        while (position + 1 < limit) {
+            if (buffer.get(position) == ESCAPE && buffer.get(position + 1) == TERMINATOR) {
+                buffer.position(position + 2);
+                return;
+            }
+            position += buffer.get(position) == ESCAPE ? 2 : 1;
+        }
+
+        throw new IllegalStateException("Key bytes end without a terminator.");
+    }
+
+    /**
+     * Compares two keys as unsigned bytes.
+     *
+     * @return a negative number, zero or a positive number if {@code left} sorts before, with or after {@code right}
+     */
+    public static int compare(byte[] left, byte[] right) {
+        return Arrays.compareUnsigned(left, right);
+    }
+
+    /**
+     * Compares the remaining bytes of two buffers as unsigned bytes, leaving their positions untouched. Unlike
+     * {@link ByteBuffer#compareTo(ByteBuffer)}, which compares signed bytes, this orders keys correctly.
+     *
+     * @return a negative number, zero or a positive number if {@code left} sorts before, with or after {@code right}
+     */
+    public static int compare(ByteBuffer left, ByteBuffer right) {
+        var mismatch = left.mismatch(right);
+        if (mismatch < 0)
+            return 0;
+
+        if (mismatch == left.remaining() || mismatch == right.remaining())
+            return left.remaining() - right.remaining();
+
+        return Byte.toUnsignedInt(left.get(left.position() + mismatch)) - Byte.toUnsignedInt(right.get(right.position() + mismatch));
+    }
+
+    /**
+     * Compares two ranges of the same length as unsigned bytes, such as the {@link
+     * net.ansinn.ByteBarista.annotations.FixedLength} strings of two encoded records, leaving the buffers untouched.
+     *
+     * @return a negative number, zero or a positive number if the left range sorts before, with or after the right one
+     */
+    public static int compare(ByteBuffer left, int leftIndex, ByteBuffer right, int rightIndex, int length) {
+        for (var i = 0; i < length; i++) {
+            var difference = Byte.toUnsignedInt(left.get(leftIndex + i)) - Byte.toUnsignedInt(right.get(rightIndex + i));
+            if (difference != 0)
+                return difference;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compares two keys held in memory segments as unsigned bytes.
+     *
+     * @return a negative number, zero or a positive number if {@code left} sorts before, with or after {@code right}
+     */
+    public static int compare(MemorySegment left, MemorySegment right) {
+        var mismatch = left.mismatch(right);
+        if (mismatch < 0)
+            return 0;
+
+        if (mismatch == left.byteSize() || mismatch == right.byteSize())
+            return Long.compare(left.byteSize(), right.byteSize());
+
+        return Byte.toUnsignedInt(left.get(ValueLayout.JAVA_BYTE, mismatch))
+                - Byte.toUnsignedInt(right.get(ValueLayout.JAVA_BYTE, mismatch));
+    }
+
+    private static void putShort(ByteBuffer buffer, short value) {
+        buffer.putShort(buffer.order() == ByteOrder.BIG_ENDIAN ? value : Short.reverseBytes(value));
+    }
+
+    private static short getShort(ByteBuffer buffer) {
+        var value = buffer.getShort();
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Short.reverseBytes(value);
+    }
+
+    private static void putInt(ByteBuffer buffer, int value) {
+        buffer.putInt(buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+
+    private static int getInt(ByteBuffer buffer) {
+        var value = buffer.getInt();
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private static void putLong(ByteBuffer buffer, long value) {
+        buffer.putLong(buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    private static long getLong(ByteBuffer buffer) {
+        var value = buffer.getLong();
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+}
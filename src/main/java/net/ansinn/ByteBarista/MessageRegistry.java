@@ -0,0 +1,157 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.codecs.Codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Carries many unrelated record types over a single buffer or stream by prefixing every record with the integer id its
+ * type was registered under.
+ * <p>
+ * Ids are written as variable length integers, so ids below 128 take a single byte. Decoding looks the codec up in an
+ * array indexed by id, encoding in a {@link ClassValue} holding the id and codec of each registered type, so neither
+ * direction hashes anything once a type has been seen. Ids should therefore be kept dense, as the array spans every id
+ * up to the largest one registered.
+ * <p>
+ * Registering is thread safe and may happen at any time, although it is meant to be done once up front. Codecs are
+ * obtained from {@link CodecManager#getCodec(Class)}, so fixed size records are size checked as usual.
+ *
+ * @author Gunter Ansinn
+ */
+public final class MessageRegistry {
+
+    /**
+     * Largest id a record type can be registered under.
+     */
+    public static final int MAX_ID = (1 << 16) - 1;
+
+    private record Entry(int id, Codec<Record> codec) {}
+
+    // Written under the registry's lock and only ever replaced as a whole
+    private volatile Codec<?>[] codecs = new Codec<?>[0];
+    private volatile Map<Class<?>, Entry> registered = Map.of();
+
+    private final ClassValue<Entry> entries = new ClassValue<>() {
+        @Override
+        protected Entry computeValue(Class<?> type) {
+            return registered.get(type);
+        }
+    };
+
+    /**
+     * Registers a record type under an id.
+     *
+     * @param id   the id written ahead of every record of the type, between {@code 0} and {@link #MAX_ID}
+     * @param type the record type
+     * @return this registry
+     * @throws IllegalArgumentException if the id is out of range, or the id or type are registered already
+     * @throws IllegalStateException    if no codec can be generated for the type
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized MessageRegistry register(int id, Class<? extends Record> type) {
+        Objects.requireNonNull(type, "Message type cannot be null.");
+
+        if (id < 0 || id > MAX_ID)
+            throw new IllegalArgumentException("Message id " + id + " is outside of 0 to " + MAX_ID + ".");
+        if (registered.containsKey(type))
+            throw new IllegalArgumentException("Message type " + type.getName() + " is registered already.");
+        if (id < codecs.length && codecs[id] != null)
+            throw new IllegalArgumentException("Message id " + id + " is registered already.");
+
+        var codec = (Codec<Record>) CodecManager.getCodec(type);
+
+        var grown = Arrays.copyOf(codecs, Math.max(codecs.length, id + 1));
+        grown[id] = codec;
+        var map = new HashMap<>(registered);
+        map.put(type, new Entry(id, codec));
+
+        codecs = grown;
+        registered = Map.copyOf(map);
+
+        // Drop a miss cached before the type was registered
+        entries.remove(type);
+        return this;
+    }
+
+    /**
+     * Writes the id of the record's type followed by the record.
+     *
+     * @param buffer the target buffer
+     * @param value  the record to write
+     * @throws IllegalArgumentException if the record's type isn't registered
+     */
+    public void encodeTagged(ByteBuffer buffer, Record value) {
+        var entry = entryOf(value);
+
+        NumericHelpers.putVarInt(buffer, entry.id());
+        entry.codec().encode(buffer, value);
+    }
+
+    /**
+     * Writes the id of the record's type followed by the record.
+     *
+     * @param outputStream the target stream
+     * @param value        the record to write
+     * @throws IllegalArgumentException if the record's type isn't registered
+     */
+    public void encodeTagged(ByteArrayOutputStream outputStream, Record value) {
+        var entry = entryOf(value);
+
+        NumericHelpers.writeVarInt(outputStream, entry.id());
+        entry.codec().encode(outputStream, value);
+    }
+
+    /**
+     * Reads an id and the record of the type registered under it.
+     *
+     * @param buffer the source buffer
+     * @return the decoded record
+     * @throws IllegalStateException if no type is registered under the id read
+     */
+    public Record decodeTagged(ByteBuffer buffer) {
+        return codecOf(NumericHelpers.getVarInt(buffer)).decode(buffer);
+    }
+
+    /**
+     * Reads an id and the record of the type registered under it.
+     *
+     * @param inputStream the source stream
+     * @return the decoded record
+     * @throws IllegalStateException if no type is registered under the id read
+     */
+    public Record decodeTagged(ByteArrayInputStream inputStream) {
+        return codecOf(NumericHelpers.readVarInt(inputStream)).decode(inputStream);
+    }
+
+    /**
+     * @param type a record type
+     * @return the id the type is registered under, or {@code -1} if it isn't registered
+     */
+    public int idOf(Class<? extends Record> type) {
+        var entry = entries.get(type);
+        return entry == null ? -1 : entry.id();
+    }
+
+    private Entry entryOf(Record value) {
+        var entry = entries.get(value.getClass());
+        if (entry == null)
+            throw new IllegalArgumentException("Message type " + value.getClass().getName() + " is not registered.");
+
+        return entry;
+    }
+
+    private Codec<?> codecOf(int id) {
+        var snapshot = codecs;
+        var codec = id >= 0 && id < snapshot.length ? snapshot[id] : null;
+        if (codec == null)
+            throw new IllegalStateException("No message type is registered under id " + id + ".");
+
+        return codec;
+    }
+}
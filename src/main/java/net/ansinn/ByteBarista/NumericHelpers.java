@@ -1,12 +1,25 @@
 package net.ansinn.ByteBarista;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Simple set of methods to read numeric types not explicitly encoded within ByteBuffer.class
  */
 public final class NumericHelpers {
 
+    // Payload bits of the lowest n bytes of a little endian word holding an n byte LEB128 value
+    private static final long[] VAR_MASKS = new long[Long.BYTES + 1];
+    private static final long CONTINUATION_BITS = 0x8080808080808080L;
+
+    static {
+        for (var length = 1; length <= Long.BYTES; length++)
+            VAR_MASKS[length] = 0x7F7F7F7F7F7F7F7FL & (-1L >>> (Long.SIZE - Byte.SIZE * length));
+    }
+
     private NumericHelpers() {}
 
     public static long getUnsignedInt(ByteBuffer buffer) {
@@ -33,4 +46,311 @@ public final class NumericHelpers {
         var num = buffer.get();
         return Byte.toUnsignedInt(num);
     }
+
+    /**
+     * Reads an unsigned value of the given width, as used for enum ordinals.
+     *
+     * @param buffer the buffer to read from
+     * @param bytes  the width of the value, one, two or four bytes
+     * @return the value read
+     */
+    public static int getUnsigned(ByteBuffer buffer, int bytes) {
+        return switch (bytes) {
+            case Byte.BYTES -> getUnsignedByteAsInt(buffer);
+            case Short.BYTES -> getUnsignedShortAsInt(buffer);
+            case Integer.BYTES -> buffer.getInt();
+            default -> throw new IllegalArgumentException("Unsupported width: " + bytes);
+        };
+    }
+
+    /**
+     * Reads an unsigned LEB128 encoded {@code int}.
+     * <p>
+     * Whenever at least eight bytes remain, the value is decoded branch-light: a single word load, a trailing zero
+     * count over the inverted continuation bits to find the length and a bit compress to gather the payload, instead
+     * of a data dependent branch per byte.
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded value
+     * @throws IllegalStateException if the encoded value is longer than five bytes
+     */
+    public static int getVarInt(ByteBuffer buffer) {
+        var position = buffer.position();
+
+        if (buffer.limit() - position >= Long.BYTES) {
+            var word = littleEndianWord(buffer, position);
+            var length = (Long.numberOfTrailingZeros(~word & CONTINUATION_BITS) >>> 3) + 1;
+
+            if (length > 5)
+                throw new IllegalStateException("Malformed variable length int, more than 5 bytes long.");
+
+            buffer.position(position + length);
+            return (int) Long.compress(word, VAR_MASKS[length]);
+        }
+
+        var result = 0;
+        for (var shift = 0; shift < Integer.SIZE; shift += 7) {
+            var b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return result;
+        }
+
+        throw new IllegalStateException("Malformed variable length int, more than 5 bytes long.");
+    }
+
+    /**
+     * Reads an unsigned LEB128 encoded {@code long}. Values of up to eight encoded bytes take the same branch-light
+     * path as {@link #getVarInt(ByteBuffer)}.
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded value
+     * @throws IllegalStateException if the encoded value is longer than ten bytes
+     */
+    public static long getVarLong(ByteBuffer buffer) {
+        var position = buffer.position();
+
+        if (buffer.limit() - position >= Long.BYTES) {
+            var word = littleEndianWord(buffer, position);
+            var stops = ~word & CONTINUATION_BITS;
+
+            if (stops != 0) {
+                var length = (Long.numberOfTrailingZeros(stops) >>> 3) + 1;
+                buffer.position(position + length);
+                return Long.compress(word, VAR_MASKS[length]);
+            }
+        }
+
+        var result = 0L;
+        for (var shift = 0; shift < Long.SIZE; shift += 7) {
+            var b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return result;
+        }
+
+        throw new IllegalStateException("Malformed variable length long, more than 10 bytes long.");
+    }
+
+    /**
+     * Advances past an unsigned LEB128 encoded {@code int} or {@code long} without decoding it.
+     *
+     * @param buffer the buffer to read from
+     * @throws IllegalStateException if the encoded value is longer than ten bytes
+     */
+    public static void skipVarInt(ByteBuffer buffer) {
+        for (var i = 0; i < 10; i++)
+            if (buffer.get() >= 0)
+                return;
+
+        throw new IllegalStateException("Malformed variable length long, more than 10 bytes long.");
+    }
+
+    /**
+     * Advances the buffer's position by the given number of bytes.
+     *
+     * @param buffer the buffer to advance
+     * @param bytes  the number of bytes to skip
+     * @throws BufferUnderflowException if fewer bytes remain
+     */
+    public static void skip(ByteBuffer buffer, int bytes) {
+        if (bytes > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        buffer.position(buffer.position() + bytes);
+    }
+
+    public static int getZigZagInt(ByteBuffer buffer) {
+        return decodeZigZag(getVarInt(buffer));
+    }
+
+    public static long getZigZagLong(ByteBuffer buffer) {
+        return decodeZigZag(getVarLong(buffer));
+    }
+
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static void putZigZagInt(ByteBuffer buffer, int value) {
+        putVarInt(buffer, encodeZigZag(value));
+    }
+
+    public static void putZigZagLong(ByteBuffer buffer, long value) {
+        putVarLong(buffer, encodeZigZag(value));
+    }
+
+    public static int readVarInt(ByteArrayInputStream stream) {
+        var result = 0;
+        for (var shift = 0; shift < Integer.SIZE; shift += 7) {
+            var b = readByte(stream);
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+
+        throw new IllegalStateException("Malformed variable length int, more than 5 bytes long.");
+    }
+
+    public static long readVarLong(ByteArrayInputStream stream) {
+        var result = 0L;
+        for (var shift = 0; shift < Long.SIZE; shift += 7) {
+            var b = readByte(stream);
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+
+        throw new IllegalStateException("Malformed variable length long, more than 10 bytes long.");
+    }
+
+    public static int readZigZagInt(ByteArrayInputStream stream) {
+        return decodeZigZag(readVarInt(stream));
+    }
+
+    public static long readZigZagLong(ByteArrayInputStream stream) {
+        return decodeZigZag(readVarLong(stream));
+    }
+
+    public static void writeVarInt(ByteArrayOutputStream stream, int value) {
+        while ((value & ~0x7F) != 0) {
+            stream.write(value | 0x80);
+            value >>>= 7;
+        }
+        stream.write(value);
+    }
+
+    public static void writeVarLong(ByteArrayOutputStream stream, long value) {
+        while ((value & ~0x7FL) != 0) {
+            stream.write((int) value | 0x80);
+            value >>>= 7;
+        }
+        stream.write((int) value);
+    }
+
+    public static void writeZigZagInt(ByteArrayOutputStream stream, int value) {
+        writeVarInt(stream, encodeZigZag(value));
+    }
+
+    public static void writeZigZagLong(ByteArrayOutputStream stream, long value) {
+        writeVarLong(stream, encodeZigZag(value));
+    }
+
+    /**
+     * Reads a packed group of bit fields, stored as the given number of bytes most significant byte first.
+     *
+     * @param buffer the buffer to read from
+     * @param bytes  number of bytes holding the group, at most eight
+     * @return the group right aligned in a {@code long}
+     */
+    public static long getBits(ByteBuffer buffer, int bytes) {
+        var word = 0L;
+        for (var i = 0; i < bytes; i++)
+            word = (word << Byte.SIZE) | (buffer.get() & 0xFF);
+        return word;
+    }
+
+    /**
+     * Reads a packed group of bit fields at an absolute index, leaving the buffer's position untouched.
+     *
+     * @param buffer the buffer to read from
+     * @param index  the index of the group's first byte
+     * @param bytes  number of bytes holding the group, at most eight
+     * @return the group right aligned in a {@code long}
+     */
+    public static long getBits(ByteBuffer buffer, int index, int bytes) {
+        var word = 0L;
+        for (var i = 0; i < bytes; i++)
+            word = (word << Byte.SIZE) | (buffer.get(index + i) & 0xFF);
+        return word;
+    }
+
+    public static void putBits(ByteBuffer buffer, long word, int bytes) {
+        for (var shift = (bytes - 1) * Byte.SIZE; shift >= 0; shift -= Byte.SIZE)
+            buffer.put((byte) (word >>> shift));
+    }
+
+    public static long readBits(ByteArrayInputStream stream, int bytes) {
+        var word = 0L;
+        for (var i = 0; i < bytes; i++) {
+            var b = stream.read();
+            if (b < 0)
+                throw new IllegalStateException("Unexpected end of stream while reading packed bit fields.");
+            word = (word << Byte.SIZE) | b;
+        }
+        return word;
+    }
+
+    public static void writeBits(ByteArrayOutputStream stream, long word, int bytes) {
+        for (var shift = (bytes - 1) * Byte.SIZE; shift >= 0; shift -= Byte.SIZE)
+            stream.write((int) (word >>> shift));
+    }
+
+    /**
+     * @return the number of bytes {@code value} takes when LEB128 encoded
+     */
+    public static int varIntSize(int value) {
+        return (Integer.SIZE - Integer.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    /**
+     * @return the number of bytes {@code value} takes when LEB128 encoded
+     */
+    public static int varLongSize(long value) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    /**
+     * @return the number of bytes {@code value} takes when ZigZag and LEB128 encoded
+     */
+    public static int zigZagIntSize(int value) {
+        return varIntSize(encodeZigZag(value));
+    }
+
+    /**
+     * @return the number of bytes {@code value} takes when ZigZag and LEB128 encoded
+     */
+    public static int zigZagLongSize(long value) {
+        return varLongSize(encodeZigZag(value));
+    }
+
+    public static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long littleEndianWord(ByteBuffer buffer, int position) {
+        var word = buffer.getLong(position);
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    private static int readByte(ByteArrayInputStream stream) {
+        var b = stream.read();
+        if (b < 0)
+            throw new IllegalStateException("Unexpected end of stream while reading a variable length integer.");
+        return b;
+    }
 }
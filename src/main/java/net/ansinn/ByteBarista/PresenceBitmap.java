@@ -0,0 +1,164 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.Sparse;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+/**
+ * Describes the presence bitmap leading every record with optional components or {@link Sparse} encoding.
+ * <p>
+ * A component is optional if it is annotated with {@link Nullable} or declared as {@link Optional},
+ * {@link OptionalInt}, {@link OptionalLong} or {@link OptionalDouble}. Each optional component is given one bit of
+ * the bitmap, the first optional component taking the most significant bit, and the bitmap is written as the smallest
+ * whole number of bytes holding all bits, most significant byte first. An absent component is not written at all,
+ * while a present one is written exactly like a required component of its value type.
+ * <p>
+ * Records annotated with {@link Sparse} additionally give a bit to every elidable component, which is set if the
+ * component differs from its default value. Only set components are written, and booleans are stored in their bit
+ * instead of being written at all.
+ *
+ * @author Gunter Ansinn
+ */
+public final class PresenceBitmap {
+
+    private PresenceBitmap() {}
+
+    /**
+     * @param component the record component to inspect
+     * @return {@code true} if the component may be absent
+     */
+    public static boolean isOptional(RecordComponent component) {
+        var type = component.getType();
+
+        return component.isAnnotationPresent(Nullable.class) || type == Optional.class
+                || type == OptionalInt.class || type == OptionalLong.class || type == OptionalDouble.class;
+    }
+
+    /**
+     * @param component the record component to inspect
+     * @return {@code true} if the component belongs to a {@link Sparse} record and is only written when it differs from
+     * its default value
+     * @throws IllegalStateException if the component is a {@link Bits} field of a sparse record
+     */
+    public static boolean isElidable(RecordComponent component) {
+        if (!component.getDeclaringRecord().isAnnotationPresent(Sparse.class))
+            return false;
+
+        if (component.isAnnotationPresent(Bits.class))
+            throw new IllegalStateException("@Bits component " + component.getName() + " can't be part of a @Sparse record.");
+
+        var type = component.getType();
+        if (isOptional(component) || component.isAnnotationPresent(FixedLength.class) || type.isRecord())
+            return false;
+
+        return type.isPrimitive() || type.isEnum() || type == String.class
+                || (type.isArray() && type.getComponentType().isPrimitive());
+    }
+
+    /**
+     * @param component the record component to inspect
+     * @return {@code true} if the component is given a bit of the presence bitmap
+     */
+    public static boolean hasBit(RecordComponent component) {
+        return isOptional(component) || isElidable(component);
+    }
+
+    /**
+     * Determines the type of the value an optional component holds when present.
+     *
+     * @param component the optional component
+     * @return the primitive type of a primitive optional, the element type of an {@link Optional}, or the component
+     * type of a {@link Nullable} component
+     * @throws IllegalStateException if the component can't be encoded as an optional
+     */
+    public static Class<?> valueType(RecordComponent component) {
+        var type = component.getType();
+
+        if (type == OptionalInt.class)
+            return int.class;
+        if (type == OptionalLong.class)
+            return long.class;
+        if (type == OptionalDouble.class)
+            return double.class;
+
+        if (type == Optional.class) {
+            if (component.isAnnotationPresent(Nullable.class) || component.isAnnotationPresent(FixedLength.class))
+                throw new IllegalStateException("Optional component " + component.getName() + " can't carry @Nullable or @FixedLength.");
+
+            if (!(component.getGenericType() instanceof ParameterizedType parameterized)
+                    || !(parameterized.getActualTypeArguments()[0] instanceof Class<?> element))
+                throw new IllegalStateException("Optional component " + component.getName() + " must declare a concrete element type.");
+
+            if (element != String.class && !element.isEnum() && !element.isRecord() && !SealedTypes.isSealed(element))
+                throw new IllegalStateException("Optional component " + component.getName() + " holds unsupported type " + element.getName() + ".");
+
+            return element;
+        }
+
+        if (type.isPrimitive())
+            throw new IllegalStateException("Primitive component " + component.getName() + " can't be @Nullable.");
+
+        return type;
+    }
+
+    /**
+     * @param components the components of a record
+     * @return the number of components in the record given a bit of the bitmap
+     */
+    public static int count(RecordComponent[] components) {
+        var count = 0;
+        for (var component : components)
+            if (hasBit(component))
+                count++;
+
+        return count;
+    }
+
+    /**
+     * @param components the components of a record
+     * @return the number of bytes the presence bitmap of the record occupies, zero if no component has a bit
+     * @throws IllegalStateException if the record has more components with a bit than fit a 64 bit bitmap
+     */
+    public static int bytes(RecordComponent[] components) {
+        var count = count(components);
+        if (count > Long.SIZE)
+            throw new IllegalStateException("A record can't have more than " + Long.SIZE + " optional or sparse components.");
+
+        return (count + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * Computes the position of a component's bit within the presence bitmap.
+     *
+     * @param components the components of the record
+     * @param index      index of the component within the record, which must have a bit
+     * @return the number of bits below the component's bit
+     */
+    public static int shiftOf(RecordComponent[] components, int index) {
+        var position = 0;
+        for (var i = 0; i < index; i++)
+            if (hasBit(components[i]))
+                position++;
+
+        return bytes(components) * Byte.SIZE - 1 - position;
+    }
+
+    /**
+     * Computes the bit of the presence bitmap recording whether a component is present.
+     *
+     * @param components the components of the record
+     * @param index      index of the component within the record, which must have a bit
+     * @return the bitmap with only the component's bit set
+     */
+    public static long maskOf(RecordComponent[] components, int index) {
+        return 1L << shiftOf(components, index);
+    }
+}
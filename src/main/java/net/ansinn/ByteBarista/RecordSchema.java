@@ -0,0 +1,488 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.FieldId;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the wire layout of a record and everything nested in it, independently of the classes it was taken from.
+ * <p>
+ * A schema lists the components of every record in the order they are written, together with their names,
+ * {@link FieldId ids}, encodings, their bits in the {@link PresenceBitmap} and their place in a {@link BitFieldLayout}
+ * group. Nested records and the subtypes of sealed interfaces refer to their layouts by index, so recursive records
+ * are described by a finite schema. The first layout is the one of the record itself.
+ * <p>
+ * The {@link #fingerprint()} is a 64 bit FNV-1a hash of the schema's serialized form. It only depends on the layout and
+ * the names and ids of components, not on the names of the record classes, so two records written the same way share
+ * a fingerprint. Writers store the fingerprint or the whole schema alongside their data, which lets
+ * {@link SchemaMigrations} read the data back after the record has changed.
+ *
+ * @author Gunter Ansinn
+ */
+public final class RecordSchema {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final ClassValue<RecordSchema> SCHEMAS = new ClassValue<>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected RecordSchema computeValue(Class<?> type) {
+            var collector = new Collector();
+            collector.layoutOf((Class<? extends Record>) type);
+            return new RecordSchema(collector.layouts);
+        }
+    };
+
+    /**
+     * How the presence of a component is recorded.
+     */
+    public enum Presence {
+        /** The component is always written. */
+        REQUIRED,
+        /** The component is only written if its bit is set, and absent otherwise. */
+        OPTIONAL,
+        /** The component is only written if its bit is set, and has its default value otherwise. */
+        ELIDABLE
+    }
+
+    /**
+     * How an integral value is encoded.
+     */
+    public enum Encoding {
+        PLAIN, VAR_INT, ZIG_ZAG, UNSIGNED_BYTE, UNSIGNED_SHORT, UNSIGNED_INT
+    }
+
+    /**
+     * The encoded type of a value.
+     */
+    public sealed interface Type permits Scalar, Text, Array, Enumeration, Nested, Union {}
+
+    /**
+     * A primitive value.
+     *
+     * @param kind     the descriptor character of the primitive type, e.g. {@code 'I'} for {@code int}
+     * @param encoding the encoding of {@code int} and {@code long} values, {@link Encoding#PLAIN} for all others
+     */
+    public record Scalar(char kind, Encoding encoding) implements Type {}
+
+    /**
+     * A string.
+     *
+     * @param fixedLength the number of bytes of a {@link FixedLength} string, {@code 0} if the string is length prefixed
+     */
+    public record Text(int fixedLength) implements Type {}
+
+    /**
+     * A primitive array.
+     *
+     * @param element     the descriptor character of the element type
+     * @param fixedLength the number of elements of a {@link FixedLength} array, {@code 0} if the array is length prefixed
+     */
+    public record Array(char element, int fixedLength) implements Type {}
+
+    /**
+     * An enum written as its ordinal.
+     *
+     * @param width     the number of bytes the ordinal is written in
+     * @param constants the names of the constants, indexed by ordinal
+     */
+    public record Enumeration(int width, List<String> constants) implements Type {}
+
+    /**
+     * A nested record.
+     *
+     * @param layout the index of the record's layout
+     */
+    public record Nested(int layout) implements Type {}
+
+    /**
+     * A sealed interface written as the tag of its subtype followed by the subtype.
+     *
+     * @param width   the number of bytes the tag is written in
+     * @param tags    the tag of each subtype
+     * @param layouts the index of the layout of each subtype, indexed like {@code tags}
+     */
+    public record Union(int width, List<Integer> tags, List<Integer> layouts) implements Type {}
+
+    /**
+     * The place of a component within a group of packed bit fields.
+     *
+     * @param groupBytes the number of bytes of the group's word if the component starts the group, {@code 0} otherwise
+     * @param shift      the right shift moving the component's bits to the bottom of the word
+     * @param width      the number of bits of the component
+     */
+    public record Packing(int groupBytes, int shift, int width) {}
+
+    /**
+     * A component of a record.
+     *
+     * @param name     the name of the component
+     * @param id       the {@link FieldId} of the component, {@code -1} if it has none
+     * @param presence how the presence of the component is recorded
+     * @param shift    the position of the component's bit in the presence bitmap, {@code -1} if it has none
+     * @param packing  the place of the component in its bit field group, {@code null} if it isn't a bit field
+     * @param type     the type of the value written, which is the value held for optional components
+     */
+    public record Field(String name, int id, Presence presence, int shift, Packing packing, Type type) {}
+
+    /**
+     * The layout of a single record.
+     *
+     * @param bitmapBytes the number of bytes of the presence bitmap leading the record
+     * @param fields      the components of the record in the order they are written
+     */
+    public record Layout(int bitmapBytes, List<Field> fields) {}
+
+    private final List<Layout> layouts;
+    private final byte[] serialized;
+    private final long fingerprint;
+
+    private RecordSchema(List<Layout> layouts) {
+        this.layouts = List.copyOf(layouts);
+        this.serialized = serialize(this.layouts);
+        this.fingerprint = fingerprintOf(serialized);
+    }
+
+    /**
+     * Returns the schema of a record, computing it on first use.
+     *
+     * @param type the record type
+     * @return the schema the record is written with
+     * @throws IllegalStateException if the record can't be encoded
+     */
+    public static RecordSchema of(Class<? extends Record> type) {
+        return SCHEMAS.get(type);
+    }
+
+    /**
+     * Reads a schema written by {@link #toByteArray()}.
+     *
+     * @param buffer the buffer to read from
+     * @return the schema read
+     * @throws IllegalStateException if the bytes don't hold a valid schema
+     */
+    public static RecordSchema read(ByteBuffer buffer) {
+        var count = NumericHelpers.getVarInt(buffer);
+        if (count <= 0)
+            throw new IllegalStateException("A schema must hold at least one layout, not " + count + ".");
+
+        var layouts = new ArrayList<Layout>(count);
+        for (var i = 0; i < count; i++) {
+            var bitmapBytes = Byte.toUnsignedInt(buffer.get());
+            var fieldCount = NumericHelpers.getVarInt(buffer);
+            var fields = new ArrayList<Field>(fieldCount);
+
+            for (var j = 0; j < fieldCount; j++) {
+                var name = StringHelpers.getString(buffer);
+                var id = NumericHelpers.getVarInt(buffer) - 1;
+                var presence = Presence.values()[checkIndex(buffer.get(), Presence.values().length)];
+                var shift = buffer.get() - 1;
+                var width = Byte.toUnsignedInt(buffer.get());
+                var packing = width == 0 ? null : new Packing(Byte.toUnsignedInt(buffer.get()), Byte.toUnsignedInt(buffer.get()), width);
+
+                fields.add(new Field(name, id, presence, shift, packing, readType(buffer, count)));
+            }
+
+            layouts.add(new Layout(bitmapBytes, List.copyOf(fields)));
+        }
+
+        return new RecordSchema(layouts);
+    }
+
+    /**
+     * @return the layouts of the schema, the first one being the layout of the record itself
+     */
+    public List<Layout> layouts() {
+        return layouts;
+    }
+
+    /**
+     * @return the layout of the record itself
+     */
+    public Layout root() {
+        return layouts.getFirst();
+    }
+
+    /**
+     * @return the 64 bit FNV-1a hash of the serialized schema
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the serialized schema, which {@link #read(ByteBuffer)} reads back
+     */
+    public byte[] toByteArray() {
+        return serialized.clone();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RecordSchema schema && fingerprint == schema.fingerprint
+                && Arrays.equals(serialized, schema.serialized);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordSchema[" + Long.toHexString(fingerprint) + "]" + layouts;
+    }
+
+    private static byte[] serialize(List<Layout> layouts) {
+        var stream = new ByteArrayOutputStream();
+        NumericHelpers.writeVarInt(stream, layouts.size());
+
+        for (var layout : layouts) {
+            stream.write(layout.bitmapBytes());
+            NumericHelpers.writeVarInt(stream, layout.fields().size());
+
+            for (var field : layout.fields()) {
+                StringHelpers.writeString(stream, field.name());
+                NumericHelpers.writeVarInt(stream, field.id() + 1);
+                stream.write(field.presence().ordinal());
+                stream.write(field.shift() + 1);
+
+                if (field.packing() == null)
+                    stream.write(0);
+                else {
+                    stream.write(field.packing().width());
+                    stream.write(field.packing().groupBytes());
+                    stream.write(field.packing().shift());
+                }
+
+                writeType(stream, field.type());
+            }
+        }
+
+        return stream.toByteArray();
+    }
+
+    private static void writeType(ByteArrayOutputStream stream, Type type) {
+        switch (type) {
+            case Scalar scalar -> {
+                stream.write(0);
+                stream.write(scalar.kind());
+                stream.write(scalar.encoding().ordinal());
+            }
+            case Text text -> {
+                stream.write(1);
+                NumericHelpers.writeVarInt(stream, text.fixedLength());
+            }
+            case Array array -> {
+                stream.write(2);
+                stream.write(array.element());
+                NumericHelpers.writeVarInt(stream, array.fixedLength());
+            }
+            case Enumeration enumeration -> {
+                stream.write(3);
+                stream.write(enumeration.width());
+                NumericHelpers.writeVarInt(stream, enumeration.constants().size());
+                enumeration.constants().forEach(constant -> StringHelpers.writeString(stream, constant));
+            }
+            case Nested nested -> {
+                stream.write(4);
+                NumericHelpers.writeVarInt(stream, nested.layout());
+            }
+            case Union union -> {
+                stream.write(5);
+                stream.write(union.width());
+                NumericHelpers.writeVarInt(stream, union.tags().size());
+                for (var i = 0; i < union.tags().size(); i++) {
+                    NumericHelpers.writeVarInt(stream, union.tags().get(i));
+                    NumericHelpers.writeVarInt(stream, union.layouts().get(i));
+                }
+            }
+        }
+    }
+
+    private static Type readType(ByteBuffer buffer, int layoutCount) {
+        return switch (buffer.get()) {
+            case 0 -> new Scalar((char) buffer.get(), Encoding.values()[checkIndex(buffer.get(), Encoding.values().length)]);
+            case 1 -> new Text(NumericHelpers.getVarInt(buffer));
+            case 2 -> new Array((char) buffer.get(), NumericHelpers.getVarInt(buffer));
+            case 3 -> {
+                var width = buffer.get();
+                var constants = new String[NumericHelpers.getVarInt(buffer)];
+                for (var i = 0; i < constants.length; i++)
+                    constants[i] = StringHelpers.getString(buffer);
+                yield new Enumeration(width, List.of(constants));
+            }
+            case 4 -> new Nested(checkIndex(NumericHelpers.getVarInt(buffer), layoutCount));
+            case 5 -> {
+                var width = buffer.get();
+                var count = NumericHelpers.getVarInt(buffer);
+                var tags = new ArrayList<Integer>(count);
+                var layouts = new ArrayList<Integer>(count);
+                for (var i = 0; i < count; i++) {
+                    tags.add(NumericHelpers.getVarInt(buffer));
+                    layouts.add(checkIndex(NumericHelpers.getVarInt(buffer), layoutCount));
+                }
+                yield new Union(width, List.copyOf(tags), List.copyOf(layouts));
+            }
+            default -> throw new IllegalStateException("Unknown schema type tag at position " + (buffer.position() - 1) + ".");
+        };
+    }
+
+    private static int checkIndex(int index, int count) {
+        if (index < 0 || index >= count)
+            throw new IllegalStateException("Schema index " + index + " is outside of 0 to " + (count - 1) + ".");
+
+        return index;
+    }
+
+    private static long fingerprintOf(byte[] bytes) {
+        var hash = FNV_OFFSET;
+        for (var value : bytes) {
+            hash ^= value & 0xff;
+            hash *= FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Gathers the layouts of a record and everything nested in it, numbering them in the order they are first met.
+     */
+    private static final class Collector {
+
+        private final List<Layout> layouts = new ArrayList<>();
+        private final Map<Class<?>, Integer> indices = new HashMap<>();
+
+        int layoutOf(Class<? extends Record> clazz) {
+            var known = indices.get(clazz);
+            if (known != null)
+                return known;
+
+            // Reserve the index up front, so that records referring back to themselves find it
+            var index = layouts.size();
+            indices.put(clazz, index);
+            layouts.add(null);
+
+            var components = clazz.getRecordComponents();
+            var fields = new ArrayList<Field>(components.length);
+            var ids = new HashSet<Integer>();
+            BitFieldLayout.Group group = null;
+
+            for (var i = 0; i < components.length; i++) {
+                var component = components[i];
+                var fieldId = component.getAnnotation(FieldId.class);
+                var id = fieldId == null ? -1 : fieldId.value();
+
+                if (fieldId != null && (id < 0 || !ids.add(id)))
+                    throw new IllegalStateException("@FieldId(" + id + ") on " + component.getName()
+                            + " must be unique within " + clazz.getName() + " and not negative.");
+
+                // Mirrors the order in which the generated decoders tell components apart
+                if (PresenceBitmap.isElidable(component))
+                    fields.add(new Field(component.getName(), id, Presence.ELIDABLE, PresenceBitmap.shiftOf(components, i),
+                            null, typeOf(component, component.getType())));
+
+                else if (PresenceBitmap.isOptional(component))
+                    fields.add(new Field(component.getName(), id, Presence.OPTIONAL, PresenceBitmap.shiftOf(components, i),
+                            null, typeOf(component, PresenceBitmap.valueType(component))));
+
+                else if (BitFieldLayout.isBitField(component)) {
+                    var starts = group == null || i >= group.end();
+                    if (starts)
+                        group = BitFieldLayout.groupAt(components, i);
+
+                    var packing = new Packing(starts ? group.bytes() : 0, BitFieldLayout.shiftOf(components, group, i),
+                            BitFieldLayout.bitWidth(component));
+                    fields.add(new Field(component.getName(), id, Presence.REQUIRED, -1, packing,
+                            new Scalar(kindOf(component.getType()), Encoding.PLAIN)));
+                }
+
+                else
+                    fields.add(new Field(component.getName(), id, Presence.REQUIRED, -1, null, typeOf(component, component.getType())));
+            }
+
+            layouts.set(index, new Layout(PresenceBitmap.bytes(components), List.copyOf(fields)));
+            return index;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Type typeOf(RecordComponent component, Class<?> type) {
+            if (type.isRecord())
+                return new Nested(layoutOf((Class<? extends Record>) type));
+
+            if (SealedTypes.isSealed(type)) {
+                var hierarchy = SealedTypes.of(type);
+                var layouts = new ArrayList<Integer>(hierarchy.subtypes().size());
+                for (var subtype : hierarchy.subtypes())
+                    layouts.add(layoutOf(subtype));
+
+                return new Union(hierarchy.width(), Arrays.stream(hierarchy.tags()).boxed().toList(), List.copyOf(layouts));
+            }
+
+            if (type.isPrimitive())
+                return new Scalar(kindOf(type), encodingOf(component, type));
+
+            var fixed = component.getAnnotation(FixedLength.class);
+            if (type == String.class)
+                return new Text(fixed == null ? 0 : fixed.value());
+
+            if (type.isArray() && type.getComponentType().isPrimitive())
+                return new Array(kindOf(type.getComponentType()), fixed == null ? 0 : fixed.value());
+
+            if (type.isEnum()) {
+                var constants = type.getEnumConstants();
+                var names = new ArrayList<String>(constants.length);
+                for (var constant : constants)
+                    names.add(((Enum<?>) constant).name());
+
+                return new Enumeration(ClassUtils.enumWidth(type), List.copyOf(names));
+            }
+
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
+        }
+
+        private static Encoding encodingOf(RecordComponent component, Class<?> type) {
+            if (type != int.class && type != long.class)
+                return Encoding.PLAIN;
+
+            if (component.isAnnotationPresent(VarInt.class))
+                return Encoding.VAR_INT;
+            if (component.isAnnotationPresent(ZigZag.class))
+                return Encoding.ZIG_ZAG;
+            if (component.isAnnotationPresent(UnsignedByte.class))
+                return Encoding.UNSIGNED_BYTE;
+            if (component.isAnnotationPresent(UnsignedShort.class))
+                return Encoding.UNSIGNED_SHORT;
+            if (component.isAnnotationPresent(UnsignedInteger.class)) {
+                if (type == int.class)
+                    throw new IllegalStateException("You can't load an unsigned integer as an integer.");
+                return Encoding.UNSIGNED_INT;
+            }
+
+            return Encoding.PLAIN;
+        }
+    }
+
+    /**
+     * @param type a primitive type
+     * @return the descriptor character of the type
+     */
+    static char kindOf(Class<?> type) {
+        return type.descriptorString().charAt(0);
+    }
+}
@@ -91,8 +91,12 @@ public final class SafeRecordDecoder {
         return Arrays.stream(recordClazz.getRecordComponents()).map(recordComponent -> {
             var componentType = recordComponent.getType();
 
-            if (componentType.isEnum())
-                return (Function<ByteBuffer, Object>) buffer -> componentType.getEnumConstants()[buffer.get()];
+            if (componentType.isEnum()) {
+                // getEnumConstants() clones on every call, so fetch the constants once per component
+                var constants = componentType.getEnumConstants();
+                var width = ClassUtils.enumWidth(componentType);
+                return (Function<ByteBuffer, Object>) buffer -> constants[NumericHelpers.getUnsigned(buffer, width)];
+            }
             else return switch (componentType.getTypeName()) {
                 case "long" -> {
                     if(recordComponent.isAnnotationPresent(UnsignedByte.class))
@@ -0,0 +1,597 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.FieldId;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Reads records written under a different {@link RecordSchema} than the one of the record type they are read as.
+ * <p>
+ * If the writer's schema has the same fingerprint as the reader's, the record's own codec from
+ * {@link CodecManager#getCodec(Class)} is used as is. Otherwise a migration decoder is compiled once per writer
+ * fingerprint and reader class and cached. It reads the components in the writer's layout and matches them to the
+ * reader's components by {@link FieldId} if both carry one, and by name otherwise:
+ * <ul>
+ *     <li>Components only the writer has are read and dropped.</li>
+ *     <li>Components only the reader has are filled with their default: {@code 0}, {@code false}, an empty string or
+ *     array, the first enum constant, an empty optional or {@code null}, and for nested records an instance holding
+ *     the defaults of its own components.</li>
+ *     <li>Matched components may change their encoding annotations, become optional or stop being so, and widen
+ *     primitives, e.g. from {@code int} to {@code long}. Enum constants are matched by name, nested records and the
+ *     subtypes of sealed interfaces by migrating them in turn, the latter matched by tag.</li>
+ * </ul>
+ * Any other change of a matched component's type is rejected when the migration is compiled.
+ *
+ * @author Gunter Ansinn
+ */
+public final class SchemaMigrations {
+
+    private static final ClassValue<ConcurrentMap<Long, Plan>> MIGRATIONS = new ClassValue<>() {
+        @Override
+        protected ConcurrentMap<Long, Plan> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private SchemaMigrations() {}
+
+    /**
+     * Reads a record written under the given schema.
+     *
+     * @param buffer the source buffer
+     * @param writer the schema the record was written with
+     * @param reader the record type to read it as
+     * @return the decoded record
+     * @param <T> the record type
+     * @throws IllegalStateException if the writer's schema can't be migrated to the reader, or the data holds an enum
+     * constant or subtype tag the reader doesn't know
+     */
+    public static <T extends Record> T decode(ByteBuffer buffer, RecordSchema writer, Class<T> reader) {
+        if (writer.fingerprint() == RecordSchema.of(reader).fingerprint())
+            return CodecManager.getCodec(reader).decode(buffer);
+
+        return reader.cast(migrationOf(writer, reader).read(buffer));
+    }
+
+    /**
+     * Returns a decoder reading records written under the given schema.
+     *
+     * @param writer the schema the records were written with
+     * @param reader the record type to read them as
+     * @return the record's own decoder if the schemas match, its migration decoder otherwise
+     * @param <T> the record type
+     * @throws IllegalStateException if the writer's schema can't be migrated to the reader
+     */
+    public static <T extends Record> Function<ByteBuffer, T> decoderFor(RecordSchema writer, Class<T> reader) {
+        if (writer.fingerprint() == RecordSchema.of(reader).fingerprint())
+            return CodecManager.getCodec(reader)::decode;
+
+        var plan = migrationOf(writer, reader);
+        return buffer -> reader.cast(plan.read(buffer));
+    }
+
+    private static Plan migrationOf(RecordSchema writer, Class<? extends Record> reader) {
+        return MIGRATIONS.get(reader).computeIfAbsent(writer.fingerprint(), _ -> new Compiler(writer).plan(0, reader));
+    }
+
+    @FunctionalInterface
+    private interface Reader {
+        Object read(ByteBuffer buffer);
+    }
+
+    /**
+     * A component of the writer's layout, with everything needed to read it and hand it to the reader.
+     *
+     * @param field   the writer's component
+     * @param reader  reads the value from the buffer, already converted to the reader's value type
+     * @param convert converts a value unpacked from a bit field or a sparse default to the reader's value type
+     * @param wrap    wraps a value into the reader's component type
+     * @param empty   the reader's value if an optional component is absent
+     * @param target  the index of the reader's component, {@code -1} if the component is dropped
+     */
+    private record Step(RecordSchema.Field field, Reader reader, UnaryOperator<Object> convert, UnaryOperator<Object> wrap,
+                        Object empty, int target) {}
+
+    /**
+     * The migration of one writer layout to one reader record. Plans are filled in after being created, so that
+     * recursive records can refer to their own plan.
+     */
+    private static final class Plan {
+
+        private final int bitmapBytes;
+        private final List<Step> steps = new ArrayList<>();
+        private Object[] defaults;
+        private MethodHandle constructor;
+
+        Plan(int bitmapBytes) {
+            this.bitmapBytes = bitmapBytes;
+        }
+
+        Object read(ByteBuffer buffer) {
+            var bitmap = bitmapBytes > 0 ? NumericHelpers.getBits(buffer, bitmapBytes) : 0L;
+            var word = 0L;
+            var values = constructor == null ? null : defaults.clone();
+
+            for (var step : steps) {
+                var field = step.field();
+                var set = field.shift() >= 0 && (bitmap & 1L << field.shift()) != 0;
+                Object value;
+
+                switch (field.presence()) {
+                    case ELIDABLE -> value = field.type() instanceof RecordSchema.Scalar(var kind, var _) && kind == 'Z'
+                            ? step.convert().apply(set)
+                            : set ? step.reader().read(buffer) : step.convert().apply(defaultOf(field.type()));
+                    case OPTIONAL -> {
+                        if (!set) {
+                            if (step.target() >= 0)
+                                values[step.target()] = step.empty();
+                            continue;
+                        }
+                        value = step.reader().read(buffer);
+                    }
+                    default -> {
+                        var packing = field.packing();
+                        if (packing == null)
+                            value = step.reader().read(buffer);
+                        else {
+                            if (packing.groupBytes() > 0)
+                                word = NumericHelpers.getBits(buffer, packing.groupBytes());
+                            value = step.convert().apply(unpack(word, packing, ((RecordSchema.Scalar) field.type()).kind()));
+                        }
+                    }
+                }
+
+                if (step.target() >= 0)
+                    values[step.target()] = step.wrap().apply(value);
+            }
+
+            if (constructor == null)
+                return null;
+
+            try {
+                return (Object) constructor.invokeExact(values);
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Unable to construct the migrated record.", throwable);
+            }
+        }
+    }
+
+    /**
+     * Compiles the plans migrating the layouts of one writer schema, sharing them between all places a layout is
+     * read as the same reader record.
+     */
+    private static final class Compiler {
+
+        private record Key(int layout, Class<?> reader) {}
+
+        private final RecordSchema writer;
+        private final Map<Key, Plan> plans = new HashMap<>();
+
+        Compiler(RecordSchema writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * @param reader the record read, {@code null} if the layout is only skipped
+         */
+        Plan plan(int layoutIndex, Class<? extends Record> reader) {
+            var key = new Key(layoutIndex, reader);
+            var known = plans.get(key);
+            if (known != null)
+                return known;
+
+            var layout = writer.layouts().get(layoutIndex);
+            var plan = new Plan(layout.bitmapBytes());
+            plans.put(key, plan);
+
+            var components = reader == null ? new RecordComponent[0] : reader.getRecordComponents();
+            var matched = new boolean[components.length];
+
+            for (var field : layout.fields()) {
+                var target = match(field, components);
+                if (target >= 0) {
+                    if (matched[target])
+                        throw new IllegalStateException("Component " + components[target].getName() + " of "
+                                + reader.getName() + " is matched twice.");
+                    matched[target] = true;
+                }
+
+                var component = target >= 0 ? components[target] : null;
+                var valueType = component == null ? null
+                        : PresenceBitmap.isOptional(component) ? PresenceBitmap.valueType(component) : component.getType();
+                var where = component == null ? field.name() : reader.getName() + "." + component.getName();
+
+                // Bit fields and sparse booleans are taken from a word rather than read on their own
+                var packed = field.packing() != null || field.presence() == RecordSchema.Presence.ELIDABLE
+                        && field.type() instanceof RecordSchema.Scalar scalar && scalar.kind() == 'Z';
+
+                plan.steps.add(new Step(
+                        field,
+                        packed ? null : readerOf(field.type(), valueType, where),
+                        converterOf(field.type(), valueType, where),
+                        component == null ? UnaryOperator.identity() : wrapperOf(component),
+                        component == null ? null : defaultOf(component),
+                        target
+                ));
+            }
+
+            if (reader != null) {
+                plan.defaults = new Object[components.length];
+                for (var i = 0; i < components.length; i++)
+                    plan.defaults[i] = defaultOf(components[i]);
+                plan.constructor = constructorOf(reader, components);
+            }
+
+            return plan;
+        }
+
+        private static int match(RecordSchema.Field field, RecordComponent[] components) {
+            if (field.id() >= 0)
+                for (var i = 0; i < components.length; i++) {
+                    var id = components[i].getAnnotation(FieldId.class);
+                    if (id != null && id.value() == field.id())
+                        return i;
+                }
+
+            for (var i = 0; i < components.length; i++)
+                if (components[i].getName().equals(field.name()))
+                    return i;
+
+            return -1;
+        }
+
+        /**
+         * Builds the reader of a value, converting it to {@code target}, or dropping it if {@code target} is null.
+         */
+        @SuppressWarnings("unchecked")
+        private Reader readerOf(RecordSchema.Type type, Class<?> target, String where) {
+            return switch (type) {
+                case RecordSchema.Nested(var layout) -> {
+                    if (target != null && !target.isRecord())
+                        throw incompatible(where, "a record", target);
+
+                    var plan = plan(layout, (Class<? extends Record>) target);
+                    yield plan::read;
+                }
+
+                case RecordSchema.Union(var width, var tags, var layouts) -> {
+                    if (target != null && !SealedTypes.isSealed(target))
+                        throw incompatible(where, "a sealed interface", target);
+
+                    var hierarchy = target == null ? null : SealedTypes.of(target);
+                    var plans = new HashMap<Integer, Plan>();
+                    for (var i = 0; i < tags.size(); i++)
+                        plans.put(tags.get(i), plan(layouts.get(i), subtypeOf(hierarchy, tags.get(i))));
+
+                    yield buffer -> {
+                        var tag = NumericHelpers.getUnsigned(buffer, width);
+                        var plan = plans.get(tag);
+                        if (plan == null)
+                            throw new IllegalStateException("Subtype tag " + tag + " of " + where + " isn't part of the writer's schema.");
+
+                        var value = plan.read(buffer);
+                        if (value == null && target != null)
+                            throw new IllegalStateException("Subtype tag " + tag + " of " + where + " is unknown to "
+                                    + target.getName() + ".");
+                        return value;
+                    };
+                }
+
+                default -> {
+                    var convert = converterOf(type, target, where);
+                    var raw = rawReaderOf(type);
+                    yield buffer -> convert.apply(raw.read(buffer));
+                }
+            };
+        }
+
+        private static Class<? extends Record> subtypeOf(SealedTypes.Hierarchy hierarchy, int tag) {
+            if (hierarchy != null)
+                for (var i = 0; i < hierarchy.tags().length; i++)
+                    if (hierarchy.tags()[i] == tag)
+                        return hierarchy.subtypes().get(i);
+
+            return null;
+        }
+    }
+
+    /**
+     * Builds the reader of a value as the writer wrote it: boxed primitives, strings, arrays and enum ordinals.
+     */
+    private static Reader rawReaderOf(RecordSchema.Type type) {
+        return switch (type) {
+            case RecordSchema.Scalar(var kind, var encoding) -> switch (kind) {
+                case 'J' -> switch (encoding) {
+                    case VAR_INT -> NumericHelpers::getVarLong;
+                    case ZIG_ZAG -> NumericHelpers::getZigZagLong;
+                    case UNSIGNED_BYTE -> NumericHelpers::getUnsignedByteAsLong;
+                    case UNSIGNED_SHORT -> NumericHelpers::getUnsignedShortAsLong;
+                    case UNSIGNED_INT -> NumericHelpers::getUnsignedInt;
+                    case PLAIN -> ByteBuffer::getLong;
+                };
+                case 'I' -> switch (encoding) {
+                    case VAR_INT -> NumericHelpers::getVarInt;
+                    case ZIG_ZAG -> NumericHelpers::getZigZagInt;
+                    case UNSIGNED_BYTE -> NumericHelpers::getUnsignedByteAsInt;
+                    case UNSIGNED_SHORT -> NumericHelpers::getUnsignedShortAsInt;
+                    case PLAIN -> ByteBuffer::getInt;
+                    case UNSIGNED_INT -> throw new IllegalStateException("You can't load an unsigned integer as an integer.");
+                };
+                case 'S' -> ByteBuffer::getShort;
+                case 'B' -> ByteBuffer::get;
+                case 'D' -> ByteBuffer::getDouble;
+                case 'F' -> ByteBuffer::getFloat;
+                case 'C' -> ByteBuffer::getChar;
+                default -> throw new IllegalStateException("Scalar kind " + kind + " can't be read on its own.");
+            };
+
+            case RecordSchema.Text(var length) -> length > 0
+                    ? buffer -> StringHelpers.getFixedString(buffer, length)
+                    : StringHelpers::getString;
+
+            case RecordSchema.Array(var element, var length) -> switch (element) {
+                case 'J' -> length > 0 ? buffer -> ArrayHelpers.getLongs(buffer, length) : ArrayHelpers::getLongs;
+                case 'I' -> length > 0 ? buffer -> ArrayHelpers.getInts(buffer, length) : ArrayHelpers::getInts;
+                case 'S' -> length > 0 ? buffer -> ArrayHelpers.getShorts(buffer, length) : ArrayHelpers::getShorts;
+                case 'B' -> length > 0 ? buffer -> ArrayHelpers.getBytes(buffer, length) : ArrayHelpers::getBytes;
+                case 'D' -> length > 0 ? buffer -> ArrayHelpers.getDoubles(buffer, length) : ArrayHelpers::getDoubles;
+                case 'F' -> length > 0 ? buffer -> ArrayHelpers.getFloats(buffer, length) : ArrayHelpers::getFloats;
+                case 'C' -> length > 0 ? buffer -> ArrayHelpers.getChars(buffer, length) : ArrayHelpers::getChars;
+                case 'Z' -> length > 0 ? buffer -> ArrayHelpers.getBooleans(buffer, length) : ArrayHelpers::getBooleans;
+                default -> throw new IllegalStateException("Unknown array element kind " + element + ".");
+            };
+
+            case RecordSchema.Enumeration(var width, var _) -> buffer -> NumericHelpers.getUnsigned(buffer, width);
+
+            default -> throw new IllegalStateException("Type " + type + " is read through a plan.");
+        };
+    }
+
+    /**
+     * Builds the conversion of a value as the writer wrote it to the reader's value type.
+     */
+    private static UnaryOperator<Object> converterOf(RecordSchema.Type type, Class<?> target, String where) {
+        if (target == null)
+            return UnaryOperator.identity();
+
+        return switch (type) {
+            case RecordSchema.Scalar(var kind, var _) -> {
+                if (!target.isPrimitive())
+                    throw incompatible(where, "a primitive", target);
+
+                var to = RecordSchema.kindOf(target);
+                if (to == kind)
+                    yield UnaryOperator.identity();
+                if (!widens(kind, to))
+                    throw incompatible(where, "a " + kind + " primitive", target);
+
+                yield value -> widen(value, to);
+            }
+
+            case RecordSchema.Text _ -> {
+                if (target != String.class)
+                    throw incompatible(where, "a string", target);
+                yield UnaryOperator.identity();
+            }
+
+            case RecordSchema.Array(var element, var _) -> {
+                if (!target.isArray() || !target.getComponentType().isPrimitive() || RecordSchema.kindOf(target.getComponentType()) != element)
+                    throw incompatible(where, "an array of " + element, target);
+                yield UnaryOperator.identity();
+            }
+
+            case RecordSchema.Enumeration(var _, var constants) -> {
+                if (!target.isEnum())
+                    throw incompatible(where, "an enum", target);
+
+                var mapped = new Object[constants.size()];
+                for (var constant : target.getEnumConstants())
+                    for (var i = 0; i < mapped.length; i++)
+                        if (constants.get(i).equals(((Enum<?>) constant).name()))
+                            mapped[i] = constant;
+
+                yield ordinal -> {
+                    var index = (int) ordinal;
+                    var constant = index < mapped.length ? mapped[index] : null;
+                    if (constant == null)
+                        throw new IllegalStateException("Enum constant " + (index < mapped.length ? constants.get(index) : index)
+                                + " of " + where + " is unknown to " + target.getName() + ".");
+                    return constant;
+                };
+            }
+
+            default -> UnaryOperator.identity();
+        };
+    }
+
+    private static boolean widens(char from, char to) {
+        var targets = switch (from) {
+            case 'B' -> "SIJFD";
+            case 'S', 'C' -> "IJFD";
+            case 'I' -> "JFD";
+            case 'J' -> "FD";
+            case 'F' -> "D";
+            default -> "";
+        };
+
+        return targets.indexOf(to) >= 0;
+    }
+
+    private static Object widen(Object value, char to) {
+        var number = value instanceof Character character ? (int) character : (Number) value;
+
+        return switch (to) {
+            case 'S' -> number.shortValue();
+            case 'I' -> number.intValue();
+            case 'J' -> number.longValue();
+            case 'F' -> number.floatValue();
+            default -> number.doubleValue();
+        };
+    }
+
+    /**
+     * Narrows the bits of a packed field to its primitive type, zero extending them like the generated decoders.
+     */
+    private static Object unpack(long word, RecordSchema.Packing packing, char kind) {
+        var bits = (word >>> packing.shift()) & BitFieldLayout.maskOf(packing.width());
+
+        return switch (kind) {
+            case 'J' -> bits;
+            case 'I' -> (int) bits;
+            case 'S' -> (short) bits;
+            case 'C' -> (char) bits;
+            case 'B' -> (byte) bits;
+            case 'Z' -> bits != 0;
+            default -> throw new IllegalStateException("Scalar kind " + kind + " can't be a bit field.");
+        };
+    }
+
+    /**
+     * @return the value a sparse component of the given type has when its bit is clear, as the writer would write it
+     */
+    private static Object defaultOf(RecordSchema.Type type) {
+        return switch (type) {
+            case RecordSchema.Scalar(var kind, var _) -> switch (kind) {
+                case 'J' -> 0L;
+                case 'I' -> 0;
+                case 'S' -> (short) 0;
+                case 'B' -> (byte) 0;
+                case 'D' -> 0.0;
+                case 'F' -> 0.0f;
+                case 'C' -> (char) 0;
+                default -> false;
+            };
+            case RecordSchema.Text _ -> "";
+            case RecordSchema.Array(var element, var _) -> java.lang.reflect.Array.newInstance(primitiveOf(element), 0);
+            case RecordSchema.Enumeration _ -> 0;
+            default -> throw new IllegalStateException("Type " + type + " has no sparse default.");
+        };
+    }
+
+    /**
+     * @return the value a reader's component is given if the writer didn't write it
+     */
+    private static Object defaultOf(RecordComponent component) {
+        var type = component.getType();
+
+        if (type == Optional.class)
+            return Optional.empty();
+        if (type == OptionalInt.class)
+            return OptionalInt.empty();
+        if (type == OptionalLong.class)
+            return OptionalLong.empty();
+        if (type == OptionalDouble.class)
+            return OptionalDouble.empty();
+        if (PresenceBitmap.isOptional(component))
+            return null;
+
+        return defaultOf(type, new ArrayList<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object defaultOf(Class<?> type, List<Class<?>> enclosing) {
+        if (type.isPrimitive())
+            return java.lang.reflect.Array.get(java.lang.reflect.Array.newInstance(type, 1), 0);
+        if (type == String.class)
+            return "";
+        if (type.isArray())
+            return java.lang.reflect.Array.newInstance(type.getComponentType(), 0);
+        if (type.isEnum())
+            return type.getEnumConstants()[0];
+        if (SealedTypes.isSealed(type))
+            return defaultOf(SealedTypes.of(type).subtypes().getFirst(), enclosing);
+
+        if (type.isRecord()) {
+            if (enclosing.contains(type))
+                throw new IllegalStateException("Record " + type.getName() + " has no default, as it nests itself.");
+
+            enclosing.add(type);
+            var components = type.getRecordComponents();
+            var values = new Object[components.length];
+            for (var i = 0; i < components.length; i++)
+                values[i] = PresenceBitmap.isOptional(components[i]) ? defaultOf(components[i])
+                        : defaultOf(components[i].getType(), enclosing);
+            enclosing.removeLast();
+
+            try {
+                return (Object) constructorOf((Class<? extends Record>) type, components).invokeExact(values);
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Unable to construct the default of " + type.getName() + ".", throwable);
+            }
+        }
+
+        return null;
+    }
+
+    private static Class<?> primitiveOf(char kind) {
+        return switch (kind) {
+            case 'J' -> long.class;
+            case 'I' -> int.class;
+            case 'S' -> short.class;
+            case 'B' -> byte.class;
+            case 'D' -> double.class;
+            case 'F' -> float.class;
+            case 'C' -> char.class;
+            case 'Z' -> boolean.class;
+            default -> throw new IllegalStateException("Unknown primitive kind " + kind + ".");
+        };
+    }
+
+    /**
+     * @return wraps a value of the component's value type into the component's type
+     */
+    private static UnaryOperator<Object> wrapperOf(RecordComponent component) {
+        var type = component.getType();
+
+        if (type == Optional.class)
+            return Optional::of;
+        if (type == OptionalInt.class)
+            return value -> OptionalInt.of((int) value);
+        if (type == OptionalLong.class)
+            return value -> OptionalLong.of((long) value);
+        if (type == OptionalDouble.class)
+            return value -> OptionalDouble.of((double) value);
+
+        return UnaryOperator.identity();
+    }
+
+    /**
+     * @return the canonical constructor of a record, taking its components as an {@code Object[]}
+     */
+    private static MethodHandle constructorOf(Class<? extends Record> record, RecordComponent[] components) {
+        var types = new Class<?>[components.length];
+        for (var i = 0; i < components.length; i++)
+            types[i] = components[i].getType();
+
+        try {
+            var lookup = MethodHandles.privateLookupIn(record, MethodHandles.lookup());
+            return lookup.findConstructor(record, MethodType.methodType(void.class, types))
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException | NoSuchMethodException exception) {
+            throw new IllegalStateException("Unable to access the canonical constructor of " + record.getName() + ".", exception);
+        }
+    }
+
+    private static IllegalStateException incompatible(String where, String written, Class<?> target) {
+        return new IllegalStateException("Component " + where + " was written as " + written
+                + " and can't be read as " + Objects.requireNonNull(target).getTypeName() + ".");
+    }
+}
@@ -0,0 +1,114 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes how components declared as a sealed interface of records are encoded.
+ * <p>
+ * The hierarchy below a sealed interface is flattened into its records, visiting the permitted subclasses in the
+ * order of {@link Class#getPermittedSubclasses()} and descending into permitted sealed interfaces on the way. Each
+ * record is given a tag, either the value of its {@link Tag} annotation or its position in the flattened hierarchy,
+ * and a value is written as its tag followed by the record exactly as a nested record of that type would be. Tags are
+ * stored unsigned in one byte if all of them are below 256, two bytes if they are below 65536 and four bytes otherwise.
+ *
+ * @author Gunter Ansinn
+ */
+public final class SealedTypes {
+
+    private static final Map<Class<?>, Hierarchy> HIERARCHIES = new ConcurrentHashMap<>();
+
+    private SealedTypes() {}
+
+    /**
+     * The records below a sealed interface together with their tags.
+     *
+     * @param subtypes the records of the hierarchy in tag assignment order
+     * @param tags     the tag of each record, indexed like {@code subtypes}
+     * @param width    the number of bytes a tag is written in
+     */
+    public record Hierarchy(List<Class<? extends Record>> subtypes, int[] tags, int width) {
+
+        /**
+         * @return the smallest tag of the hierarchy
+         */
+        public int low() {
+            return Arrays.stream(tags).min().orElseThrow();
+        }
+
+        /**
+         * @return the largest tag of the hierarchy
+         */
+        public int high() {
+            return Arrays.stream(tags).max().orElseThrow();
+        }
+    }
+
+    /**
+     * @param type the type to inspect
+     * @return {@code true} if values of the type are encoded as a tagged subtype
+     */
+    public static boolean isSealed(Class<?> type) {
+        return type.isInterface() && type.isSealed();
+    }
+
+    /**
+     * Resolves the records and tags below a sealed interface.
+     *
+     * @param sealed the sealed interface
+     * @return the flattened hierarchy of the interface
+     * @throws IllegalStateException if a permitted subclass is neither a record nor a sealed interface, if the
+     * hierarchy has no records, or if tags are negative or used twice
+     */
+    public static Hierarchy of(Class<?> sealed) {
+        return HIERARCHIES.computeIfAbsent(sealed, SealedTypes::resolve);
+    }
+
+    private static Hierarchy resolve(Class<?> sealed) {
+        if (!isSealed(sealed))
+            throw new IllegalStateException(sealed.getName() + " is not a sealed interface.");
+
+        var subtypes = new ArrayList<Class<? extends Record>>();
+        collect(sealed, subtypes);
+        if (subtypes.isEmpty())
+            throw new IllegalStateException("Sealed interface " + sealed.getName() + " permits no records.");
+
+        var tags = new int[subtypes.size()];
+        var used = new HashSet<Integer>();
+        var high = 0;
+        for (var i = 0; i < tags.length; i++) {
+            var tag = subtypes.get(i).getAnnotation(Tag.class);
+            tags[i] = tag != null ? tag.value() : i;
+
+            if (tags[i] < 0)
+                throw new IllegalStateException("Tag " + tags[i] + " of " + subtypes.get(i).getName() + " must not be negative.");
+            if (!used.add(tags[i]))
+                throw new IllegalStateException("Tag " + tags[i] + " is used twice below " + sealed.getName() + ".");
+
+            high = Math.max(high, tags[i]);
+        }
+
+        var width = high < 1 << Byte.SIZE ? Byte.BYTES : high < 1 << Short.SIZE ? Short.BYTES : Integer.BYTES;
+        return new Hierarchy(List.copyOf(subtypes), tags, width);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collect(Class<?> sealed, List<Class<? extends Record>> subtypes) {
+        for (var permitted : sealed.getPermittedSubclasses()) {
+            if (permitted.isRecord()) {
+                if (!subtypes.contains(permitted))
+                    subtypes.add((Class<? extends Record>) permitted);
+            } else if (isSealed(permitted))
+                collect(permitted, subtypes);
+            else
+                throw new IllegalStateException("Permitted subclass " + permitted.getName() + " of " + sealed.getName()
+                        + " must be a record or a sealed interface.");
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package net.ansinn.ByteBarista;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads and writes {@link String} components as a {@link NumericHelpers#putVarInt(ByteBuffer, int) varint} byte
+ * length followed by the string's UTF-8 bytes.
+ * <p>
+ * Encoding never goes through {@link String#getBytes(java.nio.charset.Charset)}. The UTF-8 length is counted straight
+ * from the chars, and all-ASCII strings, the common case, are copied into the destination with a plain low byte copy
+ * that skips charset encoders entirely. Other strings are encoded by hand directly into the destination. Heap buffers
+ * are written through their backing array, so no intermediate array is allocated.
+ * <p>
+ * Decoding hands heap buffers' backing arrays straight to the {@link String} constructor, which already checks for
+ * ASCII with an intrinsic and copies such input as is. Direct buffers and streams are staged through a reusable
+ * per-thread scratch array instead of a fresh {@code byte[]} per string.
+ * <p>
+ * Strings annotated with {@link net.ansinn.ByteBarista.annotations.FixedLength} skip the length prefix and take exactly
+ * their fixed number of bytes, padded with zeros.
+ *
+ * @author Gunter Ansinn
+ */
+public final class StringHelpers {
+
+    // Scratch arrays larger than this are allocated per call rather than kept around per thread
+    private static final int SCRATCH_LIMIT = 1 << 16;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+
+    // Set above the UTF-8 length measure returns when a string holds any char that isn't ASCII
+    private static final long NON_ASCII = 1L << 32;
+
+    private StringHelpers() {}
+
+    /**
+     * Reads a length prefixed UTF-8 string.
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded string
+     * @throws IllegalStateException if the length prefix exceeds the remaining bytes
+     */
+    public static String getString(ByteBuffer buffer) {
+        var length = NumericHelpers.getVarInt(buffer);
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalStateException("String length " + length + " exceeds the " + buffer.remaining() + " remaining bytes.");
+
+        var position = buffer.position();
+        String value;
+
+        if (buffer.hasArray())
+            value = new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        else {
+            var scratch = scratch(length);
+            buffer.get(position, scratch, 0, length);
+            value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        buffer.position(position + length);
+        return value;
+    }
+
+    /**
+     * Advances past a length prefixed UTF-8 string without decoding it.
+     *
+     * @param buffer the buffer to read from
+     * @throws IllegalStateException if the length prefix exceeds the remaining bytes
+     */
+    public static void skipString(ByteBuffer buffer) {
+        var length = NumericHelpers.getVarInt(buffer);
+        if (length < 0 || length > buffer.remaining())
+            throw new IllegalStateException("String length " + length + " exceeds the " + buffer.remaining() + " remaining bytes.");
+
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Writes a string as its varint UTF-8 length followed by its UTF-8 bytes.
+     *
+     * @param buffer the buffer to write into
+     * @param value  the string to write
+     * @throws BufferOverflowException if the encoded string does not fit the remaining space, in which case nothing
+     * is written
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        var measured = measure(value);
+        var encoded = (int) measured;
+
+        // Checked up front, so that an overflow doesn't leave a dangling length prefix behind
+        if (NumericHelpers.varIntSize(encoded) + (long) encoded > buffer.remaining())
+            throw new BufferOverflowException();
+
+        NumericHelpers.putVarInt(buffer, encoded);
+
+        var position = buffer.position();
+
+        if (buffer.hasArray())
+            encode(value, measured, buffer.array(), buffer.arrayOffset() + position);
+        else {
+            var scratch = scratch(encoded);
+            encode(value, measured, scratch, 0);
+            buffer.put(position, scratch, 0, encoded);
+        }
+
+        buffer.position(position + encoded);
+    }
+
+    public static String readString(ByteArrayInputStream stream) {
+        var length = NumericHelpers.readVarInt(stream);
+        if (length < 0 || length > stream.available())
+            throw new IllegalStateException("String length " + length + " exceeds the " + stream.available() + " remaining bytes.");
+
+        var scratch = scratch(length);
+        stream.read(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public static void writeString(ByteArrayOutputStream stream, String value) {
+        var measured = measure(value);
+        var encoded = (int) measured;
+        NumericHelpers.writeVarInt(stream, encoded);
+
+        var scratch = scratch(encoded);
+        encode(value, measured, scratch, 0);
+        stream.write(scratch, 0, encoded);
+    }
+
+    /**
+     * Reads a string stored in exactly {@code length} bytes of UTF-8, dropping its trailing zero padding.
+     *
+     * @param buffer the buffer to read from
+     * @param length the fixed number of bytes holding the string
+     * @return the decoded string
+     * @see net.ansinn.ByteBarista.annotations.FixedLength
+     */
+    public static String getFixedString(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining())
+            throw new IllegalStateException("String length " + length + " exceeds the " + buffer.remaining() + " remaining bytes.");
+
+        var position = buffer.position();
+        String value;
+
+        if (buffer.hasArray()) {
+            var array = buffer.array();
+            var offset = buffer.arrayOffset() + position;
+            value = new String(array, offset, unpaddedLength(array, offset, length), StandardCharsets.UTF_8);
+        } else {
+            var scratch = scratch(length);
+            buffer.get(position, scratch, 0, length);
+            value = new String(scratch, 0, unpaddedLength(scratch, 0, length), StandardCharsets.UTF_8);
+        }
+
+        buffer.position(position + length);
+        return value;
+    }
+
+    /**
+     * Writes a string as exactly {@code length} bytes of UTF-8, padded with zeros.
+     *
+     * @param buffer the buffer to write into
+     * @param value  the string to write
+     * @param length the fixed number of bytes holding the string
+     * @throws IllegalStateException if the encoded string is longer than {@code length}
+     */
+    public static void putFixedString(ByteBuffer buffer, String value, int length) {
+        var measured = checkFixedLength(value, length);
+        var encoded = (int) measured;
+        if (length > buffer.remaining())
+            throw new BufferOverflowException();
+
+        var position = buffer.position();
+
+        if (buffer.hasArray()) {
+            var array = buffer.array();
+            var offset = buffer.arrayOffset() + position;
+            encode(value, measured, array, offset);
+            Arrays.fill(array, offset + encoded, offset + length, (byte) 0);
+        } else {
+            var scratch = scratch(length);
+            encode(value, measured, scratch, 0);
+            Arrays.fill(scratch, encoded, length, (byte) 0);
+            buffer.put(position, scratch, 0, length);
+        }
+
+        buffer.position(position + length);
+    }
+
+    public static String readFixedString(ByteArrayInputStream stream, int length) {
+        if (length > stream.available())
+            throw new IllegalStateException("String length " + length + " exceeds the " + stream.available() + " remaining bytes.");
+
+        var scratch = scratch(length);
+        stream.read(scratch, 0, length);
+        return new String(scratch, 0, unpaddedLength(scratch, 0, length), StandardCharsets.UTF_8);
+    }
+
+    public static void writeFixedString(ByteArrayOutputStream stream, String value, int length) {
+        var measured = checkFixedLength(value, length);
+        var encoded = (int) measured;
+
+        var scratch = scratch(length);
+        encode(value, measured, scratch, 0);
+        Arrays.fill(scratch, encoded, length, (byte) 0);
+        stream.write(scratch, 0, length);
+    }
+
+    /**
+     * Counts the bytes {@link #putString(ByteBuffer, String)} writes for a string, its length prefix included.
+     *
+     * @param value the string to measure
+     * @return the encoded size of {@code value}
+     */
+    public static int stringSize(String value) {
+        var encoded = utf8Length(value);
+        return NumericHelpers.varIntSize(encoded) + encoded;
+    }
+
+    /**
+     * Counts the bytes a string takes when UTF-8 encoded. Unpaired surrogates count as the single {@code '?'} they
+     * are replaced with, matching {@link String#getBytes(java.nio.charset.Charset)}.
+     *
+     * @param value the string to measure
+     * @return the UTF-8 length of {@code value}
+     */
+    public static int utf8Length(String value) {
+        return (int) measure(value);
+    }
+
+    /**
+     * Measures the UTF-8 length of a string as {@link #utf8Length(String)} does, flagging with {@link #NON_ASCII}
+     * whether any char isn't ASCII. An unpaired surrogate takes a single byte just like an ASCII char, so the length
+     * alone can't tell whether the plain byte copy is safe.
+     */
+    private static long measure(String value) {
+        var length = value.length();
+        var encoded = length;
+        var flags = 0L;
+
+        for (var i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c < 0x80)
+                continue;
+
+            flags = NON_ASCII;
+            if (c < 0x800)
+                encoded += 1;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // Both chars of the pair together take four bytes
+                encoded += 2;
+                i++;
+            } else if (!Character.isSurrogate(c))
+                encoded += 2;
+        }
+
+        return flags | encoded;
+    }
+
+    /**
+     * Encodes a string measured by {@link #measure(String)} into {@code destination}, taking the plain byte copy when
+     * every char is ASCII.
+     */
+    @SuppressWarnings("deprecation")
+    private static void encode(String value, long measured, byte[] destination, int offset) {
+        var length = value.length();
+
+        // The string is pure ASCII, so its low bytes are its UTF-8 encoding
+        if ((measured & NON_ASCII) == 0) {
+            value.getBytes(0, length, destination, offset);
+            return;
+        }
+
+        for (var i = 0; i < length; i++) {
+            var c = value.charAt(i);
+
+            if (c < 0x80)
+                destination[offset++] = (byte) c;
+            else if (c < 0x800) {
+                destination[offset++] = (byte) (0xC0 | c >> 6);
+                destination[offset++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                destination[offset++] = (byte) (0xF0 | codePoint >> 18);
+                destination[offset++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                destination[offset++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                destination[offset++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c))
+                destination[offset++] = '?';
+            else {
+                destination[offset++] = (byte) (0xE0 | c >> 12);
+                destination[offset++] = (byte) (0x80 | c >> 6 & 0x3F);
+                destination[offset++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private static long checkFixedLength(String value, int length) {
+        var measured = measure(value);
+        if ((int) measured > length)
+            throw new IllegalStateException("String of " + (int) measured + " UTF-8 bytes exceeds its fixed length of " + length + ".");
+        return measured;
+    }
+
+    private static int unpaddedLength(byte[] bytes, int offset, int length) {
+        while (length > 0 && bytes[offset + length - 1] == 0)
+            length--;
+        return length;
+    }
+
+    private static byte[] scratch(int length) {
+        var scratch = SCRATCH.get();
+        if (scratch.length >= length)
+            return scratch;
+
+        if (length > SCRATCH_LIMIT)
+            return new byte[length];
+
+        scratch = new byte[Math.min(SCRATCH_LIMIT, Math.max(length, scratch.length * 2))];
+        SCRATCH.set(scratch);
+        return scratch;
+    }
+}
@@ -0,0 +1,25 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Encodes an integral component in exactly {@code value} bits. Adjacent bit fields and {@code boolean} components are
+ * packed together into shared bytes, with the first component taking the most significant bits.
+ * <p>
+ * Only the lowest {@code value} bits are written and they are read back zero extended, so a component annotated with
+ * {@code @Bits(n)} holds values from {@code 0} to {@code 2^n - 1}, unless {@code n} is the full width of its type.
+ *
+ * @see net.ansinn.ByteBarista.BitFieldLayout
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface Bits {
+
+    /**
+     * @return the number of bits the component occupies, between 1 and the bit size of the component type
+     */
+    int value();
+}
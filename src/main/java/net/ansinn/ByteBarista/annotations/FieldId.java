@@ -0,0 +1,24 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Gives a component a stable id it is matched by when data written by another version of its record is read. Without
+ * an id components are matched by name, so an id lets a component be renamed while staying readable from and to
+ * older data. Ids must be unique within their record and are part of the record's schema fingerprint.
+ *
+ * @see net.ansinn.ByteBarista.RecordSchema
+ * @see net.ansinn.ByteBarista.SchemaMigrations
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface FieldId {
+
+    /**
+     * @return the id of the component, which must not be negative
+     */
+    int value();
+}
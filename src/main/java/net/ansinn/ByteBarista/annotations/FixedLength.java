@@ -0,0 +1,27 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Encodes a {@code String}, {@code byte[]} or other primitive array component in exactly {@code value} bytes or
+ * elements, without a length prefix, so that the record stays fixed-size.
+ * <p>
+ * Strings take {@code value} bytes of UTF-8 and arrays {@code value} elements, with {@code boolean} arrays packed
+ * eight elements to a byte. Shorter values are padded with zeros;
+ * strings drop their trailing zero padding again when decoded, while arrays always decode to {@code value} elements.
+ * Values that don't fit are rejected with an {@link IllegalStateException} rather than silently truncated.
+ *
+ * @see net.ansinn.ByteBarista.ClassUtils#isFixedSize(Class)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface FixedLength {
+
+    /**
+     * @return the number of bytes of a string, or elements of an array
+     */
+    int value();
+}
@@ -0,0 +1,16 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Allows a reference component to be {@code null}. Whether the component is present is recorded as one bit of the
+ * presence bitmap leading the record, so that an absent component takes no bytes beyond its bit. Nullable record
+ * components may refer back to their own record type, which allows recursive structures such as lists and trees.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface Nullable {
+}
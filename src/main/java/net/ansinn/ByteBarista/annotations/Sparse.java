@@ -0,0 +1,22 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Encodes a record sparsely, writing only the components that differ from their default value. Every primitive,
+ * enum, string and primitive array component is given a bit of the presence bitmap leading the record, which is set
+ * if the component is not {@code 0}, {@code 0.0}, the first enum constant, an empty string or an empty array. Unset
+ * components take no bytes and are filled with their default when decoding. Booleans are stored in their bit
+ * outright, so they never take any bytes beyond it.
+ * <p>
+ * Meant for wide records that are mostly left at their defaults, such as configuration or state snapshots. A sparse
+ * record may have at most 64 such components, nested records and {@link FixedLength} components are always written,
+ * and {@link Bits} fields are not permitted.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Sparse {
+}
@@ -0,0 +1,17 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the subtype tag a record is written with when it is the value of a component declared as one of its sealed
+ * super interfaces. Records without a tag are tagged with their position among the permitted subclasses of the
+ * hierarchy instead. Pinning tags keeps previously written data readable when subtypes are added or reordered.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Tag {
+    int value();
+}
@@ -0,0 +1,16 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Encodes an {@code int} or {@code long} component as an unsigned LEB128 variable length integer, using one byte per
+ * seven bits of magnitude. Small non-negative values such as ids and counters shrink to one or two bytes, while
+ * negative values always take the maximum length; use {@link ZigZag} for components that are frequently negative.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface VarInt {
+}
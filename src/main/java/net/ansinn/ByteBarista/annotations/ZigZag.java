@@ -0,0 +1,18 @@
+package net.ansinn.ByteBarista.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Encodes a signed {@code int} or {@code long} component as a ZigZag mapped LEB128 variable length integer, so that
+ * values of small magnitude take few bytes regardless of their sign ({@code 0, -1, 1, -2, ...} map to
+ * {@code 0, 1, 2, 3, ...}).
+ *
+ * @see VarInt
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface ZigZag {
+}
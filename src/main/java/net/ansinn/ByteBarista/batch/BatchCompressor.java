@@ -0,0 +1,277 @@
+package net.ansinn.ByteBarista.batch;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses encoded batches and frames with the JDK's {@link Deflater} and {@link Inflater}, skipping compression
+ * wherever it would not pay off.
+ * <p>
+ * Every compressed frame starts with a {@value #HEADER_SIZE} byte header holding whether its bytes are deflated or
+ * stored as they are, their original length and their stored length, followed by the bytes. Deflated bytes are raw
+ * DEFLATE without a zlib wrapper, as the frames are meant to carry data that is already checksummed, such as a
+ * {@link ChecksummedBatch}. Both directions work on heap and direct buffers alike, handing them to the native zlib
+ * without copying, and reuse one {@code Deflater} and {@code Inflater} per thread.
+ * <p>
+ * Input smaller than the minimum size is always stored, as compressing a few bytes costs more CPU than it saves on the
+ * wire. Larger input is deflated into at most the maximum ratio of its length or the space left in the target,
+ * whichever is smaller, and stored instead once the output outgrows that budget, so a frame never takes more than
+ * {@link #maxFrameSize(int)} bytes. Incompressible data is also remembered: every poor ratio makes the compressor store
+ * the following frames without trying, for a stretch that doubles with every further poor ratio and is reset by the
+ * first good one. Running out of target space is not held against the data.
+ * <p>
+ * Instances are thread-safe and meant to be shared by every thread writing one kind of data, so that they learn its
+ * compressibility together.
+ *
+ * @author Gunter Ansinn
+ */
+public final class BatchCompressor {
+
+    /**
+     * Bytes a frame takes on top of its stored bytes.
+     */
+    public static final int HEADER_SIZE = 1 + Integer.BYTES * 2;
+
+    private static final int DEFAULT_MINIMUM_SIZE = 512;
+    private static final double DEFAULT_MAXIMUM_RATIO = 0.9;
+    private static final int MAX_BACKOFF = 64;
+
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final int level;
+    private final int minimumSize;
+    private final double maximumRatio;
+    private final ThreadLocal<Deflater> deflaters;
+
+    // Frames left to store without trying, and the stretch to skip after the next poor ratio
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger backoff = new AtomicInteger(1);
+
+    private BatchCompressor(int level, int minimumSize, double maximumRatio) {
+        this.level = level;
+        this.minimumSize = minimumSize;
+        this.maximumRatio = maximumRatio;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    /**
+     * Creates a compressor using the fastest compression level, storing input below 512 bytes and output above 90% of
+     * its input.
+     *
+     * @return a new compressor
+     */
+    public static BatchCompressor create() {
+        return new BatchCompressor(Deflater.BEST_SPEED, DEFAULT_MINIMUM_SIZE, DEFAULT_MAXIMUM_RATIO);
+    }
+
+    /**
+     * @param level the {@link Deflater} compression level, from {@code 1} to {@code 9}
+     * @return a copy of this compressor compressing at the given level
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    public BatchCompressor withLevel(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be between 1 and 9 but was " + level + ".");
+        return new BatchCompressor(level, minimumSize, maximumRatio);
+    }
+
+    /**
+     * @param minimumSize the number of bytes below which input is always stored
+     * @return a copy of this compressor with the given minimum size
+     * @throws IllegalArgumentException if the minimum size is negative
+     */
+    public BatchCompressor withMinimumSize(int minimumSize) {
+        if (minimumSize < 0)
+            throw new IllegalArgumentException("Minimum size can't be negative but was " + minimumSize + ".");
+        return new BatchCompressor(level, minimumSize, maximumRatio);
+    }
+
+    /**
+     * @param maximumRatio the largest ratio of output to input length worth storing compressed
+     * @return a copy of this compressor with the given maximum ratio
+     * @throws IllegalArgumentException if the ratio is not greater than 0 and less than 1
+     */
+    public BatchCompressor withMaximumRatio(double maximumRatio) {
+        if (!(maximumRatio > 0 && maximumRatio < 1))
+            throw new IllegalArgumentException("Maximum ratio must be between 0 and 1 but was " + maximumRatio + ".");
+        return new BatchCompressor(level, minimumSize, maximumRatio);
+    }
+
+    /**
+     * @param length the length of the input
+     * @return the largest frame compressing input of the given length may produce
+     */
+    public static int maxFrameSize(int length) {
+        return Math.addExact(HEADER_SIZE, length);
+    }
+
+    /**
+     * Reads the original length of the frame at the buffer's position without consuming it, so that a target buffer
+     * of the right size can be prepared.
+     *
+     * @param source the buffer holding the frame
+     * @return the number of bytes the frame decompresses to
+     * @throws IllegalStateException if the buffer holds no frame header
+     */
+    public static int originalLength(ByteBuffer source) {
+        if (source.remaining() < HEADER_SIZE)
+            throw new IllegalStateException("Frame header exceeds the " + source.remaining() + " remaining bytes.");
+        return source.getInt(source.position() + 1);
+    }
+
+    /**
+     * Compresses the remaining bytes of the source into one frame at the target's position, advancing both buffers.
+     *
+     * @param source the bytes to compress
+     * @param target the buffer the frame is written to
+     * @return {@code true} if the bytes were deflated, {@code false} if they were stored as they are
+     * @throws BufferOverflowException if the frame does not fit, in which case neither buffer is changed
+     */
+    public boolean compress(ByteBuffer source, ByteBuffer target) {
+        Objects.requireNonNull(source, "Source cannot be null.");
+        Objects.requireNonNull(target, "Target cannot be null.");
+
+        var length = source.remaining();
+        var start = target.position();
+
+        if (length > 0 && length >= minimumSize && !shouldSkip()) {
+            var ratioBudget = (int) (length * maximumRatio);
+            var budget = Math.min(ratioBudget, target.remaining() - HEADER_SIZE);
+            if (budget > 0) {
+                var deflated = deflate(source, target.slice(start + HEADER_SIZE, budget));
+                if (deflated >= 0) {
+                    // Only written when it changes, as every frame of compressible data ends up here
+                    if (backoff.get() != 1)
+                        backoff.set(1);
+                    target
+                            .put(DEFLATED)
+                            .putInt(length)
+                            .putInt(deflated)
+                            .position(start + HEADER_SIZE + deflated);
+                    return true;
+                }
+
+                // Storing a frame is cheap, trying to deflate it is not, so stop trying for a while
+                if (budget == ratioBudget) {
+                    var stretch = backoff.get();
+                    skipped.set(stretch);
+                    backoff.set(Math.min(stretch * 2, MAX_BACKOFF));
+                }
+            }
+        }
+
+        if (target.remaining() < HEADER_SIZE + length)
+            throw new BufferOverflowException();
+
+        target
+                .put(STORED)
+                .putInt(length)
+                .putInt(length)
+                .put(source);
+        return false;
+    }
+
+    /**
+     * Decompresses the frame at the source's position into the target, advancing both buffers.
+     *
+     * @param source the buffer holding the frame
+     * @param target the buffer the original bytes are written to
+     * @throws IllegalStateException if the frame is truncated or corrupt
+     * @throws BufferOverflowException if the original bytes don't fit into the target, in which case neither buffer
+     * is changed
+     */
+    public static void decompress(ByteBuffer source, ByteBuffer target) {
+        Objects.requireNonNull(source, "Source cannot be null.");
+        Objects.requireNonNull(target, "Target cannot be null.");
+
+        var start = source.position();
+        var length = originalLength(source);
+        var mode = source.get(start);
+        var stored = source.getInt(start + 1 + Integer.BYTES);
+
+        if (mode != STORED && mode != DEFLATED)
+            throw new IllegalStateException("Unknown frame mode " + mode + ".");
+        if (length < 0 || stored < 0 || stored > source.remaining() - HEADER_SIZE)
+            throw new IllegalStateException("Frame of " + stored + " bytes exceeds the " + source.remaining() + " remaining bytes.");
+        if (mode == STORED && stored != length)
+            throw new IllegalStateException("Stored frame of " + stored + " bytes claims " + length + " original bytes.");
+        if (length > target.remaining())
+            throw new BufferOverflowException();
+
+        var input = source.slice(start + HEADER_SIZE, stored);
+        if (mode == STORED)
+            target.put(input);
+        else {
+            inflate(input, target.slice(target.position(), length));
+            target.position(target.position() + length);
+        }
+
+        source.position(start + HEADER_SIZE + stored);
+    }
+
+    /**
+     * @return {@code true} if the current frame is to be stored because recent ones compressed poorly
+     */
+    private boolean shouldSkip() {
+        while (true) {
+            var remaining = skipped.get();
+            if (remaining == 0)
+                return false;
+            if (skipped.compareAndSet(remaining, remaining - 1))
+                return true;
+        }
+    }
+
+    /**
+     * Deflates the remaining source bytes into the output, leaving the source untouched if they don't fit.
+     *
+     * @return the number of deflated bytes, or {@code -1} if they exceed the output
+     */
+    private int deflate(ByteBuffer source, ByteBuffer output) {
+        var deflater = deflaters.get();
+        var position = source.position();
+
+        try {
+            deflater.setInput(source);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflater.deflate(output);
+                if (!output.hasRemaining() && !deflater.finished()) {
+                    source.position(position);
+                    return -1;
+                }
+            }
+
+            return output.position();
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static void inflate(ByteBuffer input, ByteBuffer output) {
+        var inflater = INFLATERS.get();
+
+        try {
+            inflater.setInput(input);
+            while (!inflater.finished()) {
+                if (inflater.inflate(output) == 0 && (inflater.needsInput() || !output.hasRemaining() || inflater.needsDictionary()))
+                    throw new IllegalStateException("Deflated frame is truncated or corrupt.");
+            }
+
+            if (output.hasRemaining() || input.hasRemaining())
+                throw new IllegalStateException("Deflated frame does not match its original length.");
+        } catch (DataFormatException exception) {
+            throw new IllegalStateException("Deflated frame is corrupt.", exception);
+        } finally {
+            inflater.reset();
+        }
+    }
+}
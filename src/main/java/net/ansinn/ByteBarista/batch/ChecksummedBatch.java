@@ -0,0 +1,194 @@
+package net.ansinn.ByteBarista.batch;
+
+import net.ansinn.ByteBarista.codecs.Codec;
+import net.ansinn.ByteBarista.codecs.FixedCodec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes and reads batches of records protected by a single CRC32C checksum.
+ * <p>
+ * A batch is laid out as the number of records, the length of the encoded records in bytes, the records encoded back
+ * to back by their {@link Codec}, and the CRC32C of the records followed by the number and length. Lengths and the
+ * checksum are written in the byte order of the buffer, and a batch of a single record is simply a checksummed record.
+ * <p>
+ * The checksum is computed by {@link CRC32C}, which the JVM compiles to the CRC32 instructions of the CPU. Neither
+ * direction makes a separate pass over the batch for it: encoding feeds the checksum every
+ * {@value #CHUNK_BYTES} bytes with the records just written, and decoding feeds it the records just read, so the bytes
+ * are checksummed while they are still in the CPU cache. Decoded records are only handed out once the whole batch has
+ * verified.
+ *
+ * @see net.ansinn.ByteBarista.storage.RecordLog
+ * @author Gunter Ansinn
+ */
+public final class ChecksummedBatch {
+
+    /**
+     * Bytes a batch takes on top of its encoded records.
+     */
+    public static final int OVERHEAD = Integer.BYTES * 3;
+
+    // Small enough for the bytes just encoded or decoded to still be in the L1 or L2 cache when checksummed
+    static final int CHUNK_BYTES = 1 << 14;
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private ChecksummedBatch() {}
+
+    /**
+     * Encodes the given records as one checksummed batch at the buffer's position. If the batch does not fit, the
+     * buffer's position is left untouched.
+     *
+     * @param buffer the buffer to write the batch into
+     * @param codec  the codec encoding each record
+     * @param values the records to encode
+     * @param <T> the record type
+     * @throws BufferOverflowException if the batch does not fit into the remaining space
+     */
+    public static <T extends Record> void encode(ByteBuffer buffer, Codec<T> codec, List<? extends T> values) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+        Objects.requireNonNull(values, "Values cannot be null.");
+
+        var start = buffer.position();
+        if (codec instanceof FixedCodec<T> fixed && buffer.remaining() < OVERHEAD + (long) fixed.size() * values.size())
+            throw new BufferOverflowException();
+        if (buffer.remaining() < HEADER_SIZE)
+            throw new BufferOverflowException();
+
+        var checksum = new CRC32C();
+        var payloadStart = start + HEADER_SIZE;
+        var checked = payloadStart;
+
+        try {
+            buffer.position(payloadStart);
+            for (var value : values) {
+                codec.encode(buffer, value);
+
+                if (buffer.position() - checked >= CHUNK_BYTES) {
+                    update(checksum, buffer, checked, buffer.position());
+                    checked = buffer.position();
+                }
+            }
+
+            var payloadEnd = buffer.position();
+            update(checksum, buffer, checked, payloadEnd);
+
+            // The length is only known now, which is why the header is checksummed after the records
+            buffer
+                    .putInt(start, values.size())
+                    .putInt(start + Integer.BYTES, payloadEnd - payloadStart);
+            update(checksum, buffer, start, payloadStart);
+
+            buffer.putInt((int) checksum.getValue());
+        } catch (RuntimeException exception) {
+            buffer.position(start);
+            throw exception;
+        }
+    }
+
+    /**
+     * Decodes the checksummed batch at the buffer's position, advancing the buffer past it.
+     *
+     * @param buffer the buffer holding the batch
+     * @param codec  the codec decoding each record
+     * @return the decoded records in order
+     * @param <T> the record type
+     * @throws IllegalStateException if the batch is truncated or fails its checksum, in which case the buffer's
+     * position is left untouched
+     */
+    public static <T extends Record> List<T> decode(ByteBuffer buffer, Codec<T> codec) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+
+        var start = buffer.position();
+        var payload = payloadOf(buffer);
+        var count = buffer.getInt(start);
+        if (codec instanceof FixedCodec<T> fixed && payload.remaining() != (long) fixed.size() * count)
+            throw new IllegalStateException("Batch of " + count + " records holds " + payload.remaining() + " bytes instead of "
+                    + (long) fixed.size() * count + ".");
+
+        var checksum = new CRC32C();
+        var values = new ArrayList<T>(Math.min(count, CHUNK_BYTES));
+        var checked = 0;
+        try {
+            for (var i = 0; i < count; i++) {
+                values.add(codec.decode(payload));
+
+                if (payload.position() - checked >= CHUNK_BYTES) {
+                    update(checksum, payload, checked, payload.position());
+                    checked = payload.position();
+                }
+            }
+        } catch (RuntimeException exception) {
+            // Garbage can fail to decode in any number of ways, the checksum tells whether it is garbage
+            update(checksum, payload, checked, payload.limit());
+            verify(buffer, start, payload.limit(), checksum);
+            throw exception;
+        }
+
+        if (payload.hasRemaining())
+            throw new IllegalStateException("Batch of " + count + " records has " + payload.remaining() + " bytes left over.");
+
+        update(checksum, payload, checked, payload.limit());
+        verify(buffer, start, payload.limit(), checksum);
+
+        buffer.position(start + HEADER_SIZE + payload.limit() + Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Verifies the checksummed batch at the buffer's position without decoding it, advancing the buffer past it.
+     *
+     * @param buffer the buffer holding the batch
+     * @return the number of records in the batch
+     * @throws IllegalStateException if the batch is truncated or fails its checksum, in which case the buffer's
+     * position is left untouched
+     */
+    public static int verify(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+
+        var start = buffer.position();
+        var length = payloadOf(buffer).limit();
+        var count = buffer.getInt(start);
+
+        var checksum = new CRC32C();
+        update(checksum, buffer, start + HEADER_SIZE, start + HEADER_SIZE + length);
+        verify(buffer, start, length, checksum);
+
+        buffer.position(start + HEADER_SIZE + length + Integer.BYTES);
+        return count;
+    }
+
+    /**
+     * @return a view of the encoded records of the batch starting at the buffer's position
+     */
+    private static ByteBuffer payloadOf(ByteBuffer buffer) {
+        var start = buffer.position();
+        if (buffer.remaining() < OVERHEAD)
+            throw new IllegalStateException("Batch header exceeds the " + buffer.remaining() + " remaining bytes.");
+
+        var count = buffer.getInt(start);
+        var length = buffer.getInt(start + Integer.BYTES);
+        if (count < 0 || length < 0 || length > buffer.remaining() - OVERHEAD)
+            throw new IllegalStateException("Batch of " + count + " records and " + length + " bytes exceeds the "
+                    + buffer.remaining() + " remaining bytes.");
+
+        return buffer.slice(start + HEADER_SIZE, length).order(buffer.order());
+    }
+
+    private static void verify(ByteBuffer buffer, int start, int length, CRC32C checksum) {
+        update(checksum, buffer, start, start + HEADER_SIZE);
+        if (buffer.getInt(start + HEADER_SIZE + length) != (int) checksum.getValue())
+            throw new IllegalStateException("Batch failed its checksum.");
+    }
+
+    private static void update(CRC32C checksum, ByteBuffer buffer, int from, int to) {
+        checksum.update(buffer.slice(from, to - from));
+    }
+}
@@ -0,0 +1,263 @@
+package net.ansinn.ByteBarista.batch;
+
+import net.ansinn.ByteBarista.NumericHelpers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes and reads batches of records column by column, encoding every component with the {@link ColumnCodec} in
+ * whichever {@link ColumnEncoding} suits its values in that batch.
+ * <p>
+ * A batch is laid out as the number of records as a variable length int, followed by one column per record component
+ * in declaration order. Integral and {@code boolean} components are stored as {@code long} columns, {@code float} and
+ * {@code double} components as {@code double} columns, so records may only have primitive components. Regularly
+ * sampled timestamps, counters and slowly changing gauges shrink to a few bits per record this way, where the
+ * record codecs write every component at its full width.
+ * <p>
+ * Columns can be read back as records, or one at a time straight into a primitive array without constructing any.
+ *
+ * @param <T> the record type
+ * @author Gunter Ansinn
+ */
+public final class ColumnBatch<T extends Record> {
+
+    private final Class<T> type;
+    private final String[] names;
+    private final boolean[] floating;
+    private final MethodHandle[] accessors;
+    private final MethodHandle constructor;
+
+    private ColumnBatch(Class<T> type, String[] names, boolean[] floating, MethodHandle[] accessors, MethodHandle constructor) {
+        this.type = type;
+        this.names = names;
+        this.floating = floating;
+        this.accessors = accessors;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Creates a column batch codec for the given record type.
+     *
+     * @param type the record type
+     * @return a codec writing batches of the record type column by column
+     * @param <T> the record type
+     * @throws IllegalArgumentException if the record has no components or any that isn't primitive
+     * @throws IllegalStateException if the record's accessors or canonical constructor can't be accessed
+     */
+    public static <T extends Record> ColumnBatch<T> of(Class<T> type) {
+        Objects.requireNonNull(type, "Type cannot be null.");
+
+        var components = type.getRecordComponents();
+        if (components.length == 0)
+            throw new IllegalArgumentException("Record " + type.getName() + " has no components to store in columns.");
+
+        var names = new String[components.length];
+        var floating = new boolean[components.length];
+        var accessors = new MethodHandle[components.length];
+        var columnTypes = new Class<?>[components.length];
+
+        try {
+            var lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            for (var i = 0; i < components.length; i++) {
+                var component = components[i];
+                if (!component.getType().isPrimitive())
+                    throw new IllegalArgumentException("Component " + type.getName() + "." + component.getName()
+                            + " of type " + component.getType().getTypeName() + " can't be stored in a column.");
+
+                names[i] = component.getName();
+                floating[i] = component.getType() == float.class || component.getType() == double.class;
+                columnTypes[i] = floating[i] ? double.class : long.class;
+
+                // Explicit casts widen every component to its column type and narrow it back, booleans included
+                accessors[i] = MethodHandles.explicitCastArguments(lookup.unreflect(component.getAccessor()),
+                        MethodType.methodType(columnTypes[i], Object.class));
+            }
+
+            var parameters = Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new);
+            var constructor = MethodHandles
+                    .explicitCastArguments(lookup.findConstructor(type, MethodType.methodType(void.class, parameters)),
+                            MethodType.methodType(Object.class, columnTypes));
+
+            // Every argument is read straight from its column array by index, so that no value is boxed on the way
+            for (var i = components.length - 1; i >= 0; i--) {
+                var columnType = columnTypes[i].arrayType();
+                var column = MethodHandles.insertArguments(MethodHandles.arrayElementGetter(Object[].class), 1, i)
+                        .asType(MethodType.methodType(columnType, Object[].class));
+                constructor = MethodHandles.collectArguments(constructor, i,
+                        MethodHandles.filterArguments(MethodHandles.arrayElementGetter(columnType), 0, column));
+            }
+
+            // All getters share the one column array and index
+            var reorder = new int[components.length * 2];
+            for (var i = 0; i < reorder.length; i++)
+                reorder[i] = i % 2;
+            constructor = MethodHandles.permuteArguments(constructor,
+                    MethodType.methodType(Object.class, Object[].class, int.class), reorder);
+
+            return new ColumnBatch<>(type, names, floating, accessors, constructor);
+        } catch (IllegalAccessException | NoSuchMethodException exception) {
+            throw new IllegalStateException("Unable to access the components of " + type.getName() + ".", exception);
+        }
+    }
+
+    /**
+     * Encodes the given records as one batch at the buffer's position. If the batch does not fit, the buffer's
+     * position is left untouched.
+     *
+     * @param buffer the buffer to write the batch into
+     * @param values the records to encode
+     * @throws BufferOverflowException if the batch does not fit into the remaining space
+     */
+    public void encode(ByteBuffer buffer, List<? extends T> values) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+        Objects.requireNonNull(values, "Values cannot be null.");
+
+        var start = buffer.position();
+        try {
+            NumericHelpers.putVarInt(buffer, values.size());
+            for (var column = 0; column < names.length; column++) {
+                if (floating[column])
+                    ColumnCodec.putDoubles(buffer, doubleColumn(values, accessors[column]));
+                else
+                    ColumnCodec.putLongs(buffer, longColumn(values, accessors[column]));
+            }
+        } catch (RuntimeException exception) {
+            buffer.position(start);
+            throw exception;
+        }
+    }
+
+    /**
+     * Decodes the batch at the buffer's position into records, advancing the buffer past it. If the batch can't be
+     * decoded, the buffer's position is left untouched.
+     *
+     * @param buffer the buffer holding the batch
+     * @return the decoded records in order
+     * @throws IllegalStateException if the batch is truncated or corrupt
+     */
+    public List<T> decode(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+
+        var start = buffer.position();
+        try {
+            var count = NumericHelpers.getVarInt(buffer);
+            var columns = new Object[names.length];
+            for (var column = 0; column < names.length; column++)
+                columns[column] = checkCount(floating[column] ? ColumnCodec.getDoubles(buffer) : ColumnCodec.getLongs(buffer),
+                        count, column);
+
+            var values = new ArrayList<T>(count);
+            for (var i = 0; i < count; i++) {
+                try {
+                    values.add(type.cast((Object) constructor.invokeExact(columns, i)));
+                } catch (Throwable throwable) {
+                    throw new IllegalStateException("Unable to construct " + type.getName() + " from its columns.", throwable);
+                }
+            }
+
+            return values;
+        } catch (RuntimeException exception) {
+            buffer.position(start);
+            throw exception;
+        }
+    }
+
+    /**
+     * Decodes a single integral or {@code boolean} component of the batch at the buffer's position, skipping the
+     * other columns and advancing the buffer past the batch. Booleans read as {@code 1} and {@code 0}.
+     *
+     * @param buffer    the buffer holding the batch
+     * @param component the name of the component
+     * @return the component's values in record order
+     * @throws IllegalArgumentException if the record has no such component or it is floating point
+     * @throws IllegalStateException if the batch is truncated or corrupt
+     */
+    public long[] getLongs(ByteBuffer buffer, String component) {
+        var index = indexOf(component, false);
+        return (long[]) getColumn(buffer, index);
+    }
+
+    /**
+     * Decodes a single floating point component of the batch at the buffer's position, skipping the other columns and
+     * advancing the buffer past the batch.
+     *
+     * @param buffer    the buffer holding the batch
+     * @param component the name of the component
+     * @return the component's values in record order
+     * @throws IllegalArgumentException if the record has no such component or it is integral
+     * @throws IllegalStateException if the batch is truncated or corrupt
+     */
+    public double[] getDoubles(ByteBuffer buffer, String component) {
+        var index = indexOf(component, true);
+        return (double[]) getColumn(buffer, index);
+    }
+
+    private Object getColumn(ByteBuffer buffer, int index) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+
+        var count = NumericHelpers.getVarInt(buffer);
+        Object values = null;
+        for (var column = 0; column < names.length; column++) {
+            if (column != index)
+                ColumnCodec.skip(buffer);
+            else
+                values = checkCount(floating[column] ? ColumnCodec.getDoubles(buffer) : ColumnCodec.getLongs(buffer),
+                        count, column);
+        }
+
+        return values;
+    }
+
+    private int indexOf(String component, boolean floatingPoint) {
+        Objects.requireNonNull(component, "Component cannot be null.");
+
+        for (var i = 0; i < names.length; i++) {
+            if (!names[i].equals(component))
+                continue;
+            if (floating[i] != floatingPoint)
+                throw new IllegalArgumentException("Component " + type.getName() + "." + component + " is "
+                        + (floating[i] ? "floating point" : "integral") + ".");
+            return i;
+        }
+
+        throw new IllegalArgumentException("Record " + type.getName() + " has no component " + component + ".");
+    }
+
+    private Object checkCount(Object column, int count, int index) {
+        var length = column instanceof long[] longs ? longs.length : ((double[]) column).length;
+        if (length != count)
+            throw new IllegalStateException("Column " + names[index] + " holds " + length + " values instead of " + count + ".");
+        return column;
+    }
+
+    private static long[] longColumn(List<?> values, MethodHandle accessor) {
+        var column = new long[values.size()];
+        try {
+            for (var i = 0; i < column.length; i++)
+                column[i] = (long) accessor.invokeExact(values.get(i));
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unable to read a component of the batch.", throwable);
+        }
+        return column;
+    }
+
+    private static double[] doubleColumn(List<?> values, MethodHandle accessor) {
+        var column = new double[values.size()];
+        try {
+            for (var i = 0; i < column.length; i++)
+                column[i] = (double) accessor.invokeExact(values.get(i));
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unable to read a component of the batch.", throwable);
+        }
+        return column;
+    }
+}
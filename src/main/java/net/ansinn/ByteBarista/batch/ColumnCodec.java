@@ -0,0 +1,573 @@
+package net.ansinn.ByteBarista.batch;
+
+import net.ansinn.ByteBarista.NumericHelpers;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Writes and reads single columns of {@code long} and {@code double} values in one of the {@link ColumnEncoding}s.
+ * <p>
+ * A column is laid out as the encoding in one byte, the number of values as a variable length int and the encoded
+ * values. Unless an encoding is given, the smallest one is chosen from statistics gathered in a single pass over the
+ * column: the range of its values for {@link ColumnEncoding#FRAME_OF_REFERENCE}, the widest difference between
+ * consecutive deltas for {@link ColumnEncoding#DELTA_OF_DELTA} and, for doubles, the bits every value differs from its
+ * predecessor in for {@link ColumnEncoding#XOR}. Bit-packed values are written most significant bit first regardless
+ * of the byte order of the buffer, whereas whole values follow it.
+ * <p>
+ * Doubles are encoded by their raw bits, so every value including each {@code NaN} reads back exactly as written.
+ *
+ * @see ColumnBatch
+ * @author Gunter Ansinn
+ */
+public final class ColumnCodec {
+
+    private static final ColumnEncoding[] ENCODINGS = ColumnEncoding.values();
+
+    // The leading zeros of an XOR window are written in 5 bits, its length less one in 6
+    private static final int LEADING_BITS = 5;
+    private static final int LENGTH_BITS = 6;
+    private static final int MAX_LEADING = (1 << LEADING_BITS) - 1;
+
+    private ColumnCodec() {}
+
+    /**
+     * Encodes the values as one column in the smallest encoding at the buffer's position. If the column does not fit,
+     * the buffer's position is left untouched.
+     *
+     * @param buffer the buffer to write the column into
+     * @param values the values to encode
+     * @return the encoding chosen
+     * @throws BufferOverflowException if the column does not fit into the remaining space
+     */
+    public static ColumnEncoding putLongs(ByteBuffer buffer, long[] values) {
+        var encoding = chooseLongs(values);
+        putLongs(buffer, values, encoding);
+        return encoding;
+    }
+
+    /**
+     * Encodes the values as one column in the given encoding at the buffer's position. If the column does not fit,
+     * the buffer's position is left untouched.
+     *
+     * @param buffer   the buffer to write the column into
+     * @param values   the values to encode
+     * @param encoding the encoding to write the column in
+     * @throws BufferOverflowException if the column does not fit into the remaining space
+     */
+    public static void putLongs(ByteBuffer buffer, long[] values, ColumnEncoding encoding) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+        Objects.requireNonNull(values, "Values cannot be null.");
+        Objects.requireNonNull(encoding, "Encoding cannot be null.");
+
+        var start = buffer.position();
+        try {
+            buffer.put((byte) encoding.ordinal());
+            NumericHelpers.putVarInt(buffer, values.length);
+
+            switch (encoding) {
+                case RAW -> {
+                    for (var value : values)
+                        buffer.putLong(value);
+                }
+                case FRAME_OF_REFERENCE -> putFrameOfReference(buffer, values);
+                case DELTA_OF_DELTA -> putDeltaOfDelta(buffer, values);
+                case XOR -> putXor(buffer, values);
+            }
+        } catch (RuntimeException exception) {
+            buffer.position(start);
+            throw exception;
+        }
+    }
+
+    /**
+     * Encodes the values as one column in the smallest encoding at the buffer's position. If the column does not fit,
+     * the buffer's position is left untouched.
+     *
+     * @param buffer the buffer to write the column into
+     * @param values the values to encode
+     * @return the encoding chosen
+     * @throws BufferOverflowException if the column does not fit into the remaining space
+     */
+    public static ColumnEncoding putDoubles(ByteBuffer buffer, double[] values) {
+        var bits = bitsOf(values);
+        var encoding = chooseDoubles(bits);
+        putLongs(buffer, bits, encoding);
+        return encoding;
+    }
+
+    /**
+     * Encodes the values as one column in the given encoding at the buffer's position. If the column does not fit,
+     * the buffer's position is left untouched.
+     *
+     * @param buffer   the buffer to write the column into
+     * @param values   the values to encode
+     * @param encoding the encoding to write the column in
+     * @throws BufferOverflowException if the column does not fit into the remaining space
+     */
+    public static void putDoubles(ByteBuffer buffer, double[] values, ColumnEncoding encoding) {
+        putLongs(buffer, bitsOf(values), encoding);
+    }
+
+    /**
+     * Decodes the column at the buffer's position, advancing the buffer past it.
+     *
+     * @param buffer the buffer holding the column
+     * @return the decoded values in order
+     * @throws IllegalStateException if the column is truncated or corrupt
+     */
+    public static long[] getLongs(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+
+        var encoding = encodingOf(buffer);
+        var values = new long[countOf(buffer)];
+
+        switch (encoding) {
+            case RAW -> {
+                checkRemaining(buffer, (long) values.length * Long.BYTES);
+                for (var i = 0; i < values.length; i++)
+                    values[i] = buffer.getLong();
+            }
+            case FRAME_OF_REFERENCE -> getFrameOfReference(buffer, values);
+            case DELTA_OF_DELTA -> getDeltaOfDelta(buffer, values);
+            case XOR -> getXor(buffer, values);
+        }
+
+        return values;
+    }
+
+    /**
+     * Decodes the column at the buffer's position, advancing the buffer past it.
+     *
+     * @param buffer the buffer holding the column
+     * @return the decoded values in order
+     * @throws IllegalStateException if the column is truncated or corrupt
+     */
+    public static double[] getDoubles(ByteBuffer buffer) {
+        var bits = getLongs(buffer);
+        var values = new double[bits.length];
+        for (var i = 0; i < bits.length; i++)
+            values[i] = Double.longBitsToDouble(bits[i]);
+        return values;
+    }
+
+    /**
+     * Advances past the column at the buffer's position without decoding its values.
+     *
+     * @param buffer the buffer holding the column
+     * @throws IllegalStateException if the column is truncated or corrupt
+     */
+    public static void skip(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+
+        var encoding = encodingOf(buffer);
+        var count = countOf(buffer);
+
+        var bytes = switch (encoding) {
+            case RAW -> (long) count * Long.BYTES;
+            case FRAME_OF_REFERENCE -> {
+                checkRemaining(buffer, Long.BYTES + 1);
+                yield Long.BYTES + 1 + packedBytes(count, widthAt(buffer, buffer.position() + Long.BYTES));
+            }
+            case DELTA_OF_DELTA -> {
+                if (count < 2)
+                    yield (long) count * Long.BYTES;
+
+                checkRemaining(buffer, Long.BYTES);
+                buffer.position(buffer.position() + Long.BYTES);
+                NumericHelpers.skipVarInt(buffer);
+                if (count == 2)
+                    yield 0L;
+
+                checkRemaining(buffer, 1);
+                yield 1 + packedBytes(count - 2, widthAt(buffer, buffer.position()));
+            }
+            case XOR -> {
+                checkRemaining(buffer, Integer.BYTES);
+                var length = buffer.getInt(buffer.position());
+                if (length < 0)
+                    throw new IllegalStateException("Column can't hold " + length + " packed bytes.");
+                yield Integer.BYTES + (long) length;
+            }
+        };
+
+        checkRemaining(buffer, bytes);
+        buffer.position(buffer.position() + (int) bytes);
+    }
+
+    /**
+     * @return the encoding taking the fewest bytes for the given values among all but {@link ColumnEncoding#XOR}
+     */
+    static ColumnEncoding chooseLongs(long[] values) {
+        var count = values.length;
+        if (count < 3)
+            return ColumnEncoding.RAW;
+
+        var min = values[0];
+        var max = values[0];
+        var delta = values[1] - values[0];
+        var deltaBits = 0L;
+
+        min = Math.min(min, values[1]);
+        max = Math.max(max, values[1]);
+        for (var i = 2; i < count; i++) {
+            var value = values[i];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+
+            var next = value - values[i - 1];
+            deltaBits |= NumericHelpers.encodeZigZag(next - delta);
+            delta = next;
+        }
+
+        var raw = (long) count * Long.BYTES;
+        var frameOfReference = Long.BYTES + 1 + packedBytes(count, widthOf(max - min));
+        var deltaOfDelta = Long.BYTES + NumericHelpers.zigZagLongSize(values[1] - values[0]) + 1
+                + packedBytes(count - 2, widthOf(deltaBits));
+
+        if (deltaOfDelta < frameOfReference && deltaOfDelta < raw)
+            return ColumnEncoding.DELTA_OF_DELTA;
+        return frameOfReference < raw ? ColumnEncoding.FRAME_OF_REFERENCE : ColumnEncoding.RAW;
+    }
+
+    /**
+     * @return {@link ColumnEncoding#XOR} if it takes fewer bytes for the given double bits than {@link ColumnEncoding#RAW}
+     */
+    static ColumnEncoding chooseDoubles(long[] bits) {
+        if (bits.length < 2)
+            return ColumnEncoding.RAW;
+
+        // Counts the bits putXor writes, without writing them
+        var size = (long) Long.SIZE;
+        var leading = -1;
+        var trailing = 0;
+        for (var i = 1; i < bits.length; i++) {
+            var xor = bits[i] ^ bits[i - 1];
+            if (xor == 0) {
+                size++;
+                continue;
+            }
+
+            var zerosBefore = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING);
+            var zerosAfter = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && zerosBefore >= leading && zerosAfter >= trailing)
+                size += 2 + Long.SIZE - leading - trailing;
+            else {
+                size += 2 + LEADING_BITS + LENGTH_BITS + Long.SIZE - zerosBefore - zerosAfter;
+                leading = zerosBefore;
+                trailing = zerosAfter;
+            }
+        }
+
+        return Integer.BYTES + (size + 7) / 8 < (long) bits.length * Long.BYTES ? ColumnEncoding.XOR : ColumnEncoding.RAW;
+    }
+
+    private static void putFrameOfReference(ByteBuffer buffer, long[] values) {
+        var min = Long.MAX_VALUE;
+        var max = Long.MIN_VALUE;
+        for (var value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        var width = widthOf(max - min);
+        buffer.putLong(min).put((byte) width);
+
+        var writer = new BitWriter(buffer);
+        for (var value : values)
+            writer.write(value - min, width);
+        writer.flush();
+    }
+
+    private static void getFrameOfReference(ByteBuffer buffer, long[] values) {
+        checkRemaining(buffer, Long.BYTES + 1);
+        var min = buffer.getLong();
+        var width = widthAt(buffer, buffer.position());
+        buffer.get();
+
+        var reader = BitReader.of(buffer, packedBytes(values.length, width));
+        for (var i = 0; i < values.length; i++)
+            values[i] = min + reader.read(width);
+    }
+
+    private static void putDeltaOfDelta(ByteBuffer buffer, long[] values) {
+        var count = values.length;
+        if (count < 2) {
+            for (var value : values)
+                buffer.putLong(value);
+            return;
+        }
+
+        var delta = values[1] - values[0];
+        buffer.putLong(values[0]);
+        NumericHelpers.putZigZagLong(buffer, delta);
+        if (count == 2)
+            return;
+
+        var deltaBits = 0L;
+        for (var i = 2; i < count; i++) {
+            var next = values[i] - values[i - 1];
+            deltaBits |= NumericHelpers.encodeZigZag(next - delta);
+            delta = next;
+        }
+
+        var width = widthOf(deltaBits);
+        buffer.put((byte) width);
+
+        var writer = new BitWriter(buffer);
+        delta = values[1] - values[0];
+        for (var i = 2; i < count; i++) {
+            var next = values[i] - values[i - 1];
+            writer.write(NumericHelpers.encodeZigZag(next - delta), width);
+            delta = next;
+        }
+        writer.flush();
+    }
+
+    private static void getDeltaOfDelta(ByteBuffer buffer, long[] values) {
+        var count = values.length;
+        if (count < 2) {
+            checkRemaining(buffer, (long) count * Long.BYTES);
+            for (var i = 0; i < count; i++)
+                values[i] = buffer.getLong();
+            return;
+        }
+
+        checkRemaining(buffer, Long.BYTES + 1);
+        values[0] = buffer.getLong();
+        var delta = NumericHelpers.getZigZagLong(buffer);
+        values[1] = values[0] + delta;
+        if (count == 2)
+            return;
+
+        checkRemaining(buffer, 1);
+        var width = widthAt(buffer, buffer.position());
+        buffer.get();
+
+        var reader = BitReader.of(buffer, packedBytes(count - 2, width));
+        for (var i = 2; i < count; i++) {
+            delta += NumericHelpers.decodeZigZag(reader.read(width));
+            values[i] = values[i - 1] + delta;
+        }
+    }
+
+    private static void putXor(ByteBuffer buffer, long[] values) {
+        // The length of the bits is only known once they are written, so it is patched in afterward
+        var lengthAt = buffer.position();
+        buffer.putInt(0);
+        if (values.length == 0)
+            return;
+
+        var writer = new BitWriter(buffer);
+        writer.write(values[0], Long.SIZE);
+
+        var leading = -1;
+        var trailing = 0;
+        for (var i = 1; i < values.length; i++) {
+            var xor = values[i] ^ values[i - 1];
+            if (xor == 0) {
+                writer.write(0, 1);
+                continue;
+            }
+
+            var zerosBefore = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING);
+            var zerosAfter = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && zerosBefore >= leading && zerosAfter >= trailing) {
+                // The meaningful bits fit into the window of the previous value
+                writer.write(0b10, 2);
+                writer.write(xor >>> trailing, Long.SIZE - leading - trailing);
+            } else {
+                var length = Long.SIZE - zerosBefore - zerosAfter;
+                writer.write(0b11, 2);
+                writer.write(zerosBefore, LEADING_BITS);
+                writer.write(length - 1, LENGTH_BITS);
+                writer.write(xor >>> zerosAfter, length);
+                leading = zerosBefore;
+                trailing = zerosAfter;
+            }
+        }
+        writer.flush();
+
+        buffer.putInt(lengthAt, buffer.position() - lengthAt - Integer.BYTES);
+    }
+
+    private static void getXor(ByteBuffer buffer, long[] values) {
+        checkRemaining(buffer, Integer.BYTES);
+        var reader = BitReader.of(buffer, buffer.getInt());
+        if (values.length == 0)
+            return;
+
+        values[0] = reader.read(Long.SIZE);
+
+        var leading = -1;
+        var trailing = 0;
+        for (var i = 1; i < values.length; i++) {
+            if (reader.read(1) == 0) {
+                values[i] = values[i - 1];
+                continue;
+            }
+
+            if (reader.read(1) == 0) {
+                if (leading < 0)
+                    throw new IllegalStateException("XOR column reuses a window before defining one.");
+            } else {
+                leading = (int) reader.read(LEADING_BITS);
+                trailing = Long.SIZE - leading - (int) reader.read(LENGTH_BITS) - 1;
+                if (trailing < 0)
+                    throw new IllegalStateException("XOR column holds a window exceeding 64 bits.");
+            }
+
+            values[i] = values[i - 1] ^ reader.read(Long.SIZE - leading - trailing) << trailing;
+        }
+    }
+
+    private static ColumnEncoding encodingOf(ByteBuffer buffer) {
+        checkRemaining(buffer, 1);
+        var encoding = buffer.get();
+        if (encoding < 0 || encoding >= ENCODINGS.length)
+            throw new IllegalStateException("Unknown column encoding " + encoding + ".");
+        return ENCODINGS[encoding];
+    }
+
+    private static int countOf(ByteBuffer buffer) {
+        var count = NumericHelpers.getVarInt(buffer);
+        if (count < 0)
+            throw new IllegalStateException("Column can't hold " + count + " values.");
+        return count;
+    }
+
+    private static int widthAt(ByteBuffer buffer, int index) {
+        var width = buffer.get(index);
+        if (width < 0 || width > Long.SIZE)
+            throw new IllegalStateException("Column can't pack values into " + width + " bits.");
+        return width;
+    }
+
+    /**
+     * @return the number of bits the largest of the unsigned values ORed into the given bits needs
+     */
+    private static int widthOf(long bits) {
+        return Long.SIZE - Long.numberOfLeadingZeros(bits);
+    }
+
+    private static long packedBytes(int count, int width) {
+        return ((long) count * width + 7) >>> 3;
+    }
+
+    private static void checkRemaining(ByteBuffer buffer, long bytes) {
+        if (bytes > buffer.remaining())
+            throw new IllegalStateException("Column of " + bytes + " bytes exceeds the " + buffer.remaining() + " remaining bytes.");
+    }
+
+    private static long[] bitsOf(double[] values) {
+        Objects.requireNonNull(values, "Values cannot be null.");
+
+        var bits = new long[values.length];
+        for (var i = 0; i < values.length; i++)
+            bits[i] = Double.doubleToRawLongBits(values[i]);
+        return bits;
+    }
+
+    /**
+     * Packs values of up to 64 bits most significant bit first, collecting them into whole words before writing them.
+     */
+    private static final class BitWriter {
+
+        private final ByteBuffer buffer;
+        private final boolean bigEndian;
+        private long word;
+        private int bits;
+
+        BitWriter(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        }
+
+        void write(long value, int width) {
+            if (width == 0)
+                return;
+            if (width < Long.SIZE)
+                value &= (1L << width) - 1;
+
+            var free = Long.SIZE - bits;
+            if (width < free) {
+                word |= value << (free - width);
+                bits += width;
+            } else {
+                // Fills the word, carrying the bits that don't fit over into the next one
+                var carried = width - free;
+                putWord(word | value >>> carried);
+                word = carried == 0 ? 0 : value << (Long.SIZE - carried);
+                bits = carried;
+            }
+        }
+
+        /**
+         * Writes the bits of the last partial word, padded with zeros to a whole byte.
+         */
+        void flush() {
+            for (var written = 0; written < bits; written += Byte.SIZE)
+                buffer.put((byte) (word >>> (Long.SIZE - Byte.SIZE - written)));
+            word = 0;
+            bits = 0;
+        }
+
+        private void putWord(long word) {
+            buffer.putLong(bigEndian ? word : Long.reverseBytes(word));
+        }
+    }
+
+    /**
+     * Unpacks values written by a {@link BitWriter} from a bounded view of the buffer, so that reading ahead never
+     * touches the bytes that follow.
+     */
+    private static final class BitReader {
+
+        // Reads of more bits are split in two, so that a refill always has room for a whole byte
+        private static final int MAX_READ = Long.SIZE - Byte.SIZE;
+
+        private final ByteBuffer packed;
+        private long word;
+        private int bits;
+
+        private BitReader(ByteBuffer packed) {
+            this.packed = packed;
+        }
+
+        /**
+         * Creates a reader over the given number of bytes at the buffer's position and advances the buffer past them.
+         */
+        static BitReader of(ByteBuffer buffer, long bytes) {
+            if (bytes < 0)
+                throw new IllegalStateException("Column can't hold " + bytes + " packed bytes.");
+            checkRemaining(buffer, bytes);
+
+            var reader = new BitReader(buffer.slice(buffer.position(), (int) bytes));
+            buffer.position(buffer.position() + (int) bytes);
+            return reader;
+        }
+
+        long read(int width) {
+            if (width > MAX_READ) {
+                var high = read(width - Integer.SIZE);
+                return high << Integer.SIZE | read(Integer.SIZE);
+            }
+            if (width == 0)
+                return 0;
+
+            while (bits < width) {
+                if (!packed.hasRemaining())
+                    throw new IllegalStateException("Column is truncated, its packed bits end early.");
+                word |= (packed.get() & 0xFFL) << (MAX_READ - bits);
+                bits += Byte.SIZE;
+            }
+
+            var value = word >>> (Long.SIZE - width);
+            word <<= width;
+            bits -= width;
+            return value;
+        }
+    }
+}
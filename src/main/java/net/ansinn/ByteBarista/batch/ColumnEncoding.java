@@ -0,0 +1,34 @@
+package net.ansinn.ByteBarista.batch;
+
+/**
+ * The ways a {@link ColumnCodec} can lay out one column of a batch. The encoding is written as the first byte of every
+ * column, so each column of each batch may use a different one.
+ *
+ * @author Gunter Ansinn
+ */
+public enum ColumnEncoding {
+
+    /**
+     * Every value as eight bytes, for columns none of the other encodings can shrink.
+     */
+    RAW,
+
+    /**
+     * The smallest value of the column, followed by every value's distance from it bit-packed into as few bits as the
+     * largest distance needs. Suits slowly changing values such as gauges, counts and identifiers within a range.
+     */
+    FRAME_OF_REFERENCE,
+
+    /**
+     * The first value and the first delta, followed by the zigzag encoded differences between consecutive deltas
+     * bit-packed into as few bits as the largest of them needs. Suits monotonic timestamps: samples taken at a fixed
+     * interval take no bits at all past the first two values.
+     */
+    DELTA_OF_DELTA,
+
+    /**
+     * The first value, followed by every value XORed with its predecessor and written as only its meaningful bits, as
+     * described in Facebook's Gorilla paper. Suits doubles that change slowly or repeat.
+     */
+    XOR
+}
@@ -1,4 +1,26 @@
 package net.ansinn.ByteBarista.caching;
 
+import net.ansinn.ByteBarista.RecordSchema;
+
+/**
+ * The generated codec class of a record, tagged with the fingerprint of the {@link RecordSchema} it was generated
+ * for so that it is regenerated once the record changes.
+ */
 public record CodecData(Class<?> clazz, long versionHash, byte[] clazzData) {
+
+    /**
+     * @param clazz     the record the codec was generated for
+     * @param clazzData the bytes of the generated codec class
+     * @return the codec data, versioned by the current schema of the record
+     */
+    public static CodecData of(Class<? extends Record> clazz, byte[] clazzData) {
+        return new CodecData(clazz, RecordSchema.of(clazz).fingerprint(), clazzData);
+    }
+
+    /**
+     * @return {@code true} if the record still has the layout the codec was generated for
+     */
+    public boolean isCurrent() {
+        return clazz.isRecord() && versionHash == RecordSchema.of(clazz.asSubclass(Record.class)).fingerprint();
+    }
 }
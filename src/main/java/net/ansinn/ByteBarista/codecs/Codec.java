@@ -63,4 +63,47 @@ public sealed interface Codec<T extends Record> permits DynamicCodec, FixedCodec
      * @param value the record to encode
      */
     void encode(ByteArrayOutputStream outputStream, T value);
+
+    /**
+     * Advances the given {@link ByteBuffer} past one encoded record without decoding it.
+     * <p>
+     * Only what is needed to find the end of the record is read, such as the length prefixes of strings and arrays,
+     * which makes skipping suited to building offset indexes or seeking to the n-th record of a stream.
+     *
+     * @param buffer the buffer positioned at the start of an encoded record
+     */
+    void skip(ByteBuffer buffer);
+
+    /**
+     * Computes the exact number of bytes encoding the given record writes, without encoding it.
+     * <p>
+     * Buffers sized by this method hold the encoded record without needing to grow or be copied.
+     *
+     * @param value the record to measure
+     * @return the encoded size of the record in bytes
+     */
+    int sizeOf(T value);
+
+    /**
+     * Encodes the given record as its difference to a previous instance into the specified {@link ByteBuffer}.
+     * <p>
+     * The delta consists of a bitmap of the changed components followed by the changed components alone, with
+     * {@code int} and {@code long} components written as the ZigZag encoded step from their previous value. Streams of
+     * slowly changing state, such as entity snapshots sent every tick, shrink to a few bytes per record this way.
+     *
+     * @param buffer   the target buffer for binary encoding
+     * @param previous the instance the receiver already holds
+     * @param current  the record to encode
+     */
+    void encodeDelta(ByteBuffer buffer, T previous, T current);
+
+    /**
+     * Decodes a delta written by {@link #encodeDelta(ByteBuffer, Record, Record)} from the given {@link ByteBuffer},
+     * taking every unchanged component from the previous instance.
+     *
+     * @param buffer   the buffer positioned at the start of an encoded delta
+     * @param previous the instance the delta was encoded against
+     * @return the decoded record instance
+     */
+    T decodeDelta(ByteBuffer buffer, T previous);
 }
@@ -31,7 +31,9 @@ import java.nio.ReadOnlyBufferException;
  * @see Codec
  * @author Gunter Ansinn
  */
-public record DynamicCodec<T extends Record>(MethodHandle bufferDecode, MethodHandle streamDecode, MethodHandle bufferEncode, MethodHandle streamEncode) implements Codec<T> {
+public record DynamicCodec<T extends Record>(MethodHandle bufferDecode, MethodHandle streamDecode, MethodHandle bufferEncode, MethodHandle streamEncode,
+                                             MethodHandle bufferSkip, MethodHandle encodedSize, MethodHandle deltaEncode,
+                                             MethodHandle deltaDecode) implements Codec<T> {
 
     /**
      * Decodes a record from the provided {@link ByteBuffer} without performing any safety checks.
@@ -113,7 +115,98 @@ public record DynamicCodec<T extends Record>(MethodHandle bufferDecode, MethodHa
     @Override
     public void encode(ByteArrayOutputStream outputStream, T value) {
         try {
-            streamDecode().invokeExact(outputStream, value);
+            streamEncode().invokeExact(outputStream, value);
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Dynamic Codec. This indicates an error in generated code.");
+        }
+    }
+
+    /**
+     * Advances the provided {@link ByteBuffer} past one encoded record without decoding it or performing any safety
+     * checks.
+     * <p>
+     * Only length prefixes, presence bitmaps and subtype tags are read, everything else is stepped over.
+     *
+     * @param buffer the {@link ByteBuffer} positioned at the start of an encoded record
+     * @throws BufferUnderflowException if the buffer ends before the record does
+     * @throws IllegalStateException if a length prefix or tag is malformed, or the skipping logic fails due to
+     * internal code generation errors
+     */
+    @Override
+    public void skip(ByteBuffer buffer) {
+        try {
+            bufferSkip().invokeExact(buffer);
+        } catch (BufferUnderflowException | IllegalStateException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Dynamic Codec. This indicates an error in generated code.");
+        }
+    }
+
+    /**
+     * Computes the exact number of bytes {@link #encode(ByteBuffer, Record)} writes for the given record, without
+     * encoding it.
+     *
+     * @param value the record instance to measure
+     * @return the encoded size of the record in bytes
+     * @throws IllegalStateException if the sizing logic fails due to internal code generation errors
+     */
+    @Override
+    public int sizeOf(T value) {
+        try {
+            return (int) encodedSize().invokeExact(value);
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Dynamic Codec. This indicates an error in generated code.");
+        }
+    }
+
+    /**
+     * Encodes the delta from a previous to a current record into the provided {@link ByteBuffer} without performing
+     * any safety checks.
+     *
+     * @param buffer   the {@link ByteBuffer} to write the delta to
+     * @param previous the record instance the receiver already holds
+     * @param current  the record instance to encode
+     * @throws BufferOverflowException if the buffer does not have enough space
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     * @throws IllegalStateException if the record has more components than delta encoding supports, or the encoding
+     * logic fails due to internal code generation errors
+     */
+    @Override
+    public void encodeDelta(ByteBuffer buffer, T previous, T current) {
+        if (deltaEncode() == null)
+            throw new IllegalStateException("Delta encoding supports at most " + Long.SIZE + " components.");
+
+        try {
+            deltaEncode().invokeExact(buffer, previous, current);
+        } catch (BufferOverflowException | ReadOnlyBufferException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Dynamic Codec. This indicates an error in generated code.");
+        }
+    }
+
+    /**
+     * Decodes a delta against a previous record from the provided {@link ByteBuffer} without performing any safety
+     * checks.
+     *
+     * @param buffer   the {@link ByteBuffer} containing the encoded delta
+     * @param previous the record instance the delta was encoded against
+     * @return the decoded record of type {@code T}
+     * @throws BufferUnderflowException if the buffer does not contain enough data
+     * @throws IllegalStateException if the record has more components than delta encoding supports, or the decoding
+     * logic fails due to internal code generation errors
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T decodeDelta(ByteBuffer buffer, T previous) {
+        if (deltaDecode() == null)
+            throw new IllegalStateException("Delta encoding supports at most " + Long.SIZE + " components.");
+
+        try {
+            return (T) deltaDecode().invokeExact(buffer, previous);
+        } catch (BufferUnderflowException exception) {
+            throw exception;
         } catch (Throwable throwable) {
             throw new IllegalStateException("Unexpected failure in Dynamic Codec. This indicates an error in generated code.");
         }
@@ -0,0 +1,39 @@
+package net.ansinn.ByteBarista.codecs;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares two encoded fixed size records by some of their components, reading just those components in place. No
+ * record is decoded, so comparing allocates nothing.
+ * <p>
+ * The comparison is backed by a generated {@link MethodHandle} of type {@code (ByteBuffer, int, ByteBuffer, int)int},
+ * which reads each component at its offset from the given record offsets and compares it like the component's type
+ * would, moving on to the next component on a tie.
+ *
+ * @param compare the generated comparison
+ * @see net.ansinn.ByteBarista.CodecManager#getFieldComparator(Class, String...)
+ * @see net.ansinn.ByteBarista.FixedLayout
+ * @author Gunter Ansinn
+ */
+public record FieldComparator(MethodHandle compare) {
+
+    /**
+     * Compares the records starting at the given offsets of two buffers, leaving their positions untouched.
+     *
+     * @param left        the buffer holding the first record
+     * @param leftOffset  the offset of the first record
+     * @param right       the buffer holding the second record
+     * @param rightOffset the offset of the second record
+     * @return a negative number, zero or a positive number if the first record sorts before, with or after the second
+     */
+    public int compare(ByteBuffer left, int leftOffset, ByteBuffer right, int rightOffset) {
+        try {
+            return (int) compare().invokeExact(left, leftOffset, right, rightOffset);
+        } catch (IndexOutOfBoundsException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Field Comparator. This indicates an error in generated code.");
+        }
+    }
+}
@@ -2,9 +2,14 @@ package net.ansinn.ByteBarista.codecs;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.lang.foreign.MemorySegment;
 import java.lang.invoke.MethodHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A {@code FixedCodec} is a safety-enforcing wrapper around a {@link DynamicCodec}
@@ -97,4 +102,98 @@ public record FixedCodec<T extends Record>(int size, DynamicCodec<T> internalCod
     public void encode(ByteArrayOutputStream outputStream, T value) {
         internalCodec().encode(outputStream, value);
     }
+
+    /**
+     * Advances the provided {@link ByteBuffer} past one encoded record.
+     * <p>
+     * This method checks that the buffer holds a whole record, and then moves its position by the codec's fixed size.
+     *
+     * @param buffer the {@link ByteBuffer} positioned at the start of an encoded record
+     * @throws IllegalStateException if the buffer's remaining data is smaller than the codec's size
+     */
+    @Override
+    public void skip(ByteBuffer buffer) {
+        if (buffer.remaining() < size())
+            throw new IllegalStateException("Attempt to skip in buffer smaller than codec data.");
+        buffer.position(buffer.position() + size);
+    }
+
+    /**
+     * Returns the codec's fixed size, which every record encodes to.
+     *
+     * @param value the record of type {@code T} to measure
+     * @return the codec's fixed size
+     */
+    @Override
+    public int sizeOf(T value) {
+        return size;
+    }
+
+    /**
+     * Encodes the delta from a previous to a current record into the provided {@link ByteBuffer}.
+     * <p>
+     * A delta is shorter than the codec's fixed size whenever any component is unchanged, and can only be longer by
+     * its changed bitmap and the steps of integers, so no size check is performed up front.
+     *
+     * @param buffer   the {@link ByteBuffer} where the delta will be encoded
+     * @param previous the record of type {@code T} the receiver already holds
+     * @param current  the record of type {@code T} to encode
+     */
+    @Override
+    public void encodeDelta(ByteBuffer buffer, T previous, T current) {
+        internalCodec().encodeDelta(buffer, previous, current);
+    }
+
+    /**
+     * Decodes a delta against a previous record from the provided {@link ByteBuffer}.
+     *
+     * @param buffer   the {@link ByteBuffer} from which the delta will be decoded
+     * @param previous the record of type {@code T} the delta was encoded against
+     * @return the decoded record of type {@code T}
+     */
+    @Override
+    public T decodeDelta(ByteBuffer buffer, T previous) {
+        return internalCodec().decodeDelta(buffer, previous);
+    }
+
+    /**
+     * Creates a lazy {@link Stream} decoding every record between the buffer's position and limit.
+     * <p>
+     * The stream is backed by a {@code SIZED}, {@code SUBSIZED} and {@code ORDERED} spliterator that splits at record
+     * boundaries, so calling {@link Stream#parallel()} spreads decoding over the fork/join pool without copying any
+     * bytes. Records are decoded using the buffer's byte order and the buffer's own position is left untouched.
+     *
+     * @param buffer the buffer holding a whole number of encoded records
+     * @return a stream of the decoded records
+     * @throws IllegalArgumentException if the remaining bytes are not a whole number of records
+     */
+    public Stream<T> stream(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer, "Buffer cannot be null.");
+        return stream(MemorySegment.ofBuffer(buffer), buffer.order());
+    }
+
+    /**
+     * Creates a lazy {@link Stream} decoding every record in the given segment in big endian order.
+     * <p>
+     * Behaves like {@link #stream(ByteBuffer)}, but also covers segments larger than 2 GB such as whole memory-mapped
+     * snapshot files. For parallel streams the segment must be accessible from the fork/join worker threads, i.e. it
+     * must not belong to a confined arena.
+     *
+     * @param segment the segment holding a whole number of encoded records
+     * @return a stream of the decoded records
+     * @throws IllegalArgumentException if the segment is not a whole number of records
+     */
+    public Stream<T> stream(MemorySegment segment) {
+        Objects.requireNonNull(segment, "Segment cannot be null.");
+        return stream(segment, ByteOrder.BIG_ENDIAN);
+    }
+
+    private Stream<T> stream(MemorySegment segment, ByteOrder order) {
+        if (size <= 0)
+            throw new IllegalStateException("Cannot stream records of a codec without a positive size.");
+        if (segment.byteSize() % size != 0)
+            throw new IllegalArgumentException("Segment of " + segment.byteSize() + " bytes does not hold a whole number of " + size + " byte records.");
+
+        return StreamSupport.stream(new FixedRecordSpliterator<>(this, segment, order), false);
+    }
 }
@@ -0,0 +1,107 @@
+package net.ansinn.ByteBarista.codecs;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over a contiguous run of records encoded by a {@link FixedCodec}.
+ * <p>
+ * Since every record has the same encoded size, the range is tracked purely as record indices and splitting is an
+ * exact halving of that range at a record boundary. No bytes are copied when splitting; each spliterator only creates
+ * a {@link ByteBuffer} view over its own part of the segment when it starts decoding. Views are limited to
+ * {@link Integer#MAX_VALUE} bytes, so segments larger than that are walked in several windows.
+ *
+ * @param <T> the record type being decoded
+ * @see FixedCodec#stream(ByteBuffer)
+ * @see FixedCodec#stream(MemorySegment)
+ * @author Gunter Ansinn
+ */
+final class FixedRecordSpliterator<T extends Record> implements Spliterator<T> {
+
+    private static final int CHARACTERISTICS = SIZED | SUBSIZED | ORDERED | NONNULL | IMMUTABLE;
+
+    private final FixedCodec<T> codec;
+    private final MemorySegment segment;
+    private final ByteOrder order;
+    private final int size;
+    private final long fence;
+
+    private long index;
+
+    private ByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    FixedRecordSpliterator(FixedCodec<T> codec, MemorySegment segment, ByteOrder order) {
+        this(codec, segment, order, 0, segment.byteSize() / codec.size());
+    }
+
+    private FixedRecordSpliterator(FixedCodec<T> codec, MemorySegment segment, ByteOrder order, long origin, long fence) {
+        this.codec = codec;
+        this.segment = segment;
+        this.order = order;
+        this.size = codec.size();
+        this.index = origin;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+
+        if (index >= fence)
+            return false;
+
+        action.accept(decodeNext());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+
+        while (index < fence)
+            action.accept(decodeNext());
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        var remaining = fence - index;
+        if (remaining < 2)
+            return null;
+
+        var middle = index + remaining / 2;
+        var prefix = new FixedRecordSpliterator<>(codec, segment, order, index, middle);
+
+        index = middle;
+        window = null;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    private T decodeNext() {
+        if (window == null || index >= windowEnd) {
+            var count = Math.min(fence - index, Integer.MAX_VALUE / size);
+            window = segment.asSlice(index * size, count * size).asByteBuffer().order(order);
+            windowStart = index;
+            windowEnd = index + count;
+        }
+
+        window.position((int) (index - windowStart) * size);
+        index++;
+        return codec.decode(window);
+    }
+}
@@ -0,0 +1,99 @@
+package net.ansinn.ByteBarista.codecs;
+
+import net.ansinn.ByteBarista.KeyHelpers;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
+/**
+ * A {@code KeyCodec} writes records in an order preserving form, so that encoded records compare as unsigned bytes in
+ * the same order as their components do, the first component deciding first. Encoded keys can therefore be sorted,
+ * binary searched and indexed without decoding them, using {@link KeyHelpers#compare(byte[], byte[])} and its
+ * overloads.
+ * <p>
+ * Every component is written as laid out by {@link KeyHelpers}, regardless of encoding annotations such as
+ * {@link net.ansinn.ByteBarista.annotations.VarInt}, which would break the order. Optional components are led by a
+ * byte that is {@code 0} if they are absent, so absent values sort first, and nested records are written in place.
+ * <p>
+ * Like {@link DynamicCodec}, the codec is backed by generated {@link MethodHandle}s and performs no size checks of
+ * its own.
+ *
+ * @param <T> the record type this codec operates on
+ * @see net.ansinn.ByteBarista.CodecManager#getKeyCodec(Class)
+ * @author Gunter Ansinn
+ */
+public record KeyCodec<T extends Record>(MethodHandle keyDecode, MethodHandle keyEncode) {
+
+    private static final int INITIAL_SCRATCH = 64;
+    private static final ThreadLocal<ByteBuffer[]> SCRATCH = ThreadLocal.withInitial(() -> new ByteBuffer[]{ByteBuffer.allocate(INITIAL_SCRATCH)});
+
+    /**
+     * Decodes a record from its key.
+     *
+     * @param buffer the buffer holding the key
+     * @return the decoded record
+     * @throws BufferUnderflowException if the buffer does not contain the whole key
+     * @throws IllegalStateException    if the key holds an invalid escape or the generated code fails
+     */
+    @SuppressWarnings("unchecked")
+    public T decode(ByteBuffer buffer) {
+        try {
+            return (T) keyDecode().invokeExact(buffer);
+        } catch (BufferUnderflowException | IllegalStateException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Key Codec. This indicates an error in generated code.");
+        }
+    }
+
+    /**
+     * Writes the key of a record.
+     *
+     * @param buffer the buffer to write the key into
+     * @param value  the record to encode
+     * @throws BufferOverflowException if the buffer does not have enough space
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     */
+    public void encode(ByteBuffer buffer, T value) {
+        try {
+            keyEncode().invokeExact(buffer, value);
+        } catch (BufferOverflowException | ReadOnlyBufferException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Key Codec. This indicates an error in generated code.");
+        }
+    }
+
+    /**
+     * Encodes the key of a record into an array of its own, growing a per thread scratch buffer as needed.
+     *
+     * @param value the record to encode
+     * @return the key of the record
+     */
+    public byte[] toKey(T value) {
+        var holder = SCRATCH.get();
+
+        while (true) {
+            var scratch = holder[0].clear();
+            try {
+                encode(scratch, value);
+                return Arrays.copyOf(scratch.array(), scratch.position());
+            } catch (BufferOverflowException exception) {
+                holder[0] = ByteBuffer.allocate(Math.multiplyExact(scratch.capacity(), 2));
+            }
+        }
+    }
+
+    /**
+     * Compares two records by their keys.
+     *
+     * @return a negative number, zero or a positive number if {@code left} sorts before, with or after {@code right}
+     */
+    public int compare(T left, T right) {
+        return KeyHelpers.compare(toKey(left), toKey(right));
+    }
+}
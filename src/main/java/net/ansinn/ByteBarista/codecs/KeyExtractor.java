@@ -0,0 +1,44 @@
+package net.ansinn.ByteBarista.codecs;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the key of an encoded record straight from its encoding, reading only the components making up the key.
+ * <p>
+ * The key is the order preserving form the {@link KeyCodec} of a key record writes: the key record's components name
+ * components of the encoded record, and the extractor writes their values in the key record's order. Extracting the
+ * key of an encoded record therefore yields exactly the bytes {@link KeyCodec#encode} writes for a key record holding
+ * the same values, without decoding the encoded record. Components in front of the last key component are skipped by
+ * reading their length prefixes only, components after it aren't touched at all.
+ * <p>
+ * The extraction is backed by a generated {@link MethodHandle} of type {@code (ByteBuffer, ByteBuffer)void}.
+ *
+ * @param extract the generated extraction
+ * @see net.ansinn.ByteBarista.CodecManager#getKeyExtractor(Class, Class)
+ * @author Gunter Ansinn
+ */
+public record KeyExtractor(MethodHandle extract) {
+
+    /**
+     * Writes the key of the record starting at the position of {@code record} into {@code key}. The record's buffer is
+     * left positioned after the last key component.
+     *
+     * @param record the buffer holding the encoded record
+     * @param key    the buffer the key is written to
+     * @throws BufferUnderflowException if the record's buffer ends before its last key component
+     * @throws BufferOverflowException  if the key doesn't fit into the key buffer
+     * @throws IllegalStateException    if a length prefix in front of a key component is corrupt
+     */
+    public void extract(ByteBuffer record, ByteBuffer key) {
+        try {
+            extract().invokeExact(record, key);
+        } catch (BufferUnderflowException | BufferOverflowException | IllegalStateException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unexpected failure in Key Extractor. This indicates an error in generated code.");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.ansinn.ByteBarista.codegen;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.RecordComponent;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.*;
+
+/**
+ * Emits calls reading and writing length prefixed primitive array components through the bulk copies in
+ * {@link net.ansinn.ByteBarista.ArrayHelpers}, so that generated code never loops over elements itself.
+ *
+ * @author Gunter Ansinn
+ */
+public final class ArrayEmitter {
+
+    private ArrayEmitter() {}
+
+    /**
+     * @param type the type of a record component
+     * @return {@code true} if the type is an array of primitives
+     */
+    public static boolean isPrimitiveArray(Class<?> type) {
+        return type.isArray() && type.getComponentType().isPrimitive();
+    }
+
+    /**
+     * Emits a read from the {@link java.nio.ByteBuffer} on top of the stack, leaving the decoded array.
+     */
+    public static void emitBufferRead(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, BUFFER_DESC, "get", true);
+    }
+
+    /**
+     * Emits a write of the array on top of the stack into the {@link java.nio.ByteBuffer} below it.
+     */
+    public static void emitBufferWrite(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, BUFFER_DESC, "put", false);
+    }
+
+    /**
+     * Emits a read from the {@link java.io.ByteArrayInputStream} on top of the stack, leaving the decoded array.
+     */
+    public static void emitStreamRead(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, INPUT_DESC, "read", true);
+    }
+
+    /**
+     * Emits a write of the array on top of the stack into the {@link java.io.ByteArrayOutputStream} below it.
+     */
+    public static void emitStreamWrite(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, OUTPUT_DESC, "write", false);
+    }
+
+    /**
+     * Names the {@link net.ansinn.ByteBarista.ArrayHelpers} methods handling arrays of the given element type, e.g.
+     * {@code "Ints"} for {@code getInts} and {@code putInts}.
+     *
+     * @param elementType the primitive element type of the array
+     * @return the suffix of the helper methods for that element type
+     */
+    public static String helperSuffix(Class<?> elementType) {
+        return switch (elementType.getName()) {
+            case "long" -> "Longs";
+            case "int" -> "Ints";
+            case "short" -> "Shorts";
+            case "byte" -> "Bytes";
+            case "double" -> "Doubles";
+            case "float" -> "Floats";
+            case "char" -> "Chars";
+            case "boolean" -> "Booleans";
+            default -> throw new IllegalStateException("Unsupported array element type: " + elementType.getName());
+        };
+    }
+
+    private static void emitCall(CodeBuilder builder, RecordComponent component, ClassDesc io, String verb, boolean read) {
+        var type = component.getType();
+        var typeDesc = ClassDesc.ofDescriptor(type.descriptorString());
+        var descriptor = read
+                ? MethodTypeDesc.of(typeDesc, io)
+                : MethodTypeDesc.of(ConstantDescs.CD_void, io, typeDesc);
+
+        builder.invokestatic(ARRAY_HELPER_DESC, verb + helperSuffix(type.getComponentType()), descriptor);
+    }
+}
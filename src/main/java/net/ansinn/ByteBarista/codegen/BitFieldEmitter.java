@@ -0,0 +1,88 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.BitFieldLayout;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.reflect.RecordComponent;
+import java.util.function.Consumer;
+
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.storeType;
+
+/**
+ * Emits the shift and mask code packing a {@link BitFieldLayout.Group} into a single {@code long} word and unpacking
+ * it again. Reading and writing the word itself is left to the buffer and stream builders, which hand it to the
+ * matching helper in {@link net.ansinn.ByteBarista.NumericHelpers}.
+ *
+ * @author Gunter Ansinn
+ */
+public final class BitFieldEmitter {
+
+    private BitFieldEmitter() {}
+
+    /**
+     * Emits bytecode leaving the packed word of a group on the stack.
+     *
+     * @param builder    the {@link CodeBuilder} used to emit bytecode instructions
+     * @param components the components of the record
+     * @param group      the group being packed
+     * @param loader     emits bytecode pushing the value of a component
+     */
+    public static void emitPack(CodeBuilder builder, RecordComponent[] components, BitFieldLayout.Group group, Consumer<RecordComponent> loader) {
+        builder.lconst_0();
+
+        for (var i = group.first(); i < group.end(); i++) {
+            var component = components[i];
+            var width = BitFieldLayout.bitWidth(component);
+            var shift = BitFieldLayout.shiftOf(components, group, i);
+
+            loader.accept(component);
+            if (component.getType() != long.class)
+                builder.i2l();
+            if (width < Long.SIZE)
+                builder.loadConstant(BitFieldLayout.maskOf(width)).land();
+            if (shift > 0)
+                builder.loadConstant(shift).lshl();
+
+            builder.lor();
+        }
+    }
+
+    /**
+     * Emits bytecode splitting the packed word on top of the stack into its components, storing each into the slot
+     * reserved for it.
+     *
+     * @param builder    the {@link CodeBuilder} used to emit bytecode instructions
+     * @param components the components of the record
+     * @param group      the group being unpacked
+     * @param slots      the local slot of every component, indexed like {@code components}
+     */
+    public static void emitUnpack(CodeBuilder builder, RecordComponent[] components, BitFieldLayout.Group group, int[] slots) {
+        var word = builder.allocateLocal(TypeKind.LONG);
+        builder.lstore(word);
+
+        for (var i = group.first(); i < group.end(); i++) {
+            var component = components[i];
+            var width = BitFieldLayout.bitWidth(component);
+            var shift = BitFieldLayout.shiftOf(components, group, i);
+
+            builder.lload(word);
+            if (shift > 0)
+                builder.loadConstant(shift).lushr();
+            if (width < Long.SIZE)
+                builder.loadConstant(BitFieldLayout.maskOf(width)).land();
+
+            switch (component.getType().getName()) {
+                case "long" -> {}
+                case "int", "boolean" -> builder.l2i();
+                case "short" -> builder.l2i().i2s();
+                case "char" -> builder.l2i().i2c();
+                case "byte" -> builder.l2i().i2b();
+                default -> throw new IllegalStateException("Unexpected bit field type: " + component.getType().getName());
+            }
+
+            slots[i] = builder.allocateLocal(TypeKind.from(component.getType()));
+            storeType(builder, component, slots[i]);
+        }
+    }
+}
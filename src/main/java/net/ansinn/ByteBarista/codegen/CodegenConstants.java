@@ -16,12 +16,50 @@ public final class CodegenConstants {
     // TYPE WRAPPERS
     public static final ClassDesc BUFFER_DESC = ClassDesc.of("java.nio.ByteBuffer");
     public static final ClassDesc HELPER_DESC = ClassDesc.of("net.ansinn.ByteBarista.NumericHelpers");
+    public static final ClassDesc ARRAY_HELPER_DESC = ClassDesc.of("net.ansinn.ByteBarista.ArrayHelpers");
+    public static final ClassDesc STRING_HELPER_DESC = ClassDesc.of("net.ansinn.ByteBarista.StringHelpers");
+    public static final ClassDesc KEY_HELPER_DESC = ClassDesc.of("net.ansinn.ByteBarista.KeyHelpers");
     public static final ClassDesc INPUT_DESC = ClassDesc.of("java.io.ByteArrayInputStream");
     public static final ClassDesc OUTPUT_DESC = ClassDesc.of("java.io.ByteArrayOutputStream");
+    public static final ClassDesc UNDERFLOW_DESC = ClassDesc.of("java.nio.BufferUnderflowException");
 
 
     public static final MethodTypeDesc BUFFER_LONG_LOAD = MethodTypeDesc.of(ConstantDescs.CD_long, BUFFER_DESC);
     public static final MethodTypeDesc BUFFER_INT_LOAD = MethodTypeDesc.of(ConstantDescs.CD_int, BUFFER_DESC);
+    public static final MethodTypeDesc BUFFER_LONG_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_long);
+    public static final MethodTypeDesc BUFFER_INT_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_int);
+
+    public static final MethodTypeDesc BUFFER_BITS_LOAD = MethodTypeDesc.of(ConstantDescs.CD_long, BUFFER_DESC, ConstantDescs.CD_int);
+    public static final MethodTypeDesc BUFFER_BITS_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_long, ConstantDescs.CD_int);
+
+    public static final MethodTypeDesc STREAM_LONG_LOAD = MethodTypeDesc.of(ConstantDescs.CD_long, INPUT_DESC);
+    public static final MethodTypeDesc STREAM_INT_LOAD = MethodTypeDesc.of(ConstantDescs.CD_int, INPUT_DESC);
+    public static final MethodTypeDesc STREAM_LONG_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ConstantDescs.CD_long);
+    public static final MethodTypeDesc STREAM_INT_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ConstantDescs.CD_int);
+
+    public static final MethodTypeDesc STREAM_BITS_LOAD = MethodTypeDesc.of(ConstantDescs.CD_long, INPUT_DESC, ConstantDescs.CD_int);
+    public static final MethodTypeDesc STREAM_BITS_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ConstantDescs.CD_long, ConstantDescs.CD_int);
+
+    public static final MethodTypeDesc BUFFER_SKIP = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC);
+    public static final MethodTypeDesc BUFFER_SKIP_BYTES = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_int);
+
+    public static final MethodTypeDesc INT_SIZE = MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int);
+    public static final MethodTypeDesc LONG_SIZE = MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_long);
+    public static final MethodTypeDesc STRING_SIZE = MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_String);
+    public static final MethodTypeDesc ARRAY_SIZE = MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int, ConstantDescs.CD_int);
+
+    public static final MethodTypeDesc BUFFER_STRING_LOAD = MethodTypeDesc.of(ConstantDescs.CD_String, BUFFER_DESC);
+    public static final MethodTypeDesc BUFFER_STRING_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_String);
+    public static final MethodTypeDesc STREAM_STRING_LOAD = MethodTypeDesc.of(ConstantDescs.CD_String, INPUT_DESC);
+    public static final MethodTypeDesc STREAM_STRING_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ConstantDescs.CD_String);
+
+    public static final MethodTypeDesc PUT_LONG = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_long);
+    public static final MethodTypeDesc PUT_INT = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_int);
+    public static final MethodTypeDesc PUT_SHORT = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_short);
+    public static final MethodTypeDesc PUT_BYTE = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_byte);
+    public static final MethodTypeDesc PUT_DOUBLE = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_double);
+    public static final MethodTypeDesc PUT_FLOAT = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_float);
+    public static final MethodTypeDesc PUT_CHAR = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_char);
 
     public static final MethodTypeDesc INT_DESC = MethodTypeDesc.ofDescriptor("()I");
     public static final MethodTypeDesc SHORT_DESC = MethodTypeDesc.ofDescriptor("()S");
@@ -29,4 +67,13 @@ public final class CodegenConstants {
 
     public static final MethodTypeDesc WRITE_BYTE = MethodTypeDesc.ofDescriptor("(I)V");
 
+    public static final MethodTypeDesc SET_POSITION = MethodTypeDesc.of(BUFFER_DESC, ConstantDescs.CD_int);
+    public static final MethodTypeDesc GET_LONG_AT = MethodTypeDesc.ofDescriptor("(I)J");
+    public static final MethodTypeDesc GET_INT_AT = MethodTypeDesc.ofDescriptor("(I)I");
+    public static final MethodTypeDesc GET_SHORT_AT = MethodTypeDesc.ofDescriptor("(I)S");
+    public static final MethodTypeDesc GET_BYTE_AT = MethodTypeDesc.ofDescriptor("(I)B");
+    public static final MethodTypeDesc GET_DOUBLE_AT = MethodTypeDesc.ofDescriptor("(I)D");
+    public static final MethodTypeDesc GET_FLOAT_AT = MethodTypeDesc.ofDescriptor("(I)F");
+    public static final MethodTypeDesc GET_CHAR_AT = MethodTypeDesc.ofDescriptor("(I)C");
+
 }
\ No newline at end of file
@@ -5,7 +5,7 @@ import java.lang.reflect.RecordComponent;
 
 /**
  * Utility class for typed JVM bytecode operations related to loading and storing
- * primitive record components. This class provides helpers to emit the correct
+ * primitive and reference record components. This class provides helpers to emit the correct
  * {@link CodeBuilder} instructions for primitive types when working with local
  * variable slots and stack-based construction.
  *
@@ -37,6 +37,8 @@ public final class DecoderUtils {
             builder.dload(index);
         else if (type == float.class)
             builder.fload(index);
+        else if (!type.isPrimitive())
+            builder.aload(index);
         else
             builder.iload(index);
     }
@@ -58,6 +60,8 @@ public final class DecoderUtils {
             builder.dstore(index);
         else if (type == float.class)
             builder.fstore(index);
+        else if (!type.isPrimitive())
+            builder.astore(index);
         else
             builder.istore(index);
     }
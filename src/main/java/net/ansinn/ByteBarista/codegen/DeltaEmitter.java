@@ -0,0 +1,197 @@
+package net.ansinn.ByteBarista.codegen;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.RecordComponent;
+import java.util.function.Consumer;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.DOUBLE_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.FLOAT_DESC;
+
+/**
+ * Emits the comparisons behind delta encoding, which writes a record as its difference to a previous instance.
+ * <p>
+ * A delta starts with a changed bitmap holding one bit per component, the first component taking the most significant
+ * bit, written as the smallest whole number of bytes holding all bits. It is followed by the changed components alone:
+ * {@code int} and {@code long} components as the ZigZag encoded difference to their previous value, which takes a
+ * single byte for small steps, changed booleans not at all since they can only have flipped, and all other components
+ * exactly as the regular encoder writes them. Changed optional components are led by a byte telling whether they are
+ * present now.
+ * <p>
+ * Components are compared like {@link java.util.Objects#equals}, except that floating point values are compared by
+ * {@link Double#compare}, arrays by their elements and nested records component by component, so that a nested record
+ * holding an array is unchanged as long as the array's elements are.
+ *
+ * @author Gunter Ansinn
+ */
+public final class DeltaEmitter {
+
+    private static final ClassDesc ARRAYS_DESC = ClassDesc.of("java.util.Arrays");
+    private static final ClassDesc OBJECTS_DESC = ClassDesc.of("java.util.Objects");
+
+    private DeltaEmitter() {}
+
+    /**
+     * @param clazz the record to inspect
+     * @return {@code true} if the changed bitmap of the record fits into a {@code long}
+     */
+    public static boolean supports(Class<? extends Record> clazz) {
+        return clazz.getRecordComponents().length <= Long.SIZE;
+    }
+
+    /**
+     * @param components the components of a record
+     * @return the number of bytes the changed bitmap of the record occupies
+     * @throws IllegalStateException if the record has more components than fit a 64 bit bitmap
+     */
+    public static int bitmapBytes(RecordComponent[] components) {
+        if (components.length > Long.SIZE)
+            throw new IllegalStateException("Delta encoding supports at most " + Long.SIZE + " components.");
+
+        return (components.length + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * @param components the components of the record
+     * @param index      index of the component within the record
+     * @return the position of the component's bit within the changed bitmap
+     */
+    public static int shiftOf(RecordComponent[] components, int index) {
+        return bitmapBytes(components) * Byte.SIZE - 1 - index;
+    }
+
+    /**
+     * @param components the components of the record
+     * @param index      index of the component within the record
+     * @return the changed bitmap with only the component's bit set
+     */
+    public static long maskOf(RecordComponent[] components, int index) {
+        return 1L << shiftOf(components, index);
+    }
+
+    /**
+     * @param component the record component to inspect
+     * @return {@code true} if a changed component is written as the difference to its previous value
+     */
+    public static boolean isArithmetic(RecordComponent component) {
+        return component.getType() == int.class || component.getType() == long.class;
+    }
+
+    /**
+     * Emits bytecode comparing every component of a previous and a current record, computing the changed bitmap.
+     *
+     * @param builder    the {@link CodeBuilder} used to emit bytecode instructions
+     * @param components the components of the record
+     * @param previous   emits bytecode pushing the previous value of a component
+     * @param current    emits bytecode pushing the current value of a component
+     * @return the local slot holding the bitmap as a {@code long}
+     */
+    public static int emitChangedBitmap(CodeBuilder builder, RecordComponent[] components,
+                                        Consumer<RecordComponent> previous, Consumer<RecordComponent> current) {
+        var bitmap = builder.allocateLocal(TypeKind.LONG);
+        builder.lconst_0().lstore(bitmap);
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var same = builder.newLabel();
+
+            previous.accept(component);
+            current.accept(component);
+            emitIfEqual(builder, component.getType(), same);
+            builder
+                    .lload(bitmap)
+                    .loadConstant(maskOf(components, i))
+                    .lor()
+                    .lstore(bitmap)
+                    .labelBinding(same);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Emits a jump to {@code same} if the two values on top of the stack are equal, consuming both. Floating point
+     * values are compared like {@link Double#compare}, so that a change of sign on zero is still a change, arrays
+     * are compared by their elements and nested records component by component.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type    the type of both values
+     * @param same    the label jumped to when the values are equal
+     */
+    public static void emitIfEqual(CodeBuilder builder, Class<?> type, Label same) {
+        emitIfEqual(builder, type, same, 0);
+    }
+
+    private static void emitIfEqual(CodeBuilder builder, Class<?> type, Label same, int depth) {
+        // Records nested deeper than they are inlined fall back to their own equals
+        if (type.isRecord() && depth < NestedRecords.MAX_INLINE_DEPTH)
+            emitIfRecordEqual(builder, type, same, depth);
+        else if (type == long.class)
+            builder.lcmp().ifeq(same);
+        else if (type == double.class)
+            builder
+                    .invokestatic(DOUBLE_DESC, "compare", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_double, ConstantDescs.CD_double))
+                    .ifeq(same);
+        else if (type == float.class)
+            builder
+                    .invokestatic(FLOAT_DESC, "compare", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_float, ConstantDescs.CD_float))
+                    .ifeq(same);
+        else if (type.isPrimitive())
+            builder.if_icmpeq(same);
+        else if (type.isArray()) {
+            var array = ClassDesc.ofDescriptor(type.descriptorString());
+            builder
+                    .invokestatic(ARRAYS_DESC, "equals", MethodTypeDesc.of(ConstantDescs.CD_boolean, array, array))
+                    .ifne(same);
+        } else
+            builder
+                    .invokestatic(OBJECTS_DESC, "equals", MethodTypeDesc.of(ConstantDescs.CD_boolean, ConstantDescs.CD_Object, ConstantDescs.CD_Object))
+                    .ifne(same);
+    }
+
+    /**
+     * Emits a jump to {@code same} if the two records on top of the stack are the same instance, both {@code null} or
+     * equal in every component, consuming both. A record's own {@code equals} compares array components by identity,
+     * which would flag every record holding an array as changed.
+     */
+    private static void emitIfRecordEqual(CodeBuilder builder, Class<?> type, Label same, int depth) {
+        var owner = ClassDesc.ofDescriptor(type.descriptorString());
+        var current = builder.allocateLocal(TypeKind.REFERENCE);
+        var previous = builder.allocateLocal(TypeKind.REFERENCE);
+        var changed = builder.newLabel();
+
+        builder
+                .astore(current)
+                .astore(previous)
+                .aload(previous)
+                .aload(current)
+                .if_acmpeq(same)
+                .aload(previous)
+                .ifnull(changed)
+                .aload(current)
+                .ifnull(changed);
+
+        for (var component : type.getRecordComponents()) {
+            var next = builder.newLabel();
+            var accessor = MethodTypeDesc.of(ClassDesc.ofDescriptor(component.getType().descriptorString()));
+
+            builder
+                    .aload(previous)
+                    .invokevirtual(owner, component.getName(), accessor)
+                    .aload(current)
+                    .invokevirtual(owner, component.getName(), accessor);
+            emitIfEqual(builder, component.getType(), next, depth + 1);
+            builder
+                    .goto_(changed)
+                    .labelBinding(next);
+        }
+
+        builder
+                .goto_(same)
+                .labelBinding(changed);
+    }
+}
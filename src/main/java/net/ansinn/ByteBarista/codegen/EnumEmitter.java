@@ -0,0 +1,62 @@
+package net.ansinn.ByteBarista.codegen;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DirectMethodHandleDesc;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodHandleDesc;
+import java.lang.constant.MethodTypeDesc;
+
+/**
+ * Emits the bytecode mapping enum constants to and from their ordinals.
+ * <p>
+ * Decoding looks the ordinal up in the enum's constants array. Rather than calling {@code values()}, which clones the
+ * array on every call, the array is loaded with {@code ldc} from a dynamic constant bootstrapped through
+ * {@link java.lang.invoke.ConstantBootstraps#invoke}. The JVM resolves it once per generated class and hands out the
+ * same array from then on, so decoding an enum allocates nothing. The array never escapes the generated code, so it
+ * can't be modified behind its back.
+ *
+ * @author Gunter Ansinn
+ */
+public final class EnumEmitter {
+
+    private EnumEmitter() {}
+
+    /**
+     * Describes the dynamic constant holding the constants of an enum, resolved by a single call to its
+     * {@code values()} method.
+     *
+     * @param enumType the enum whose constants are described
+     * @return the dynamic constant holding {@code enumType.values()}
+     */
+    public static DynamicConstantDesc<Object> constantsDesc(Class<?> enumType) {
+        var enumDesc = ClassDesc.of(enumType.getName());
+        var arrayDesc = enumDesc.arrayType();
+        var values = MethodHandleDesc.ofMethod(DirectMethodHandleDesc.Kind.STATIC, enumDesc, "values", MethodTypeDesc.of(arrayDesc));
+
+        return DynamicConstantDesc.ofNamed(ConstantDescs.BSM_INVOKE, "values", arrayDesc, values);
+    }
+
+    /**
+     * Emits bytecode replacing the ordinal on top of the stack with the matching enum constant.
+     *
+     * @param builder  the {@link CodeBuilder} used to emit bytecode instructions
+     * @param enumType the enum being decoded
+     */
+    public static void emitConstantOf(CodeBuilder builder, Class<?> enumType) {
+        builder
+                .ldc(constantsDesc(enumType))
+                .swap()
+                .aaload();
+    }
+
+    /**
+     * Emits bytecode replacing the enum constant on top of the stack with its ordinal.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     */
+    public static void emitOrdinal(CodeBuilder builder) {
+        builder.invokevirtual(ConstantDescs.CD_Enum, "ordinal", MethodTypeDesc.of(ConstantDescs.CD_int));
+    }
+}
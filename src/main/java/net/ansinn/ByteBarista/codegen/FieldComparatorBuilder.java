@@ -0,0 +1,267 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.BitFieldLayout;
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.FixedLayout;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.codecs.FieldComparator;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.DOUBLE_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.FLOAT_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.KEY_HELPER_DESC;
+
+/**
+ * Generates a {@link FieldComparator} comparing two encoded fixed size records by a list of their components.
+ * <p>
+ * Every component is located by {@link FixedLayout} and read with the absolute getters of {@link ByteBuffer} at its
+ * offset from the start of each record, then compared with the {@code compare} method of its boxed type. Unsigned
+ * encodings are widened first, bit fields are shifted out of their packed word and narrowed like the decoders do,
+ * enums are compared by ordinal and {@link FixedLength} strings and byte arrays as unsigned bytes. A component whose
+ * path starts with {@code '-'} is compared in descending order.
+ *
+ * @author Gunter Ansinn
+ */
+public final class FieldComparatorBuilder {
+
+    private static final String COMPARE = "compare";
+    private static final MethodTypeDesc COMPARE_DESC = MethodTypeDesc.of(ConstantDescs.CD_int, BUFFER_DESC, ConstantDescs.CD_int, BUFFER_DESC, ConstantDescs.CD_int);
+    private static final MethodTypeDesc RANGE_COMPARE_DESC = MethodTypeDesc.of(ConstantDescs.CD_int, BUFFER_DESC, ConstantDescs.CD_int,
+            BUFFER_DESC, ConstantDescs.CD_int, ConstantDescs.CD_int);
+    private static final MethodTypeDesc ABSOLUTE_BITS_LOAD = MethodTypeDesc.of(ConstantDescs.CD_long, BUFFER_DESC, ConstantDescs.CD_int, ConstantDescs.CD_int);
+
+    private static final ClassDesc INTEGER_DESC = ClassDesc.of("java.lang.Integer");
+    private static final ClassDesc LONG_DESC = ClassDesc.of("java.lang.Long");
+
+    private FieldComparatorBuilder() {}
+
+    /**
+     * Generates and defines a comparator of the given components.
+     *
+     * @param recordClazz the fixed size record compared
+     * @param fields      the paths of the compared components in order of precedence, see {@link FixedLayout#locate}
+     * @return the generated comparator
+     * @throws IllegalStateException if the record isn't fixed size, or a component can't be compared in place
+     */
+    public static FieldComparator build(Class<? extends Record> recordClazz, List<String> fields) {
+        if (fields.isEmpty())
+            throw new IllegalStateException("A field comparator needs at least one component to compare.");
+
+        try {
+            var lookup = MethodHandles.privateLookupIn(recordClazz, MethodHandles.lookup());
+            var hidden = lookup.defineHiddenClass(emitClassBytes(recordClazz, fields), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+
+            return new FieldComparator(hidden.findStatic(hidden.lookupClass(), COMPARE,
+                    MethodType.methodType(int.class, ByteBuffer.class, int.class, ByteBuffer.class, int.class)));
+        } catch (IllegalAccessException | NoSuchMethodException exception) {
+            throw new IllegalStateException("Unable to define the field comparator of " + recordClazz.getName() + ".", exception);
+        }
+    }
+
+    private static byte[] emitClassBytes(Class<? extends Record> clazz, List<String> fields) {
+        var desc = ClassDesc.of(clazz.getName() + "$FieldComparator");
+
+        return ClassFile.of().build(desc, builder -> builder
+                .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+                .withMethod(COMPARE, COMPARE_DESC, ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                        methodBuilder -> methodBuilder.withCode(codeBuilder -> emitCompare(codeBuilder, clazz, fields))));
+    }
+
+    /**
+     * Emits the comparison of each component in turn, returning the first result that isn't a tie.
+     */
+    private static void emitCompare(CodeBuilder builder, Class<? extends Record> clazz, List<String> fields) {
+        for (var field : fields) {
+            var descending = field.startsWith("-");
+            var slot = FixedLayout.locate(clazz, descending ? field.substring(1) : field);
+            var tie = builder.newLabel();
+
+            // Descending components simply swap the records being compared
+            var first = descending ? 2 : 0;
+            var second = descending ? 0 : 2;
+
+            if (!slot.isPacked() && slot.component().isAnnotationPresent(FixedLength.class))
+                emitRangeCompare(builder, slot, first, second);
+            else {
+                var kind = emitRead(builder, slot, first);
+                emitRead(builder, slot, second);
+                emitTypeCompare(builder, kind);
+            }
+
+            builder
+                    .dup()
+                    .ifeq(tie)
+                    .ireturn()
+                    .labelBinding(tie)
+                    .pop();
+        }
+
+        builder
+                .iconst_0()
+                .ireturn();
+    }
+
+    /**
+     * Emits the unsigned comparison of the bytes of two {@link FixedLength} components.
+     */
+    private static void emitRangeCompare(CodeBuilder builder, FixedLayout.Slot slot, int first, int second) {
+        var type = slot.component().getType();
+        if (type != String.class && type != byte[].class)
+            throw new IllegalStateException("@FixedLength component " + slot.component().getName()
+                    + " can only be compared if it is a string or byte array.");
+
+        emitIndex(builder, slot, first);
+        emitIndex(builder, slot, second);
+        builder
+                .loadConstant(ClassUtils.fixedLengthSize(slot.component()))
+                .invokestatic(KEY_HELPER_DESC, "compare", RANGE_COMPARE_DESC);
+    }
+
+    /**
+     * Emits bytecode pushing the buffer in {@code bufferSlot} and the absolute index of the component within it.
+     */
+    private static void emitIndex(CodeBuilder builder, FixedLayout.Slot slot, int bufferSlot) {
+        builder
+                .aload(bufferSlot)
+                .iload(bufferSlot + 1)
+                .loadConstant(slot.offset())
+                .iadd();
+    }
+
+    /**
+     * Emits bytecode reading a component of the record whose buffer and offset are held in {@code bufferSlot} and the
+     * slot after it.
+     *
+     * @return the kind the value is compared as, {@code int}, {@code long}, {@code float} or {@code double}
+     */
+    private static TypeKind emitRead(CodeBuilder builder, FixedLayout.Slot slot, int bufferSlot) {
+        var component = slot.component();
+        var type = component.getType();
+        emitIndex(builder, slot, bufferSlot);
+
+        // Bit fields are shifted out of their packed word and narrowed like the generated decoders do
+        if (slot.isPacked()) {
+            builder
+                    .loadConstant(slot.groupBytes())
+                    .invokestatic(HELPER_DESC, "getBits", ABSOLUTE_BITS_LOAD);
+            if (slot.shift() > 0)
+                builder.loadConstant(slot.shift()).lushr();
+
+            var width = BitFieldLayout.bitWidth(component);
+            if (width < Long.SIZE)
+                builder.loadConstant(BitFieldLayout.maskOf(width)).land();
+
+            switch (type.getName()) {
+                case "long" -> {
+                    return TypeKind.LONG;
+                }
+                case "short" -> builder.l2i().i2s();
+                case "char" -> builder.l2i().i2c();
+                case "byte" -> builder.l2i().i2b();
+                default -> builder.l2i();
+            }
+            return TypeKind.INT;
+        }
+
+        if (type.isEnum()) {
+            emitUnsigned(builder, ClassUtils.enumWidth(type));
+            return TypeKind.INT;
+        }
+
+        return switch (type.getName()) {
+            case "long" -> {
+                if (component.isAnnotationPresent(UnsignedByte.class))
+                    emitUnsigned(builder, Byte.BYTES);
+                else if (component.isAnnotationPresent(UnsignedShort.class))
+                    emitUnsigned(builder, Short.BYTES);
+                else if (component.isAnnotationPresent(UnsignedInteger.class)) {
+                    builder
+                            .invokevirtual(BUFFER_DESC, "getInt", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int))
+                            .invokestatic(INTEGER_DESC, "toUnsignedLong", MethodTypeDesc.of(ConstantDescs.CD_long, ConstantDescs.CD_int));
+                    yield TypeKind.LONG;
+                }
+                else {
+                    builder.invokevirtual(BUFFER_DESC, "getLong", MethodTypeDesc.of(ConstantDescs.CD_long, ConstantDescs.CD_int));
+                    yield TypeKind.LONG;
+                }
+                builder.i2l();
+                yield TypeKind.LONG;
+            }
+            case "int" -> {
+                if (component.isAnnotationPresent(UnsignedByte.class))
+                    emitUnsigned(builder, Byte.BYTES);
+                else if (component.isAnnotationPresent(UnsignedShort.class))
+                    emitUnsigned(builder, Short.BYTES);
+                else
+                    builder.invokevirtual(BUFFER_DESC, "getInt", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int));
+                yield TypeKind.INT;
+            }
+            case "short" -> {
+                builder.invokevirtual(BUFFER_DESC, "getShort", MethodTypeDesc.of(ConstantDescs.CD_short, ConstantDescs.CD_int));
+                yield TypeKind.INT;
+            }
+            case "byte" -> {
+                builder.invokevirtual(BUFFER_DESC, "get", MethodTypeDesc.of(ConstantDescs.CD_byte, ConstantDescs.CD_int));
+                yield TypeKind.INT;
+            }
+            case "char" -> {
+                builder.invokevirtual(BUFFER_DESC, "getChar", MethodTypeDesc.of(ConstantDescs.CD_char, ConstantDescs.CD_int));
+                yield TypeKind.INT;
+            }
+            case "float" -> {
+                builder.invokevirtual(BUFFER_DESC, "getFloat", MethodTypeDesc.of(ConstantDescs.CD_float, ConstantDescs.CD_int));
+                yield TypeKind.FLOAT;
+            }
+            case "double" -> {
+                builder.invokevirtual(BUFFER_DESC, "getDouble", MethodTypeDesc.of(ConstantDescs.CD_double, ConstantDescs.CD_int));
+                yield TypeKind.DOUBLE;
+            }
+            default -> throw new IllegalStateException("Component " + component.getName() + " of type "
+                    + type.getTypeName() + " can't be compared in place.");
+        };
+    }
+
+    /**
+     * Emits an unsigned read of the given width at the index on top of the stack, leaving an {@code int}.
+     */
+    private static void emitUnsigned(CodeBuilder builder, int width) {
+        switch (width) {
+            case Byte.BYTES -> builder
+                    .invokevirtual(BUFFER_DESC, "get", MethodTypeDesc.of(ConstantDescs.CD_byte, ConstantDescs.CD_int))
+                    .loadConstant(0xFF)
+                    .iand();
+            case Short.BYTES -> builder
+                    .invokevirtual(BUFFER_DESC, "getShort", MethodTypeDesc.of(ConstantDescs.CD_short, ConstantDescs.CD_int))
+                    .loadConstant(0xFFFF)
+                    .iand();
+            default -> builder.invokevirtual(BUFFER_DESC, "getInt", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int));
+        }
+    }
+
+    /**
+     * Emits the comparison of the two values of the given kind on top of the stack.
+     */
+    private static void emitTypeCompare(CodeBuilder builder, TypeKind kind) {
+        switch (kind) {
+            case LONG -> builder.invokestatic(LONG_DESC, "compare", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_long, ConstantDescs.CD_long));
+            case FLOAT -> builder.invokestatic(FLOAT_DESC, "compare", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_float, ConstantDescs.CD_float));
+            case DOUBLE -> builder.invokestatic(DOUBLE_DESC, "compare", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_double, ConstantDescs.CD_double));
+            default -> builder.invokestatic(INTEGER_DESC, "compare", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int, ConstantDescs.CD_int));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.RecordComponent;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.*;
+
+/**
+ * Emits calls reading and writing {@link FixedLength} strings and primitive arrays through
+ * {@link net.ansinn.ByteBarista.StringHelpers} and {@link net.ansinn.ByteBarista.ArrayHelpers}, passing the fixed
+ * length as a constant.
+ *
+ * @author Gunter Ansinn
+ */
+public final class FixedLengthEmitter {
+
+    private FixedLengthEmitter() {}
+
+    /**
+     * Emits a read from the {@link java.nio.ByteBuffer} on top of the stack, leaving the decoded value.
+     */
+    public static void emitBufferRead(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, BUFFER_DESC, "get", true);
+    }
+
+    /**
+     * Emits a write of the value on top of the stack into the {@link java.nio.ByteBuffer} below it.
+     */
+    public static void emitBufferWrite(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, BUFFER_DESC, "put", false);
+    }
+
+    /**
+     * Emits a read from the {@link java.io.ByteArrayInputStream} on top of the stack, leaving the decoded value.
+     */
+    public static void emitStreamRead(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, INPUT_DESC, "read", true);
+    }
+
+    /**
+     * Emits a write of the value on top of the stack into the {@link java.io.ByteArrayOutputStream} below it.
+     */
+    public static void emitStreamWrite(CodeBuilder builder, RecordComponent component) {
+        emitCall(builder, component, OUTPUT_DESC, "write", false);
+    }
+
+    private static void emitCall(CodeBuilder builder, RecordComponent component, ClassDesc io, String verb, boolean read) {
+        var type = component.getType();
+        var length = component.getAnnotation(FixedLength.class).value();
+        // Validates the length and the component type
+        ClassUtils.fixedLengthSize(component);
+
+        var typeDesc = ClassDesc.ofDescriptor(type.descriptorString());
+        var descriptor = read
+                ? MethodTypeDesc.of(typeDesc, io, ConstantDescs.CD_int)
+                : MethodTypeDesc.of(ConstantDescs.CD_void, io, typeDesc, ConstantDescs.CD_int);
+
+        builder.loadConstant(length);
+        if (type.equals(String.class))
+            builder.invokestatic(STRING_HELPER_DESC, verb + "FixedString", descriptor);
+        else
+            builder.invokestatic(ARRAY_HELPER_DESC, verb + ArrayEmitter.helperSuffix(type.getComponentType()), descriptor);
+    }
+}
@@ -0,0 +1,295 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.codecs.KeyCodec;
+import net.ansinn.ByteBarista.codegen.buffer.BufferDecoderBuilder;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.KEY_HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.loadType;
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.storeType;
+
+/**
+ * Generates the {@link KeyCodec} of a record as a hidden class holding an order preserving encoder and decoder,
+ * which write and read every component through the matching method of {@link net.ansinn.ByteBarista.KeyHelpers}.
+ * <p>
+ * Nested records are always inlined, since keys are meant to be short. Records nesting themselves, sealed interfaces
+ * and arrays other than {@code byte[]} can't be part of a key.
+ *
+ * @author Gunter Ansinn
+ */
+public final class KeyCodecBuilder {
+
+    private static final String DECODE_KEY = "decodeKey";
+    private static final String ENCODE_KEY = "encodeKey";
+
+    private static final MethodTypeDesc KEY_PRESENCE_LOAD = MethodTypeDesc.of(ConstantDescs.CD_boolean, BUFFER_DESC);
+    private static final MethodTypeDesc KEY_PRESENCE_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_boolean);
+    private static final MethodTypeDesc KEY_UNSIGNED_LOAD = MethodTypeDesc.of(ConstantDescs.CD_int, BUFFER_DESC, ConstantDescs.CD_int);
+    private static final MethodTypeDesc KEY_UNSIGNED_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_int, ConstantDescs.CD_int);
+
+    private KeyCodecBuilder() {}
+
+    /**
+     * Generates and defines the key codec of a record.
+     *
+     * @param recordClazz the record to generate a key codec for
+     * @return the key codec of the record
+     * @param <T> the record type
+     * @throws IllegalStateException if the record can't be written as a key, or its package isn't open to this library
+     */
+    public static <T extends Record> KeyCodec<T> build(Class<T> recordClazz) {
+        try {
+            var lookup = MethodHandles.privateLookupIn(recordClazz, MethodHandles.lookup());
+            var hidden = lookup.defineHiddenClass(emitClassBytes(recordClazz), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            var clazz = hidden.lookupClass();
+
+            return new KeyCodec<>(
+                    hidden.findStatic(clazz, DECODE_KEY, MethodType.methodType(Object.class, ByteBuffer.class))
+                            .asType(MethodType.methodType(Record.class, ByteBuffer.class)),
+                    hidden.findStatic(clazz, ENCODE_KEY, MethodType.methodType(void.class, ByteBuffer.class, Object.class))
+                            .asType(MethodType.methodType(void.class, ByteBuffer.class, Record.class))
+            );
+        } catch (IllegalAccessException | NoSuchMethodException exception) {
+            throw new IllegalStateException("Unable to define the key codec of " + recordClazz.getName() + ".", exception);
+        }
+    }
+
+    private static byte[] emitClassBytes(Class<? extends Record> clazz) {
+        var desc = ClassDesc.of(clazz.getName() + "$KeyCodec");
+        var resolver = ClassHierarchyResolver.defaultResolver()
+                .orElse(ClassHierarchyResolver.ofClassLoading(clazz.getClassLoader()));
+
+        return ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(resolver)).build(
+                desc,
+                builder -> {
+                    builder.withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+
+                    emitDecoder(builder, clazz);
+                    emitEncoder(builder, clazz);
+                }
+        );
+    }
+
+    /**
+     * Emits a public static {@code (ByteBuffer)Object} method reading a record from its key.
+     */
+    private static void emitDecoder(ClassBuilder classBuilder, Class<? extends Record> clazz) {
+        classBuilder.withMethod(DECODE_KEY, MethodTypeDesc.of(ConstantDescs.CD_Object, BUFFER_DESC), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> {
+                    emitRecordRead(codeBuilder, clazz, new ArrayList<>());
+                    codeBuilder.areturn();
+                }));
+    }
+
+    /**
+     * Emits a public static {@code (ByteBuffer, Object)void} method writing the key of a record.
+     */
+    private static void emitEncoder(ClassBuilder classBuilder, Class<? extends Record> clazz) {
+        classBuilder.withMethod(ENCODE_KEY, MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_Object), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> {
+                    emitRecordWrite(codeBuilder, clazz, () -> codeBuilder.aload(1), new ArrayList<>());
+                    codeBuilder.return_();
+                }));
+    }
+
+    /**
+     * Emits bytecode reading every component of a record and leaving the constructed instance on the stack.
+     */
+    private static void emitRecordRead(CodeBuilder builder, Class<? extends Record> clazz, List<Class<?>> enclosing) {
+        enter(clazz, enclosing);
+
+        var components = clazz.getRecordComponents();
+        var slots = new int[components.length];
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // Optional components are led by a byte telling whether they are present
+            if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                builder
+                        .aload(0)
+                        .invokestatic(KEY_HELPER_DESC, "getKeyBoolean", KEY_PRESENCE_LOAD)
+                        .ifeq(absent);
+                emitValueRead(builder, valueType, enclosing);
+                OptionalEmitter.emitWrap(builder, type, valueType);
+                builder
+                        .goto_(end)
+                        .labelBinding(absent);
+                OptionalEmitter.emitEmpty(builder, type);
+                builder.labelBinding(end);
+            }
+
+            else
+                emitValueRead(builder, type, enclosing);
+
+            slots[i] = builder.allocateLocal(TypeKind.from(type));
+            storeType(builder, component, slots[i]);
+        }
+
+        var clazzDesc = ClassDesc.of(clazz.getName());
+        builder.new_(clazzDesc).dup();
+
+        for (var i = 0; i < components.length; i++)
+            loadType(builder, components[i], slots[i]);
+
+        builder.invokespecial(clazzDesc, ConstantDescs.INIT_NAME, MethodTypeDesc.ofDescriptor(BufferDecoderBuilder.buildSignature(components)));
+        enclosing.removeLast();
+    }
+
+    /**
+     * Emits bytecode reading a value of the given type, leaving it on the stack.
+     */
+    @SuppressWarnings("unchecked")
+    private static void emitValueRead(CodeBuilder builder, Class<?> type, List<Class<?>> enclosing) {
+        if (type.isRecord()) {
+            emitRecordRead(builder, (Class<? extends Record>) type, enclosing);
+            return;
+        }
+
+        builder.aload(0);
+
+        if (type.isEnum()) {
+            builder
+                    .loadConstant(ClassUtils.enumWidth(type))
+                    .invokestatic(KEY_HELPER_DESC, "getKeyUnsigned", KEY_UNSIGNED_LOAD);
+            EnumEmitter.emitConstantOf(builder, type);
+        }
+
+        else
+            builder.invokestatic(KEY_HELPER_DESC, "getKey" + helperSuffix(type), MethodTypeDesc.of(desc(type), BUFFER_DESC));
+    }
+
+    /**
+     * Emits bytecode writing every component of the record pushed by {@code loader}.
+     */
+    private static void emitRecordWrite(CodeBuilder builder, Class<? extends Record> clazz, Runnable loader, List<Class<?>> enclosing) {
+        enter(clazz, enclosing);
+
+        var clazzDesc = ClassDesc.of(clazz.getName());
+        var record = builder.allocateLocal(TypeKind.REFERENCE);
+        loader.run();
+        builder
+                .checkcast(clazzDesc)
+                .astore(record);
+
+        for (var component : clazz.getRecordComponents()) {
+            var type = component.getType();
+            Runnable load = () -> builder
+                    .aload(record)
+                    .invokevirtual(clazzDesc, component.getName(), ClassUtils.getField(component));
+
+            // Optional components are led by a byte telling whether they are present, so absent values sort first
+            if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var value = builder.allocateLocal(TypeKind.REFERENCE);
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                load.run();
+                builder
+                        .astore(value)
+                        .aload(value);
+                OptionalEmitter.emitIfAbsent(builder, type, absent);
+                builder
+                        .aload(0)
+                        .iconst_1()
+                        .invokestatic(KEY_HELPER_DESC, "putKeyBoolean", KEY_PRESENCE_STORE);
+                emitValueWrite(builder, valueType, () -> {
+                    builder.aload(value);
+                    OptionalEmitter.emitUnwrap(builder, type, valueType);
+                }, enclosing);
+                builder
+                        .goto_(end)
+                        .labelBinding(absent)
+                        .aload(0)
+                        .iconst_0()
+                        .invokestatic(KEY_HELPER_DESC, "putKeyBoolean", KEY_PRESENCE_STORE)
+                        .labelBinding(end);
+            }
+
+            else
+                emitValueWrite(builder, type, load, enclosing);
+        }
+
+        enclosing.removeLast();
+    }
+
+    /**
+     * Emits bytecode writing the value of the given type pushed by {@code loader}.
+     */
+    @SuppressWarnings("unchecked")
+    private static void emitValueWrite(CodeBuilder builder, Class<?> type, Runnable loader, List<Class<?>> enclosing) {
+        if (type.isRecord()) {
+            emitRecordWrite(builder, (Class<? extends Record>) type, loader, enclosing);
+            return;
+        }
+
+        builder.aload(0);
+        loader.run();
+
+        if (type.isEnum()) {
+            EnumEmitter.emitOrdinal(builder);
+            builder
+                    .loadConstant(ClassUtils.enumWidth(type))
+                    .invokestatic(KEY_HELPER_DESC, "putKeyUnsigned", KEY_UNSIGNED_STORE);
+        }
+
+        else
+            builder.invokestatic(KEY_HELPER_DESC, "putKey" + helperSuffix(type), MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, desc(type)));
+    }
+
+    private static void enter(Class<?> clazz, List<Class<?>> enclosing) {
+        if (enclosing.contains(clazz))
+            throw new IllegalStateException("Record " + clazz.getName() + " nests itself and can't be written as a key.");
+
+        enclosing.add(clazz);
+    }
+
+    /**
+     * Names the {@link net.ansinn.ByteBarista.KeyHelpers} methods handling the given type, e.g. {@code "Int"} for
+     * {@code getKeyInt} and {@code putKeyInt}.
+     */
+    static String helperSuffix(Class<?> type) {
+        if (type == String.class)
+            return "String";
+        if (type == byte[].class)
+            return "Bytes";
+
+        return switch (type.getName()) {
+            case "boolean" -> "Boolean";
+            case "byte" -> "Byte";
+            case "short" -> "Short";
+            case "char" -> "Char";
+            case "int" -> "Int";
+            case "long" -> "Long";
+            case "float" -> "Float";
+            case "double" -> "Double";
+            default -> throw new IllegalStateException("Unsupported key component type: " + type.getTypeName() + ".");
+        };
+    }
+
+    private static ClassDesc desc(Class<?> type) {
+        return type.describeConstable().orElseThrow();
+    }
+}
@@ -0,0 +1,270 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.BitFieldLayout;
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.codecs.KeyExtractor;
+import net.ansinn.ByteBarista.codegen.buffer.BufferDecoderBuilder;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_BITS_LOAD;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_INT_LOAD;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_SKIP;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_SKIP_BYTES;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.INT_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.KEY_HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.loadType;
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.storeType;
+
+/**
+ * Generates the {@link KeyExtractor} writing the key of an encoded record, as a hidden class holding a single
+ * {@code extractKey} method.
+ * <p>
+ * The generated method walks the encoded record up to its last key component. Key components are read like the
+ * record's decoder reads them and kept in locals, everything else in between is skipped by {@link SkipEmitter}. The
+ * values are then written in the order of the key record's components, through the same
+ * {@link net.ansinn.ByteBarista.KeyHelpers} methods the key record's {@link net.ansinn.ByteBarista.codecs.KeyCodec}
+ * uses. Enums are never mapped to their constants, their encoded ordinal is written as is.
+ * <p>
+ * Key components must be required primitives, strings, byte arrays or enums of the same type in both records.
+ *
+ * @author Gunter Ansinn
+ */
+public final class KeyExtractorBuilder {
+
+    private static final String EXTRACT_KEY = "extractKey";
+
+    private static final MethodTypeDesc KEY_UNSIGNED_STORE = MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_int, ConstantDescs.CD_int);
+
+    private KeyExtractorBuilder() {}
+
+    /**
+     * Generates and defines the key extractor of a record.
+     *
+     * @param recordClazz the encoded record
+     * @param keyClazz    the key record, whose components name the key components of the encoded record
+     * @return the key extractor
+     * @throws IllegalStateException if a key component is missing from the encoded record, differs in type or can't
+     * be part of a key
+     */
+    public static KeyExtractor build(Class<? extends Record> recordClazz, Class<? extends Record> keyClazz) {
+        try {
+            var lookup = MethodHandles.privateLookupIn(recordClazz, MethodHandles.lookup());
+            var hidden = lookup.defineHiddenClass(emitClassBytes(recordClazz, keyClazz), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+
+            return new KeyExtractor(hidden.findStatic(hidden.lookupClass(), EXTRACT_KEY,
+                    MethodType.methodType(void.class, ByteBuffer.class, ByteBuffer.class)));
+        } catch (IllegalAccessException | NoSuchMethodException exception) {
+            throw new IllegalStateException("Unable to define the key extractor of " + recordClazz.getName() + ".", exception);
+        }
+    }
+
+    private static byte[] emitClassBytes(Class<? extends Record> clazz, Class<? extends Record> keyClazz) {
+        var desc = ClassDesc.of(clazz.getName() + "$KeyExtractor");
+        var resolver = ClassHierarchyResolver.defaultResolver()
+                .orElse(ClassHierarchyResolver.ofClassLoading(clazz.getClassLoader()));
+
+        var components = clazz.getRecordComponents();
+        var keyComponents = keyClazz.getRecordComponents();
+        if (keyComponents.length == 0)
+            throw new IllegalStateException("Key record " + keyClazz.getName() + " has no components to extract.");
+
+        var sources = new int[keyComponents.length];
+        for (var i = 0; i < keyComponents.length; i++)
+            sources[i] = sourceOf(clazz, components, keyComponents[i]);
+
+        return ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(resolver)).build(
+                desc,
+                builder -> {
+                    builder.withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
+
+                    var nested = NestedRecords.withMethods(desc, "skip");
+                    builder.withMethod(EXTRACT_KEY, MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, BUFFER_DESC), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                            methodBuilder -> methodBuilder.withCode(codeBuilder -> emitExtract(codeBuilder, clazz, sources, nested)));
+
+                    nested.emitPending(builder, _ -> BUFFER_SKIP, (codeBuilder, record) -> SkipEmitter.emitSkipFunction(codeBuilder, record, nested));
+                }
+        );
+    }
+
+    /**
+     * Finds the component of the encoded record a key component refers to, checking that it can be extracted.
+     *
+     * @return the index of the component within the encoded record
+     */
+    private static int sourceOf(Class<? extends Record> clazz, RecordComponent[] components, RecordComponent keyComponent) {
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            if (!component.getName().equals(keyComponent.getName()))
+                continue;
+
+            var type = component.getType();
+            if (type != keyComponent.getType())
+                throw new IllegalStateException("Key component " + keyComponent.getName() + " is a " + keyComponent.getType().getTypeName()
+                        + " but " + clazz.getName() + " holds a " + type.getTypeName() + ".");
+            if (PresenceBitmap.isOptional(component))
+                throw new IllegalStateException("Optional component " + component.getName() + " can't be part of a key.");
+            if (!type.isPrimitive() && !type.isEnum() && type != String.class && type != byte[].class)
+                throw new IllegalStateException("Component " + component.getName() + " of type " + type.getTypeName()
+                        + " can't be extracted as part of a key.");
+
+            return i;
+        }
+
+        throw new IllegalStateException("Record " + clazz.getName() + " has no component named " + keyComponent.getName() + ".");
+    }
+
+    /**
+     * Emits bytecode reading the key components of the record in slot 0 and writing them to the key buffer in slot 1.
+     */
+    private static void emitExtract(CodeBuilder builder, Class<? extends Record> clazz, int[] sources, NestedRecords nested) {
+        nested.beginMethod(clazz);
+
+        var components = clazz.getRecordComponents();
+        var isKey = new boolean[components.length];
+        var last = -1;
+        for (var source : sources) {
+            isKey[source] = true;
+            last = Math.max(last, source);
+        }
+
+        var slots = new int[components.length];
+
+        var bitmap = -1;
+        if (PresenceBitmap.bytes(components) > 0) {
+            bitmap = builder.allocateLocal(TypeKind.LONG);
+            builder
+                    .aload(0)
+                    .loadConstant(PresenceBitmap.bytes(components))
+                    .invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD)
+                    .lstore(bitmap);
+        }
+
+        // Nothing past the last key component is read
+        for (var i = 0; i <= last; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            if (BitFieldLayout.isBitField(component) && !PresenceBitmap.isElidable(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                var needed = false;
+                for (var j = group.first(); j < group.end(); j++)
+                    needed |= isKey[j];
+
+                builder
+                        .aload(0)
+                        .loadConstant(group.bytes());
+                if (needed) {
+                    builder.invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD);
+                    BitFieldEmitter.emitUnpack(builder, components, group, slots);
+                } else
+                    builder.invokestatic(HELPER_DESC, "skip", BUFFER_SKIP_BYTES);
+
+                i = group.end() - 1;
+                continue;
+            }
+
+            // Booleans of sparse records live in their bit alone
+            if (PresenceBitmap.isElidable(component) && type == boolean.class) {
+                if (isKey[i])
+                    OptionalEmitter.emitBit(builder, bitmap, PresenceBitmap.shiftOf(components, i));
+                else
+                    continue;
+            }
+
+            // Optional components never are keys, sparse ones are filled with their default when absent
+            else if (PresenceBitmap.hasBit(component)) {
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                OptionalEmitter.emitIfClear(builder, bitmap, PresenceBitmap.maskOf(components, i), absent);
+                if (isKey[i]) {
+                    emitKeyRead(builder, component);
+                    builder
+                            .goto_(end)
+                            .labelBinding(absent);
+                    emitKeyDefault(builder, type);
+                    builder.labelBinding(end);
+                } else {
+                    SkipEmitter.emitValueSkip(builder, component, PresenceBitmap.isOptional(component) ? PresenceBitmap.valueType(component) : type, nested, 0);
+                    builder.labelBinding(absent);
+                    continue;
+                }
+            }
+
+            else if (isKey[i])
+                emitKeyRead(builder, component);
+
+            else {
+                SkipEmitter.emitValueSkip(builder, component, type, nested, 0);
+                continue;
+            }
+
+            slots[i] = builder.allocateLocal(TypeKind.from(type.isEnum() ? int.class : type));
+            if (type.isEnum())
+                builder.istore(slots[i]);
+            else
+                storeType(builder, component, slots[i]);
+        }
+
+        for (var source : sources) {
+            var component = components[source];
+            var type = component.getType();
+
+            builder.aload(1);
+            if (type.isEnum())
+                builder
+                        .iload(slots[source])
+                        .loadConstant(ClassUtils.enumWidth(type))
+                        .invokestatic(KEY_HELPER_DESC, "putKeyUnsigned", KEY_UNSIGNED_STORE);
+            else {
+                loadType(builder, component, slots[source]);
+                builder.invokestatic(KEY_HELPER_DESC, "putKey" + KeyCodecBuilder.helperSuffix(type),
+                        MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, type.describeConstable().orElseThrow()));
+            }
+        }
+
+        builder.return_();
+    }
+
+    /**
+     * Emits bytecode reading a key component, leaving enums as their ordinal.
+     */
+    private static void emitKeyRead(CodeBuilder builder, RecordComponent component) {
+        var type = component.getType();
+        if (!type.isEnum()) {
+            BufferDecoderBuilder.emitComponentRead(builder, component);
+            return;
+        }
+
+        builder.aload(0);
+        switch (ClassUtils.enumWidth(type)) {
+            case Byte.BYTES -> builder.invokestatic(HELPER_DESC, "getUnsignedByteAsInt", BUFFER_INT_LOAD);
+            case Short.BYTES -> builder.invokestatic(HELPER_DESC, "getUnsignedShortAsInt", BUFFER_INT_LOAD);
+            default -> builder.invokevirtual(BUFFER_DESC, "getInt", INT_DESC);
+        }
+    }
+
+    /**
+     * Emits bytecode pushing the value of an absent sparse key component, the ordinal {@code 0} for enums.
+     */
+    private static void emitKeyDefault(CodeBuilder builder, Class<?> type) {
+        if (type.isEnum())
+            builder.iconst_0();
+        else
+            OptionalEmitter.emitDefault(builder, type);
+    }
+}
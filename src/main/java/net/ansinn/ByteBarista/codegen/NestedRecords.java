@@ -0,0 +1,142 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.ClassUtils;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Decides how the generated codecs handle components that are records themselves.
+ * <p>
+ * Nested records are inlined into the method of their parent, so that a parent and all of its children are read or
+ * written by one straight line method without calls in between. Inlining stops once a record is nested more than
+ * {@link #MAX_INLINE_DEPTH} levels deep or once a method has inlined {@link #MAX_INLINED_COMPONENTS} components, which
+ * keeps generated methods well below the size the JIT is willing to compile. Records past either limit are emitted as
+ * private static methods of the generated class instead, one per record type, and are called from the inlined code.
+ *
+ * @author Gunter Ansinn
+ */
+public final class NestedRecords {
+
+    /**
+     * Number of record levels that are inlined into a single generated method.
+     */
+    public static final int MAX_INLINE_DEPTH = 4;
+
+    /**
+     * Number of nested components a single generated method inlines before falling back to method calls.
+     */
+    public static final int MAX_INLINED_COMPONENTS = 128;
+
+    private final ClassDesc owner;
+    private final String prefix;
+    private final Set<Class<?>> requested = new HashSet<>();
+    private final Deque<Class<? extends Record>> pending = new ArrayDeque<>();
+    private int inlined;
+
+    private NestedRecords(ClassDesc owner, String prefix) {
+        this.owner = owner;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Creates a plan that inlines every nested record regardless of its depth, for code emitted without access to the
+     * surrounding class.
+     *
+     * @return a plan that never falls back to method calls
+     */
+    public static NestedRecords inlineOnly() {
+        return new NestedRecords(null, null);
+    }
+
+    /**
+     * Creates a plan that falls back to private static methods of {@code owner} once the inlining limits are reached.
+     *
+     * @param owner  the class the generated methods are emitted into
+     * @param prefix the name prefix of the fallback methods
+     * @return a plan emitting fallback methods into the owner
+     */
+    public static NestedRecords withMethods(ClassDesc owner, String prefix) {
+        return new NestedRecords(owner, prefix);
+    }
+
+    /**
+     * Validates the record about to be emitted and resets the inlining budget for the method being generated.
+     *
+     * @param clazz the record the method is generated for
+     * @throws IllegalStateException if the record contains itself through required components, or through optional
+     * ones while every nested record is to be inlined
+     */
+    public void beginMethod(Class<? extends Record> clazz) {
+        if (ClassUtils.isInfinitelyNested(clazz))
+            throw new IllegalStateException("Record " + clazz.getName() + " is infinitely nested and cannot be generated.");
+        if (owner == null && ClassUtils.isRecursive(clazz))
+            throw new IllegalStateException("Recursive record " + clazz.getName() + " can only be generated with fallback methods.");
+
+        inlined = 0;
+    }
+
+    /**
+     * Decides whether a nested record is inlined into the current method, charging its components to the budget if so.
+     *
+     * @param clazz the nested record
+     * @param depth the depth of the nested record, where components of the method's own record are at depth 0
+     * @return {@code true} if the record is to be inlined, {@code false} if its fallback method is to be called
+     */
+    public boolean shouldInline(Class<? extends Record> clazz, int depth) {
+        if (owner == null)
+            return true;
+
+        var components = clazz.getRecordComponents().length;
+        if (depth >= MAX_INLINE_DEPTH || inlined + components > MAX_INLINED_COMPONENTS)
+            return false;
+
+        inlined += components;
+        return true;
+    }
+
+    /**
+     * @return the class the fallback methods are emitted into
+     */
+    public ClassDesc owner() {
+        return owner;
+    }
+
+    /**
+     * Returns the name of the fallback method for a record, scheduling the method to be emitted on first request.
+     *
+     * @param clazz the nested record
+     * @return the name of its fallback method
+     */
+    public String methodFor(Class<? extends Record> clazz) {
+        if (requested.add(clazz))
+            pending.add(clazz);
+
+        return prefix + "$" + clazz.getName().replace('.', '$');
+    }
+
+    /**
+     * Emits the fallback methods requested so far, including those requested while emitting them.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param type         the method type of a fallback method for the given record
+     * @param body         emits the code of a fallback method for the given record
+     */
+    public void emitPending(ClassBuilder classBuilder, Function<Class<? extends Record>, MethodTypeDesc> type,
+                            BiConsumer<CodeBuilder, Class<? extends Record>> body) {
+        for (Class<? extends Record> next; (next = pending.poll()) != null; ) {
+            var clazz = next;
+            classBuilder.withMethod(methodFor(clazz), type.apply(clazz), ClassFile.ACC_PRIVATE | ClassFile.ACC_STATIC,
+                    methodBuilder -> methodBuilder.withCode(codeBuilder -> body.accept(codeBuilder, clazz)));
+        }
+    }
+}
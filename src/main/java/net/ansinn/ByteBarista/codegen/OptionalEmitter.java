@@ -0,0 +1,244 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.PresenceBitmap;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.RecordComponent;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.DOUBLE_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.FLOAT_DESC;
+
+/**
+ * Emits the branches around components laid out by {@link PresenceBitmap}: building the bitmap from the components of
+ * a record, testing a component's bit, moving values in and out of {@link Optional} and its primitive specializations,
+ * and comparing sparse components against their defaults. Reading and writing the bitmap and the values themselves is
+ * left to the buffer and stream builders.
+ *
+ * @author Gunter Ansinn
+ */
+public final class OptionalEmitter {
+
+    private OptionalEmitter() {}
+
+    /**
+     * Emits bytecode loading every component with a bit into its own local slot and computing the presence bitmap of
+     * the record from them.
+     *
+     * @param builder    the {@link CodeBuilder} used to emit bytecode instructions
+     * @param components the components of the record
+     * @param values     receives the local slot holding each component with a bit, indexed like {@code components}
+     * @param loader     emits bytecode pushing the value of a component
+     * @return the local slot holding the bitmap as a {@code long}
+     */
+    public static int emitBitmap(CodeBuilder builder, RecordComponent[] components, int[] values, Consumer<RecordComponent> loader) {
+        var bitmap = builder.allocateLocal(TypeKind.LONG);
+        builder.lconst_0().lstore(bitmap);
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            if (!PresenceBitmap.hasBit(component))
+                continue;
+
+            var type = component.getType();
+            var kind = TypeKind.from(type);
+            var absent = builder.newLabel();
+            values[i] = builder.allocateLocal(kind);
+
+            loader.accept(component);
+            builder
+                    .storeLocal(kind, values[i])
+                    .loadLocal(kind, values[i]);
+            if (PresenceBitmap.isOptional(component))
+                emitIfAbsent(builder, type, absent);
+            else
+                emitIfDefault(builder, type, absent);
+            builder
+                    .lload(bitmap)
+                    .loadConstant(PresenceBitmap.maskOf(components, i))
+                    .lor()
+                    .lstore(bitmap)
+                    .labelBinding(absent);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Emits a jump to {@code absent} if the bit of a component is clear in the bitmap held in {@code bitmap}.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param bitmap  the local slot holding the bitmap as a {@code long}
+     * @param mask    the bit of the component, see {@link PresenceBitmap#maskOf}
+     * @param absent  the label jumped to when the component is absent
+     */
+    public static void emitIfClear(CodeBuilder builder, int bitmap, long mask, Label absent) {
+        builder
+                .lload(bitmap)
+                .loadConstant(mask)
+                .land()
+                .lconst_0()
+                .lcmp()
+                .ifeq(absent);
+    }
+
+    /**
+     * Emits a jump to {@code absent} if the optional value on top of the stack is absent, consuming the value.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type    the declared type of the component
+     * @param absent  the label jumped to when the value is absent
+     */
+    public static void emitIfAbsent(CodeBuilder builder, Class<?> type, Label absent) {
+        if (isWrapper(type))
+            builder
+                    .invokevirtual(desc(type), "isPresent", MethodTypeDesc.of(ConstantDescs.CD_boolean))
+                    .ifeq(absent);
+        else
+            builder.ifnull(absent);
+    }
+
+    /**
+     * Emits a jump to {@code absent} if the value on top of the stack equals the default of its type, consuming the
+     * value. Floating point values are compared by their bits, so that {@code -0.0} is still written.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type    the type of the value
+     * @param absent  the label jumped to when the value is the default
+     */
+    public static void emitIfDefault(CodeBuilder builder, Class<?> type, Label absent) {
+        if (type == long.class)
+            builder.lconst_0().lcmp().ifeq(absent);
+        else if (type == double.class)
+            builder
+                    .invokestatic(DOUBLE_DESC, "doubleToRawLongBits", MethodTypeDesc.of(ConstantDescs.CD_long, ConstantDescs.CD_double))
+                    .lconst_0()
+                    .lcmp()
+                    .ifeq(absent);
+        else if (type == float.class)
+            builder
+                    .invokestatic(FLOAT_DESC, "floatToRawIntBits", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_float))
+                    .ifeq(absent);
+        else if (type.isPrimitive())
+            builder.ifeq(absent);
+        else if (type.isEnum())
+            builder
+                    .invokevirtual(desc(type), "ordinal", MethodTypeDesc.of(ConstantDescs.CD_int))
+                    .ifeq(absent);
+        else if (type == String.class)
+            builder
+                    .invokevirtual(ConstantDescs.CD_String, "isEmpty", MethodTypeDesc.of(ConstantDescs.CD_boolean))
+                    .ifne(absent);
+        else
+            builder
+                    .arraylength()
+                    .ifeq(absent);
+    }
+
+    /**
+     * Emits bytecode pushing the default value of a sparse component's type.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type    the type of the component
+     */
+    public static void emitDefault(CodeBuilder builder, Class<?> type) {
+        if (type == long.class)
+            builder.lconst_0();
+        else if (type == double.class)
+            builder.dconst_0();
+        else if (type == float.class)
+            builder.fconst_0();
+        else if (type.isPrimitive())
+            builder.iconst_0();
+        else if (type.isEnum())
+            builder.getstatic(desc(type), ((Enum<?>) type.getEnumConstants()[0]).name(), desc(type));
+        else if (type == String.class)
+            builder.loadConstant("");
+        else
+            builder
+                    .iconst_0()
+                    .newarray(TypeKind.from(type.getComponentType()));
+    }
+
+    /**
+     * Emits bytecode pushing the bit of a component as an {@code int} of {@code 0} or {@code 1}, which is how sparse
+     * records store their booleans.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param bitmap  the local slot holding the bitmap as a {@code long}
+     * @param shift   the position of the component's bit, see {@link PresenceBitmap#shiftOf}
+     */
+    public static void emitBit(CodeBuilder builder, int bitmap, int shift) {
+        builder
+                .lload(bitmap)
+                .loadConstant(shift)
+                .lushr()
+                .l2i()
+                .iconst_1()
+                .iand();
+    }
+
+    /**
+     * Emits bytecode replacing the present optional value on top of the stack with the value it holds.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type      the declared type of the component
+     * @param valueType the type of the held value, see {@link PresenceBitmap#valueType}
+     */
+    public static void emitUnwrap(CodeBuilder builder, Class<?> type, Class<?> valueType) {
+        if (type == Optional.class)
+            builder
+                    .invokevirtual(desc(type), "get", MethodTypeDesc.of(ConstantDescs.CD_Object))
+                    .checkcast(desc(valueType));
+        else if (type == OptionalInt.class)
+            builder.invokevirtual(desc(type), "getAsInt", MethodTypeDesc.of(ConstantDescs.CD_int));
+        else if (type == OptionalLong.class)
+            builder.invokevirtual(desc(type), "getAsLong", MethodTypeDesc.of(ConstantDescs.CD_long));
+        else if (type == OptionalDouble.class)
+            builder.invokevirtual(desc(type), "getAsDouble", MethodTypeDesc.of(ConstantDescs.CD_double));
+    }
+
+    /**
+     * Emits bytecode replacing the decoded value on top of the stack with a present value of the component's type.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type      the declared type of the component
+     * @param valueType the type of the held value, see {@link PresenceBitmap#valueType}
+     */
+    public static void emitWrap(CodeBuilder builder, Class<?> type, Class<?> valueType) {
+        if (isWrapper(type)) {
+            var argument = type == Optional.class ? ConstantDescs.CD_Object : desc(valueType);
+            builder.invokestatic(desc(type), "of", MethodTypeDesc.of(desc(type), argument));
+        }
+    }
+
+    /**
+     * Emits bytecode pushing the absent value of the component's type.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type    the declared type of the component
+     */
+    public static void emitEmpty(CodeBuilder builder, Class<?> type) {
+        if (isWrapper(type))
+            builder.invokestatic(desc(type), "empty", MethodTypeDesc.of(desc(type)));
+        else
+            builder.aconst_null();
+    }
+
+    private static boolean isWrapper(Class<?> type) {
+        return type == Optional.class || type == OptionalInt.class || type == OptionalLong.class || type == OptionalDouble.class;
+    }
+
+    private static ClassDesc desc(Class<?> type) {
+        return ClassDesc.ofDescriptor(type.descriptorString());
+    }
+}
@@ -1,57 +1,116 @@
 package net.ansinn.ByteBarista.codegen;
 
+import net.ansinn.ByteBarista.codecs.DynamicCodec;
 import net.ansinn.ByteBarista.codegen.buffer.BufferDecoderBuilder;
 import net.ansinn.ByteBarista.codegen.buffer.BufferEncoderBuilder;
+import net.ansinn.ByteBarista.codegen.stream.StreamDecoderBuilder;
+import net.ansinn.ByteBarista.codegen.stream.StreamEncoderBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.lang.classfile.ClassFile;
-import java.lang.constant.*;
+import java.lang.classfile.ClassHierarchyResolver;
+import java.lang.constant.ClassDesc;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.nio.ByteBuffer;
 
+/**
+ * Generates the codec of a record as a hidden class holding one static method per direction and target, as emitted by
+ * {@link BufferDecoderBuilder}, {@link BufferEncoderBuilder}, {@link StreamDecoderBuilder} and
+ * {@link StreamEncoderBuilder}, along with the methods skipping an encoded record and sizing a record as emitted by
+ * {@link SkipEmitter} and {@link SizeEmitter}, and the delta encoder and decoder of records {@link DeltaEmitter}
+ * supports.
+ * <p>
+ * The hidden class is defined as a nestmate of the record through a private lookup, so records nested privately inside
+ * other classes or declared locally within methods can be encoded as well. The record's package has to be open to
+ * this library for that, which is always the case on the class path.
+ *
+ * @author Gunter Ansinn
+ */
 public final class RecordCodecBuilder {
 
+    private static final String DECODE_BUFFER = "decodeBuffer";
+    private static final String DECODE_STREAM = "decodeStream";
+    private static final String ENCODE_BUFFER = "encodeBuffer";
+    private static final String ENCODE_STREAM = "encodeStream";
+    private static final String SKIP_BUFFER = "skipBuffer";
+    private static final String SIZE_OF = "sizeOf";
+    private static final String ENCODE_DELTA = "encodeDelta";
+    private static final String DECODE_DELTA = "decodeDelta";
+
     private RecordCodecBuilder() {}
 
-    public static BundledInfo bundleInfo(Class<? extends Record> recordClazz) throws IllegalAccessException, NoSuchMethodException {
-        var lookup = MethodHandles.lookup();
-        var hidden = lookup.defineHiddenClass(emitClassBytes(recordClazz), true);
-        var clazz = hidden.lookupClass();
-        var methodType = MethodType.methodType(Object.class, ByteBuffer.class);
-
-        var loadHandle = hidden.findStatic(clazz, "loadFromBuffer", methodType);
-        var writeHandle = hidden.findStatic(clazz, "writeToBuffer", methodType);
-
-        return new BundledInfo(writeHandle, loadHandle, MethodHandleDesc.ofMethod(
-                DirectMethodHandleDesc.Kind.STATIC,
-                ClassDesc.of("net.ansinn.ByteBarista", clazz.getSimpleName() + "_Codec"),
-                "loadFromBuffer_Unsafe",
-                MethodTypeDesc.ofDescriptor("(Ljava.nio.ByteBuffer;)L" + clazz.getName())
-        ));
+    /**
+     * Generates and defines the codec of a record.
+     *
+     * @param recordClazz the record to generate a codec for
+     * @return a codec performing no size checks of its own
+     * @param <T> the record type
+     * @throws IllegalStateException if the record can't be encoded, or its package isn't open to this library
+     */
+    public static <T extends Record> DynamicCodec<T> build(Class<T> recordClazz) {
+        try {
+            var lookup = MethodHandles.privateLookupIn(recordClazz, MethodHandles.lookup());
+            var hidden = lookup.defineHiddenClass(emitClassBytes(recordClazz), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            var clazz = hidden.lookupClass();
+
+            // The generated methods deal in objects, while the codec invokes them exactly with the record type erased
+            // to Record
+            MethodHandle deltaEncode = null;
+            MethodHandle deltaDecode = null;
+            if (DeltaEmitter.supports(recordClazz)) {
+                deltaEncode = hidden.findStatic(clazz, ENCODE_DELTA, MethodType.methodType(void.class, ByteBuffer.class, Object.class, Object.class))
+                        .asType(MethodType.methodType(void.class, ByteBuffer.class, Record.class, Record.class));
+                deltaDecode = hidden.findStatic(clazz, DECODE_DELTA, MethodType.methodType(Object.class, ByteBuffer.class, Object.class))
+                        .asType(MethodType.methodType(Record.class, ByteBuffer.class, Record.class));
+            }
+
+            return new DynamicCodec<>(
+                    hidden.findStatic(clazz, DECODE_BUFFER, MethodType.methodType(Object.class, ByteBuffer.class))
+                            .asType(MethodType.methodType(Record.class, ByteBuffer.class)),
+                    hidden.findStatic(clazz, DECODE_STREAM, MethodType.methodType(Object.class, ByteArrayInputStream.class))
+                            .asType(MethodType.methodType(Record.class, ByteArrayInputStream.class)),
+                    hidden.findStatic(clazz, ENCODE_BUFFER, MethodType.methodType(void.class, ByteBuffer.class, Object.class))
+                            .asType(MethodType.methodType(void.class, ByteBuffer.class, Record.class)),
+                    hidden.findStatic(clazz, ENCODE_STREAM, MethodType.methodType(void.class, ByteArrayOutputStream.class, Object.class))
+                            .asType(MethodType.methodType(void.class, ByteArrayOutputStream.class, Record.class)),
+                    hidden.findStatic(clazz, SKIP_BUFFER, MethodType.methodType(void.class, ByteBuffer.class)),
+                    hidden.findStatic(clazz, SIZE_OF, MethodType.methodType(int.class, Object.class))
+                            .asType(MethodType.methodType(int.class, Record.class)),
+                    deltaEncode,
+                    deltaDecode
+            );
+        } catch (IllegalAccessException | NoSuchMethodException exception) {
+            throw new IllegalStateException("Unable to define the codec of " + recordClazz.getName() + ".", exception);
+        }
     }
 
     private static byte[] emitClassBytes(Class<? extends Record> clazz) {
-        var desc = ClassDesc.of("net.ansinn.ByteBarista", clazz.getSimpleName() + "_Codec");
+        var desc = ClassDesc.of(clazz.getName() + "$Codec");
+
+        // Records loaded by other class loaders than the system one still have to be resolvable for stack maps
+        var resolver = ClassHierarchyResolver.defaultResolver()
+                .orElse(ClassHierarchyResolver.ofClassLoading(clazz.getClassLoader()));
 
-        return ClassFile.of().build(
+        return ClassFile.of(ClassFile.ClassHierarchyResolverOption.of(resolver)).build(
                 desc,
                 builder -> {
-                    builder.withFlags(0);
+                    builder.withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC);
 
-                    var methodType = MethodTypeDesc.of(ConstantDescs.CD_Object, CodegenConstants.BUFFER_DESC);
+                    BufferDecoderBuilder.emitDecoder(builder, desc, DECODE_BUFFER, clazz);
+                    BufferEncoderBuilder.emitEncoder(builder, desc, ENCODE_BUFFER, clazz);
+                    StreamDecoderBuilder.emitDecoder(builder, desc, DECODE_STREAM, clazz);
+                    StreamEncoderBuilder.emitEncoder(builder, desc, ENCODE_STREAM, clazz);
+                    SkipEmitter.emitSkipper(builder, desc, SKIP_BUFFER, clazz);
+                    SizeEmitter.emitSizer(builder, desc, SIZE_OF, clazz);
 
-                    builder.withMethod("loadFromBuffer", methodType, ClassFile.ACC_STATIC, methodBuilder -> {
-                        methodBuilder.withCode(codeBuilder -> BufferDecoderBuilder.emitReadFunction(codeBuilder, clazz));
-                    });
-
-                    builder.withMethod("writeToBuffer", methodType, ClassFile.ACC_STATIC, methodBuilder -> {
-//                        methodBuilder.withCode(codeBuilder -> BufferEncoderBuilder.emitWriteFunction(codeBuilder, clazz));
-                    });
+                    if (DeltaEmitter.supports(clazz)) {
+                        BufferEncoderBuilder.emitDeltaEncoder(builder, desc, ENCODE_DELTA, clazz);
+                        BufferDecoderBuilder.emitDeltaDecoder(builder, desc, DECODE_DELTA, clazz);
+                    }
                 }
         );
     }
-
-
-    public record BundledInfo(MethodHandle safe, MethodHandle unsafe, MethodHandleDesc description) { }
-}
\ No newline at end of file
+}
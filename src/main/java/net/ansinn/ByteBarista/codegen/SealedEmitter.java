@@ -0,0 +1,168 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.SealedTypes;
+
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.instruction.SwitchCase;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DirectMethodHandleDesc;
+import java.lang.constant.DynamicCallSiteDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Emits the dispatch on the subtype of a value declared as a sealed interface, as laid out by {@link SealedTypes}.
+ * <p>
+ * Encoding finds the subtype of a value through the {@code typeSwitch} bootstrap of
+ * {@link java.lang.runtime.SwitchBootstraps}, which is what the compiler emits for pattern matching switches and which
+ * caches its answer per class, and branches on it with a {@code tableswitch}. Decoding branches on the tag read from
+ * the input with a {@code tableswitch}, or with a {@code lookupswitch} if explicit {@link net.ansinn.ByteBarista.annotations.Tag}s
+ * leave too many gaps, into code reading the subtype. Neither direction involves a map lookup or reflection.
+ *
+ * @author Gunter Ansinn
+ */
+public final class SealedEmitter {
+
+    private static final DirectMethodHandleDesc TYPE_SWITCH = ConstantDescs.ofCallsiteBootstrap(
+            ClassDesc.of("java.lang.runtime.SwitchBootstraps"), "typeSwitch", ConstantDescs.CD_CallSite, ConstantDescs.CD_Object.arrayType());
+    private static final MethodTypeDesc TYPE_SWITCH_TYPE = MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_Object, ConstantDescs.CD_int);
+    private static final ClassDesc EXCEPTION_DESC = ClassDesc.of("java.lang.IllegalStateException");
+
+    private SealedEmitter() {}
+
+    /**
+     * Emits bytecode branching on the subtype of the value held in {@code value}. The code emitted by {@code body} for
+     * a subtype finds the stack empty and has to leave it empty. Values of no known subtype, including {@code null},
+     * throw an {@link IllegalStateException}.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param sealed  the sealed interface the value is declared as
+     * @param value   the local slot holding the value
+     * @param body    emits the code writing the subtype at the given index of the hierarchy
+     */
+    public static void emitEncodeDispatch(CodeBuilder builder, Class<?> sealed, int value, IntConsumer body) {
+        var subtypes = SealedTypes.of(sealed).subtypes();
+        var labels = newLabels(builder, subtypes.size());
+        var unknown = builder.newLabel();
+        var end = builder.newLabel();
+
+        var descs = subtypes.stream().map(subtype -> ClassDesc.of(subtype.getName())).toArray(ConstantDesc[]::new);
+        builder
+                .aload(value)
+                .iconst_0()
+                .invokedynamic(DynamicCallSiteDesc.of(TYPE_SWITCH, "typeSwitch", TYPE_SWITCH_TYPE, descs))
+                .tableswitch(0, subtypes.size() - 1, unknown, cases(labels, index -> index));
+
+        for (var i = 0; i < subtypes.size(); i++) {
+            builder.labelBinding(labels[i]);
+            body.accept(i);
+            builder.goto_(end);
+        }
+
+        builder.labelBinding(unknown);
+        emitThrow(builder, "Value is null or of an unknown subtype of " + sealed.getName() + ".");
+        builder.labelBinding(end);
+    }
+
+    /**
+     * Emits bytecode branching on the tag on top of the stack, consuming it. The code emitted by {@code body} for a
+     * subtype has to push an instance of it, which is left on the stack as the sealed interface. Unknown tags throw
+     * an {@link IllegalStateException}.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param sealed  the sealed interface being decoded
+     * @param body    emits the code reading the given subtype
+     */
+    public static void emitDecodeDispatch(CodeBuilder builder, Class<?> sealed, Consumer<Class<? extends Record>> body) {
+        var hierarchy = SealedTypes.of(sealed);
+        var subtypes = hierarchy.subtypes();
+        var tags = hierarchy.tags();
+        var labels = newLabels(builder, subtypes.size());
+        var unknown = builder.newLabel();
+        var end = builder.newLabel();
+        var sealedDesc = ClassDesc.of(sealed.getName());
+
+        // Implicit tags are dense, explicit ones may be spread too far apart for a table
+        var low = hierarchy.low();
+        var high = hierarchy.high();
+        if ((long) high - low < 4L * subtypes.size())
+            builder.tableswitch(low, high, unknown, cases(labels, index -> tags[index]));
+        else
+            builder.lookupswitch(unknown, cases(labels, index -> tags[index]));
+
+        // Every branch leaves the same type behind, so the branches join without a common superclass to resolve
+        for (var i = 0; i < subtypes.size(); i++) {
+            builder.labelBinding(labels[i]);
+            body.accept(subtypes.get(i));
+            builder
+                    .checkcast(sealedDesc)
+                    .goto_(end);
+        }
+
+        builder.labelBinding(unknown);
+        emitThrow(builder, "Unknown subtype tag of " + sealed.getName() + ".");
+        builder.labelBinding(end);
+    }
+
+    /**
+     * Emits bytecode branching on the tag on top of the stack, consuming it, like
+     * {@link #emitDecodeDispatch(CodeBuilder, Class, Consumer)}. The code emitted by {@code body} for a subtype finds
+     * the stack empty and has to leave it empty, which suits code skipping over the subtype rather than reading it.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param sealed  the sealed interface being skipped
+     * @param body    emits the code skipping the given subtype
+     */
+    public static void emitSkipDispatch(CodeBuilder builder, Class<?> sealed, Consumer<Class<? extends Record>> body) {
+        var hierarchy = SealedTypes.of(sealed);
+        var subtypes = hierarchy.subtypes();
+        var tags = hierarchy.tags();
+        var labels = newLabels(builder, subtypes.size());
+        var unknown = builder.newLabel();
+        var end = builder.newLabel();
+
+        builder.lookupswitch(unknown, cases(labels, index -> tags[index]));
+
+        for (var i = 0; i < subtypes.size(); i++) {
+            builder.labelBinding(labels[i]);
+            body.accept(subtypes.get(i));
+            builder.goto_(end);
+        }
+
+        builder.labelBinding(unknown);
+        emitThrow(builder, "Unknown subtype tag of " + sealed.getName() + ".");
+        builder.labelBinding(end);
+    }
+
+    private static Label[] newLabels(CodeBuilder builder, int count) {
+        var labels = new Label[count];
+        for (var i = 0; i < count; i++)
+            labels[i] = builder.newLabel();
+
+        return labels;
+    }
+
+    private static List<SwitchCase> cases(Label[] labels, IntUnaryOperator value) {
+        var cases = new ArrayList<SwitchCase>(labels.length);
+        for (var i = 0; i < labels.length; i++)
+            cases.add(SwitchCase.of(value.applyAsInt(i), labels[i]));
+
+        return cases;
+    }
+
+    private static void emitThrow(CodeBuilder builder, String message) {
+        builder
+                .new_(EXCEPTION_DESC)
+                .dup()
+                .loadConstant(message)
+                .invokespecial(EXCEPTION_DESC, ConstantDescs.INIT_NAME, MethodTypeDesc.of(ConstantDescs.CD_void, ConstantDescs.CD_String))
+                .athrow();
+    }
+}
@@ -0,0 +1,247 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.BitFieldLayout;
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.SealedTypes;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.RecordComponent;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.ARRAY_HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.ARRAY_SIZE;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.INT_SIZE;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.LONG_SIZE;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.STRING_HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.STRING_SIZE;
+
+/**
+ * Emits code computing the number of bytes the buffer encoder writes for a record, without writing anything.
+ * <p>
+ * The emitted code follows the same layout as {@link net.ansinn.ByteBarista.codegen.buffer.BufferEncoderBuilder}.
+ * Everything of a constant size, the presence bitmap, bit field groups and records of a fixed size included, is summed
+ * up while generating and added once. Only what varies from value to value is measured at runtime: the length of
+ * strings and arrays, the LEB128 length of variable length integers, which subtype a sealed interface holds, and
+ * whether optional and {@link net.ansinn.ByteBarista.annotations.Sparse} components are written at all.
+ *
+ * @author Gunter Ansinn
+ */
+public final class SizeEmitter {
+
+    private SizeEmitter() {}
+
+    /**
+     * Emits a public static {@code (Object)int} method named {@code name} computing the encoded size of the given
+     * record, together with the private fallback methods of any records nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the sizing method
+     * @param clazz        the record class to size
+     */
+    public static void emitSizer(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_Object), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitSizeFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ConstantDescs.CD_int, ClassDesc.of(record.getName())),
+                (codeBuilder, record) -> emitSizeFunction(codeBuilder, record, nested));
+    }
+
+    /**
+     * Emits the body of a method returning the encoded size of the record in slot 0.
+     */
+    private static void emitSizeFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+
+        var total = builder.allocateLocal(TypeKind.INT);
+        builder
+                .iconst_0()
+                .istore(total);
+
+        var constant = emitRecordSize(builder, clazz, 0, total, nested, 0);
+        builder
+                .iload(total)
+                .loadConstant(constant)
+                .iadd()
+                .ireturn();
+    }
+
+    /**
+     * Emits bytecode adding the varying part of the size of the record held in {@code record} to {@code total}.
+     *
+     * @return the constant part of the size, which is left to the caller to add
+     */
+    private static int emitRecordSize(CodeBuilder builder, Class<? extends Record> clazz, int record, int total, NestedRecords nested, int depth) {
+        if (ClassUtils.isFixedSize(clazz))
+            return ClassUtils.getRecordSize(clazz);
+
+        var components = clazz.getRecordComponents();
+        var constant = PresenceBitmap.bytes(components);
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // Sparse components only count if they differ from their default, booleans never as their bit holds them
+            if (PresenceBitmap.isElidable(component)) {
+                if (type == boolean.class)
+                    continue;
+
+                var absent = builder.newLabel();
+                loadComponent(builder, component, record);
+                OptionalEmitter.emitIfDefault(builder, type, absent);
+                emitAdd(builder, total, emitValueSize(builder, component, type, total, nested, depth, () -> loadComponent(builder, component, record)));
+                builder.labelBinding(absent);
+                continue;
+            }
+
+            // Optional components count as the value they hold, and not at all when absent
+            if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var value = builder.allocateLocal(TypeKind.REFERENCE);
+                var absent = builder.newLabel();
+
+                loadComponent(builder, component, record);
+                builder
+                        .astore(value)
+                        .aload(value);
+                OptionalEmitter.emitIfAbsent(builder, type, absent);
+                emitAdd(builder, total, emitValueSize(builder, component, valueType, total, nested, depth, () -> {
+                    builder.aload(value);
+                    OptionalEmitter.emitUnwrap(builder, type, valueType);
+                }));
+                builder.labelBinding(absent);
+                continue;
+            }
+
+            if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                constant += group.bytes();
+                i = group.end() - 1;
+                continue;
+            }
+
+            constant += emitValueSize(builder, component, type, total, nested, depth, () -> loadComponent(builder, component, record));
+        }
+
+        return constant;
+    }
+
+    /**
+     * Emits bytecode adding the varying part of the size of a value to {@code total}. The type differs from the
+     * component's type for optional components, which are sized as the value they hold.
+     *
+     * @param loader emits bytecode pushing the value, only invoked if the size depends on it
+     * @return the constant part of the size, which is left to the caller to add
+     */
+    @SuppressWarnings("unchecked")
+    private static int emitValueSize(CodeBuilder builder, RecordComponent component, Class<?> type, int total, NestedRecords nested, int depth, Runnable loader) {
+        if (type.isRecord()) {
+            var clazz = (Class<? extends Record>) type;
+            if (ClassUtils.isFixedSize(clazz))
+                return ClassUtils.getRecordSize(clazz);
+
+            var slot = builder.allocateLocal(TypeKind.REFERENCE);
+            loader.run();
+            builder.astore(slot);
+
+            if (nested.shouldInline(clazz, depth))
+                return emitRecordSize(builder, clazz, slot, total, nested, depth + 1);
+
+            builder
+                    .aload(slot)
+                    .invokestatic(nested.owner(), nested.methodFor(clazz), MethodTypeDesc.of(ConstantDescs.CD_int, ClassDesc.of(clazz.getName())));
+            emitAccumulate(builder, total);
+            return 0;
+        }
+
+        // The tag is always there, the record following it depends on the subtype
+        if (SealedTypes.isSealed(type)) {
+            var hierarchy = SealedTypes.of(type);
+            var slot = builder.allocateLocal(TypeKind.REFERENCE);
+            loader.run();
+            builder.astore(slot);
+
+            SealedEmitter.emitEncodeDispatch(builder, type, slot, index -> {
+                var subtype = hierarchy.subtypes().get(index);
+                emitAdd(builder, total, emitValueSize(builder, component, subtype, total, nested, depth,
+                        () -> builder
+                                .aload(slot)
+                                .checkcast(ClassDesc.of(subtype.getName()))));
+            });
+            return hierarchy.width();
+        }
+
+        if (SkipEmitter.isConstant(component, type))
+            return SkipEmitter.sizeOf(component, type);
+
+        loader.run();
+        if (ClassUtils.isVariableLength(component)) {
+            var zigZag = component.isAnnotationPresent(ZigZag.class);
+            if (type == long.class)
+                builder.invokestatic(HELPER_DESC, zigZag ? "zigZagLongSize" : "varLongSize", LONG_SIZE);
+            else
+                builder.invokestatic(HELPER_DESC, zigZag ? "zigZagIntSize" : "varIntSize", INT_SIZE);
+        }
+
+        else if (type == String.class)
+            builder.invokestatic(STRING_HELPER_DESC, "stringSize", STRING_SIZE);
+
+        else if (ArrayEmitter.isPrimitiveArray(type))
+            builder
+                    .arraylength()
+                    .loadConstant(SkipEmitter.elementBytes(type.getComponentType()))
+                    .invokestatic(ARRAY_HELPER_DESC, "arraySize", ARRAY_SIZE);
+
+        else
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
+
+        emitAccumulate(builder, total);
+        return 0;
+    }
+
+    /**
+     * Emits bytecode adding the {@code int} on top of the stack to {@code total}, consuming it.
+     */
+    private static void emitAccumulate(CodeBuilder builder, int total) {
+        builder
+                .iload(total)
+                .iadd()
+                .istore(total);
+    }
+
+    /**
+     * Emits bytecode adding a constant number of bytes to {@code total}, which emits nothing for zero bytes.
+     */
+    private static void emitAdd(CodeBuilder builder, int total, int bytes) {
+        if (bytes == 0)
+            return;
+
+        if (bytes <= Short.MAX_VALUE)
+            builder.iinc(total, bytes);
+        else {
+            builder.loadConstant(bytes);
+            emitAccumulate(builder, total);
+        }
+    }
+
+    private static void loadComponent(CodeBuilder builder, RecordComponent component, int record) {
+        var parentClazz = ClassDesc.of(component.getDeclaringRecord().getName());
+
+        builder
+                .aload(record)
+                .checkcast(parentClazz)
+                .invokevirtual(parentClazz, component.getName(), ClassUtils.getField(component));
+    }
+}
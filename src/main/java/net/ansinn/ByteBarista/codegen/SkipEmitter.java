@@ -0,0 +1,232 @@
+package net.ansinn.ByteBarista.codegen;
+
+import net.ansinn.ByteBarista.BitFieldLayout;
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.SealedTypes;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.reflect.RecordComponent;
+
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.ARRAY_HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_BITS_LOAD;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_INT_LOAD;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_SKIP;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.BUFFER_SKIP_BYTES;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.INT_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.STRING_HELPER_DESC;
+
+/**
+ * Emits code advancing the {@link java.nio.ByteBuffer} in local slot 0 past encoded values without decoding them.
+ * <p>
+ * Values of a constant size are skipped with a single position update, and runs of them are merged into one.
+ * Strings and arrays only have their length prefix read, variable length integers only their continuation bits, and
+ * sealed interfaces their tag. Records with a fixed size are skipped as a whole, all others component by component
+ * following their {@link PresenceBitmap}, inlined or through fallback methods as planned by {@link NestedRecords}.
+ *
+ * @author Gunter Ansinn
+ */
+public final class SkipEmitter {
+
+    private SkipEmitter() {}
+
+    /**
+     * Emits a public static {@code (ByteBuffer)void} method named {@code name} skipping the given record, together with
+     * the private fallback methods of any records nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the skipping method
+     * @param clazz        the record class to skip
+     */
+    public static void emitSkipper(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, BUFFER_SKIP, ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitSkipFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder, _ -> BUFFER_SKIP, (codeBuilder, record) -> emitSkipFunction(codeBuilder, record, nested));
+    }
+
+    /**
+     * Emits the body of a {@code (ByteBuffer)void} method skipping a record, as used for the fallback methods of
+     * {@link NestedRecords}.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param clazz   the record being skipped
+     * @param nested  decides which nested records are inlined
+     */
+    public static void emitSkipFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+        emitRecordSkip(builder, clazz, nested, 0);
+        builder.return_();
+    }
+
+    /**
+     * Emits bytecode skipping a whole record.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param clazz   the record being skipped
+     * @param nested  decides which nested records are inlined
+     * @param depth   the depth of the record, {@code 0} for the record of the method being emitted
+     */
+    public static void emitRecordSkip(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth) {
+        if (ClassUtils.isFixedSize(clazz)) {
+            emitSkipBytes(builder, ClassUtils.getRecordSize(clazz));
+            return;
+        }
+
+        var components = clazz.getRecordComponents();
+        var pending = 0;
+
+        var bitmap = -1;
+        if (PresenceBitmap.bytes(components) > 0) {
+            bitmap = builder.allocateLocal(TypeKind.LONG);
+            builder
+                    .aload(0)
+                    .loadConstant(PresenceBitmap.bytes(components))
+                    .invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD)
+                    .lstore(bitmap);
+        }
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // Booleans of sparse records live in their bit alone
+            if (PresenceBitmap.isElidable(component) && type == boolean.class)
+                continue;
+
+            if (PresenceBitmap.hasBit(component)) {
+                emitSkipBytes(builder, pending);
+                pending = 0;
+
+                var absent = builder.newLabel();
+                OptionalEmitter.emitIfClear(builder, bitmap, PresenceBitmap.maskOf(components, i), absent);
+                emitValueSkip(builder, component, PresenceBitmap.isOptional(component) ? PresenceBitmap.valueType(component) : type, nested, depth);
+                builder.labelBinding(absent);
+            }
+
+            else if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                pending += group.bytes();
+                i = group.end() - 1;
+            }
+
+            else if (isConstant(component, type))
+                pending += sizeOf(component, type);
+
+            else {
+                emitSkipBytes(builder, pending);
+                pending = 0;
+                emitValueSkip(builder, component, type, nested, depth);
+            }
+        }
+
+        emitSkipBytes(builder, pending);
+    }
+
+    /**
+     * Emits bytecode skipping a value of the given type for a component. The type differs from the component's type
+     * for optional components, which are skipped as the value they hold.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param component the component the value belongs to
+     * @param type      the type of the value
+     * @param nested    decides which nested records are inlined
+     * @param depth     the depth of the record the component belongs to
+     */
+    @SuppressWarnings("unchecked")
+    public static void emitValueSkip(CodeBuilder builder, RecordComponent component, Class<?> type, NestedRecords nested, int depth) {
+        if (type.isRecord()) {
+            var record = (Class<? extends Record>) type;
+            if (ClassUtils.isFixedSize(record) || nested.shouldInline(record, depth))
+                emitRecordSkip(builder, record, nested, depth + 1);
+            else
+                builder
+                        .aload(0)
+                        .invokestatic(nested.owner(), nested.methodFor(record), BUFFER_SKIP);
+        }
+
+        else if (SealedTypes.isSealed(type)) {
+            builder.aload(0);
+            switch (SealedTypes.of(type).width()) {
+                case Byte.BYTES -> builder.invokestatic(HELPER_DESC, "getUnsignedByteAsInt", BUFFER_INT_LOAD);
+                case Short.BYTES -> builder.invokestatic(HELPER_DESC, "getUnsignedShortAsInt", BUFFER_INT_LOAD);
+                default -> builder.invokevirtual(BUFFER_DESC, "getInt", INT_DESC);
+            }
+            SealedEmitter.emitSkipDispatch(builder, type, subtype -> emitValueSkip(builder, component, subtype, nested, depth));
+        }
+
+        else if (isConstant(component, type))
+            emitSkipBytes(builder, sizeOf(component, type));
+
+        else if (ClassUtils.isVariableLength(component))
+            builder
+                    .aload(0)
+                    .invokestatic(HELPER_DESC, "skipVarInt", BUFFER_SKIP);
+
+        else if (type == String.class)
+            builder
+                    .aload(0)
+                    .invokestatic(STRING_HELPER_DESC, "skipString", BUFFER_SKIP);
+
+        else if (ArrayEmitter.isPrimitiveArray(type))
+            builder
+                    .aload(0)
+                    .loadConstant(elementBytes(type.getComponentType()))
+                    .invokestatic(ARRAY_HELPER_DESC, "skipArray", BUFFER_SKIP_BYTES);
+
+        else
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
+    }
+
+    /**
+     * @return {@code true} if every value of the given type takes the same number of bytes for the component
+     */
+    static boolean isConstant(RecordComponent component, Class<?> type) {
+        if (component.isAnnotationPresent(FixedLength.class))
+            return true;
+        if (ClassUtils.isVariableLength(component))
+            return false;
+
+        return type.isPrimitive() || type.isEnum();
+    }
+
+    static int sizeOf(RecordComponent component, Class<?> type) {
+        return ClassUtils.fieldSize(component, type);
+    }
+
+    /**
+     * @return the size of an array element, {@code 0} for booleans which are packed eight to a byte
+     */
+    static int elementBytes(Class<?> element) {
+        return switch (element.getName()) {
+            case "long", "double" -> Long.BYTES;
+            case "int", "float" -> Integer.BYTES;
+            case "short", "char" -> Short.BYTES;
+            case "byte" -> Byte.BYTES;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Emits bytecode advancing the buffer by a constant number of bytes, which emits nothing for zero bytes.
+     */
+    private static void emitSkipBytes(CodeBuilder builder, int bytes) {
+        if (bytes == 0)
+            return;
+
+        builder
+                .aload(0)
+                .loadConstant(bytes)
+                .invokestatic(HELPER_DESC, "skip", BUFFER_SKIP_BYTES);
+    }
+}
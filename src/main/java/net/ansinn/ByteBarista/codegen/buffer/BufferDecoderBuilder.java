@@ -1,12 +1,28 @@
 package net.ansinn.ByteBarista.codegen.buffer;
 
 import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.BitFieldLayout;
 import net.ansinn.ByteBarista.NumericHelpers;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.SealedTypes;
+import net.ansinn.ByteBarista.annotations.FixedLength;
 import net.ansinn.ByteBarista.annotations.UnsignedByte;
 import net.ansinn.ByteBarista.annotations.UnsignedInteger;
 import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import net.ansinn.ByteBarista.codegen.ArrayEmitter;
+import net.ansinn.ByteBarista.codegen.BitFieldEmitter;
+import net.ansinn.ByteBarista.codegen.DeltaEmitter;
+import net.ansinn.ByteBarista.codegen.EnumEmitter;
+import net.ansinn.ByteBarista.codegen.FixedLengthEmitter;
+import net.ansinn.ByteBarista.codegen.NestedRecords;
+import net.ansinn.ByteBarista.codegen.OptionalEmitter;
 import net.ansinn.ByteBarista.codegen.RecordCodecBuilder;
+import net.ansinn.ByteBarista.codegen.SealedEmitter;
 
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
 import java.lang.classfile.CodeBuilder;
 import java.lang.classfile.TypeKind;
 import java.lang.constant.ClassDesc;
@@ -16,13 +32,33 @@ import java.lang.reflect.RecordComponent;
 import java.nio.ByteBuffer;
 
 import static net.ansinn.ByteBarista.codegen.CodegenConstants.*;
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.loadType;
+import static net.ansinn.ByteBarista.codegen.DecoderUtils.storeType;
 
 /**
  * Utility class responsible for generating bytecode instructions that deserialize {@link Record} types from a {@link ByteBuffer}.
  * <p>
  * This class provides methods for emitting low-level bytecode that reconstructs Java records by reading their fields in order
  * from a {@link ByteBuffer}. It supports primitive types and honors specific annotations such as {@link UnsignedByte},
- * {@link UnsignedShort}, and {@link UnsignedInteger} to handle unsigned data representations.
+ * {@link UnsignedShort}, and {@link UnsignedInteger} to handle unsigned data representations, as well as
+ * {@link VarInt} and {@link ZigZag} for variable length integers. Booleans and {@link net.ansinn.ByteBarista.annotations.Bits}
+ * fields are read as packed groups laid out by {@link BitFieldLayout}, strings are handed to
+ * {@link net.ansinn.ByteBarista.StringHelpers} and primitive arrays are bulk copied by
+ * {@link net.ansinn.ByteBarista.ArrayHelpers}. Nested records are read in place or through fallback methods as
+ * planned by {@link NestedRecords}, and sealed interfaces by switching on the tag of their subtype. Optional and
+ * {@link net.ansinn.ByteBarista.annotations.Sparse} components are only read if their bit in the record's
+ * {@link PresenceBitmap} is set.
+ * </p>
+ *
+ * <p>
+ * Fixed size records, as decided by {@link ClassUtils#isFixedSize(Class)}, are bounds checked once for their whole size,
+ * inlined fixed size records nested in them included. Their primitive and enum components are then read with absolute
+ * gets at constant offsets from where the record starts, and the buffer is advanced past the record in one step.
+ * </p>
+ *
+ * <p>
+ * Delta decoders take the previous record in slot 1 and read only the components marked as changed in the delta, as
+ * laid out by {@link DeltaEmitter}, copying all others from the previous record.
  * </p>
  *
  * <p>
@@ -37,6 +73,7 @@ import static net.ansinn.ByteBarista.codegen.CodegenConstants.*;
  * @see CodeBuilder
  * @see ByteBuffer
  * @see RecordCodecBuilder
+ * @see SealedTypes
  *
  * @author Gunter Ansinn
  */
@@ -44,60 +81,469 @@ public final class BufferDecoderBuilder {
 
     private BufferDecoderBuilder() {}
 
+    /**
+     * Emits a public static {@code (ByteBuffer)Object} method named {@code name} decoding the given record, together
+     * with the private fallback methods of any records nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the decoding method
+     * @param clazz        the record class to decode
+     */
+    public static void emitDecoder(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_Object, BUFFER_DESC), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitReadFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ClassDesc.of(record.getName()), BUFFER_DESC),
+                (codeBuilder, record) -> emitReadFunction(codeBuilder, record, nested));
+    }
+
+    /**
+     * Emits a public static {@code (ByteBuffer, Object)Object} method named {@code name} applying a delta to a previous
+     * instance of the given record, together with the private fallback methods of any records nested too deep to be
+     * inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the delta decoding method
+     * @param clazz        the record class to decode
+     * @see DeltaEmitter
+     */
+    public static void emitDeltaDecoder(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_Object, BUFFER_DESC, ConstantDescs.CD_Object), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitDeltaReadFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ClassDesc.of(record.getName()), BUFFER_DESC),
+                (codeBuilder, record) -> emitReadFunction(codeBuilder, record, nested));
+    }
+
+    /**
+     * Emits bytecode reading a changed bitmap and the changed components following it, constructing a new instance
+     * from them and the unchanged components of the record in slot 1.
+     */
+    private static void emitDeltaReadFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+
+        var components = clazz.getRecordComponents();
+        var methodDesc = buildSignature(components);
+        var slots = new int[components.length];
+
+        var changed = builder.allocateLocal(TypeKind.LONG);
+        builder
+                .aload(0)
+                .loadConstant(DeltaEmitter.bitmapBytes(components))
+                .invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD)
+                .lstore(changed);
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // A changed boolean has flipped, so its bit is xored onto the previous value
+            if (type == boolean.class) {
+                loadPrevious(builder, component);
+                OptionalEmitter.emitBit(builder, changed, DeltaEmitter.shiftOf(components, i));
+                builder.ixor();
+            }
+
+            else {
+                var unchanged = builder.newLabel();
+                var end = builder.newLabel();
+
+                OptionalEmitter.emitIfClear(builder, changed, DeltaEmitter.maskOf(components, i), unchanged);
+
+                // Integers are read as the ZigZag encoded step from their previous value
+                if (DeltaEmitter.isArithmetic(component)) {
+                    loadPrevious(builder, component);
+                    builder.aload(0);
+                    if (type == long.class)
+                        builder
+                                .invokestatic(HELPER_DESC, "getZigZagLong", BUFFER_LONG_LOAD)
+                                .ladd();
+                    else
+                        builder
+                                .invokestatic(HELPER_DESC, "getZigZagInt", BUFFER_INT_LOAD)
+                                .iadd();
+                }
+
+                // Optional components are led by a byte telling whether they are present now
+                else if (PresenceBitmap.isOptional(component)) {
+                    var valueType = PresenceBitmap.valueType(component);
+                    var absent = builder.newLabel();
+
+                    builder
+                            .aload(0)
+                            .invokevirtual(BUFFER_DESC, "get", BYTE_DESC)
+                            .ifeq(absent);
+                    emitValueRead(builder, component, valueType, nested, 0);
+                    OptionalEmitter.emitWrap(builder, type, valueType);
+                    builder
+                            .goto_(end)
+                            .labelBinding(absent);
+                    OptionalEmitter.emitEmpty(builder, type);
+                }
+
+                else
+                    emitValueRead(builder, component, type, nested, 0);
+
+                builder
+                        .goto_(end)
+                        .labelBinding(unchanged);
+                loadPrevious(builder, component);
+                builder.labelBinding(end);
+            }
+
+            slots[i] = builder.allocateLocal(TypeKind.from(type));
+            storeType(builder, component, slots[i]);
+        }
+
+        builder.new_(ClassDesc.of(clazz.getName())).dup();
+
+        for (var i = 0; i < components.length; i++) {
+            loadType(builder, components[i], slots[i]);
+        }
+
+        builder
+                .invokespecial(
+                        ClassDesc.of(clazz.getName()),
+                        ConstantDescs.INIT_NAME,
+                        MethodTypeDesc.ofDescriptor(methodDesc)
+                )
+                .areturn();
+    }
+
+    /**
+     * Emits bytecode loading a component's value from the previous record held in slot 1.
+     */
+    private static void loadPrevious(CodeBuilder builder, RecordComponent component) {
+        var parentClazz = ClassDesc.of(component.getDeclaringRecord().getName());
+
+        builder
+                .aload(1)
+                .checkcast(parentClazz)
+                .invokevirtual(parentClazz, component.getName(), ClassUtils.getField(component));
+    }
+
+    /**
+     * Emits bytecode that reads the fields of a record from a {@link ByteBuffer} and constructs a new instance of the record,
+     * inlining every nested record into the emitted method.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param clazz   the record class whose constructor is being filled
+     * @see #emitReadFunction(CodeBuilder, Class, NestedRecords)
+     */
+    public static void emitReadFunction(CodeBuilder builder, Class<? extends Record> clazz) {
+        emitReadFunction(builder, clazz, NestedRecords.inlineOnly());
+    }
+
     /**
      * Emits bytecode that reads the fields of a record from a {@link ByteBuffer} and constructs a new instance of the record.
      * <p>
      * This method assumes that the {@link ByteBuffer} is positioned correctly and that enough data is available to fully
      * populate all fields of the given record. The generated method will follow the order of the record components
-     * and invoke the corresponding {@link ByteBuffer} or helper methods for each primitive type.
+     * and invoke the corresponding {@link ByteBuffer} or helper methods for each primitive type. Nested records are
+     * read in place or through fallback methods as decided by {@code nested}.
      * </p>
      *
      * @param builder the {@link CodeBuilder} used to emit bytecode instructions
      * @param clazz   the record class whose constructor is being filled
+     * @param nested  decides which nested records are inlined
      */
-    public static void emitReadFunction(CodeBuilder builder, Class<? extends Record> clazz) {
+    public static void emitReadFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+        emitRecordRead(builder, clazz, nested, 0);
+        builder.areturn();
+    }
+
+    /**
+     * Emits bytecode reading a record and leaving the constructed instance on the stack.
+     */
+    private static void emitRecordRead(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth) {
+
+        // Fixed size records are checked against the remaining bytes once and read at constant offsets
+        if (ClassUtils.isFixedSize(clazz)) {
+            var size = ClassUtils.getRecordSize(clazz);
+            var base = builder.allocateLocal(TypeKind.INT);
+            var fits = builder.newLabel();
+
+            builder
+                    .aload(0)
+                    .invokevirtual(BUFFER_DESC, "remaining", INT_DESC)
+                    .loadConstant(size)
+                    .if_icmpge(fits)
+                    .new_(UNDERFLOW_DESC)
+                    .dup()
+                    .invokespecial(UNDERFLOW_DESC, ConstantDescs.INIT_NAME, ConstantDescs.MTD_void)
+                    .athrow()
+                    .labelBinding(fits)
+                    .aload(0)
+                    .invokevirtual(BUFFER_DESC, "position", INT_DESC)
+                    .istore(base);
+
+            emitFixedRecordRead(builder, clazz, nested, depth, base, 0);
+
+            builder
+                    .aload(0)
+                    .iload(base)
+                    .loadConstant(size)
+                    .iadd()
+                    .invokevirtual(BUFFER_DESC, "position", SET_POSITION)
+                    .pop();
+            return;
+        }
 
         // Build signature for record parameters to be used with constructor invocation
         var components = clazz.getRecordComponents();
         var methodDesc = buildSignature(components);
 
-        var index = 1;
+        // Local slots are allocated through the builder so that helpers allocating their own
+        // temporaries (arrays, loop counters) never collide with the decoded components
+        var slots = new int[components.length];
+
+        // Records with optional or sparse components start with the bitmap telling which of them are present
+        var bitmap = -1;
+        if (PresenceBitmap.bytes(components) > 0) {
+            bitmap = builder.allocateLocal(TypeKind.LONG);
+            builder
+                    .aload(0)
+                    .loadConstant(PresenceBitmap.bytes(components))
+                    .invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD)
+                    .lstore(bitmap);
+        }
 
         // Iterate over every single record parameter emitting read functions for the bytebuffer
         // located in address 0 (since this method is static and not local)
-        for (var component : components) {
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
             var type = component.getType();
-            builder.aload(0);
-            // Write instructions to load primitives
-            if (type.isPrimitive())
-                writePrimitiveParser(builder, component);
 
-            // Write instructions to load arrays and strings
-//            else if (type.isArray() || type.equals(String.class))
-//                writeDynamicParser(builder, component);
+            // Booleans of sparse records are stored in their bit outright
+            if (PresenceBitmap.isElidable(component) && type == boolean.class)
+                OptionalEmitter.emitBit(builder, bitmap, PresenceBitmap.shiftOf(components, i));
+
+            // Sparse components are only read if they differ from their default, which is filled in otherwise
+            else if (PresenceBitmap.isElidable(component)) {
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                OptionalEmitter.emitIfClear(builder, bitmap, PresenceBitmap.maskOf(components, i), absent);
+                emitValueRead(builder, component, type, nested, depth);
+                builder
+                        .goto_(end)
+                        .labelBinding(absent);
+                OptionalEmitter.emitDefault(builder, type);
+                builder.labelBinding(end);
+            }
+
+            // Optional components are only read if their bit is set, and are empty otherwise
+            else if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                OptionalEmitter.emitIfClear(builder, bitmap, PresenceBitmap.maskOf(components, i), absent);
+                emitValueRead(builder, component, valueType, nested, depth);
+                OptionalEmitter.emitWrap(builder, type, valueType);
+                builder
+                        .goto_(end)
+                        .labelBinding(absent);
+                OptionalEmitter.emitEmpty(builder, type);
+                builder.labelBinding(end);
+            }
+
+            // Booleans and bit fields are read as one packed group and split into their slots
+            else if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                builder
+                        .aload(0)
+                        .loadConstant(group.bytes())
+                        .invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD);
+                BitFieldEmitter.emitUnpack(builder, components, group, slots);
+                i = group.end() - 1;
+                continue;
+            }
 
-            // Write instructions to load records and arrays of records
             else
-                writeClassParser(builder, component);
+                emitValueRead(builder, component, type, nested, depth);
 
-            builder.istore(index++);
+            slots[i] = builder.allocateLocal(TypeKind.from(type));
+            storeType(builder, component, slots[i]);
         }
 
         // Create allocation instruction
         builder.new_(ClassDesc.of(clazz.getName())).dup();
 
         // Load in every variable for insertion into the constructor
-        for (int i = 1; i < index; i++) {
-            builder.iload(i);
+        for (var i = 0; i < components.length; i++) {
+            loadType(builder, components[i], slots[i]);
+        }
+
+        // Emit the constructor call, leaving the new instance on the stack
+        builder
+                .invokespecial(
+                        ClassDesc.of(clazz.getName()),
+                        ConstantDescs.INIT_NAME,
+                        MethodTypeDesc.ofDescriptor(methodDesc)
+                );
+    }
+
+    /**
+     * Emits bytecode reading a fixed size record starting {@code offset} bytes past the position held in slot
+     * {@code base}, leaving the constructed instance on the stack. The caller has already checked that the record fits.
+     * Primitives and enums are read with absolute gets, inlined records continue at their own offset, and everything
+     * else is read relative to a position moved to where it starts.
+     */
+    @SuppressWarnings("unchecked")
+    private static void emitFixedRecordRead(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth,
+                                            int base, int offset) {
+        var components = clazz.getRecordComponents();
+        var methodDesc = buildSignature(components);
+        var slots = new int[components.length];
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                emitSeek(builder, base, offset);
+                builder
+                        .aload(0)
+                        .loadConstant(group.bytes())
+                        .invokestatic(HELPER_DESC, "getBits", BUFFER_BITS_LOAD);
+                BitFieldEmitter.emitUnpack(builder, components, group, slots);
+                offset += group.bytes();
+                i = group.end() - 1;
+                continue;
+            }
+
+            if (type.isRecord()) {
+                var record = (Class<? extends Record>) type;
+                if (nested.shouldInline(record, depth))
+                    emitFixedRecordRead(builder, record, nested, depth + 1, base, offset);
+                else {
+                    emitSeek(builder, base, offset);
+                    builder
+                            .aload(0)
+                            .invokestatic(nested.owner(), nested.methodFor(record), MethodTypeDesc.of(ClassDesc.of(record.getName()), BUFFER_DESC));
+                }
+            }
+
+            else if (type.isPrimitive() || type.isEnum()) {
+                builder
+                        .aload(0)
+                        .iload(base);
+                if (offset > 0)
+                    builder
+                            .loadConstant(offset)
+                            .iadd();
+
+                if (type.isEnum()) {
+                    writeUnsignedParserAt(builder, ClassUtils.enumWidth(type));
+                    EnumEmitter.emitConstantOf(builder, type);
+                } else
+                    writePrimitiveParserAt(builder, component, type);
+            }
+
+            // Fixed length strings and arrays go through their helpers, which read from the position
+            else {
+                emitSeek(builder, base, offset);
+                emitValueRead(builder, component, type, nested, depth);
+            }
+
+            offset += ClassUtils.fieldSize(component, type);
+            slots[i] = builder.allocateLocal(TypeKind.from(type));
+            storeType(builder, component, slots[i]);
+        }
+
+        builder.new_(ClassDesc.of(clazz.getName())).dup();
+
+        for (var i = 0; i < components.length; i++) {
+            loadType(builder, components[i], slots[i]);
         }
 
-        // Emit instruction to return new value of class
         builder
                 .invokespecial(
                         ClassDesc.of(clazz.getName()),
                         ConstantDescs.INIT_NAME,
                         MethodTypeDesc.ofDescriptor(methodDesc)
-                ).areturn();
+                );
+    }
+
+    /**
+     * Emits bytecode moving the position of the {@link ByteBuffer} in slot 0 to {@code offset} bytes past the position
+     * held in slot {@code base}.
+     */
+    private static void emitSeek(CodeBuilder builder, int base, int offset) {
+        builder
+                .aload(0)
+                .iload(base)
+                .loadConstant(offset)
+                .iadd()
+                .invokevirtual(BUFFER_DESC, "position", SET_POSITION)
+                .pop();
+    }
+
+    /**
+     * Emits bytecode reading the value of a required component from the {@link ByteBuffer} in slot 0, leaving it on the
+     * stack. Nested records are inlined.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param component the component being read
+     */
+    public static void emitComponentRead(CodeBuilder builder, RecordComponent component) {
+        emitValueRead(builder, component, component.getType(), NestedRecords.inlineOnly(), 0);
+    }
+
+    /**
+     * Emits bytecode reading a value of the given type for a component, leaving it on the stack. The type differs from
+     * the component's type for optional components, which are read as the value they hold.
+     */
+    @SuppressWarnings("unchecked")
+    private static void emitValueRead(CodeBuilder builder, RecordComponent component, Class<?> type, NestedRecords nested, int depth) {
+
+        // Write instructions to load nested records, which read the buffer on their own
+        if (type.isRecord()) {
+            writeClassParser(builder, (Class<? extends Record>) type, nested, depth);
+            return;
+        }
+
+        // Sealed interfaces switch on the tag of their subtype into the code reading it
+        if (SealedTypes.isSealed(type)) {
+            writeSealedParser(builder, type, nested, depth);
+            return;
+        }
+
+        builder.aload(0);
+
+        // Write instructions to load primitives
+        if (type.isPrimitive())
+            writePrimitiveParser(builder, component, type);
+
+        // Write instructions to load fixed length strings and arrays
+        else if (component.isAnnotationPresent(FixedLength.class))
+            FixedLengthEmitter.emitBufferRead(builder, component);
+
+        // Write instructions to load strings
+        else if (type.equals(String.class))
+            builder.invokestatic(STRING_HELPER_DESC, "getString", BUFFER_STRING_LOAD);
+
+        // Write instructions to bulk load length prefixed primitive arrays
+        else if (ArrayEmitter.isPrimitiveArray(type))
+            ArrayEmitter.emitBufferRead(builder, component);
+
+        // Write instructions to map ordinals back onto enum constants
+        else if (type.isEnum())
+            writeEnumParser(builder, type);
+
+        else
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
     }
 
     /**
@@ -117,27 +563,35 @@ public final class BufferDecoderBuilder {
      *
      * @param builder the {@link CodeBuilder} used to emit bytecode instructions
      * @param component   the record component whose value will be read from the {@link ByteBuffer}
+     * @param componentType the primitive type being read
      * @throws IllegalStateException if an unsupported type or annotation combination is encountered
      */
-    private static void writePrimitiveParser(CodeBuilder builder, RecordComponent component) {
-        var componentType = component.getType();
+    private static void writePrimitiveParser(CodeBuilder builder, RecordComponent component, Class<?> componentType) {
 
         switch (componentType.getTypeName()) {
             case "long" -> {
-                if (component.isAnnotationPresent(UnsignedByte.class))
-                    builder.invokevirtual(HELPER_DESC, "getUnsignedByteAsLong", BUFFER_LONG_LOAD);
+                if (component.isAnnotationPresent(VarInt.class))
+                    builder.invokestatic(HELPER_DESC, "getVarLong", BUFFER_LONG_LOAD);
+                else if (component.isAnnotationPresent(ZigZag.class))
+                    builder.invokestatic(HELPER_DESC, "getZigZagLong", BUFFER_LONG_LOAD);
+                else if (component.isAnnotationPresent(UnsignedByte.class))
+                    builder.invokestatic(HELPER_DESC, "getUnsignedByteAsLong", BUFFER_LONG_LOAD);
                 else if (component.isAnnotationPresent(UnsignedShort.class))
-                    builder.invokevirtual(HELPER_DESC, "getUnsignedShortAsLong", BUFFER_LONG_LOAD);
+                    builder.invokestatic(HELPER_DESC, "getUnsignedShortAsLong", BUFFER_LONG_LOAD);
                 else if (component.isAnnotationPresent(UnsignedInteger.class))
-                    builder.invokevirtual(HELPER_DESC, "getUnsignedInt", BUFFER_LONG_LOAD);
+                    builder.invokestatic(HELPER_DESC, "getUnsignedInt", BUFFER_LONG_LOAD);
                 else
                     builder.invokevirtual(BUFFER_DESC, "getLong", MethodTypeDesc.ofDescriptor("()J"));
             }
             case "int" -> {
-                if (component.isAnnotationPresent(UnsignedByte.class))
-                    builder.invokevirtual(HELPER_DESC, "getUnsignedByteAsInt", BUFFER_INT_LOAD);
+                if (component.isAnnotationPresent(VarInt.class))
+                    builder.invokestatic(HELPER_DESC, "getVarInt", BUFFER_INT_LOAD);
+                else if (component.isAnnotationPresent(ZigZag.class))
+                    builder.invokestatic(HELPER_DESC, "getZigZagInt", BUFFER_INT_LOAD);
+                else if (component.isAnnotationPresent(UnsignedByte.class))
+                    builder.invokestatic(HELPER_DESC, "getUnsignedByteAsInt", BUFFER_INT_LOAD);
                 else if (component.isAnnotationPresent(UnsignedShort.class))
-                    builder.invokevirtual(HELPER_DESC, "getUnsignedShortAsInt", BUFFER_INT_LOAD);
+                    builder.invokestatic(HELPER_DESC, "getUnsignedShortAsInt", BUFFER_INT_LOAD);
                 else if (component.isAnnotationPresent(UnsignedInteger.class))
                     throw new IllegalStateException("You can't load an unsigned integer as an integer.");
                 else
@@ -171,82 +625,100 @@ public final class BufferDecoderBuilder {
         }
     }
 
-    private static void writeDynamicParser(CodeBuilder builder, RecordComponent component) {
-        // Allocate slots for local variables related to array parsing
-        var lengthSlot = builder.allocateLocal(TypeKind.INT);
-        var arraySlot = builder.allocateLocal(TypeKind.REFERENCE);
-        var indexSlot = builder.allocateLocal(TypeKind.INT);
-
-        // Get length of array
-        builder.invokevirtual(BUFFER_DESC, "getInt", INT_DESC);
-        builder.istore(lengthSlot);
-
-        var type = component.getType();
-
-        // Check for byte array to decode
-        if(type.equals(byte[].class)) {
-            emitByteArrayRead(builder, lengthSlot, arraySlot);
-
-        } else if (type.equals(String.class)) {
-            emitByteArrayRead(builder, lengthSlot, arraySlot);
-            emitStringRead(builder, lengthSlot, arraySlot);
-
-        } else if (type.equals(String[].class)) {
-            emitStringArrayRead(builder, lengthSlot, arraySlot, indexSlot);
-
-        } else if (type.isArray() && type.getComponentType().isPrimitive()) {
-            emitPrimitiveArrayRead(builder, type.getComponentType(), lengthSlot, arraySlot, indexSlot);
+    /**
+     * Emits bytecode reading a fixed width primitive with an absolute get, as {@link #writePrimitiveParser} does with
+     * a relative one, assuming the {@link ByteBuffer} and the index to read at are on the stack.
+     *
+     * @throws IllegalStateException if an unsupported type or annotation combination is encountered
+     */
+    private static void writePrimitiveParserAt(CodeBuilder builder, RecordComponent component, Class<?> componentType) {
+        switch (componentType.getTypeName()) {
+            case "long" -> {
+                if (component.isAnnotationPresent(UnsignedByte.class))
+                    builder.invokevirtual(BUFFER_DESC, "get", GET_BYTE_AT).i2l().loadConstant(0xFFL).land();
+                else if (component.isAnnotationPresent(UnsignedShort.class))
+                    builder.invokevirtual(BUFFER_DESC, "getShort", GET_SHORT_AT).i2l().loadConstant(0xFFFFL).land();
+                else if (component.isAnnotationPresent(UnsignedInteger.class))
+                    builder.invokevirtual(BUFFER_DESC, "getInt", GET_INT_AT).i2l().loadConstant(0xFFFF_FFFFL).land();
+                else
+                    builder.invokevirtual(BUFFER_DESC, "getLong", GET_LONG_AT);
+            }
+            case "int" -> {
+                if (component.isAnnotationPresent(UnsignedByte.class))
+                    builder.invokevirtual(BUFFER_DESC, "get", GET_BYTE_AT).loadConstant(0xFF).iand();
+                else if (component.isAnnotationPresent(UnsignedShort.class))
+                    builder.invokevirtual(BUFFER_DESC, "getShort", GET_SHORT_AT).loadConstant(0xFFFF).iand();
+                else if (component.isAnnotationPresent(UnsignedInteger.class))
+                    throw new IllegalStateException("You can't load an unsigned integer as an integer.");
+                else
+                    builder.invokevirtual(BUFFER_DESC, "getInt", GET_INT_AT);
+            }
+            case "short" -> builder.invokevirtual(BUFFER_DESC, "getShort", GET_SHORT_AT);
+            case "byte" -> builder.invokevirtual(BUFFER_DESC, "get", GET_BYTE_AT);
+            case "double" -> builder.invokevirtual(BUFFER_DESC, "getDouble", GET_DOUBLE_AT);
+            case "float" -> builder.invokevirtual(BUFFER_DESC, "getFloat", GET_FLOAT_AT);
+            case "char" -> builder.invokevirtual(BUFFER_DESC, "getChar", GET_CHAR_AT);
+            default -> throw new IllegalStateException("Unexpected type: " + componentType.getTypeName());
         }
-
-        // return array data
-        builder.aload(arraySlot);
     }
 
-    private static void emitByteArrayRead(CodeBuilder builder, int lengthSlot, int arraySlot) {
-        // Create a new array of given length
-        builder.iload(lengthSlot);
-        builder.newarray(TypeKind.BYTE);
-        builder.astore(arraySlot);
-
-        // Copy bytes into new byte array
-        builder.aload(0);
-        builder.aload(arraySlot);
-        builder.invokevirtual(BUFFER_DESC, "get", MethodTypeDesc.ofDescriptor("([B)Ljava/nio/ByteBuffer;"));
-        builder.pop();
+    /**
+     * Emits bytecode reading an unsigned {@code int} of the given number of bytes with an absolute get, assuming the
+     * {@link ByteBuffer} and the index to read at are on the stack.
+     */
+    private static void writeUnsignedParserAt(CodeBuilder builder, int width) {
+        switch (width) {
+            case Byte.BYTES -> builder.invokevirtual(BUFFER_DESC, "get", GET_BYTE_AT).loadConstant(0xFF).iand();
+            case Short.BYTES -> builder.invokevirtual(BUFFER_DESC, "getShort", GET_SHORT_AT).loadConstant(0xFFFF).iand();
+            default -> builder.invokevirtual(BUFFER_DESC, "getInt", GET_INT_AT);
+        }
     }
 
-    private static void emitStringRead(CodeBuilder builder, int lengthSlot, int arraySlot) {
-        // Create new string object to return
-        builder.aload(0);
-        builder.invokestatic(
-                ClassDesc.of("java.lang.String"),
-                "<init>",
-                MethodTypeDesc.ofDescriptor("([B)V")
-        );
-        builder.astore(arraySlot);
+    /**
+     * Emits bytecode reading an enum ordinal in the width chosen by {@link ClassUtils#enumWidth(Class)} and replacing
+     * it with its constant, assuming the {@link ByteBuffer} is on the stack.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type      the enum type being read
+     */
+    private static void writeEnumParser(CodeBuilder builder, Class<?> type) {
+        writeUnsignedParser(builder, ClassUtils.enumWidth(type));
+        EnumEmitter.emitConstantOf(builder, type);
     }
 
-    private static void emitStringArrayRead(CodeBuilder builder, int lengthSlot, int arraySlot, int indexSlot) {
-
+    /**
+     * Emits bytecode reading an unsigned {@code int} of the given number of bytes, assuming the {@link ByteBuffer} is on
+     * the stack.
+     */
+    private static void writeUnsignedParser(CodeBuilder builder, int width) {
+        switch (width) {
+            case Byte.BYTES -> builder.invokestatic(HELPER_DESC, "getUnsignedByteAsInt", BUFFER_INT_LOAD);
+            case Short.BYTES -> builder.invokestatic(HELPER_DESC, "getUnsignedShortAsInt", BUFFER_INT_LOAD);
+            default -> builder.invokevirtual(BUFFER_DESC, "getInt", INT_DESC);
+        }
     }
 
-    private static void emitPrimitiveArrayRead(CodeBuilder builder, Class<?> componentType, int lengthSlot, int arraySlot, int indexSlot) {
-
-        builder.iload(lengthSlot);
-        builder.newarray(TypeKind.INT);
-        builder.astore(arraySlot);
-
-        var loopStart = builder.newLabel();
-        var loopEnd = builder.newLabel();
-
-        builder.iconst_0();
-        builder.istore(indexSlot);
-
-        // TODO finish
+    /**
+     * Emits bytecode reading the tag of a sealed interface's subtype and switching on it into the code reading that
+     * record, which is inlined or read through its fallback method like any nested record.
+     */
+    private static void writeSealedParser(CodeBuilder builder, Class<?> type, NestedRecords nested, int depth) {
+        builder.aload(0);
+        writeUnsignedParser(builder, SealedTypes.of(type).width());
+        SealedEmitter.emitDecodeDispatch(builder, type, subtype -> writeClassParser(builder, subtype, nested, depth));
     }
 
-    private static void writeClassParser(CodeBuilder builder, RecordComponent component) {
-
+    /**
+     * Emits bytecode reading a nested record, either inlined into the current method or through the fallback method
+     * of its record type.
+     */
+    private static void writeClassParser(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth) {
+        if (nested.shouldInline(clazz, depth))
+            emitRecordRead(builder, clazz, nested, depth + 1);
+        else
+            builder
+                    .aload(0)
+                    .invokestatic(nested.owner(), nested.methodFor(clazz), MethodTypeDesc.of(ClassDesc.of(clazz.getName()), BUFFER_DESC));
     }
 
     /**
@@ -257,11 +729,8 @@ public final class BufferDecoderBuilder {
      */
     public static String buildSignature(RecordComponent[] components) {
         var builder = new StringBuilder("(");
-        for (RecordComponent component : components) {
-            if (component.getType().isArray())
-                builder.append("[");
+        for (RecordComponent component : components)
             builder.append(ClassUtils.getDescriptor(component));
-        }
         return builder.append(")V").toString();
     }
 }
\ No newline at end of file
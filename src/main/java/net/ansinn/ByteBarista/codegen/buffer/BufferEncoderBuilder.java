@@ -1,14 +1,455 @@
 package net.ansinn.ByteBarista.codegen.buffer;
 
-import java.io.ByteArrayOutputStream;
+import net.ansinn.ByteBarista.BitFieldLayout;
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.NumericHelpers;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.SealedTypes;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import net.ansinn.ByteBarista.codegen.ArrayEmitter;
+import net.ansinn.ByteBarista.codegen.BitFieldEmitter;
+import net.ansinn.ByteBarista.codegen.DeltaEmitter;
+import net.ansinn.ByteBarista.codegen.EnumEmitter;
+import net.ansinn.ByteBarista.codegen.FixedLengthEmitter;
+import net.ansinn.ByteBarista.codegen.NestedRecords;
+import net.ansinn.ByteBarista.codegen.OptionalEmitter;
+import net.ansinn.ByteBarista.codegen.SealedEmitter;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
 import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+
+import static net.ansinn.ByteBarista.ClassUtils.getField;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.*;
 
+/**
+ * Utility class responsible for generating bytecode instructions that serialize {@link Record} types into a
+ * {@link ByteBuffer}.
+ * <p>
+ * The generated method takes the {@link ByteBuffer} in slot 0 and the record in slot 1 and writes every component in
+ * declaration order, mirroring exactly what {@link BufferDecoderBuilder} reads back. Unsigned annotations narrow the
+ * written value to its annotated width, while {@link VarInt} and {@link ZigZag} components are handed to
+ * {@link NumericHelpers}. Booleans and {@link net.ansinn.ByteBarista.annotations.Bits} fields are packed into shared
+ * bytes as laid out by {@link BitFieldLayout}, strings are handed to {@link net.ansinn.ByteBarista.StringHelpers} and
+ * primitive arrays are bulk copied by {@link net.ansinn.ByteBarista.ArrayHelpers}. Nested records are written in place
+ * or through fallback methods as planned by {@link NestedRecords}, and sealed interfaces as a tagged subtype. Optional
+ * and {@link net.ansinn.ByteBarista.annotations.Sparse} components are preceded by the record's {@link PresenceBitmap}
+ * and skipped entirely when absent.
+ * <p>
+ * Delta encoders take the previous record in slot 1 and the current one in slot 2 and write only the components that
+ * changed between them, as laid out by {@link DeltaEmitter}.
+ *
+ * @see BufferDecoderBuilder
+ * @see SealedTypes
+ * @author Gunter Ansinn
+ */
 public final class BufferEncoderBuilder {
 
     private BufferEncoderBuilder() {}
 
-    static void emitWriteFunction(CodeBuilder builder, Class<?> clazz) {
+    /**
+     * Emits a public static {@code (ByteBuffer, Object)void} method named {@code name} encoding the given record,
+     * together with the private fallback methods of any records nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the encoding method
+     * @param clazz        the record class to encode
+     */
+    public static void emitEncoder(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_Object), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitWriteFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ClassDesc.of(record.getName())),
+                (codeBuilder, record) -> emitWriteFunction(codeBuilder, record, nested));
+    }
+
+    /**
+     * Emits a public static {@code (ByteBuffer, Object, Object)void} method named {@code name} writing the delta from a
+     * previous to a current instance of the given record, together with the private fallback methods of any records
+     * nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the delta encoding method
+     * @param clazz        the record class to encode
+     * @see DeltaEmitter
+     */
+    public static void emitDeltaEncoder(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ConstantDescs.CD_Object, ConstantDescs.CD_Object), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitDeltaWriteFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ClassDesc.of(record.getName())),
+                (codeBuilder, record) -> emitWriteFunction(codeBuilder, record, nested));
+    }
+
+    /**
+     * Emits bytecode writing the changed bitmap between the records in slots 1 and 2 followed by the changed
+     * components of the record in slot 2.
+     */
+    private static void emitDeltaWriteFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+
+        var components = clazz.getRecordComponents();
+        var changed = DeltaEmitter.emitChangedBitmap(builder, components,
+                component -> loadComponent(builder, component, 1),
+                component -> loadComponent(builder, component, 2));
+        builder
+                .aload(0)
+                .lload(changed)
+                .loadConstant(DeltaEmitter.bitmapBytes(components))
+                .invokestatic(HELPER_DESC, "putBits", BUFFER_BITS_STORE);
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // A changed boolean can only have flipped, so its bit says everything
+            if (type == boolean.class)
+                continue;
+
+            var unchanged = builder.newLabel();
+            OptionalEmitter.emitIfClear(builder, changed, DeltaEmitter.maskOf(components, i), unchanged);
+
+            // Integers are written as the ZigZag encoded step from their previous value
+            if (DeltaEmitter.isArithmetic(component)) {
+                builder.aload(0);
+                loadComponent(builder, component, 2);
+                loadComponent(builder, component, 1);
+                if (type == long.class)
+                    builder
+                            .lsub()
+                            .invokestatic(HELPER_DESC, "putZigZagLong", BUFFER_LONG_STORE);
+                else
+                    builder
+                            .isub()
+                            .invokestatic(HELPER_DESC, "putZigZagInt", BUFFER_INT_STORE);
+            }
+
+            // Optional components are led by a byte telling whether they are present now
+            else if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var value = builder.allocateLocal(TypeKind.REFERENCE);
+                var absent = builder.newLabel();
+
+                loadComponent(builder, component, 2);
+                builder
+                        .astore(value)
+                        .aload(value);
+                OptionalEmitter.emitIfAbsent(builder, type, absent);
+                builder
+                        .aload(0)
+                        .iconst_1()
+                        .invokevirtual(BUFFER_DESC, "put", PUT_BYTE)
+                        .pop();
+                writeValue(builder, component, valueType, nested, 0, () -> {
+                    builder.aload(value);
+                    OptionalEmitter.emitUnwrap(builder, type, valueType);
+                });
+                builder
+                        .goto_(unchanged)
+                        .labelBinding(absent)
+                        .aload(0)
+                        .iconst_0()
+                        .invokevirtual(BUFFER_DESC, "put", PUT_BYTE)
+                        .pop();
+            }
+
+            else
+                writeValue(builder, component, type, nested, 0, () -> loadComponent(builder, component, 2));
+
+            builder.labelBinding(unchanged);
+        }
+
+        builder.return_();
+    }
+
+    /**
+     * Emits bytecode that writes all components of a record into a {@link ByteBuffer}, inlining every nested record
+     * into the emitted method.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param clazz   the record class being encoded
+     */
+    public static void emitWriteFunction(CodeBuilder builder, Class<? extends Record> clazz) {
+        emitWriteFunction(builder, clazz, NestedRecords.inlineOnly());
+    }
+
+    /**
+     * Emits bytecode that writes all components of a record into a {@link ByteBuffer}.
+     *
+     * @param builder the {@link CodeBuilder} used to emit bytecode instructions
+     * @param clazz   the record class being encoded
+     * @param nested  decides which nested records are inlined
+     */
+    public static void emitWriteFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+        emitRecordWrite(builder, clazz, 1, nested, 0);
+        builder.return_();
+    }
+
+    /**
+     * Emits bytecode writing the components of the record held in {@code record}.
+     */
+    private static void emitRecordWrite(CodeBuilder builder, Class<? extends Record> clazz, int record, NestedRecords nested, int depth) {
+        var components = clazz.getRecordComponents();
+
+        // Optional and sparse components are loaded up front, as the bitmap recording their presence leads the record
+        var values = new int[components.length];
+        if (PresenceBitmap.bytes(components) > 0) {
+            var bitmap = OptionalEmitter.emitBitmap(builder, components, values, optional -> loadComponent(builder, optional, record));
+            builder
+                    .aload(0)
+                    .lload(bitmap)
+                    .loadConstant(PresenceBitmap.bytes(components))
+                    .invokestatic(HELPER_DESC, "putBits", BUFFER_BITS_STORE);
+        }
+
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // Sparse components are only written if they differ from their default, booleans not at all as their bit
+            // already holds their value
+            if (PresenceBitmap.isElidable(component)) {
+                if (type == boolean.class)
+                    continue;
+
+                var kind = TypeKind.from(type);
+                var value = values[i];
+                var absent = builder.newLabel();
+
+                builder.loadLocal(kind, value);
+                OptionalEmitter.emitIfDefault(builder, type, absent);
+                writeValue(builder, component, type, nested, depth, () -> builder.loadLocal(kind, value));
+                builder.labelBinding(absent);
+                continue;
+            }
+
+            // Optional components are written as the value they hold, and not at all when absent
+            if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var value = values[i];
+                var absent = builder.newLabel();
+
+                builder.aload(value);
+                OptionalEmitter.emitIfAbsent(builder, type, absent);
+                writeValue(builder, component, valueType, nested, depth, () -> {
+                    builder.aload(value);
+                    OptionalEmitter.emitUnwrap(builder, type, valueType);
+                });
+                builder.labelBinding(absent);
+                continue;
+            }
+
+            // Booleans and bit fields are shifted into one packed word written as a whole
+            if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                builder.aload(0);
+                BitFieldEmitter.emitPack(builder, components, group, packed -> loadComponent(builder, packed, record));
+                builder
+                        .loadConstant(group.bytes())
+                        .invokestatic(HELPER_DESC, "putBits", BUFFER_BITS_STORE);
+                i = group.end() - 1;
+                continue;
+            }
+
+            writeValue(builder, component, type, nested, depth, () -> loadComponent(builder, component, record));
+        }
+    }
+
+    /**
+     * Emits bytecode writing a value of the given type for a component. The type differs from the component's type for
+     * optional components, which are written as the value they hold.
+     *
+     * @param loader emits bytecode pushing the value
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeValue(CodeBuilder builder, RecordComponent component, Class<?> type, NestedRecords nested, int depth, Runnable loader) {
+
+        // Nested records are written in place or by their own method
+        if (type.isRecord()) {
+            loader.run();
+            writeClassEncoder(builder, (Class<? extends Record>) type, nested, depth);
+            return;
+        }
+
+        // Sealed interfaces are written as the tag of their subtype followed by the record
+        if (SealedTypes.isSealed(type)) {
+            loader.run();
+            writeSealedEncoder(builder, type, nested, depth);
+            return;
+        }
+
+        // Load the buffer followed by the value, which is the argument order of every put call
+        builder.aload(0);
+        loader.run();
+
+        if (type.isPrimitive())
+            writePrimitiveEncoder(builder, component, type);
+        else if (type.isEnum())
+            writeEnumEncoder(builder, type);
+        else if (component.isAnnotationPresent(FixedLength.class))
+            FixedLengthEmitter.emitBufferWrite(builder, component);
+        else if (type.equals(String.class))
+            builder.invokestatic(STRING_HELPER_DESC, "putString", BUFFER_STRING_STORE);
+        else if (ArrayEmitter.isPrimitiveArray(type))
+            ArrayEmitter.emitBufferWrite(builder, component);
+        else
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
+    }
+
+    /**
+     * Emits bytecode loading a component's value from the record held in the given slot.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param component the component to load
+     * @param record    the local slot holding the record
+     */
+    static void loadComponent(CodeBuilder builder, RecordComponent component, int record) {
+        var parentClazz = ClassDesc.of(component.getDeclaringRecord().getName());
+
+        builder
+                .aload(record)
+                .checkcast(parentClazz)
+                .invokevirtual(parentClazz, component.getName(), getField(component));
+    }
+
+    /**
+     * Emits bytecode instructions to write a primitive value into a {@link ByteBuffer}, assuming the buffer and the
+     * value are on the stack.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param component the record component being written
+     * @param componentType the primitive type being written
+     * @throws IllegalStateException if an unsupported type or annotation combination is encountered
+     */
+    private static void writePrimitiveEncoder(CodeBuilder builder, RecordComponent component, Class<?> componentType) {
+
+        switch (componentType.getTypeName()) {
+            case "long" -> {
+                if (component.isAnnotationPresent(VarInt.class))
+                    builder.invokestatic(HELPER_DESC, "putVarLong", BUFFER_LONG_STORE);
+                else if (component.isAnnotationPresent(ZigZag.class))
+                    builder.invokestatic(HELPER_DESC, "putZigZagLong", BUFFER_LONG_STORE);
+                else if (component.isAnnotationPresent(UnsignedByte.class))
+                    builder.l2i().i2b().invokevirtual(BUFFER_DESC, "put", PUT_BYTE).pop();
+                else if (component.isAnnotationPresent(UnsignedShort.class))
+                    builder.l2i().i2s().invokevirtual(BUFFER_DESC, "putShort", PUT_SHORT).pop();
+                else if (component.isAnnotationPresent(UnsignedInteger.class))
+                    builder.l2i().invokevirtual(BUFFER_DESC, "putInt", PUT_INT).pop();
+                else
+                    builder.invokevirtual(BUFFER_DESC, "putLong", PUT_LONG).pop();
+            }
+            case "int" -> {
+                if (component.isAnnotationPresent(VarInt.class))
+                    builder.invokestatic(HELPER_DESC, "putVarInt", BUFFER_INT_STORE);
+                else if (component.isAnnotationPresent(ZigZag.class))
+                    builder.invokestatic(HELPER_DESC, "putZigZagInt", BUFFER_INT_STORE);
+                else if (component.isAnnotationPresent(UnsignedByte.class))
+                    builder.i2b().invokevirtual(BUFFER_DESC, "put", PUT_BYTE).pop();
+                else if (component.isAnnotationPresent(UnsignedShort.class))
+                    builder.i2s().invokevirtual(BUFFER_DESC, "putShort", PUT_SHORT).pop();
+                else if (component.isAnnotationPresent(UnsignedInteger.class))
+                    throw new IllegalStateException("You can't load an unsigned integer as an integer.");
+                else
+                    builder.invokevirtual(BUFFER_DESC, "putInt", PUT_INT).pop();
+            }
+            case "short" ->
+                    builder.invokevirtual(BUFFER_DESC, "putShort", PUT_SHORT).pop();
+            case "byte" ->
+                    builder.invokevirtual(BUFFER_DESC, "put", PUT_BYTE).pop();
+
+            case "double" ->
+                    builder.invokevirtual(BUFFER_DESC, "putDouble", PUT_DOUBLE).pop();
+            case "float" ->
+                    builder.invokevirtual(BUFFER_DESC, "putFloat", PUT_FLOAT).pop();
+
+            case "char" ->
+                    builder.invokevirtual(BUFFER_DESC, "putChar", PUT_CHAR).pop();
+
+            default -> throw new IllegalStateException("Unexpected type: " + componentType.getTypeName());
+        }
+    }
+
+    /**
+     * Emits bytecode writing the ordinal of an enum in the width chosen by {@link ClassUtils#enumWidth(Class)},
+     * assuming the buffer and the constant are on the stack.
+     *
+     * @param builder   the {@link CodeBuilder} used to emit bytecode instructions
+     * @param type      the enum type being written
+     */
+    private static void writeEnumEncoder(CodeBuilder builder, Class<?> type) {
+        EnumEmitter.emitOrdinal(builder);
+        writeUnsignedEncoder(builder, ClassUtils.enumWidth(type));
+    }
+
+    /**
+     * Emits bytecode writing an unsigned {@code int} in the given number of bytes, assuming the buffer and the value
+     * are on the stack.
+     */
+    private static void writeUnsignedEncoder(CodeBuilder builder, int width) {
+        switch (width) {
+            case Byte.BYTES -> builder.i2b().invokevirtual(BUFFER_DESC, "put", PUT_BYTE).pop();
+            case Short.BYTES -> builder.i2s().invokevirtual(BUFFER_DESC, "putShort", PUT_SHORT).pop();
+            default -> builder.invokevirtual(BUFFER_DESC, "putInt", PUT_INT).pop();
+        }
+    }
+
+    /**
+     * Emits bytecode writing the value of a sealed interface on top of the stack as the tag of its subtype followed by
+     * the record, which is inlined or written through its fallback method like any nested record.
+     */
+    private static void writeSealedEncoder(CodeBuilder builder, Class<?> type, NestedRecords nested, int depth) {
+        var hierarchy = SealedTypes.of(type);
+        var slot = builder.allocateLocal(TypeKind.REFERENCE);
+        builder.astore(slot);
+
+        SealedEmitter.emitEncodeDispatch(builder, type, slot, index -> {
+            var subtype = hierarchy.subtypes().get(index);
+            builder
+                    .aload(0)
+                    .loadConstant(hierarchy.tags()[index]);
+            writeUnsignedEncoder(builder, hierarchy.width());
+            builder
+                    .aload(slot)
+                    .checkcast(ClassDesc.of(subtype.getName()));
+            writeClassEncoder(builder, subtype, nested, depth);
+        });
+    }
+
+    /**
+     * Emits bytecode writing a nested record, either inlined into the current method or through the fallback method
+     * of its record type. The nested record on top of the stack is kept in a local slot its components are read from.
+     */
+    private static void writeClassEncoder(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth) {
+        var slot = builder.allocateLocal(TypeKind.REFERENCE);
+        builder.astore(slot);
 
+        if (nested.shouldInline(clazz, depth))
+            emitRecordWrite(builder, clazz, slot, nested, depth + 1);
+        else
+            builder
+                    .aload(0)
+                    .aload(slot)
+                    .invokestatic(nested.owner(), nested.methodFor(clazz), MethodTypeDesc.of(ConstantDescs.CD_void, BUFFER_DESC, ClassDesc.of(clazz.getName())));
     }
 
 }
@@ -3,6 +3,8 @@ package net.ansinn.ByteBarista.codegen.stream;
 import net.ansinn.ByteBarista.annotations.UnsignedByte;
 import net.ansinn.ByteBarista.annotations.UnsignedInteger;
 import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
 
 import java.lang.classfile.CodeBuilder;
 import java.lang.constant.MethodTypeDesc;
@@ -19,13 +21,19 @@ public class PrimitiveStreamWriters {
      *     <li>{@link UnsignedByte}: 1 byte → int → long</li>
      *     <li>{@link UnsignedShort}: 2 bytes → int → long</li>
      *     <li>{@link UnsignedInteger}: 4 bytes → long</li>
+     *     <li>{@link VarInt}: 1-10 bytes LEB128 → long</li>
+     *     <li>{@link ZigZag}: 1-10 bytes ZigZag LEB128 → long</li>
      * </ul>
      *
      * @param builder   the {@link CodeBuilder} to emit bytecode into
      * @param component the record component being decoded
      */
     static void emitReadLongInfo(CodeBuilder builder, RecordComponent component) {
-        if (component.isAnnotationPresent(UnsignedByte.class))
+        if (component.isAnnotationPresent(VarInt.class))
+            emitReadFromVarStream(builder, "readVarLong", STREAM_LONG_LOAD);
+        else if (component.isAnnotationPresent(ZigZag.class))
+            emitReadFromVarStream(builder, "readZigZagLong", STREAM_LONG_LOAD);
+        else if (component.isAnnotationPresent(UnsignedByte.class))
             emitReadFromByteToLongStream(builder); // 1 byte -> int -> long
         else if (component.isAnnotationPresent(UnsignedShort.class))
             emitReadFromShortToLongStream(builder); // 2 bytes -> int -> long
@@ -68,6 +76,8 @@ public class PrimitiveStreamWriters {
      * <ul>
      *     <li>{@link UnsignedByte}: 1 byte → int</li>
      *     <li>{@link UnsignedShort}: 2 bytes → int</li>
+     *     <li>{@link VarInt}: 1-5 bytes LEB128 → int</li>
+     *     <li>{@link ZigZag}: 1-5 bytes ZigZag LEB128 → int</li>
      * </ul>
      * <p>{@link UnsignedInteger} is not valid on int and will throw.</p>
      *
@@ -76,7 +86,11 @@ public class PrimitiveStreamWriters {
      * @throws IllegalStateException if {@link UnsignedInteger} is incorrectly applied to an {@code int}
      */
     static void emitReadIntInfo(CodeBuilder builder, RecordComponent component) {
-        if (component.isAnnotationPresent(UnsignedByte.class))
+        if (component.isAnnotationPresent(VarInt.class))
+            emitReadFromVarStream(builder, "readVarInt", STREAM_INT_LOAD);
+        else if (component.isAnnotationPresent(ZigZag.class))
+            emitReadFromVarStream(builder, "readZigZagInt", STREAM_INT_LOAD);
+        else if (component.isAnnotationPresent(UnsignedByte.class))
             emitReadFromByteToIntStream(builder);
         else if (component.isAnnotationPresent(UnsignedShort.class))
             emitReadFromShortToIntStream(builder);
@@ -86,6 +100,20 @@ public class PrimitiveStreamWriters {
             emitReadFromIntStream(builder);
     }
 
+    /**
+     * Emits a call to one of the variable length integer readers in {@link net.ansinn.ByteBarista.NumericHelpers}.
+     * Unlike fixed width values the length is only known once the bytes are read, so the loop lives in the helper.
+     *
+     * @param builder the {@link CodeBuilder} to emit bytecode into
+     * @param helper  name of the helper method to invoke
+     * @param type    descriptor of the helper method
+     */
+    static void emitReadFromVarStream(CodeBuilder builder, String helper, MethodTypeDesc type) {
+        builder
+                .aload(0)
+                .invokestatic(HELPER_DESC, helper, type);
+    }
+
     static void emitReadFromIntStream(CodeBuilder builder) {
         for (int shift : new int[]{24, 16, 8, 0}) {
             builder
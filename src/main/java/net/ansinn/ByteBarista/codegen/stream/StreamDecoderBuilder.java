@@ -1,11 +1,32 @@
 package net.ansinn.ByteBarista.codegen.stream;
 
+import net.ansinn.ByteBarista.BitFieldLayout;
+import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.SealedTypes;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.codegen.ArrayEmitter;
+import net.ansinn.ByteBarista.codegen.BitFieldEmitter;
+import net.ansinn.ByteBarista.codegen.EnumEmitter;
+import net.ansinn.ByteBarista.codegen.FixedLengthEmitter;
+import net.ansinn.ByteBarista.codegen.NestedRecords;
+import net.ansinn.ByteBarista.codegen.OptionalEmitter;
+import net.ansinn.ByteBarista.codegen.SealedEmitter;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
 import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.ConstantDescs;
 import java.lang.constant.MethodTypeDesc;
 import java.lang.reflect.RecordComponent;
 
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.HELPER_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.INPUT_DESC;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.STREAM_BITS_LOAD;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.STREAM_STRING_LOAD;
+import static net.ansinn.ByteBarista.codegen.CodegenConstants.STRING_HELPER_DESC;
 import static net.ansinn.ByteBarista.codegen.DecoderUtils.*;
 import static net.ansinn.ByteBarista.codegen.buffer.BufferDecoderBuilder.buildSignature;
 import static net.ansinn.ByteBarista.codegen.stream.PrimitiveStreamWriters.*;
@@ -18,66 +39,190 @@ import static net.ansinn.ByteBarista.codegen.stream.PrimitiveStreamWriters.*;
  * <p>Supports {@code byte}, {@code short}, {@code int}, {@code long}, {@code float},
  * {@code double}, and {@code char} primitives with optional annotations such as
  * {@link net.ansinn.ByteBarista.annotations.UnsignedByte} to reinterpret input data
- * in an unsigned form.
+ * in an unsigned form. Booleans and {@link net.ansinn.ByteBarista.annotations.Bits} fields are
+ * read as packed groups laid out by {@link BitFieldLayout}, nested records are read in place or through fallback
+ * methods as planned by {@link NestedRecords}, and sealed interfaces by switching on the tag of their subtype.
+ * Optional and {@link net.ansinn.ByteBarista.annotations.Sparse} components are only read if their bit in the
+ * record's {@link PresenceBitmap} is set.
  *
+ * @see SealedTypes
  * @author Gunter Ansinn
  */
 public final class StreamDecoderBuilder {
 
     public StreamDecoderBuilder() {}
 
+    /**
+     * Emits a public static {@code (ByteArrayInputStream)Object} method named {@code name} decoding the given record,
+     * together with the private fallback methods of any records nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the decoding method
+     * @param clazz        the record class to decode
+     */
+    public static void emitDecoder(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_Object, INPUT_DESC), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitReadFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ClassDesc.of(record.getName()), INPUT_DESC),
+                (codeBuilder, record) -> emitReadFunction(codeBuilder, record, nested));
+    }
+
+    static void emitReadFunction(CodeBuilder builder, Class<? extends Record> clazz) {
+        emitReadFunction(builder, clazz, NestedRecords.inlineOnly());
+    }
+
     /**
      * Emits bytecode to decode a full {@link Record} from a {@link java.io.ByteArrayInputStream}.
      * This function generates code that:
      * <ul>
      *     <li>Parses each record field using its associated primitive type.</li>
      *     <li>Handles unsigned annotations where applicable.</li>
+     *     <li>Reads nested records in place or through fallback methods as decided by {@code nested}.</li>
      *     <li>Stores fields into local slots with correct typed instructions.</li>
      *     <li>Constructs and returns a new record instance using the parsed values.</li>
      * </ul>
      *
      * @param builder the {@link CodeBuilder} used to emit bytecode for the decoding method
      * @param clazz the record class to generate a decoder for
+     * @param nested decides which nested records are inlined
      */
-    static void emitReadFunction(CodeBuilder builder, Class<? extends Record> clazz) {
+    static void emitReadFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+        emitRecordRead(builder, clazz, nested, 0);
+        builder.areturn();
+    }
+
+    private static void emitRecordRead(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth) {
         // Build signature for record parameters to be used with constructor invocation
         var components = clazz.getRecordComponents();
         var methodDesc = buildSignature(components);
 
-        var index = 1;
+        // Local slots are allocated through the builder so that packed bit fields can be stored
+        // into slots of components that come after the one currently being read
+        var slots = new int[components.length];
+
+        // Records with optional or sparse components start with the bitmap telling which of them are present
+        var bitmap = -1;
+        if (PresenceBitmap.bytes(components) > 0) {
+            bitmap = builder.allocateLocal(TypeKind.LONG);
+            builder
+                    .aload(0)
+                    .loadConstant(PresenceBitmap.bytes(components))
+                    .invokestatic(HELPER_DESC, "readBits", STREAM_BITS_LOAD)
+                    .lstore(bitmap);
+        }
 
-        // Iterate over every single record parameter emitting read functions for the bytebuffer
+        // Iterate over every single record parameter emitting read functions for the stream
         // located in address 0 (since this method is static and not local)
-        for (var component : components) {
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
             var type = component.getType();
-            // Write instructions to load primitives
-            if (type.isPrimitive())
-                writePrimitiveParser(builder, component);
-            // Write instructions to load records and arrays of records
+
+            // Booleans of sparse records are stored in their bit outright
+            if (PresenceBitmap.isElidable(component) && type == boolean.class)
+                OptionalEmitter.emitBit(builder, bitmap, PresenceBitmap.shiftOf(components, i));
+
+            // Sparse components are only read if they differ from their default, which is filled in otherwise
+            else if (PresenceBitmap.isElidable(component)) {
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                OptionalEmitter.emitIfClear(builder, bitmap, PresenceBitmap.maskOf(components, i), absent);
+                emitValueRead(builder, component, type, nested, depth);
+                builder
+                        .goto_(end)
+                        .labelBinding(absent);
+                OptionalEmitter.emitDefault(builder, type);
+                builder.labelBinding(end);
+            }
+
+            // Optional components are only read if their bit is set, and are empty otherwise
+            else if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var absent = builder.newLabel();
+                var end = builder.newLabel();
+
+                OptionalEmitter.emitIfClear(builder, bitmap, PresenceBitmap.maskOf(components, i), absent);
+                emitValueRead(builder, component, valueType, nested, depth);
+                OptionalEmitter.emitWrap(builder, type, valueType);
+                builder
+                        .goto_(end)
+                        .labelBinding(absent);
+                OptionalEmitter.emitEmpty(builder, type);
+                builder.labelBinding(end);
+            }
+
+            // Booleans and bit fields are read as one packed group and split into their slots
+            else if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                builder
+                        .aload(0)
+                        .loadConstant(group.bytes())
+                        .invokestatic(HELPER_DESC, "readBits", STREAM_BITS_LOAD);
+                BitFieldEmitter.emitUnpack(builder, components, group, slots);
+                i = group.end() - 1;
+                continue;
+            }
+
             else
-                writeClassParser(builder, component);
+                emitValueRead(builder, component, type, nested, depth);
 
-            storeType(builder, component, index);
-            index += slotsFor(component);
+            slots[i] = builder.allocateLocal(TypeKind.from(type));
+            storeType(builder, component, slots[i]);
         }
 
         // Create allocation instruction
         builder.new_(ClassDesc.of(clazz.getName())).dup();
 
         // Load in every variable for insertion into the constructor
-        var cursor = 1;
-        for (var component : components) {
-            loadType(builder, component, cursor);
-            cursor += slotsFor(component);
-        }
+        for (var i = 0; i < components.length; i++)
+            loadType(builder, components[i], slots[i]);
 
-        // Emit instruction to return new value of class
+        // Emit the constructor call, leaving the new instance on the stack
         builder
                 .invokespecial(
                         ClassDesc.of(clazz.getName()),
                         ConstantDescs.INIT_NAME,
                         MethodTypeDesc.ofDescriptor(methodDesc)
-        ).areturn();
+        );
+    }
+
+    /**
+     * Emits bytecode reading a value of the given type for a component, leaving it on the stack. The type differs from
+     * the component's type for optional components, which are read as the value they hold.
+     */
+    @SuppressWarnings("unchecked")
+    private static void emitValueRead(CodeBuilder builder, RecordComponent component, Class<?> type, NestedRecords nested, int depth) {
+        // Write instructions to load primitives
+        if (type.isPrimitive())
+            writePrimitiveParser(builder, component, type);
+        // Write instructions to map ordinals back onto enum constants
+        else if (type.isEnum())
+            writeEnumParser(builder, type);
+        // Write instructions to load fixed length strings and arrays
+        else if (component.isAnnotationPresent(FixedLength.class))
+            FixedLengthEmitter.emitStreamRead(builder.aload(0), component);
+        // Write instructions to load strings
+        else if (type.equals(String.class))
+            builder
+                    .aload(0)
+                    .invokestatic(STRING_HELPER_DESC, "readString", STREAM_STRING_LOAD);
+        // Write instructions to bulk load length prefixed primitive arrays
+        else if (ArrayEmitter.isPrimitiveArray(type))
+            ArrayEmitter.emitStreamRead(builder.aload(0), component);
+        // Write instructions to load nested records
+        else if (type.isRecord())
+            writeClassParser(builder, (Class<? extends Record>) type, nested, depth);
+        // Write instructions switching on the tag of a sealed interface's subtype
+        else if (SealedTypes.isSealed(type))
+            writeSealedParser(builder, type, nested, depth);
+        else
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
     }
 
     /**
@@ -87,9 +232,9 @@ public final class StreamDecoderBuilder {
      *
      * @param builder the {@link CodeBuilder} to emit bytecode into
      * @param component the record component being decoded
+     * @param componentType the primitive type being read
      */
-    static void writePrimitiveParser(CodeBuilder builder, RecordComponent component) {
-        var componentType = component.getType();
+    static void writePrimitiveParser(CodeBuilder builder, RecordComponent component, Class<?> componentType) {
 
         switch (componentType.getName()) {
             case "long" ->
@@ -114,14 +259,60 @@ public final class StreamDecoderBuilder {
     }
 
     /**
-     * Placeholder method for decoding nested record types from the stream.
-     * Currently unimplemented. Will throw {@link UnsupportedOperationException}.
+     * Emits bytecode reading an enum ordinal in the width chosen by
+     * {@link net.ansinn.ByteBarista.ClassUtils#enumWidth(Class)} and replacing it with its constant.
+     *
+     * @param builder the {@link CodeBuilder} to emit bytecode into
+     * @param type the enum type being decoded
+     */
+    private static void writeEnumParser(CodeBuilder builder, Class<?> type) {
+        writeUnsignedParser(builder, ClassUtils.enumWidth(type));
+        EnumEmitter.emitConstantOf(builder, type);
+    }
+
+    /**
+     * Emits bytecode reading an unsigned {@code int} of the given number of bytes.
+     *
+     * @param builder the {@link CodeBuilder} to emit bytecode into
+     * @param width the number of bytes to read
+     */
+    private static void writeUnsignedParser(CodeBuilder builder, int width) {
+        switch (width) {
+            case Byte.BYTES -> emitReadFromByteToIntStream(builder);
+            case Short.BYTES -> emitReadFromShortToIntStream(builder);
+            default -> emitReadFromIntStream(builder);
+        }
+    }
+
+    /**
+     * Emits bytecode reading the tag of a sealed interface's subtype and switching on it into the code reading that
+     * record, which is inlined or read through its fallback method like any nested record.
+     *
+     * @param builder the {@link CodeBuilder} to emit bytecode into
+     * @param type the sealed interface being decoded
+     * @param nested decides whether the subtypes are inlined
+     * @param depth the depth of the record containing the component
+     */
+    private static void writeSealedParser(CodeBuilder builder, Class<?> type, NestedRecords nested, int depth) {
+        writeUnsignedParser(builder, SealedTypes.of(type).width());
+        SealedEmitter.emitDecodeDispatch(builder, type, subtype -> writeClassParser(builder, subtype, nested, depth));
+    }
+
+    /**
+     * Emits bytecode reading a nested record, either inlined into the current method or through the fallback method
+     * of its record type.
      *
      * @param builder the {@link CodeBuilder} to emit bytecode into
-     * @param component the nested record component
-     * @throws UnsupportedOperationException always
+     * @param clazz the nested record type
+     * @param nested decides whether the record is inlined
+     * @param depth the depth of the record containing the component
      */
-    private static void writeClassParser(CodeBuilder builder, RecordComponent component) {
-        throw new UnsupportedOperationException("Todo, not yet implemented.");
+    private static void writeClassParser(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth) {
+        if (nested.shouldInline(clazz, depth))
+            emitRecordRead(builder, clazz, nested, depth + 1);
+        else
+            builder
+                    .aload(0)
+                    .invokestatic(nested.owner(), nested.methodFor(clazz), MethodTypeDesc.of(ClassDesc.of(clazz.getName()), INPUT_DESC));
     }
 }
@@ -1,13 +1,27 @@
 package net.ansinn.ByteBarista.codegen.stream;
 
+import net.ansinn.ByteBarista.BitFieldLayout;
 import net.ansinn.ByteBarista.ClassUtils;
+import net.ansinn.ByteBarista.PresenceBitmap;
+import net.ansinn.ByteBarista.SealedTypes;
+import net.ansinn.ByteBarista.annotations.FixedLength;
 import net.ansinn.ByteBarista.annotations.UnsignedByte;
 import net.ansinn.ByteBarista.annotations.UnsignedInteger;
 import net.ansinn.ByteBarista.annotations.UnsignedShort;
-import net.ansinn.ByteBarista.codegen.CodegenConstants;
-
-import java.io.OutputStream;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import net.ansinn.ByteBarista.codegen.ArrayEmitter;
+import net.ansinn.ByteBarista.codegen.BitFieldEmitter;
+import net.ansinn.ByteBarista.codegen.EnumEmitter;
+import net.ansinn.ByteBarista.codegen.FixedLengthEmitter;
+import net.ansinn.ByteBarista.codegen.NestedRecords;
+import net.ansinn.ByteBarista.codegen.OptionalEmitter;
+import net.ansinn.ByteBarista.codegen.SealedEmitter;
+
+import java.lang.classfile.ClassBuilder;
+import java.lang.classfile.ClassFile;
 import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.TypeKind;
 import java.lang.constant.ClassDesc;
 import java.lang.constant.ConstantDescs;
 import java.lang.constant.MethodTypeDesc;
@@ -15,161 +29,361 @@ import java.lang.reflect.RecordComponent;
 
 import static net.ansinn.ByteBarista.ClassUtils.getField;
 import static net.ansinn.ByteBarista.codegen.CodegenConstants.*;
-import static net.ansinn.ByteBarista.codegen.CodegenConstants.WRITE_BYTE;
 
+/**
+ * Builds a dynamically generated encoder for serializing {@link Record} instances into a
+ * {@link java.io.ByteArrayOutputStream}. The generated method takes the stream in slot 0 and the record in slot 1,
+ * and writes every component in declaration order using the same big endian layout the
+ * {@link StreamDecoderBuilder} reads.
+ * <p>
+ * Each component is read from its accessor once and kept in a local slot, from which the individual bytes are shifted
+ * out and written. Variable length integers are delegated to the helpers in {@link net.ansinn.ByteBarista.NumericHelpers},
+ * while booleans and {@link net.ansinn.ByteBarista.annotations.Bits} fields are packed into shared bytes as laid out by
+ * {@link BitFieldLayout}. Nested records are written in place or through fallback methods as planned by
+ * {@link NestedRecords}, and sealed interfaces as a tagged subtype. Optional and
+ * {@link net.ansinn.ByteBarista.annotations.Sparse} components are preceded by the record's {@link PresenceBitmap} and
+ * skipped entirely when absent.
+ *
+ * @see SealedTypes
+ * @author Gunter Ansinn
+ */
 public final class StreamEncoderBuilder {
 
     private StreamEncoderBuilder() {}
 
+    /**
+     * Emits a public static {@code (ByteArrayOutputStream, Object)void} method named {@code name} encoding the given
+     * record, together with the private fallback methods of any records nested too deep to be inlined into it.
+     *
+     * @param classBuilder the class the methods are added to
+     * @param owner        the descriptor of the class being built
+     * @param name         the name of the encoding method
+     * @param clazz        the record class to encode
+     */
+    public static void emitEncoder(ClassBuilder classBuilder, ClassDesc owner, String name, Class<? extends Record> clazz) {
+        var nested = NestedRecords.withMethods(owner, name);
+
+        classBuilder.withMethod(name, MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ConstantDescs.CD_Object), ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC,
+                methodBuilder -> methodBuilder.withCode(codeBuilder -> emitWriteFunction(codeBuilder, clazz, nested)));
+
+        nested.emitPending(classBuilder,
+                record -> MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ClassDesc.of(record.getName())),
+                (codeBuilder, record) -> emitWriteFunction(codeBuilder, record, nested));
+    }
+
     static void emitWriteFunction(CodeBuilder builder, Class<? extends Record> clazz) {
-        var components = clazz.getRecordComponents();
+        emitWriteFunction(builder, clazz, NestedRecords.inlineOnly());
+    }
 
-        for (var component : components) {
-            var type = component.getType();
+    static void emitWriteFunction(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested) {
+        nested.beginMethod(clazz);
+        emitRecordWrite(builder, clazz, 1, nested, 0);
+        builder.return_();
+    }
 
-            if (type.isPrimitive())
-                writePrimitiveEncoder(builder, component);
-            else
-                writeClassEncoder(builder, component);
+    /**
+     * Emits bytecode writing the components of the record held in {@code record}.
+     */
+    private static void emitRecordWrite(CodeBuilder builder, Class<? extends Record> clazz, int record, NestedRecords nested, int depth) {
+        var components = clazz.getRecordComponents();
 
+        // Optional and sparse components are loaded up front, as the bitmap recording their presence leads the record
+        var values = new int[components.length];
+        if (PresenceBitmap.bytes(components) > 0) {
+            var bitmap = OptionalEmitter.emitBitmap(builder, components, values, optional -> loadComponent(builder, optional, record));
+            builder
+                    .aload(0)
+                    .lload(bitmap)
+                    .loadConstant(PresenceBitmap.bytes(components))
+                    .invokestatic(HELPER_DESC, "writeBits", STREAM_BITS_STORE);
         }
 
-        builder.return_();
+        for (var i = 0; i < components.length; i++) {
+            var component = components[i];
+            var type = component.getType();
+
+            // Sparse components are only written if they differ from their default, booleans not at all as their bit
+            // already holds their value
+            if (PresenceBitmap.isElidable(component)) {
+                if (type == boolean.class)
+                    continue;
+
+                var kind = TypeKind.from(type);
+                var value = values[i];
+                var absent = builder.newLabel();
+
+                builder.loadLocal(kind, value);
+                OptionalEmitter.emitIfDefault(builder, type, absent);
+                writeValue(builder, component, type, nested, depth, () -> builder.loadLocal(kind, value));
+                builder.labelBinding(absent);
+                continue;
+            }
+
+            // Optional components are written as the value they hold, and not at all when absent
+            if (PresenceBitmap.isOptional(component)) {
+                var valueType = PresenceBitmap.valueType(component);
+                var value = values[i];
+                var absent = builder.newLabel();
+
+                builder.aload(value);
+                OptionalEmitter.emitIfAbsent(builder, type, absent);
+                writeValue(builder, component, valueType, nested, depth, () -> {
+                    builder.aload(value);
+                    OptionalEmitter.emitUnwrap(builder, type, valueType);
+                });
+                builder.labelBinding(absent);
+                continue;
+            }
+
+            // Booleans and bit fields are shifted into one packed word written as a whole
+            if (BitFieldLayout.isBitField(component)) {
+                var group = BitFieldLayout.groupAt(components, i);
+                builder.aload(0);
+                BitFieldEmitter.emitPack(builder, components, group, packed -> loadComponent(builder, packed, record));
+                builder
+                        .loadConstant(group.bytes())
+                        .invokestatic(HELPER_DESC, "writeBits", STREAM_BITS_STORE);
+                i = group.end() - 1;
+                continue;
+            }
+
+            writeValue(builder, component, type, nested, depth, () -> loadComponent(builder, component, record));
+        }
     }
 
-    private static void writePrimitiveEncoder(CodeBuilder builder, RecordComponent component) {
-        var parentClazz = component.getDeclaringRecord();
-        var componentType = component.getType();
+    /**
+     * Writes a value of the given type for a component, pushed by {@code loader}. The type differs from the component's
+     * type for optional components, which are written as the value they hold.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeValue(CodeBuilder builder, RecordComponent component, Class<?> type, NestedRecords nested, int depth, Runnable loader) {
+        if (type.isPrimitive())
+            writePrimitiveEncoder(builder, component, type, loader);
+        else if (type.isEnum())
+            writeEnumEncoder(builder, type, loader);
+        else if (component.isAnnotationPresent(FixedLength.class))
+            writeFixedLengthEncoder(builder, component, loader);
+        else if (type.equals(String.class))
+            writeStringEncoder(builder, loader);
+        else if (ArrayEmitter.isPrimitiveArray(type))
+            writeArrayEncoder(builder, component, loader);
+        else if (type.isRecord())
+            writeClassEncoder(builder, (Class<? extends Record>) type, nested, depth, loader);
+        else if (SealedTypes.isSealed(type))
+            writeSealedEncoder(builder, type, nested, depth, loader);
+        else
+            throw new IllegalStateException("Unsupported component type: " + type.getTypeName() + ".");
+    }
 
-        // Load Record from component
-        builder.aload(1);
-        builder.invokevirtual(ClassDesc.of(parentClazz.getName()), component.getName(), getField(component));
+    private static void writePrimitiveEncoder(CodeBuilder builder, RecordComponent component, Class<?> componentType, Runnable loader) {
+        // Load the value and keep it in a local, so that each byte can be shifted out of it
+        loader.run();
 
-        // Load the stream
-        builder.aload(0);
-        builder.swap();
+        var slot = builder.allocateLocal(TypeKind.from(componentType));
+        builder.storeLocal(TypeKind.from(componentType), slot);
 
         switch (componentType.getName()) {
             case "long" ->
-                emitWriteLongInfo(builder, component);
+                emitWriteLongInfo(builder, component, slot);
             case "int" ->
-                emitWriteIntInfo(builder, component);
+                emitWriteIntInfo(builder, component, slot);
             case "short" ->
-                emitWriteToShortStream(builder, component);
+                emitWriteToShortStream(builder, slot);
             case "byte" ->
-                    builder.invokevirtual(INPUT_DESC, "write", WRITE_BYTE);
+                emitWriteToByteStream(builder, slot);
 
             case "double" ->
-                emitWriteToDoubleStream(builder, component);
+                emitWriteToDoubleStream(builder, slot);
             case "float" ->
-                emitWriteToFloatStream(builder, component);
+                emitWriteToFloatStream(builder, slot);
 
             case "char" ->
-                emitWriteToCharStream(builder, component);
+                emitWriteToCharStream(builder, slot);
 
             default -> throw new IllegalStateException("Unexpected type: " + componentType.getTypeName());
         }
     }
 
-    private static void emitWriteLongInfo(CodeBuilder builder, RecordComponent component) {
-        if (component.isAnnotationPresent(UnsignedByte.class))
-            emitWriteToByteFromLongStream(builder, component);
+    private static void loadComponent(CodeBuilder builder, RecordComponent component, int record) {
+        var parentClazz = ClassDesc.of(component.getDeclaringRecord().getName());
+
+        builder
+                .aload(record)
+                .checkcast(parentClazz)
+                .invokevirtual(parentClazz, component.getName(), getField(component));
+    }
+
+    private static void emitWriteLongInfo(CodeBuilder builder, RecordComponent component, int slot) {
+        if (component.isAnnotationPresent(VarInt.class))
+            emitWriteToVarStream(builder, TypeKind.LONG, slot, "writeVarLong", STREAM_LONG_STORE);
+        else if (component.isAnnotationPresent(ZigZag.class))
+            emitWriteToVarStream(builder, TypeKind.LONG, slot, "writeZigZagLong", STREAM_LONG_STORE);
+        else if (component.isAnnotationPresent(UnsignedByte.class))
+            emitWriteLongBytes(builder, slot, Byte.BYTES);
         else if (component.isAnnotationPresent(UnsignedShort.class))
-            emitWriteToShortFromLongStream(builder, component);
+            emitWriteLongBytes(builder, slot, Short.BYTES);
         else if (component.isAnnotationPresent(UnsignedInteger.class))
-            emitWriteToIntFromLongStream(builder, component);
+            emitWriteLongBytes(builder, slot, Integer.BYTES);
         else
-            emitWriteToLongStream(builder, component);
+            emitWriteLongBytes(builder, slot, Long.BYTES);
     }
 
-    private static void emitWriteToLongStream(CodeBuilder builder, RecordComponent component) {
-
-    }
-
-    private static void emitWriteIntInfo(CodeBuilder builder, RecordComponent component) {
-        if (component.isAnnotationPresent(UnsignedByte.class))
-            emitWriteToByteFromIntStream(builder, component);
+    private static void emitWriteIntInfo(CodeBuilder builder, RecordComponent component, int slot) {
+        if (component.isAnnotationPresent(VarInt.class))
+            emitWriteToVarStream(builder, TypeKind.INT, slot, "writeVarInt", STREAM_INT_STORE);
+        else if (component.isAnnotationPresent(ZigZag.class))
+            emitWriteToVarStream(builder, TypeKind.INT, slot, "writeZigZagInt", STREAM_INT_STORE);
+        else if (component.isAnnotationPresent(UnsignedByte.class))
+            emitWriteIntBytes(builder, slot, Byte.BYTES);
         else if (component.isAnnotationPresent(UnsignedShort.class))
-            emitWriteToShortFromIntStream(builder, component);
+            emitWriteIntBytes(builder, slot, Short.BYTES);
         else if (component.isAnnotationPresent(UnsignedInteger.class))
             throw new IllegalStateException("You can't load an unsigned integer as an integer.");
         else
-            emitWriteToIntStream(builder, component);
+            emitWriteIntBytes(builder, slot, Integer.BYTES);
     }
 
-    private static void emitWriteToIntFromLongStream(CodeBuilder builder, RecordComponent component) {
-
+    private static void emitWriteToShortStream(CodeBuilder builder, int slot) {
+        emitWriteIntBytes(builder, slot, Short.BYTES);
     }
 
-    private static void emitWriteToIntStream(CodeBuilder builder, RecordComponent component) {
-
+    private static void emitWriteToByteStream(CodeBuilder builder, int slot) {
+        emitWriteIntBytes(builder, slot, Byte.BYTES);
     }
 
-    private static void emitWriteToShortStream(CodeBuilder builder, RecordComponent component) {
-        // >> 8
-        builder.dup();
-        builder.bipush(8);
-        builder.ishr();
-        builder.aload(0);
-        builder.swap();
-        builder.invokevirtual(INPUT_DESC, "write", WRITE_BYTE);
-
-        // & 0xFF
-        builder.swap();
-        builder.bipush(0xFF);
-        builder.iand();
-        builder.aload(0);
-        builder.swap();
-        builder.invokevirtual(INPUT_DESC, "write", WRITE_BYTE);
+    private static void emitWriteToCharStream(CodeBuilder builder, int slot) {
+        emitWriteIntBytes(builder, slot, Character.BYTES);
     }
 
-    private static void emitWriteToShortFromLongStream(CodeBuilder builder, RecordComponent component) {
-
+    private static void emitWriteToDoubleStream(CodeBuilder builder, int slot) {
+        var bits = builder.allocateLocal(TypeKind.LONG);
+        builder
+                .dload(slot)
+                .invokestatic(DOUBLE_DESC, "doubleToRawLongBits", MethodTypeDesc.ofDescriptor("(D)J"))
+                .lstore(bits);
+        emitWriteLongBytes(builder, bits, Long.BYTES);
     }
 
-    private static void emitWriteToShortFromIntStream(CodeBuilder builder, RecordComponent component) {
-
+    private static void emitWriteToFloatStream(CodeBuilder builder, int slot) {
+        var bits = builder.allocateLocal(TypeKind.INT);
+        builder
+                .fload(slot)
+                .invokestatic(FLOAT_DESC, "floatToRawIntBits", MethodTypeDesc.ofDescriptor("(F)I"))
+                .istore(bits);
+        emitWriteIntBytes(builder, bits, Integer.BYTES);
     }
 
-    private static void emitWriteToByteStream(CodeBuilder builder, RecordComponent component) {
+    /**
+     * Emits a call to one of the variable length integer writers in {@link net.ansinn.ByteBarista.NumericHelpers}.
+     */
+    private static void emitWriteToVarStream(CodeBuilder builder, TypeKind kind, int slot, String helper, MethodTypeDesc type) {
+        builder
+                .aload(0)
+                .loadLocal(kind, slot)
+                .invokestatic(HELPER_DESC, helper, type);
     }
 
-    private static void emitWriteToByteFromLongStream(CodeBuilder builder, RecordComponent component) {
-
+    /**
+     * Writes the lowest {@code bytes} bytes of the {@code int} held in {@code slot}, most significant byte first.
+     */
+    private static void emitWriteIntBytes(CodeBuilder builder, int slot, int bytes) {
+        for (var shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            builder
+                    .aload(0)
+                    .iload(slot);
+            if (shift > 0)
+                builder.bipush(shift).iushr();
+            builder.invokevirtual(OUTPUT_DESC, "write", WRITE_BYTE);
+        }
     }
 
-    private static void emitWriteToByteFromIntStream(CodeBuilder builder, RecordComponent component) {
-
+    /**
+     * Writes the lowest {@code bytes} bytes of the {@code long} held in {@code slot}, most significant byte first.
+     */
+    private static void emitWriteLongBytes(CodeBuilder builder, int slot, int bytes) {
+        for (var shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            builder
+                    .aload(0)
+                    .lload(slot);
+            if (shift > 0)
+                builder.bipush(shift).lushr();
+            builder
+                    .l2i()
+                    .invokevirtual(OUTPUT_DESC, "write", WRITE_BYTE);
+        }
     }
 
-    private static void emitWriteToDoubleStream(CodeBuilder builder, RecordComponent component) {
+    /**
+     * Writes the ordinal of an enum in the width chosen by {@link ClassUtils#enumWidth(Class)}.
+     */
+    private static void writeEnumEncoder(CodeBuilder builder, Class<?> type, Runnable loader) {
+        loader.run();
+        EnumEmitter.emitOrdinal(builder);
 
+        var slot = builder.allocateLocal(TypeKind.INT);
+        builder.istore(slot);
+        emitWriteIntBytes(builder, slot, ClassUtils.enumWidth(type));
     }
 
-    private static void emitWriteToFloatStream(CodeBuilder builder, RecordComponent component) {
-
+    private static void writeFixedLengthEncoder(CodeBuilder builder, RecordComponent component, Runnable loader) {
+        builder.aload(0);
+        loader.run();
+        FixedLengthEmitter.emitStreamWrite(builder, component);
     }
 
-    private static void emitWriteToCharStream(CodeBuilder builder, RecordComponent component) {
-        // >> 8
-        builder.dup();
-        builder.bipush(8);
-        builder.iushr();
+    private static void writeStringEncoder(CodeBuilder builder, Runnable loader) {
         builder.aload(0);
-        builder.swap();
-        builder.invokevirtual(INPUT_DESC, "write", WRITE_BYTE);
+        loader.run();
+        builder.invokestatic(STRING_HELPER_DESC, "writeString", STREAM_STRING_STORE);
+    }
 
-        // & 0xFF
-        builder.swap();
-        builder.bipush(0xFF);
-        builder.iand();
+    private static void writeArrayEncoder(CodeBuilder builder, RecordComponent component, Runnable loader) {
         builder.aload(0);
-        builder.swap();
-        builder.invokevirtual(INPUT_DESC, "write", WRITE_BYTE);
+        loader.run();
+        ArrayEmitter.emitStreamWrite(builder, component);
+    }
+
+    /**
+     * Writes a nested record, either inlined into the current method or through the fallback method of its record
+     * type. The nested record is loaded once and kept in a local slot its components are read from.
+     */
+    private static void writeClassEncoder(CodeBuilder builder, Class<? extends Record> clazz, NestedRecords nested, int depth, Runnable loader) {
+        var slot = builder.allocateLocal(TypeKind.REFERENCE);
+
+        loader.run();
+        builder.astore(slot);
+
+        if (nested.shouldInline(clazz, depth))
+            emitRecordWrite(builder, clazz, slot, nested, depth + 1);
+        else
+            builder
+                    .aload(0)
+                    .aload(slot)
+                    .invokestatic(nested.owner(), nested.methodFor(clazz), MethodTypeDesc.of(ConstantDescs.CD_void, OUTPUT_DESC, ClassDesc.of(clazz.getName())));
     }
 
-    private static void writeClassEncoder(CodeBuilder builder, RecordComponent component) {
-        throw new UnsupportedOperationException("Non-primitive type encoding not yet supported: " + component.getType());
+    /**
+     * Writes the value of a sealed interface as the tag of its subtype followed by the record, which is inlined or
+     * written through its fallback method like any nested record.
+     */
+    private static void writeSealedEncoder(CodeBuilder builder, Class<?> type, NestedRecords nested, int depth, Runnable loader) {
+        var hierarchy = SealedTypes.of(type);
+        var slot = builder.allocateLocal(TypeKind.REFERENCE);
+        var tag = builder.allocateLocal(TypeKind.INT);
+
+        loader.run();
+        builder.astore(slot);
+
+        SealedEmitter.emitEncodeDispatch(builder, type, slot, index -> {
+            var subtype = hierarchy.subtypes().get(index);
+            builder
+                    .loadConstant(hierarchy.tags()[index])
+                    .istore(tag);
+            emitWriteIntBytes(builder, tag, hierarchy.width());
+            writeClassEncoder(builder, subtype, nested, depth, () -> builder
+                    .aload(slot)
+                    .checkcast(ClassDesc.of(subtype.getName())));
+        });
     }
 
 }
@@ -0,0 +1,233 @@
+package net.ansinn.ByteBarista.queue;
+
+import net.ansinn.ByteBarista.codecs.FixedCodec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer queue of encoded fixed-size records.
+ * <p>
+ * Records never cross the queue as objects. Every slot is a {@link FixedCodec#size()} byte region of a single direct
+ * {@link ByteBuffer}; producers claim a slot by advancing a shared sequence and encode straight into it, and the
+ * consumer decodes (or just inspects) the bytes in place. A slot becomes visible to the consumer once its producer
+ * publishes the slot's sequence number with release semantics, and the consumer hands a whole batch of slots back to
+ * producers with a single release store of its head sequence.
+ * <p>
+ * Producers may call {@link #offer(Record)} or {@link #put(Record)} from any number of threads. {@code offer} claims a
+ * slot with a compare-and-set and fails fast when the queue is full, while {@code put} claims its slot with a single
+ * {@code getAndAdd} and spins until the consumer frees it. All {@code drain} and {@code poll} calls must come from a
+ * single consumer thread at a time.
+ * <p>
+ * A producer whose record fails to encode still publishes its claimed slot, marked as skipped, and rethrows. The
+ * consumer passes over skipped slots, so a failed encode never leaves a gap in the sequence that would stall it.
+ *
+ * @param <T> the record type carried by the queue
+ * @see FixedCodec
+ * @author Gunter Ansinn
+ */
+public final class RecordRingBuffer<T extends Record> {
+
+    private static final VarHandle CLAIM;
+    private static final VarHandle HEAD;
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(long[].class);
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            CLAIM = lookup.findVarHandle(RecordRingBuffer.class, "claim", long.class);
+            HEAD = lookup.findVarHandle(RecordRingBuffer.class, "head", long.class);
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
+    private final FixedCodec<T> codec;
+    private final int capacity;
+    private final int mask;
+
+    private final ByteBuffer[] slots;
+    private final long[] published;
+
+    // Written by a producer before it publishes the slot, so reading it after acquiring the slot is safe
+    private final boolean[] skipped;
+
+    // Next sequence handed out to a producer
+    @SuppressWarnings("unused")
+    private volatile long claim;
+
+    // Next sequence to be consumed, only ever written by the consumer
+    @SuppressWarnings("unused")
+    private volatile long head;
+
+    /**
+     * Creates a ring buffer holding up to {@code capacity} encoded records.
+     *
+     * @param codec    the codec used to encode and decode records
+     * @param capacity number of slots, must be a power of two
+     * @throws IllegalArgumentException if the capacity is not a positive power of two
+     */
+    public RecordRingBuffer(FixedCodec<T> codec, int capacity) {
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two: " + capacity);
+        if ((long) capacity * codec.size() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Ring buffer of " + capacity + " slots does not fit into a single buffer.");
+
+        this.codec = codec;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+
+        var backing = ByteBuffer.allocateDirect(capacity * codec.size());
+        this.slots = new ByteBuffer[capacity];
+        for (var i = 0; i < capacity; i++)
+            slots[i] = backing.slice(i * codec.size(), codec.size());
+
+        this.published = new long[capacity];
+        Arrays.fill(published, -1L);
+        this.skipped = new boolean[capacity];
+    }
+
+    /**
+     * Encodes a record into the next free slot if one is available.
+     *
+     * @param value the record to enqueue
+     * @return {@code true} if the record was enqueued, {@code false} if the queue was full
+     */
+    public boolean offer(T value) {
+        long sequence;
+        do {
+            sequence = (long) CLAIM.getVolatile(this);
+            if (sequence - (long) HEAD.getAcquire(this) >= capacity)
+                return false;
+        } while (!CLAIM.compareAndSet(this, sequence, sequence + 1));
+
+        publish(sequence, value);
+        return true;
+    }
+
+    /**
+     * Encodes a record into the next slot, spinning until the consumer has freed it if the queue is full.
+     *
+     * @param value the record to enqueue
+     */
+    public void put(T value) {
+        var sequence = (long) CLAIM.getAndAdd(this, 1L);
+
+        while (sequence - (long) HEAD.getAcquire(this) >= capacity)
+            Thread.onSpinWait();
+
+        publish(sequence, value);
+    }
+
+    /**
+     * Decodes and removes the next record if one has been published. A record that fails to decode is removed as
+     * well.
+     *
+     * @return the next record, or {@code null} if the queue is empty
+     */
+    public T poll() {
+        while (true) {
+            var sequence = (long) HEAD.getOpaque(this);
+            var index = (int) (sequence & mask);
+
+            if ((long) PUBLISHED.getAcquire(published, index) != sequence)
+                return null;
+
+            // Release the slot even if decoding fails, as drainSlots does, so a bad record can't be re-read forever
+            try {
+                if (!skipped[index])
+                    return codec.decode(slots[index].clear());
+            } finally {
+                HEAD.setRelease(this, sequence + 1);
+            }
+        }
+    }
+
+    /**
+     * Decodes up to {@code limit} published records in order and hands them to the given action. The slots are
+     * released back to producers in one step once the whole batch has been processed.
+     *
+     * @param action the action to perform for each record
+     * @param limit  the maximum number of records to drain
+     * @return the number of records drained
+     */
+    public int drain(Consumer<? super T> action, int limit) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+        return drainSlots(slot -> action.accept(codec.decode(slot)), limit);
+    }
+
+    /**
+     * Hands up to {@code limit} published slots to the given action without decoding them. Each buffer is positioned
+     * at the start of its record with exactly {@link FixedCodec#size()} bytes remaining; it is only valid for the
+     * duration of the call and must not be retained or written to.
+     *
+     * @param action the action to perform for each encoded record
+     * @param limit  the maximum number of records to drain
+     * @return the number of records drained
+     */
+    public int drainEncoded(Consumer<ByteBuffer> action, int limit) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+        return drainSlots(action, limit);
+    }
+
+    /**
+     * @return an estimate of the number of records waiting to be consumed
+     */
+    public int size() {
+        var size = (long) CLAIM.getVolatile(this) - (long) HEAD.getVolatile(this);
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * @return the maximum number of records the queue can hold
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    private void publish(long sequence, T value) {
+        var index = (int) (sequence & mask);
+
+        // The consumer waits on every claimed sequence in order, so the slot is published even if encoding fails
+        var encoded = false;
+        try {
+            codec.encode(slots[index].clear(), value);
+            encoded = true;
+        } finally {
+            skipped[index] = !encoded;
+            PUBLISHED.setRelease(published, index, sequence);
+        }
+    }
+
+    private int drainSlots(Consumer<ByteBuffer> action, int limit) {
+        var start = (long) HEAD.getOpaque(this);
+        var sequence = start;
+        var drained = 0;
+
+        try {
+            while (drained < limit) {
+                var index = (int) (sequence & mask);
+                if ((long) PUBLISHED.getAcquire(published, index) != sequence)
+                    break;
+
+                // Count the slot as consumed up front so a failing action can't wedge the queue on it
+                sequence++;
+                if (skipped[index])
+                    continue;
+
+                drained++;
+                action.accept(slots[index].clear());
+            }
+        } finally {
+            if (sequence != start)
+                HEAD.setRelease(this, sequence);
+        }
+        return drained;
+    }
+}
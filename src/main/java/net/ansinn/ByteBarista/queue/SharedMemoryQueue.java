@@ -0,0 +1,254 @@
+package net.ansinn.ByteBarista.queue;
+
+import net.ansinn.ByteBarista.codecs.FixedCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * A bounded queue of encoded fixed-size records living in a memory-mapped file, used to pass records between
+ * processes (or threads) on the same machine without going through the kernel.
+ * <p>
+ * The file holds a header followed by {@code capacity} slots. Each slot is an 8 byte sequence stamp followed by one
+ * record encoded by a {@link FixedCodec}. The header stores the tail (next sequence to be claimed by a producer) and
+ * the head (next sequence to be consumed) on separate cache lines. All counters are accessed through a
+ * {@link VarHandle} view of the mapping with acquire/release semantics, which is all the ordering that is needed for
+ * a producer in one process to safely hand a record to a consumer in another.
+ * <p>
+ * Producers claim a slot by advancing the tail with a compare-and-set once the slot's stamp shows that it is free,
+ * encode the record in place and then publish it by releasing the stamp. With a single producer the compare-and-set
+ * never fails, so the same code serves single and multi-producer setups. There must only ever be a single consumer
+ * across all processes mapping the file.
+ * <p>
+ * Whichever process opens the file first lays out the header and slot stamps; the others validate that they agree on
+ * the record size and capacity. Setup is guarded by a file lock, so processes may open the queue concurrently.
+ *
+ * @param <T> the record type carried by the queue
+ * @see RecordRingBuffer
+ * @author Gunter Ansinn
+ */
+public final class SharedMemoryQueue<T extends Record> implements Closeable {
+
+    static final int MAGIC = 0x42425153; // "BBQS"
+
+    private static final int RECORD_SIZE_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int TAIL_OFFSET = 64;
+    private static final int HEAD_OFFSET = 128;
+    static final int HEADER_SIZE = 192;
+
+    private static final int STAMP_SIZE = Long.BYTES;
+
+    // Native order keeps the counters plain machine words; every process on the host agrees on it
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final Arena arena;
+    private final ByteBuffer mapping;
+    private final FixedCodec<T> codec;
+
+    private final int capacity;
+    private final int mask;
+    private final int slotSize;
+    private final ByteBuffer[] slots;
+
+    private SharedMemoryQueue(FileChannel channel, FixedCodec<T> codec, int capacity) throws IOException {
+        this.channel = channel;
+        this.codec = codec;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        // Keep stamps 8 byte aligned so that atomic access is permitted on them
+        this.slotSize = (STAMP_SIZE + codec.size() + 7) & ~7;
+        this.arena = Arena.ofShared();
+
+        try {
+            this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * slotSize, arena).asByteBuffer();
+            initialize();
+
+            this.slots = new ByteBuffer[capacity];
+            for (var i = 0; i < capacity; i++)
+                slots[i] = mapping.slice(slotOffset(i) + STAMP_SIZE, codec.size());
+        } catch (IOException | RuntimeException exception) {
+            arena.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens, or creates and lays out, a shared memory queue backed by the given file.
+     *
+     * @param path     the file backing the queue
+     * @param codec    the codec used to encode and decode records
+     * @param capacity number of slots, must be a power of two
+     * @return the opened queue
+     * @param <T> the record type carried by the queue
+     * @throws IOException if the file cannot be mapped or was laid out for a different record size or capacity
+     */
+    public static <T extends Record> SharedMemoryQueue<T> open(Path path, FixedCodec<T> codec, int capacity) throws IOException {
+        Objects.requireNonNull(path, "Path cannot be null.");
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Queue capacity must be a power of two: " + capacity);
+
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new SharedMemoryQueue<>(channel, codec, capacity);
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Encodes a record into the next free slot if one is available.
+     *
+     * @param value the record to enqueue
+     * @return {@code true} if the record was enqueued, {@code false} if the queue was full
+     */
+    public boolean offer(T value) {
+        while (true) {
+            var sequence = (long) LONG.getAcquire(mapping, TAIL_OFFSET);
+            var index = (int) (sequence & mask);
+            var stamp = (long) LONG.getAcquire(mapping, slotOffset(index));
+
+            if (stamp == sequence) {
+                if (LONG.compareAndSet(mapping, TAIL_OFFSET, sequence, sequence + 1)) {
+                    codec.encode(slots[index].clear(), value);
+                    LONG.setRelease(mapping, slotOffset(index), sequence + 1);
+                    return true;
+                }
+            } else if (stamp < sequence) {
+                // The slot still holds the record from the previous lap
+                return false;
+            }
+
+            // Another producer claimed this sequence first, try the next one
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Decodes and removes the next record if one has been published.
+     *
+     * @return the next record, or {@code null} if the queue is empty
+     */
+    public T poll() {
+        var sequence = (long) LONG.getOpaque(mapping, HEAD_OFFSET);
+        var index = (int) (sequence & mask);
+
+        if ((long) LONG.getAcquire(mapping, slotOffset(index)) != sequence + 1)
+            return null;
+
+        var value = codec.decode(slots[index].clear());
+        release(index, sequence);
+        return value;
+    }
+
+    /**
+     * Decodes up to {@code limit} published records in order and hands them to the given action.
+     *
+     * @param action the action to perform for each record
+     * @param limit  the maximum number of records to drain
+     * @return the number of records drained
+     */
+    public int drain(Consumer<? super T> action, int limit) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+
+        var drained = 0;
+        var sequence = (long) LONG.getOpaque(mapping, HEAD_OFFSET);
+
+        while (drained < limit) {
+            var index = (int) (sequence & mask);
+            if ((long) LONG.getAcquire(mapping, slotOffset(index)) != sequence + 1)
+                break;
+
+            var value = codec.decode(slots[index].clear());
+            release(index, sequence++);
+            drained++;
+            action.accept(value);
+        }
+
+        return drained;
+    }
+
+    /**
+     * @return an estimate of the number of records waiting to be consumed
+     */
+    public int size() {
+        var size = (long) LONG.getAcquire(mapping, TAIL_OFFSET) - (long) LONG.getAcquire(mapping, HEAD_OFFSET);
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * @return the maximum number of records the queue can hold
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Unmaps the queue from this process. The file and any records still queued in it are left untouched.
+     *
+     * @throws IOException if the underlying channel could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            arena.close();
+        }
+    }
+
+    /**
+     * Hands a consumed slot back to producers for the next lap and advances the head.
+     */
+    private void release(int index, long sequence) {
+        LONG.setRelease(mapping, slotOffset(index), sequence + capacity);
+        LONG.setRelease(mapping, HEAD_OFFSET, sequence + 1);
+    }
+
+    private int slotOffset(int index) {
+        return HEADER_SIZE + index * slotSize;
+    }
+
+    /**
+     * Lays out a fresh queue or validates an existing one, holding a file lock so that processes opening the queue at
+     * the same time never observe a half written header. Opens within this JVM are serialized as well, as file locks
+     * are held on behalf of the whole JVM.
+     */
+    private void initialize() throws IOException {
+        synchronized (SharedMemoryQueue.class) {
+            try (var _ = channel.lock()) {
+                if ((int) INT.getAcquire(mapping, 0) == MAGIC) {
+                    var recordSize = (int) INT.get(mapping, RECORD_SIZE_OFFSET);
+                    var existingCapacity = (int) INT.get(mapping, CAPACITY_OFFSET);
+
+                    if (recordSize != codec.size() || existingCapacity != capacity)
+                        throw new IOException("Queue was created for " + existingCapacity + " records of " + recordSize
+                                + " bytes, not " + capacity + " records of " + codec.size() + " bytes.");
+                    return;
+                }
+
+                INT.set(mapping, RECORD_SIZE_OFFSET, codec.size());
+                INT.set(mapping, CAPACITY_OFFSET, capacity);
+                LONG.set(mapping, TAIL_OFFSET, 0L);
+                LONG.set(mapping, HEAD_OFFSET, 0L);
+                for (var i = 0; i < capacity; i++)
+                    LONG.set(mapping, slotOffset(i), (long) i);
+
+                INT.setRelease(mapping, 0, MAGIC);
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.RecordSchema;
+import net.ansinn.ByteBarista.codecs.Codec;
+import net.ansinn.ByteBarista.codecs.KeyCodec;
+import net.ansinn.ByteBarista.codecs.KeyExtractor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * An open addressing hash index over a {@link MappedRecordFile} or {@link RecordLog}, stored in a memory mapped file
+ * of its own.
+ * <p>
+ * The index maps the key of every record to its position in the record file: the record's index for record files and
+ * the offset of its frame for record logs, as returned by {@link MappedRecordFile#append} and {@link RecordLog#append}.
+ * Keys are described by a key record whose components name components of the stored record, see
+ * {@link CodecManager#getKeyExtractor(Class, Class)}. Each slot of the index holds the 64 bit hash of a key and the
+ * position of its record, and slots are probed linearly at a load factor of at most one half.
+ * <p>
+ * Neither building nor looking up decodes a record. Building extracts the key of every record straight from its
+ * encoding, and a lookup only extracts the key of candidates whose stored hash matches, reading just their key
+ * components, before comparing it to the probed key byte by byte. Only the record a lookup finds is decoded, and only
+ * if it is asked for with {@link #get(Record)}.
+ * <p>
+ * The index is meant for archived record files. It sees the records present when it was built or opened, and later
+ * records of the same key replace earlier ones. The index file records the layout of the record and key types and is
+ * rejected if either changes.
+ * <p>
+ * Instances are not thread-safe; callers sharing one between threads must synchronize externally.
+ *
+ * @param <T> the record type stored in the record file
+ * @param <K> the key record type
+ * @see KeyExtractor
+ * @author Gunter Ansinn
+ */
+public final class HashIndex<T extends Record, K extends Record> implements Closeable {
+
+    /**
+     * The layout of the indexed record file.
+     */
+    public enum Source {
+
+        /**
+         * A {@link MappedRecordFile} of fixed size records, indexed by record index.
+         */
+        RECORD_FILE,
+
+        /**
+         * A {@link RecordLog} of length prefixed frames, indexed by frame offset.
+         */
+        RECORD_LOG
+    }
+
+    static final int MAGIC = 0x42424849; // "BBHI"
+    static final int HEADER_SIZE = 32;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SLOTS = 16;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final int FINGERPRINT_OFFSET = 24;
+    private static final int INITIAL_SCRATCH = 64;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Source source;
+    private final Codec<T> codec;
+    private final KeyCodec<K> keyCodec;
+    private final KeyExtractor extractor;
+
+    private final FileChannel recordChannel;
+    private final FileChannel indexChannel;
+    private final Arena arena;
+    private final MemorySegment records;
+    private final MemorySegment index;
+
+    private final int recordSize;
+    private final long mask;
+    private long count;
+
+    private ByteBuffer probe = ByteBuffer.allocate(INITIAL_SCRATCH);
+    private ByteBuffer candidate = ByteBuffer.allocate(INITIAL_SCRATCH);
+
+    private HashIndex(Source source, Class<T> type, Class<K> keyType, FileChannel recordChannel, FileChannel indexChannel,
+                      Arena arena, MemorySegment records, MemorySegment index) {
+        this.source = source;
+        this.codec = CodecManager.getCodec(type);
+        this.keyCodec = CodecManager.getKeyCodec(keyType);
+        this.extractor = CodecManager.getKeyExtractor(type, keyType);
+        this.recordChannel = recordChannel;
+        this.indexChannel = indexChannel;
+        this.arena = arena;
+        this.records = records;
+        this.index = index;
+        this.recordSize = source == Source.RECORD_FILE ? CodecManager.getSafe(type).size() : 0;
+        this.mask = index.get(LONG, SLOTS_OFFSET) - 1;
+        this.count = index.get(LONG, COUNT_OFFSET);
+    }
+
+    /**
+     * Builds the index of a record file, replacing the index file if it exists.
+     *
+     * @param records the record file to index
+     * @param source  the layout of the record file
+     * @param path    the index file to write
+     * @param type    the record type stored in the record file
+     * @param keyType the key record type
+     * @return the built index, open for lookups
+     * @param <T> the record type stored in the record file
+     * @param <K> the key record type
+     * @throws IOException if either file can't be accessed, or the record file is malformed
+     * @throws IllegalStateException if the key record can't be extracted from the stored record
+     */
+    public static <T extends Record, K extends Record> HashIndex<T, K> build(Path records, Source source, Path path,
+                                                                             Class<T> type, Class<K> keyType) throws IOException {
+        Objects.requireNonNull(source, "Source cannot be null.");
+
+        return open(records, source, path, type, keyType, true);
+    }
+
+    /**
+     * Opens an index built before.
+     *
+     * @param records the indexed record file
+     * @param source  the layout of the record file
+     * @param path    the index file to open
+     * @param type    the record type stored in the record file
+     * @param keyType the key record type
+     * @return the opened index
+     * @param <T> the record type stored in the record file
+     * @param <K> the key record type
+     * @throws IOException if either file can't be accessed, or the index was built for another source, record type
+     * or key type
+     */
+    public static <T extends Record, K extends Record> HashIndex<T, K> open(Path records, Source source, Path path,
+                                                                            Class<T> type, Class<K> keyType) throws IOException {
+        Objects.requireNonNull(source, "Source cannot be null.");
+
+        return open(records, source, path, type, keyType, false);
+    }
+
+    private static <T extends Record, K extends Record> HashIndex<T, K> open(Path records, Source source, Path path, Class<T> type,
+                                                                             Class<K> keyType, boolean build) throws IOException {
+        Objects.requireNonNull(records, "Record file cannot be null.");
+        Objects.requireNonNull(path, "Index file cannot be null.");
+        Objects.requireNonNull(type, "Record type cannot be null.");
+        Objects.requireNonNull(keyType, "Key type cannot be null.");
+
+        var fingerprint = fingerprintOf(type, keyType);
+        var arena = Arena.ofShared();
+        FileChannel recordChannel = null;
+        FileChannel indexChannel = null;
+
+        try {
+            recordChannel = FileChannel.open(records, StandardOpenOption.READ);
+            var recordSegment = recordChannel.map(FileChannel.MapMode.READ_ONLY, 0, recordChannel.size(), arena);
+
+            HashIndex<T, K> result;
+            if (build) {
+                var extent = extentOf(recordSegment, source, type);
+
+                indexChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                var slots = Math.max(MIN_SLOTS, Long.highestOneBit(Math.max(1, extent.records()) * 2 - 1) << 1);
+                var indexSegment = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + slots * SLOT_SIZE, arena);
+                indexSegment.set(LONG, SLOTS_OFFSET, slots);
+
+                result = new HashIndex<>(source, type, keyType, recordChannel, indexChannel, arena, recordSegment, indexSegment);
+                if (source == Source.RECORD_FILE)
+                    for (var i = 0L; i < extent.records(); i++)
+                        result.insert(i);
+                else
+                    for (var position = 0L; position < extent.end(); position += RecordLog.FRAME_HEADER_SIZE + recordSegment.get(INT, position + Integer.BYTES))
+                        result.insert(position);
+
+                indexSegment.set(INT, 0, MAGIC);
+                indexSegment.set(INT, Integer.BYTES, source.ordinal());
+                indexSegment.set(LONG, COUNT_OFFSET, result.count);
+                indexSegment.set(LONG, FINGERPRINT_OFFSET, fingerprint);
+                indexSegment.force();
+            } else {
+                indexChannel = FileChannel.open(path, StandardOpenOption.READ);
+                if (indexChannel.size() < HEADER_SIZE)
+                    throw new IOException("File is not a hash index.");
+
+                var indexSegment = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size(), arena);
+                if (indexSegment.get(INT, 0) != MAGIC)
+                    throw new IOException("File is not a hash index.");
+                if (indexSegment.get(INT, Integer.BYTES) != source.ordinal())
+                    throw new IOException("Hash index was built for another source than a " + source + ".");
+                if (indexSegment.get(LONG, FINGERPRINT_OFFSET) != fingerprint)
+                    throw new IOException("Hash index was built for a different record or key layout.");
+
+                var slots = indexSegment.get(LONG, SLOTS_OFFSET);
+                if (Long.bitCount(slots) != 1 || indexChannel.size() != HEADER_SIZE + slots * SLOT_SIZE)
+                    throw new IOException("Hash index is truncated or corrupt.");
+
+                result = new HashIndex<>(source, type, keyType, recordChannel, indexChannel, arena, recordSegment, indexSegment);
+            }
+
+            return result;
+        } catch (IOException | RuntimeException exception) {
+            arena.close();
+            if (recordChannel != null)
+                recordChannel.close();
+            if (indexChannel != null)
+                indexChannel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * @return the number of distinct keys in the index
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Looks up the position of the record holding a key.
+     *
+     * @param key the key to look up
+     * @return the record index for record files or the frame offset for record logs, {@code -1} if no record holds the
+     * key
+     */
+    public long find(K key) {
+        Objects.requireNonNull(key, "Key cannot be null.");
+
+        while (true) {
+            try {
+                keyCodec.encode(probe.clear(), key);
+                break;
+            } catch (BufferOverflowException exception) {
+                probe = ByteBuffer.allocate(Math.multiplyExact(probe.capacity(), 2));
+            }
+        }
+
+        probe.flip();
+        var slot = lookup(probe, hash(probe));
+        return slot < 0 ? -1 : index.get(LONG, slot + Long.BYTES) - 1;
+    }
+
+    /**
+     * Looks up and decodes the record holding a key.
+     *
+     * @param key the key to look up
+     * @return the record holding the key, or nothing if no record does
+     */
+    public Optional<T> get(K key) {
+        var position = find(key);
+        return position < 0 ? Optional.empty() : Optional.of(codec.decode(recordAt(position)));
+    }
+
+    /**
+     * Unmaps both files and closes them.
+     *
+     * @throws IOException if a file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try (recordChannel; indexChannel) {
+            arena.close();
+        }
+    }
+
+    /**
+     * Adds the record at the given position, replacing the position of an earlier record with the same key.
+     */
+    private void insert(long position) {
+        extract(position);
+        var key = candidate.flip();
+        var hash = hash(key);
+
+        // The candidate buffer is reused while probing, so the key moves to the probe buffer first
+        if (probe.capacity() < key.remaining())
+            probe = ByteBuffer.allocate(candidate.capacity());
+        probe.clear().put(key).flip();
+
+        var slot = lookup(probe, hash);
+        if (slot < 0) {
+            slot = -slot - 1;
+            index.set(LONG, slot, hash);
+            count++;
+        }
+
+        index.set(LONG, slot + Long.BYTES, position + 1);
+    }
+
+    /**
+     * Probes the index for a key.
+     *
+     * @return the offset of the slot holding the key, or {@code -(offset + 1)} of the empty slot ending the probe
+     */
+    private long lookup(ByteBuffer key, long hash) {
+        for (var bucket = hash & mask; ; bucket = (bucket + 1) & mask) {
+            var slot = HEADER_SIZE + bucket * SLOT_SIZE;
+            var stored = index.get(LONG, slot + Long.BYTES);
+
+            if (stored == 0)
+                return -slot - 1;
+            if (index.get(LONG, slot) == hash) {
+                extract(stored - 1);
+                if (candidate.flip().equals(key))
+                    return slot;
+            }
+        }
+    }
+
+    /**
+     * Extracts the key of the record at the given position into the candidate buffer, growing it as needed.
+     */
+    private void extract(long position) {
+        while (true) {
+            try {
+                extractor.extract(recordAt(position), candidate.clear());
+                return;
+            } catch (BufferOverflowException exception) {
+                candidate = ByteBuffer.allocate(Math.multiplyExact(candidate.capacity(), 2));
+            }
+        }
+    }
+
+    /**
+     * @return a buffer holding the encoded record at the given position
+     */
+    private ByteBuffer recordAt(long position) {
+        return switch (source) {
+            case RECORD_FILE -> records.asSlice(MappedRecordFile.HEADER_SIZE + position * recordSize, recordSize).asByteBuffer();
+            case RECORD_LOG -> records.asSlice(position + RecordLog.FRAME_HEADER_SIZE, records.get(INT, position + Integer.BYTES)).asByteBuffer();
+        };
+    }
+
+    /**
+     * The extent of the records in a record file.
+     *
+     * @param records the number of records
+     * @param end     the offset directly after the last record
+     */
+    private record Extent(long records, long end) {}
+
+    /**
+     * Finds the records in a record file, verifying its header or the checksum of its frames.
+     */
+    private static Extent extentOf(MemorySegment records, Source source, Class<? extends Record> type) throws IOException {
+        if (source == Source.RECORD_FILE) {
+            var recordSize = CodecManager.getSafe(type).size();
+            if (records.byteSize() < MappedRecordFile.HEADER_SIZE || records.get(INT, 0) != MappedRecordFile.MAGIC)
+                throw new IOException("File is not a mapped record file.");
+            if (records.get(INT, Integer.BYTES) != recordSize)
+                throw new IOException("File was written with a record size of " + records.get(INT, Integer.BYTES)
+                        + " bytes but the codec encodes " + recordSize + " bytes.");
+
+            var stored = records.get(LONG, MappedRecordFile.COUNT_OFFSET);
+            var end = MappedRecordFile.HEADER_SIZE + stored * recordSize;
+            if (stored < 0 || end > records.byteSize())
+                throw new IOException("Mapped record file is truncated.");
+
+            return new Extent(stored, end);
+        }
+
+        // Like recovering a log, stop at the first frame that is incomplete or fails its checksum
+        var checksum = new CRC32C();
+        var found = 0L;
+        var position = 0L;
+
+        while (position + RecordLog.FRAME_HEADER_SIZE <= records.byteSize()) {
+            var length = records.get(INT, position + Integer.BYTES);
+            if (length < 0 || position + RecordLog.FRAME_HEADER_SIZE + length > records.byteSize())
+                break;
+
+            checksum.reset();
+            checksum.update(records.asSlice(position + Integer.BYTES, Integer.BYTES + length).asByteBuffer());
+            if ((int) checksum.getValue() != records.get(INT, position))
+                break;
+
+            found++;
+            position += RecordLog.FRAME_HEADER_SIZE + length;
+        }
+
+        return new Extent(found, position);
+    }
+
+    private static long fingerprintOf(Class<? extends Record> type, Class<? extends Record> keyType) {
+        return RecordSchema.of(type).fingerprint() * 31 + RecordSchema.of(keyType).fingerprint();
+    }
+
+    /**
+     * Hashes the remaining bytes of a key, leaving its position untouched.
+     */
+    private static long hash(ByteBuffer key) {
+        var hash = 0xCBF29CE484222325L;
+        for (var i = key.position(); i < key.limit(); i++)
+            hash = (hash ^ (key.get(i) & 0xFF)) * 0x100000001B3L;
+
+        // Finalize so that keys differing in their last bytes spread over the low bits used for the bucket
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return hash ^ hash >>> 33;
+    }
+}
@@ -0,0 +1,283 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.codecs.FixedCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A file of fixed-size records that is memory mapped and accessed in place.
+ * <p>
+ * Because every record encoded by a {@link FixedCodec} occupies exactly {@link FixedCodec#size()} bytes, the
+ * position of the n-th record is a simple multiplication, which gives {@code O(1)} random reads and writes without
+ * decoding anything in front of it. Only the pages that are actually touched get faulted in by the operating system,
+ * so opening a file with millions of records costs next to nothing.
+ * <p>
+ * The file is mapped in chunks of a whole number of records rather than as one large region. This keeps every chunk
+ * addressable as a {@link ByteBuffer} (which is what the codecs operate on) while still supporting files well over
+ * 2 GB, and lets the file grow one chunk at a time as records are appended. All chunks belong to a single shared
+ * {@link Arena} so the mappings are released deterministically when the file is closed.
+ * <p>
+ * The file starts with a small header holding a magic number, the record size it was written with and the number of
+ * records stored. On close the file is trimmed back to exactly the header plus its records.
+ * <p>
+ * Instances are not thread-safe; callers sharing one between threads must synchronize externally.
+ *
+ * @param <T> the record type stored in the file
+ * @see FixedCodec
+ * @author Gunter Ansinn
+ */
+public final class MappedRecordFile<T extends Record> implements Closeable {
+
+    static final int MAGIC = 0x42425246; // "BBRF"
+    static final int HEADER_SIZE = 16;
+
+    static final int COUNT_OFFSET = 8;
+    private static final long DEFAULT_CHUNK_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final FixedCodec<T> codec;
+    private final Arena arena;
+    private final MemorySegment headerSegment;
+    private final ByteBuffer header;
+
+    private final int recordSize;
+    private final int recordsPerChunk;
+
+    private final List<MemorySegment> segments = new ArrayList<>();
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    private long count;
+    private boolean closed;
+
+    private MappedRecordFile(FileChannel channel, FixedCodec<T> codec, int recordsPerChunk) throws IOException {
+        this.channel = channel;
+        this.codec = codec;
+        this.recordSize = codec.size();
+        this.recordsPerChunk = recordsPerChunk;
+        this.arena = Arena.ofShared();
+
+        try {
+            var existing = channel.size() >= HEADER_SIZE;
+            this.headerSegment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE, arena);
+            this.header = headerSegment.asByteBuffer();
+
+            if (existing) {
+                if (header.getInt(0) != MAGIC)
+                    throw new IOException("File is not a mapped record file.");
+                if (header.getInt(4) != recordSize)
+                    throw new IOException("File was written with a record size of " + header.getInt(4)
+                            + " bytes but the codec encodes " + recordSize + " bytes.");
+                this.count = header.getLong(COUNT_OFFSET);
+            } else {
+                header.putInt(0, MAGIC);
+                header.putInt(4, recordSize);
+                header.putLong(COUNT_OFFSET, 0L);
+            }
+        } catch (IOException | RuntimeException exception) {
+            arena.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens or creates a mapped record file, growing the mapping in chunks of roughly 64 MB.
+     *
+     * @param path  the file to open or create
+     * @param codec the codec used to read and write records
+     * @return the opened file
+     * @param <T> the record type stored in the file
+     * @throws IOException if the file cannot be opened or was written with a different record size
+     */
+    public static <T extends Record> MappedRecordFile<T> open(Path path, FixedCodec<T> codec) throws IOException {
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+        return open(path, codec, (int) Math.max(1, Math.min(Integer.MAX_VALUE / codec.size(), DEFAULT_CHUNK_BYTES / codec.size())));
+    }
+
+    /**
+     * Opens or creates a mapped record file, growing the mapping in chunks of {@code recordsPerChunk} records.
+     *
+     * @param path            the file to open or create
+     * @param codec           the codec used to read and write records
+     * @param recordsPerChunk number of records covered by a single mapping
+     * @return the opened file
+     * @param <T> the record type stored in the file
+     * @throws IOException if the file cannot be opened or was written with a different record size
+     * @throws IllegalArgumentException if a chunk would not be addressable by a {@link ByteBuffer}
+     */
+    public static <T extends Record> MappedRecordFile<T> open(Path path, FixedCodec<T> codec, int recordsPerChunk) throws IOException {
+        Objects.requireNonNull(path, "Path cannot be null.");
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+
+        if (codec.size() <= 0)
+            throw new IllegalArgumentException("Mapped record files require a codec with a positive size.");
+        if (recordsPerChunk <= 0 || (long) recordsPerChunk * codec.size() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid number of records per chunk: " + recordsPerChunk);
+
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new MappedRecordFile<>(channel, codec, recordsPerChunk);
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * @return the number of records currently stored in the file
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Decodes the record stored at the given index.
+     *
+     * @param index zero based record index
+     * @return the decoded record
+     * @throws IndexOutOfBoundsException if the index is outside of {@code [0, size())}
+     */
+    public T get(long index) {
+        Objects.checkIndex(index, count);
+        return codec.decode(seek(index));
+    }
+
+    /**
+     * Overwrites the record stored at the given index in place.
+     *
+     * @param index zero based record index
+     * @param value the record to store
+     * @throws IndexOutOfBoundsException if the index is outside of {@code [0, size())}
+     */
+    public void set(long index, T value) {
+        Objects.checkIndex(index, count);
+        codec.encode(seek(index), value);
+    }
+
+    /**
+     * Appends a record to the end of the file, mapping a new chunk if the current one is full.
+     *
+     * @param value the record to append
+     * @return the index the record was stored at
+     */
+    public long append(T value) {
+        var index = count;
+        codec.encode(seek(index), value);
+        header.putLong(COUNT_OFFSET, ++count);
+        return index;
+    }
+
+    /**
+     * Decodes every record in the file in order and hands it to the given action.
+     * <p>
+     * Iteration walks the mapped chunks directly without any iterators, views or intermediate buffers, but every
+     * record is still decoded into a new instance. Use {@link #forEachEncoded(ObjIntConsumer)} to read records in
+     * place without allocating.
+     *
+     * @param action the action to perform for each record
+     */
+    public void forEach(Consumer<? super T> action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+
+        var remaining = count;
+        for (var chunkIndex = 0; remaining > 0; chunkIndex++) {
+            var chunk = chunk(chunkIndex);
+            var inChunk = (int) Math.min(remaining, recordsPerChunk);
+
+            chunk.position(0);
+            for (var i = 0; i < inChunk; i++)
+                action.accept(codec.decode(chunk));
+
+            remaining -= inChunk;
+        }
+    }
+
+    /**
+     * Hands every record in the file to the given action in order without decoding it, as the mapped chunk holding the
+     * record and the offset of the record within that chunk.
+     * <p>
+     * The action reads the components it needs with absolute gets, so iterating allocates nothing. The chunk's position
+     * and limit are unspecified and the chunk must not be retained past the call, as appending may map new chunks and
+     * closing the file unmaps all of them.
+     *
+     * @param action the action to perform for each record, receiving the chunk and the record's offset within it
+     */
+    public void forEachEncoded(ObjIntConsumer<ByteBuffer> action) {
+        Objects.requireNonNull(action, "Action cannot be null.");
+
+        var remaining = count;
+        for (var chunkIndex = 0; remaining > 0; chunkIndex++) {
+            var chunk = chunk(chunkIndex);
+            var inChunk = (int) Math.min(remaining, recordsPerChunk);
+
+            for (var i = 0; i < inChunk; i++)
+                action.accept(chunk, i * recordSize);
+
+            remaining -= inChunk;
+        }
+    }
+
+    /**
+     * Flushes all modified chunks and the header to the storage device.
+     */
+    public void force() {
+        for (var segment : segments)
+            segment.force();
+        headerSegment.force();
+    }
+
+    /**
+     * Unmaps the file, trims any unused chunk space and closes the underlying channel. Closing an already closed file
+     * has no effect.
+     *
+     * @throws IOException if the file could not be trimmed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+
+        try (channel) {
+            force();
+            arena.close();
+            channel.truncate(HEADER_SIZE + count * recordSize);
+        }
+    }
+
+    /**
+     * Positions the chunk holding the given record at the start of that record.
+     */
+    private ByteBuffer seek(long index) {
+        var chunk = chunk((int) (index / recordsPerChunk));
+        return chunk.position((int) (index % recordsPerChunk) * recordSize);
+    }
+
+    private ByteBuffer chunk(int chunkIndex) {
+        while (chunks.size() <= chunkIndex)
+            mapChunk(chunks.size());
+        return chunks.get(chunkIndex);
+    }
+
+    private void mapChunk(int chunkIndex) {
+        var chunkBytes = (long) recordsPerChunk * recordSize;
+        try {
+            var segment = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + chunkIndex * chunkBytes, chunkBytes, arena);
+            segments.add(segment);
+            chunks.add(segment.asByteBuffer());
+        } catch (IOException exception) {
+            throw new IllegalStateException("Failed to map chunk " + chunkIndex + " of record file.", exception);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.codecs.Codec;
+import net.ansinn.ByteBarista.codecs.FixedCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only, crash-safe journal of encoded records.
+ * <p>
+ * Every record is written as a frame consisting of a CRC32C checksum, the payload length and the payload produced by
+ * the record's {@link Codec}. The checksum covers both the length and the payload, so a frame that was only partially
+ * written (or a tail of zeroes left behind by the file system) never verifies.
+ * <p>
+ * Appends are group committed: records from any number of threads are encoded directly into a shared direct staging
+ * buffer, and whichever thread finds no flush in progress becomes the leader, writing the whole staged batch with a
+ * single {@link FileChannel#write} and a single {@link FileChannel#force}. Appends arriving while that flush is running
+ * are staged into a second buffer and committed together by the next leader, so the number of {@code force()} calls
+ * adapts to the device latency rather than to the number of records. {@link #append(Record)} only returns once its
+ * record is durable.
+ * <p>
+ * On open the log is scanned from the start and truncated at the first frame that is incomplete or fails its
+ * checksum, which discards a torn tail left behind by a crash.
+ *
+ * @param <T> the record type stored in the log
+ * @see Codec
+ * @author Gunter Ansinn
+ */
+public final class RecordLog<T extends Record> implements Closeable {
+
+    static final int FRAME_HEADER_SIZE = Integer.BYTES * 2;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final Codec<T> codec;
+    private final CRC32C checksum = new CRC32C();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+
+    // Guarded by lock
+    private ByteBuffer active;
+    private ByteBuffer spare;
+    private long writePosition;
+    private long durablePosition;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+
+    private RecordLog(FileChannel channel, Codec<T> codec, int bufferSize, long validLength) {
+        this.channel = channel;
+        this.codec = codec;
+        this.active = ByteBuffer.allocateDirect(bufferSize);
+        this.spare = ByteBuffer.allocateDirect(bufferSize);
+        this.writePosition = validLength;
+        this.durablePosition = validLength;
+    }
+
+    /**
+     * Opens or creates a record log with a 1 MB staging buffer, discarding any torn tail.
+     *
+     * @param path  the log file to open or create
+     * @param codec the codec used to encode and decode records
+     * @return the opened log
+     * @param <T> the record type stored in the log
+     * @throws IOException if the log cannot be opened or recovered
+     */
+    public static <T extends Record> RecordLog<T> open(Path path, Codec<T> codec) throws IOException {
+        return open(path, codec, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens or creates a record log, discarding any torn tail.
+     *
+     * @param path       the log file to open or create
+     * @param codec      the codec used to encode and decode records
+     * @param bufferSize size in bytes of each of the two staging buffers used for group commit
+     * @return the opened log
+     * @param <T> the record type stored in the log
+     * @throws IOException if the log cannot be opened or recovered
+     */
+    public static <T extends Record> RecordLog<T> open(Path path, Codec<T> codec, int bufferSize) throws IOException {
+        Objects.requireNonNull(path, "Path cannot be null.");
+        Objects.requireNonNull(codec, "Codec cannot be null.");
+
+        if (bufferSize <= FRAME_HEADER_SIZE)
+            throw new IllegalArgumentException("Staging buffer must be larger than a frame header: " + bufferSize);
+
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            var validLength = new FrameReader(channel).scan(null);
+
+            if (validLength < channel.size()) {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+
+            return new RecordLog<>(channel, codec, bufferSize, validLength);
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Appends a record to the log and blocks until it, and every record appended before it, is durable.
+     *
+     * @param value the record to append
+     * @return the file offset of the record's frame
+     * @throws IOException if the log failed to write or force its contents
+     */
+    public long append(T value) throws IOException {
+        Objects.requireNonNull(value, "Cannot append a null record.");
+
+        lock.lock();
+        try {
+            long frameStart;
+            while (true) {
+                ensureOpen();
+
+                frameStart = writePosition + active.position();
+                if (stage(value))
+                    break;
+
+                // The staged batch is full, hand it off (or wait for the current flush) before trying again
+                if (flushing)
+                    flushed.awaitUninterruptibly();
+                else if (active.position() > 0)
+                    flush();
+                else
+                    active = ByteBuffer.allocateDirect(active.capacity() * 2);
+            }
+
+            var frameEnd = writePosition + active.position();
+            while (durablePosition < frameEnd) {
+                if (failure != null)
+                    throw new IOException("Record log failed while committing.", failure);
+
+                if (flushing)
+                    flushed.awaitUninterruptibly();
+                else
+                    flush();
+            }
+
+            return frameStart;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Decodes every durable record in the log in order and hands it to the given action.
+     *
+     * @param action the action to perform for each record
+     * @throws IOException if the log could not be read
+     */
+    public void replay(Consumer<? super T> action) throws IOException {
+        Objects.requireNonNull(action, "Action cannot be null.");
+
+        long end;
+        lock.lock();
+        try {
+            ensureOpen();
+            end = durablePosition;
+        } finally {
+            lock.unlock();
+        }
+
+        new FrameReader(channel, end).scan(payload -> action.accept(codec.decode(payload)));
+    }
+
+    /**
+     * @return the length in bytes of the durable part of the log
+     */
+    public long length() {
+        lock.lock();
+        try {
+            return durablePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for any in-flight commit to finish and closes the log.
+     *
+     * @throws IOException if the underlying channel could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+
+            while (flushing)
+                flushed.awaitUninterruptibly();
+
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes a frame for the given record into the active staging buffer.
+     *
+     * @return {@code false} if the frame did not fit into the remaining space, in which case nothing was staged
+     */
+    private boolean stage(T value) {
+        var frameStart = active.position();
+        var payloadStart = frameStart + FRAME_HEADER_SIZE;
+
+        if (codec instanceof FixedCodec<T> fixed && active.remaining() < FRAME_HEADER_SIZE + fixed.size())
+            return false;
+        if (active.remaining() < FRAME_HEADER_SIZE)
+            return false;
+
+        try {
+            active.position(payloadStart);
+            codec.encode(active, value);
+        } catch (BufferOverflowException exception) {
+            active.position(frameStart);
+            return false;
+        } catch (RuntimeException exception) {
+            active.position(frameStart);
+            throw exception;
+        }
+
+        var frameEnd = active.position();
+        active.putInt(frameStart + Integer.BYTES, frameEnd - payloadStart);
+
+        // Checksum covers the length field and the payload
+        checksum.reset();
+        checksum.update(active.limit(frameEnd).position(frameStart + Integer.BYTES));
+        active.limit(active.capacity()).position(frameEnd);
+        active.putInt(frameStart, (int) checksum.getValue());
+
+        return true;
+    }
+
+    /**
+     * Writes and forces the active staging buffer as the leader of a group commit. Must be called with the lock
+     * held and no flush in progress; the lock is released while performing I/O so that other threads can keep staging
+     * records into the other buffer.
+     */
+    private void flush() {
+        var batch = active;
+        var batchStart = writePosition;
+
+        active = spare;
+        spare = null;
+        writePosition += batch.position();
+        flushing = true;
+
+        IOException error = null;
+        lock.unlock();
+        try {
+            batch.flip();
+            var position = batchStart;
+            while (batch.hasRemaining())
+                position += channel.write(batch, position);
+            channel.force(false);
+        } catch (IOException exception) {
+            error = exception;
+        } finally {
+            lock.lock();
+
+            spare = batch.clear();
+            flushing = false;
+            if (error == null)
+                durablePosition = writePosition;
+            else if (failure == null)
+                failure = error;
+
+            flushed.signalAll();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Record log is closed.");
+        if (failure != null)
+            throw new IOException("Record log failed on an earlier commit and no longer accepts records.", failure);
+    }
+
+    /**
+     * Sequentially reads and verifies frames from the start of a log file.
+     */
+    private static final class FrameReader {
+
+        private static final int READ_BUFFER_SIZE = 1 << 16;
+
+        // No staging buffer can hold a larger frame, and larger read buffers aren't rounded up to a power of two
+        private static final int MAX_PAYLOAD_LENGTH = Integer.MAX_VALUE - FRAME_HEADER_SIZE;
+        private static final int MAX_ROUNDED_CAPACITY = 1 << 30;
+
+        private final FileChannel channel;
+        private final long end;
+        private final CRC32C checksum = new CRC32C();
+
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE).limit(0);
+        private long bufferStart;
+        private int bufferedLength;
+
+        FrameReader(FileChannel channel) throws IOException {
+            this(channel, channel.size());
+        }
+
+        FrameReader(FileChannel channel, long end) {
+            this.channel = channel;
+            this.end = end;
+        }
+
+        /**
+         * Walks all valid frames, handing each payload to the given action if present.
+         *
+         * @return the offset directly after the last valid frame
+         */
+        long scan(Consumer<ByteBuffer> action) throws IOException {
+            var position = 0L;
+
+            while (position + FRAME_HEADER_SIZE <= end) {
+                if (!fill(position, FRAME_HEADER_SIZE))
+                    break;
+
+                var offset = (int) (position - bufferStart);
+                var storedChecksum = buffer.getInt(offset);
+                var length = buffer.getInt(offset + Integer.BYTES);
+
+                if (length < 0 || length > MAX_PAYLOAD_LENGTH || position + FRAME_HEADER_SIZE + length > end)
+                    break;
+                if (!verify(position, length, storedChecksum))
+                    break;
+
+                if (action != null) {
+                    if (!fill(position, FRAME_HEADER_SIZE + length))
+                        break;
+
+                    offset = (int) (position - bufferStart);
+                    action.accept(buffer.limit(offset + FRAME_HEADER_SIZE + length).position(offset + FRAME_HEADER_SIZE));
+
+                    // Restore the buffered range for the next frame, regardless of what the action did with it
+                    buffer.position(0).limit(bufferedLength);
+                }
+
+                position += FRAME_HEADER_SIZE + length;
+            }
+
+            return position;
+        }
+
+        /**
+         * Checksums the length field and payload of the frame at {@code position} through the read buffer, one
+         * buffer at a time, so that a garbage length in a torn tail never grows the buffer just to fail its checksum.
+         */
+        private boolean verify(long position, int length, int storedChecksum) throws IOException {
+            checksum.reset();
+
+            var from = position + Integer.BYTES;
+            var remaining = Integer.BYTES + length;
+            while (remaining > 0) {
+                var chunk = Math.min(remaining, buffer.capacity());
+                if (!fill(from, chunk))
+                    return false;
+
+                var offset = (int) (from - bufferStart);
+                checksum.update(buffer.limit(offset + chunk).position(offset));
+                buffer.position(0).limit(bufferedLength);
+
+                from += chunk;
+                remaining -= chunk;
+            }
+
+            return (int) checksum.getValue() == storedChecksum;
+        }
+
+        /**
+         * Makes sure {@code length} bytes starting at {@code position} are in the read buffer.
+         */
+        private boolean fill(long position, int length) throws IOException {
+            if (position >= bufferStart && position + length <= bufferStart + bufferedLength) {
+                buffer.position(0).limit(bufferedLength);
+                return true;
+            }
+
+            if (length > buffer.capacity())
+                buffer = ByteBuffer.allocateDirect(length > MAX_ROUNDED_CAPACITY ? length : Integer.highestOneBit(length - 1) << 1);
+
+            buffer.clear();
+            bufferStart = position;
+            var readPosition = position;
+            while (buffer.position() < length) {
+                var read = channel.read(buffer, readPosition);
+                if (read < 0)
+                    return false;
+                readPosition += read;
+            }
+
+            bufferedLength = buffer.position();
+            buffer.position(0).limit(bufferedLength);
+            return true;
+        }
+    }
+}
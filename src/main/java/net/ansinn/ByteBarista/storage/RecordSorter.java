@@ -0,0 +1,446 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.codecs.FieldComparator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts files or streams of encoded fixed size records that are too large to fit on the heap.
+ * <p>
+ * The input is a plain sequence of records encoded back to back by the record's {@link net.ansinn.ByteBarista.codecs.FixedCodec},
+ * without any header, and the output is the same records in sorted order. Sorting is an external merge sort: the input
+ * is read in chunks into direct buffers, each chunk is sorted off-heap and spilled to a temporary file as a sorted run,
+ * and the runs are finally merged into the output. Chunks are sorted on a pool of {@code parallelism} threads while the
+ * next chunk is being read, so at most {@code parallelism} chunks are held in memory at once.
+ * <p>
+ * Records are never decoded. Both phases compare them through a generated {@link FieldComparator} that reads just the
+ * sort components at their fixed offsets, so a chunk is sorted by permuting an array of record indices, and the merge
+ * compares the heads of the runs right in their read buffers. The sort is stable, records comparing equal keep their
+ * input order.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ *
+ * @param <T> the record type being sorted
+ * @see CodecManager#getFieldComparator(Class, String...)
+ * @author Gunter Ansinn
+ */
+public final class RecordSorter<T extends Record> {
+
+    private static final int DEFAULT_CHUNK_BYTES = 32 << 20;
+    private static final int BLOCK_BYTES = 64 << 10;
+    private static final int MAX_FAN_IN = 256;
+    private static final int INSERTION_RUN = 32;
+
+    private final Class<T> type;
+    private final FieldComparator comparator;
+    private final int recordSize;
+    private final int chunkBytes;
+    private final int parallelism;
+    private final Path tempDirectory;
+    private final ByteOrder order;
+
+    private RecordSorter(Class<T> type, FieldComparator comparator, int recordSize, int chunkBytes, int parallelism,
+                         Path tempDirectory, ByteOrder order) {
+        this.type = type;
+        this.comparator = comparator;
+        this.recordSize = recordSize;
+        this.chunkBytes = chunkBytes;
+        this.parallelism = parallelism;
+        this.tempDirectory = tempDirectory;
+        this.order = order;
+    }
+
+    /**
+     * Creates a sorter ordering records by the given components, using chunks of roughly 32 MB, one sorting thread per
+     * available processor and the default temporary directory.
+     *
+     * @param type   the fixed size record type being sorted
+     * @param fields the paths of the sort components in order of precedence, prefixed with {@code '-'} to sort
+     *               descending, see {@link CodecManager#getFieldComparator(Class, String...)}
+     * @return the sorter
+     * @param <T> the record type being sorted
+     * @throws IllegalStateException if the record doesn't have a fixed size, or a component can't be compared in place
+     */
+    public static <T extends Record> RecordSorter<T> by(Class<T> type, String... fields) {
+        Objects.requireNonNull(type, "Record type cannot be null.");
+
+        var recordSize = CodecManager.getSafe(type).size();
+        if (recordSize <= 0)
+            throw new IllegalStateException("Record " + type.getName() + " has no bytes to sort by.");
+
+        return new RecordSorter<>(type, CodecManager.getFieldComparator(type, fields), recordSize, DEFAULT_CHUNK_BYTES,
+                Runtime.getRuntime().availableProcessors(), Path.of(System.getProperty("java.io.tmpdir")), ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @param chunkBytes the number of bytes sorted in memory at once per thread, rounded down to whole records
+     * @return a copy of this sorter using the given chunk size
+     * @throws IllegalArgumentException if a chunk couldn't hold a single record
+     */
+    public RecordSorter<T> withChunkBytes(int chunkBytes) {
+        if (chunkBytes < recordSize)
+            throw new IllegalArgumentException("Chunks of " + chunkBytes + " bytes can't hold a record of " + recordSize + " bytes.");
+        return new RecordSorter<>(type, comparator, recordSize, chunkBytes, parallelism, tempDirectory, order);
+    }
+
+    /**
+     * @param parallelism the number of chunks sorted at once
+     * @return a copy of this sorter using the given number of sorting threads
+     * @throws IllegalArgumentException if the parallelism isn't positive
+     */
+    public RecordSorter<T> withParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive but was " + parallelism + ".");
+        return new RecordSorter<>(type, comparator, recordSize, chunkBytes, parallelism, tempDirectory, order);
+    }
+
+    /**
+     * @param tempDirectory the directory the sorted runs are spilled to
+     * @return a copy of this sorter spilling to the given directory
+     */
+    public RecordSorter<T> withTempDirectory(Path tempDirectory) {
+        Objects.requireNonNull(tempDirectory, "Temporary directory cannot be null.");
+        return new RecordSorter<>(type, comparator, recordSize, chunkBytes, parallelism, tempDirectory, order);
+    }
+
+    /**
+     * @param order the byte order the records were encoded with
+     * @return a copy of this sorter reading records in the given byte order
+     */
+    public RecordSorter<T> withOrder(ByteOrder order) {
+        Objects.requireNonNull(order, "Byte order cannot be null.");
+        return new RecordSorter<>(type, comparator, recordSize, chunkBytes, parallelism, tempDirectory, order);
+    }
+
+    /**
+     * Sorts the records of one file into another, replacing the output if it exists.
+     *
+     * @param input  the file of encoded records
+     * @param output the file the sorted records are written to
+     * @return the number of records sorted
+     * @throws IOException if reading, writing or spilling fails, or the input ends in the middle of a record
+     */
+    public long sort(Path input, Path output) throws IOException {
+        try (var source = FileChannel.open(input, StandardOpenOption.READ);
+             var target = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return sort(source, target);
+        }
+    }
+
+    /**
+     * Sorts the records read from one channel into another. Neither channel is closed.
+     *
+     * @param input  the channel of encoded records, read until its end
+     * @param output the channel the sorted records are written to
+     * @return the number of records sorted
+     * @throws IOException if reading, writing or spilling fails, or the input ends in the middle of a record
+     */
+    public long sort(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        Objects.requireNonNull(input, "Input cannot be null.");
+        Objects.requireNonNull(output, "Output cannot be null.");
+
+        var temporaries = new ConcurrentLinkedQueue<Path>();
+        try {
+            var runs = new ArrayList<Path>();
+            var count = spillRuns(input, output, runs, temporaries);
+
+            if (!runs.isEmpty())
+                merge(mergeDown(runs, temporaries), output);
+            return count;
+        } finally {
+            for (var temporary : temporaries)
+                Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the input in chunks and sorts each of them into a run. An input fitting into a single chunk is sorted
+     * straight into the output instead, leaving {@code runs} empty.
+     *
+     * @return the number of records read
+     */
+    private long spillRuns(ReadableByteChannel input, WritableByteChannel output, List<Path> runs,
+                           ConcurrentLinkedQueue<Path> temporaries) throws IOException {
+        var capacity = chunkBytes / recordSize * recordSize;
+        BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(parallelism);
+        for (var i = 0; i < parallelism; i++)
+            pool.add(ByteBuffer.allocateDirect(capacity).order(order));
+
+        var futures = new ArrayList<Future<Path>>();
+        var count = 0L;
+
+        try (var executor = Executors.newFixedThreadPool(parallelism)) {
+            try {
+                while (true) {
+                    var chunk = pool.take().clear();
+                    var exhausted = fill(input, chunk);
+                    var records = chunk.position() / recordSize;
+
+                    if (chunk.position() % recordSize != 0)
+                        throw new IOException("Input ends in the middle of a record.");
+                    count += records;
+
+                    if (exhausted && futures.isEmpty()) {
+                        writeSorted(chunk, records, output);
+                        return count;
+                    }
+
+                    if (records == 0) {
+                        pool.add(chunk);
+                    } else {
+                        futures.add(executor.submit(() -> {
+                            try {
+                                var run = Files.createTempFile(tempDirectory, "record-sort-", ".run");
+                                temporaries.add(run);
+
+                                try (var channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                                    writeSorted(chunk, records, channel);
+                                }
+                                return run;
+                            } finally {
+                                pool.add(chunk);
+                            }
+                        }));
+                    }
+
+                    if (exhausted)
+                        break;
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                throw new InterruptedIOException("Interrupted while waiting for a chunk to be sorted.");
+            } catch (IOException | RuntimeException exception) {
+                futures.forEach(future -> future.cancel(true));
+                throw exception;
+            }
+
+            for (var future : futures)
+                runs.add(await(future));
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the channel ends.
+     *
+     * @return {@code true} if the channel ended
+     */
+    private static boolean fill(ReadableByteChannel input, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (input.read(buffer) < 0)
+                return true;
+        return false;
+    }
+
+    private static <V> V await(Future<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a chunk to be sorted.");
+        } catch (ExecutionException exception) {
+            switch (exception.getCause()) {
+                case IOException io -> throw io;
+                case RuntimeException runtime -> throw runtime;
+                case Error error -> throw error;
+                default -> throw new IllegalStateException("Sorting a chunk failed.", exception.getCause());
+            }
+        }
+    }
+
+    /**
+     * Sorts the first {@code records} records of a chunk and writes them to the channel in sorted order.
+     */
+    private void writeSorted(ByteBuffer chunk, int records, WritableByteChannel target) throws IOException {
+        var sorted = sortIndices(chunk, records);
+        var block = ByteBuffer.allocate(Math.max(recordSize, BLOCK_BYTES / recordSize * recordSize));
+
+        for (var index : sorted) {
+            if (block.remaining() < recordSize)
+                drain(block, target);
+            block.put(block.position(), chunk, index * recordSize, recordSize);
+            block.position(block.position() + recordSize);
+        }
+        drain(block, target);
+    }
+
+    /**
+     * Stably sorts the indices of the records in a chunk, using insertion sort on short runs which are then merged
+     * bottom up.
+     */
+    private int[] sortIndices(ByteBuffer chunk, int records) {
+        var indices = new int[records];
+        for (var i = 0; i < records; i++)
+            indices[i] = i;
+
+        for (var start = 0; start < records; start += INSERTION_RUN) {
+            var end = Math.min(records, start + INSERTION_RUN);
+            for (var i = start + 1; i < end; i++) {
+                var current = indices[i];
+                var j = i - 1;
+                while (j >= start && compare(chunk, indices[j], current) > 0) {
+                    indices[j + 1] = indices[j];
+                    j--;
+                }
+                indices[j + 1] = current;
+            }
+        }
+
+        var source = indices;
+        var target = new int[records];
+        for (var width = INSERTION_RUN; width < records; width *= 2) {
+            for (var start = 0; start < records; start += 2 * width) {
+                var middle = Math.min(records, start + width);
+                var end = Math.min(records, start + 2 * width);
+                var left = start;
+                var right = middle;
+
+                for (var i = start; i < end; i++)
+                    target[i] = right >= end || (left < middle && compare(chunk, source[left], source[right]) <= 0)
+                            ? source[left++]
+                            : source[right++];
+            }
+
+            var swap = source;
+            source = target;
+            target = swap;
+        }
+
+        return source;
+    }
+
+    private int compare(ByteBuffer chunk, int left, int right) {
+        return comparator.compare(chunk, left * recordSize, chunk, right * recordSize);
+    }
+
+    /**
+     * Merges consecutive groups of runs until few enough are left to be merged at once. Merging neighbours keeps ties
+     * in input order.
+     */
+    private List<Path> mergeDown(List<Path> runs, ConcurrentLinkedQueue<Path> temporaries) throws IOException {
+        while (runs.size() > MAX_FAN_IN) {
+            var merged = new ArrayList<Path>();
+
+            for (var start = 0; start < runs.size(); start += MAX_FAN_IN) {
+                var run = Files.createTempFile(tempDirectory, "record-sort-", ".run");
+                temporaries.add(run);
+
+                try (var channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+                    merge(runs.subList(start, Math.min(runs.size(), start + MAX_FAN_IN)), channel);
+                }
+                merged.add(run);
+            }
+
+            for (var run : runs) {
+                Files.deleteIfExists(run);
+                temporaries.remove(run);
+            }
+            runs = merged;
+        }
+
+        return runs;
+    }
+
+    /**
+     * Merges sorted runs into the channel, comparing the head record of each run in place. Ties go to the earlier run.
+     */
+    private void merge(List<Path> runs, WritableByteChannel target) throws IOException {
+        var cursors = new ArrayList<RunCursor>(runs.size());
+        var heap = new PriorityQueue<RunCursor>(Math.max(1, runs.size()), (left, right) -> {
+            var result = comparator.compare(left.block, left.block.position(), right.block, right.block.position());
+            return result != 0 ? result : Integer.compare(left.index, right.index);
+        });
+
+        try {
+            for (var i = 0; i < runs.size(); i++) {
+                var cursor = new RunCursor(i, FileChannel.open(runs.get(i), StandardOpenOption.READ));
+                cursors.add(cursor);
+                if (cursor.advance())
+                    heap.add(cursor);
+            }
+
+            var block = ByteBuffer.allocate(Math.max(recordSize, BLOCK_BYTES / recordSize * recordSize));
+            while (!heap.isEmpty()) {
+                var cursor = heap.poll();
+
+                if (block.remaining() < recordSize)
+                    drain(block, target);
+                block.put(block.position(), cursor.block, cursor.block.position(), recordSize);
+                block.position(block.position() + recordSize);
+
+                cursor.block.position(cursor.block.position() + recordSize);
+                if (cursor.advance())
+                    heap.add(cursor);
+            }
+            drain(block, target);
+        } finally {
+            for (var cursor : cursors)
+                cursor.channel.close();
+        }
+    }
+
+    private static void drain(ByteBuffer block, WritableByteChannel target) throws IOException {
+        block.flip();
+        while (block.hasRemaining())
+            target.write(block);
+        block.clear();
+    }
+
+    /**
+     * Reads a sorted run one block at a time, with the buffer positioned at the run's current head record.
+     */
+    private final class RunCursor {
+
+        private final int index;
+        private final FileChannel channel;
+        private final ByteBuffer block;
+
+        private RunCursor(int index, FileChannel channel) {
+            this.index = index;
+            this.channel = channel;
+            this.block = ByteBuffer.allocateDirect(Math.max(recordSize, BLOCK_BYTES / recordSize * recordSize))
+                    .order(order)
+                    .limit(0);
+        }
+
+        /**
+         * Makes sure a whole head record is buffered, reading the next block once the current one is used up.
+         *
+         * @return {@code false} if the run is exhausted
+         */
+        private boolean advance() throws IOException {
+            if (block.hasRemaining())
+                return true;
+
+            block.clear();
+            fill(channel, block);
+            block.flip();
+
+            if (block.limit() % recordSize != 0)
+                throw new IOException("Sorted run ends in the middle of a record.");
+            return block.hasRemaining();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package net.ansinn.ByteBarista;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArrayHelpersTest {
+
+    @Test
+    void testBufferRoundTripInBothOrders() {
+        for (var order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            var buffer = ByteBuffer.allocate(256).order(order);
+            ArrayHelpers.putInts(buffer, new int[]{1, -2, 3}, 3);
+            ArrayHelpers.putDoubles(buffer, new double[]{0.5, -1.5}, 2);
+            ArrayHelpers.putChars(buffer, new char[]{'a', 'ß'}, 2);
+            buffer.flip();
+
+            assertArrayEquals(new int[]{1, -2, 3}, ArrayHelpers.getInts(buffer, 3));
+            assertArrayEquals(new double[]{0.5, -1.5}, ArrayHelpers.getDoubles(buffer, 2));
+            assertArrayEquals(new char[]{'a', 'ß'}, ArrayHelpers.getChars(buffer, 2));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    void testWritesHonourBufferOrder() {
+        var buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        ArrayHelpers.putShorts(buffer, new short[]{0x0102}, 2);
+
+        assertArrayEquals(new byte[]{0x02, 0x01, 0, 0}, buffer.array());
+    }
+
+    @Test
+    void testShortArraysArePadded() {
+        var buffer = ByteBuffer.allocateDirect(64);
+        ArrayHelpers.putLongs(buffer, new long[]{7}, 3);
+        ArrayHelpers.putBytes(buffer, new byte[]{1, 2}, 4);
+        assertEquals(3 * Long.BYTES + 4, buffer.position());
+
+        buffer.flip();
+        assertArrayEquals(new long[]{7, 0, 0}, ArrayHelpers.getLongs(buffer, 3));
+        assertArrayEquals(new byte[]{1, 2, 0, 0}, ArrayHelpers.getBytes(buffer, 4));
+    }
+
+    @Test
+    void testOversizedArraysAreRejected() {
+        var buffer = ByteBuffer.allocate(64);
+        assertThrows(IllegalStateException.class, () -> ArrayHelpers.putFloats(buffer, new float[3], 2));
+        assertEquals(0, buffer.position());
+
+        assertThrows(IllegalStateException.class, () -> ArrayHelpers.getInts(ByteBuffer.allocate(7), 2));
+    }
+
+    @Test
+    void testLengthPrefixedOverflowWritesNothing() {
+        var buffer = ByteBuffer.allocate(16);
+        assertThrows(BufferOverflowException.class, () -> ArrayHelpers.putLongs(buffer, new long[2]));
+        assertThrows(BufferOverflowException.class, () -> ArrayHelpers.putBytes(buffer, new byte[16]));
+        assertThrows(BufferOverflowException.class, () -> ArrayHelpers.putBooleans(buffer, new boolean[121]));
+        assertEquals(0, buffer.position());
+
+        ArrayHelpers.putBooleans(buffer, new boolean[120]);
+        assertEquals(16, buffer.position());
+    }
+
+    @Test
+    void testFixedCountOverflowWritesNothing() {
+        var buffer = ByteBuffer.allocate(16).position(1);
+        assertThrows(BufferOverflowException.class, () -> ArrayHelpers.putLongs(buffer, new long[]{1}, 2));
+        assertThrows(BufferOverflowException.class, () -> ArrayHelpers.putInts(buffer, new int[4], 4));
+        assertThrows(BufferOverflowException.class, () -> ArrayHelpers.putBooleans(buffer, new boolean[121], 121));
+        assertEquals(1, buffer.position());
+
+        ArrayHelpers.putBooleans(buffer, new boolean[]{true}, 120);
+        assertEquals(16, buffer.position());
+    }
+
+    @Test
+    void testStreamRoundTripIsBigEndian() {
+        var output = new ByteArrayOutputStream();
+        ArrayHelpers.writeInts(output, new int[]{0x01020304}, 2);
+        ArrayHelpers.writeBytes(output, new byte[]{9}, 2);
+        ArrayHelpers.writeFloats(output, new float[]{2.5f}, 1);
+
+        var bytes = output.toByteArray();
+        assertEquals(8 + 2 + 4, bytes.length);
+        assertEquals(0x01, bytes[0]);
+
+        var input = new ByteArrayInputStream(bytes);
+        assertArrayEquals(new int[]{0x01020304, 0}, ArrayHelpers.readInts(input, 2));
+        assertArrayEquals(new byte[]{9, 0}, ArrayHelpers.readBytes(input, 2));
+        assertArrayEquals(new float[]{2.5f}, ArrayHelpers.readFloats(input, 1));
+    }
+
+    @Test
+    void testLengthPrefixedRoundTrip() {
+        var samples = new float[1000];
+        for (var i = 0; i < samples.length; i++)
+            samples[i] = i * 0.25f;
+
+        var buffer = ByteBuffer.allocateDirect(8192).order(ByteOrder.LITTLE_ENDIAN);
+        ArrayHelpers.putFloats(buffer, samples);
+        ArrayHelpers.putShorts(buffer, new short[0]);
+        // 1000 takes a two byte varint prefix
+        assertEquals(2 + samples.length * Float.BYTES + 1, buffer.position());
+
+        buffer.flip();
+        assertArrayEquals(samples, ArrayHelpers.getFloats(buffer));
+        assertArrayEquals(new short[0], ArrayHelpers.getShorts(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testBooleansArePacked() {
+        var flags = new boolean[]{true, false, true, true, false, false, false, false, true};
+        var buffer = ByteBuffer.allocate(8);
+        ArrayHelpers.putBooleans(buffer, flags);
+
+        assertEquals(1 + 2, buffer.position());
+        assertEquals((byte) 0b1011_0000, buffer.get(1));
+        assertEquals((byte) 0b1000_0000, buffer.get(2));
+
+        buffer.flip();
+        assertArrayEquals(flags, ArrayHelpers.getBooleans(buffer));
+
+        var output = new ByteArrayOutputStream();
+        ArrayHelpers.writeBooleans(output, flags);
+        assertArrayEquals(flags, ArrayHelpers.readBooleans(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    @Test
+    void testCorruptLengthIsRejectedBeforeAllocating() {
+        var buffer = ByteBuffer.allocate(8);
+        NumericHelpers.putVarInt(buffer, Integer.MAX_VALUE);
+        buffer.flip();
+
+        assertThrows(IllegalStateException.class, () -> ArrayHelpers.getLongs(buffer));
+    }
+
+    @Test
+    void testLengthPrefixedStreamRoundTrip() {
+        var output = new ByteArrayOutputStream();
+        ArrayHelpers.writeLongs(output, new long[]{Long.MIN_VALUE, 1});
+        ArrayHelpers.writeChars(output, new char[]{'x'});
+
+        var input = new ByteArrayInputStream(output.toByteArray());
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 1}, ArrayHelpers.readLongs(input));
+        assertArrayEquals(new char[]{'x'}, ArrayHelpers.readChars(input));
+    }
+
+    @Test
+    void testSkipArrays() {
+        var buffer = ByteBuffer.allocate(64);
+        ArrayHelpers.putInts(buffer, new int[]{1, 2, 3});
+        ArrayHelpers.putBooleans(buffer, new boolean[]{true, false, true, true, false, false, true, false, true});
+        buffer.put((byte) 9).flip();
+
+        ArrayHelpers.skipArray(buffer, Integer.BYTES);
+        ArrayHelpers.skipArray(buffer, 0);
+        assertEquals(9, buffer.get());
+    }
+}
@@ -1,5 +1,224 @@
 package net.ansinn.ByteBarista;
 
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.Sparse;
+import net.ansinn.ByteBarista.annotations.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class ClassUtilsTest {
 
+    @Test
+    void testBooleansShareOneByte() {
+        record Flags(boolean a, boolean b, boolean c) {}
+        assertEquals(1, ClassUtils.getRecordSize(Flags.class));
+    }
+
+    @Test
+    void testBitFieldsRoundUpToWholeBytes() {
+        record Packed(@Bits(3) int kind, boolean alive, @Bits(10) long health, int plain) {}
+        // 14 bits of packed fields take two bytes, followed by the plain int
+        assertEquals(2 + Integer.BYTES, ClassUtils.getRecordSize(Packed.class));
+    }
+
+    @Test
+    void testSeparatedRunsPackIndependently() {
+        record Split(boolean a, byte middle, boolean b) {}
+        assertEquals(3, ClassUtils.getRecordSize(Split.class));
+    }
+
+    @Test
+    void testRunsLongerThanAWordStartNewGroup() {
+        record Wide(@Bits(60) long a, @Bits(10) int b) {}
+        var components = Wide.class.getRecordComponents();
+        var group = BitFieldLayout.groupAt(components, 0);
+
+        assertEquals(1, group.end());
+        assertEquals(8 + 2, ClassUtils.getRecordSize(Wide.class));
+    }
+
+    @Test
+    void testShiftsPlaceFirstComponentHighest() {
+        record Packed(@Bits(3) int kind, boolean alive, @Bits(4) byte level) {}
+        var components = Packed.class.getRecordComponents();
+        var group = BitFieldLayout.groupAt(components, 0);
+
+        assertEquals(8, group.bits());
+        assertEquals(5, BitFieldLayout.shiftOf(components, group, 0));
+        assertEquals(4, BitFieldLayout.shiftOf(components, group, 1));
+        assertEquals(0, BitFieldLayout.shiftOf(components, group, 2));
+    }
+
+    @Test
+    void testInvalidWidthsAreRejected() {
+        record TooWide(@Bits(9) byte value) {}
+        record Empty(@Bits(0) int value) {}
+        record Floating(@Bits(4) float value) {}
+
+        assertThrows(IllegalStateException.class, () -> ClassUtils.getRecordSize(TooWide.class));
+        assertThrows(IllegalStateException.class, () -> ClassUtils.getRecordSize(Empty.class));
+        assertThrows(IllegalStateException.class, () -> ClassUtils.getRecordSize(Floating.class));
+    }
+
+    enum Direction { NORTH, EAST, SOUTH, WEST }
+
+    @Test
+    void testSmallEnumsTakeOneByte() {
+        record Heading(Direction direction, short speed) {}
+        assertEquals(1, ClassUtils.enumWidth(Direction.class));
+        assertEquals(1 + Short.BYTES, ClassUtils.getRecordSize(Heading.class));
+    }
+
+    @Test
+    void testFixedLengthKeepsRecordsFixedSize() {
+        record Quote(@FixedLength(8) String symbol, @FixedLength(16) byte[] id, @FixedLength(4) double[] levels, long time) {}
+        record Dynamic(String symbol) {}
+
+        assertTrue(ClassUtils.isFixedSize(Quote.class));
+        assertFalse(ClassUtils.isFixedSize(Dynamic.class));
+        assertEquals(8 + 16 + 4 * Double.BYTES + Long.BYTES, ClassUtils.getRecordSize(Quote.class));
+    }
+
+    @Test
+    void testFixedLengthRejectsUnsupportedTypes() {
+        record Names(@FixedLength(4) String[] names) {}
+        record Empty(@FixedLength(0) String name) {}
+
+        assertThrows(IllegalStateException.class, () -> ClassUtils.getRecordSize(Names.class));
+        assertThrows(IllegalStateException.class, () -> ClassUtils.getRecordSize(Empty.class));
+    }
+
+    @Test
+    void testFixedLengthBooleansArePacked() {
+        record Flags(@FixedLength(12) boolean[] flags) {}
+        assertEquals(2, ClassUtils.getRecordSize(Flags.class));
+    }
+
+    @Test
+    void testNestedRecordsCountWithTheirOwnSize() {
+        record Point(int x, int y) {}
+        record Line(Point from, Point to, boolean dashed) {}
+
+        assertTrue(ClassUtils.isFixedSize(Line.class));
+        assertEquals(4 * Integer.BYTES + 1, ClassUtils.getRecordSize(Line.class));
+    }
+
+    record Node(int value, Node next) {}
+
+    @Test
+    void testSelfReferencingRecordsAreInfinitelyNested() {
+        record Samples(int[] values) {}
+
+        assertTrue(ClassUtils.isInfinitelyNested(Node.class));
+        assertFalse(ClassUtils.isInfinitelyNested(Samples.class));
+    }
+
+    @Test
+    void testOptionalComponentsAddPresenceBitmap() {
+        record Sparse(int id, OptionalInt count, OptionalLong total, @Nullable Direction direction) {}
+        var components = Sparse.class.getRecordComponents();
+
+        assertFalse(ClassUtils.isFixedSize(Sparse.class));
+        assertEquals(1, PresenceBitmap.bytes(components));
+        assertEquals(0b1000_0000, PresenceBitmap.maskOf(components, 1));
+        assertEquals(0b0010_0000, PresenceBitmap.maskOf(components, 3));
+        assertEquals(1 + Integer.BYTES + Integer.BYTES + Long.BYTES + 1, ClassUtils.getRecordSize(Sparse.class));
+    }
+
+    @Test
+    void testInvalidOptionalsAreRejected() {
+        record NullablePrimitive(@Nullable int value) {}
+        record OptionalList(Optional<List<String>> values) {}
+
+        assertThrows(IllegalStateException.class, () -> PresenceBitmap.valueType(NullablePrimitive.class.getRecordComponents()[0]));
+        assertThrows(IllegalStateException.class, () -> PresenceBitmap.valueType(OptionalList.class.getRecordComponents()[0]));
+    }
+
+    @Sparse
+    record Settings(int volume, boolean muted, double gain, Direction facing, boolean visible) {}
+
+    @Test
+    void testSparseRecordsKeepBooleansInTheBitmap() {
+        var components = Settings.class.getRecordComponents();
+
+        assertFalse(ClassUtils.isFixedSize(Settings.class));
+        assertEquals(1, PresenceBitmap.bytes(components));
+        assertEquals(6, PresenceBitmap.shiftOf(components, 1));
+        // Booleans take no bytes beyond their bit, everything else counts with its full size
+        assertEquals(1 + Integer.BYTES + Double.BYTES + 1, ClassUtils.getRecordSize(Settings.class));
+    }
+
+    @Test
+    void testBitFieldsAreRejectedInSparseRecords() {
+        @Sparse
+        record Packed(@Bits(3) int kind) {}
+
+        assertThrows(IllegalStateException.class, () -> PresenceBitmap.bytes(Packed.class.getRecordComponents()));
+    }
+
+    sealed interface Shape permits Circle, Square, Polygon {}
+    record Circle(float radius) implements Shape {}
+    record Square(float side, float angle) implements Shape {}
+    sealed interface Polygon extends Shape permits Triangle {}
+    @Tag(9)
+    record Triangle(double a, double b, double c) implements Polygon {}
+
+    @Test
+    void testSealedHierarchiesAreFlattenedAndTagged() {
+        record Drawing(Shape shape, int color) {}
+        var hierarchy = SealedTypes.of(Shape.class);
+
+        assertEquals(List.of(Circle.class, Square.class, Triangle.class), hierarchy.subtypes());
+        assertArrayEquals(new int[]{0, 1, 9}, hierarchy.tags());
+        assertEquals(Byte.BYTES, hierarchy.width());
+
+        // A sealed component counts with its tag and its largest record
+        assertFalse(ClassUtils.isFixedSize(Drawing.class));
+        assertEquals(1 + 3 * Double.BYTES + Integer.BYTES, ClassUtils.getRecordSize(Drawing.class));
+    }
+
+    sealed interface Clash permits First, Second {}
+    record First() implements Clash {}
+    @Tag(0)
+    record Second() implements Clash {}
+
+    @Test
+    void testDuplicateTagsAreRejected() {
+        assertThrows(IllegalStateException.class, () -> SealedTypes.of(Clash.class));
+    }
+
+    sealed interface Expr permits Literal, Sum {}
+    record Literal(int value) implements Expr {}
+    record Sum(Expr left, Expr right) implements Expr {}
+
+    sealed interface Loop permits Forever {}
+    record Forever(Loop next) implements Loop {}
+
+    sealed interface Tree permits Branch, Tip {}
+    record Branch(Link link) implements Tree {}
+    record Link(Tree tree) {}
+    record Tip(int value) implements Tree {}
+    record Forest(Link first, Branch second) {}
+
+    @Test
+    void testCyclesThroughSealedInterfaces() {
+        // A literal ends every sum, while nothing ends a loop
+        assertFalse(ClassUtils.isInfinitelyNested(Sum.class));
+        assertTrue(ClassUtils.isRecursive(Sum.class));
+        assertTrue(ClassUtils.isInfinitelyNested(Forever.class));
+
+        // Walking the first component must not leave Branch visited for the second one
+        assertFalse(ClassUtils.isInfinitelyNested(Forest.class));
+        assertTrue(ClassUtils.isRecursive(Forest.class));
+
+        assertThrows(IllegalStateException.class, () -> ClassUtils.getRecordSize(Sum.class));
+    }
 }
@@ -2,16 +2,19 @@ package net.ansinn.ByteBarista;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 
 import static net.ansinn.ByteBarista.codegen.RecordCodecBuilder.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class DecoderClassBuilderTest {
 
     @Test
     void test() throws Throwable {
-        var info = bundleInfo(Normal.class);
+        var codec = build(Normal.class);
         var target = new Normal(12345, (byte) 42);
         var buffer = ByteBuffer.allocate(5);
 
@@ -19,7 +22,7 @@ public class DecoderClassBuilderTest {
         buffer.put(target.bar);
         buffer.flip();
 
-        var result = info.safe().invoke(buffer);
+        var result = codec.decode(buffer);
 
         assertEquals(target, result, "target record didn't match result record");
         System.out.println("result = " + result.toString());
@@ -29,7 +32,7 @@ public class DecoderClassBuilderTest {
     void testLocal() throws Throwable {
         record Local(int a, int b, int c) {}
 
-        var info = bundleInfo(Local.class);
+        var codec = build(Local.class);
         var target = new Local(4, 3, 64);
         var buffer = ByteBuffer.allocate(4 * 3);
 
@@ -38,7 +41,7 @@ public class DecoderClassBuilderTest {
         buffer.putInt(target.c);
         buffer.flip();
 
-        var result = info.safe().invoke(buffer);
+        var result = codec.decode(buffer);
 
         assertEquals(target, result);
         System.out.println("result = " + result.toString());
@@ -46,7 +49,7 @@ public class DecoderClassBuilderTest {
 
     @Test
     void testNested() throws Throwable {
-        var info = bundleInfo(Nested.class);
+        var codec = build(Nested.class);
         var target = new Nested(
                 new Position3D(0.0f, 0.0f, 0.0f),
                 new Position3D(2.0f, 2.0f, 2.0f)
@@ -62,12 +65,27 @@ public class DecoderClassBuilderTest {
         buffer.putFloat(target.max.z);
         buffer.flip();
 
-        var result = info.safe().invoke(buffer);
+        var result = codec.decode(buffer);
         assertEquals(target, result);
         System.out.println("result = " + result.toString());
     }
 
 
+    @Test
+    void testEncodeRoundTrip() {
+        var codec = build(Nested.class);
+        var target = new Nested(new Position3D(1.0f, 2.0f, 3.0f), new Position3D(4.0f, 5.0f, 6.0f));
+        var buffer = ByteBuffer.allocate(Float.BYTES * 6);
+
+        codec.encode(buffer, target);
+        assertEquals(target, codec.decode(buffer.flip()));
+
+        var output = new ByteArrayOutputStream();
+        codec.encode(output, target);
+        assertArrayEquals(buffer.array(), output.toByteArray());
+        assertEquals(target, codec.decode(new ByteArrayInputStream(output.toByteArray())));
+    }
+
     record Normal(int foo, byte bar) { }
 
     record Nested(Position3D min, Position3D max) {}
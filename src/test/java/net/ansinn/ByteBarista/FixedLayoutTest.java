@@ -0,0 +1,53 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedLayoutTest {
+
+    record Time(long seconds, int nanos) {}
+
+    record Entry(short kind, @Bits(3) int level, boolean active, @Bits(4) byte flags, Time time, @FixedLength(6) String code) {}
+
+    record Sized(@VarInt int length) {}
+
+    @Test
+    void testComponentsAreLocatedByOffset() {
+        assertEquals(0, FixedLayout.locate(Entry.class, "kind").offset());
+        assertEquals(3, FixedLayout.locate(Entry.class, "time").offset());
+        assertEquals(15, FixedLayout.locate(Entry.class, "code").offset());
+        assertFalse(FixedLayout.locate(Entry.class, "kind").isPacked());
+    }
+
+    @Test
+    void testBitFieldsShareTheirPackedWord() {
+        var level = FixedLayout.locate(Entry.class, "level");
+        var active = FixedLayout.locate(Entry.class, "active");
+        var flags = FixedLayout.locate(Entry.class, "flags");
+
+        assertTrue(level.isPacked());
+        assertEquals(2, level.offset());
+        assertEquals(2, flags.offset());
+        assertEquals(1, level.groupBytes());
+        assertEquals(5, level.shift());
+        assertEquals(4, active.shift());
+        assertEquals(0, flags.shift());
+    }
+
+    @Test
+    void testNestedComponentsFollowTheirPath() {
+        assertEquals(3, FixedLayout.locate(Entry.class, "time.seconds").offset());
+        assertEquals(11, FixedLayout.locate(Entry.class, "time.nanos").offset());
+        assertThrows(IllegalStateException.class, () -> FixedLayout.locate(Entry.class, "kind.value"));
+        assertThrows(IllegalStateException.class, () -> FixedLayout.locate(Entry.class, "time.minutes"));
+    }
+
+    @Test
+    void testDynamicRecordsAreRejected() {
+        assertThrows(IllegalStateException.class, () -> FixedLayout.locate(Sized.class, "length"));
+    }
+}
@@ -1,7 +1,10 @@
 package net.ansinn.ByteBarista;
 
+import net.ansinn.ByteBarista.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class InfiniteNestTest {
@@ -48,6 +51,15 @@ public class InfiniteNestTest {
         assertTrue(ClassUtils.isInfinitelyNested(Mixed.class), "Mixed should be considered infinitely nested.");
     }
 
+    @Test
+    void testNullableCyclesAreFinite() {
+        assertFalse(ClassUtils.isInfinitelyNested(NullableList.class), "NullableList should not be considered infinitely nested.");
+        assertFalse(ClassUtils.isInfinitelyNested(OptionalTree.class), "OptionalTree should not be considered infinitely nested.");
+        assertTrue(ClassUtils.isRecursive(NullableList.class), "NullableList should be considered recursive.");
+        assertTrue(ClassUtils.isRecursive(OptionalTree.class), "OptionalTree should be considered recursive.");
+        assertFalse(ClassUtils.isRecursive(FlatReference.class), "FlatReference should not be considered recursive.");
+    }
+
     public record Simple(int x, float y) {}
 
     public record IndirectA(IndirectB b) {}
@@ -65,4 +77,8 @@ public class InfiniteNestTest {
     public record FlatReference(Simple other) {}
 
     public record Mixed(Simple simple, DirectSelf self) {}
+
+    public record NullableList(int value, @Nullable NullableList next) {}
+
+    public record OptionalTree(Optional<OptionalTree> left, Optional<OptionalTree> right) {}
 }
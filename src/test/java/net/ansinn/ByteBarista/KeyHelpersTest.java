@@ -0,0 +1,90 @@
+package net.ansinn.ByteBarista;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyHelpersTest {
+
+    private static <V> byte[] key(V value, BiConsumer<ByteBuffer, V> writer) {
+        var buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        writer.accept(buffer, value);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static <V> void assertOrdered(V[] sorted, BiConsumer<ByteBuffer, V> writer, Function<ByteBuffer, V> reader) {
+        for (var i = 0; i < sorted.length; i++) {
+            var key = key(sorted[i], writer);
+            assertEquals(sorted[i], reader.apply(ByteBuffer.wrap(key).order(ByteOrder.LITTLE_ENDIAN)), "round trip of " + sorted[i]);
+
+            if (i > 0)
+                assertTrue(KeyHelpers.compare(key(sorted[i - 1], writer), key) < 0, sorted[i - 1] + " < " + sorted[i]);
+        }
+    }
+
+    @Test
+    void testIntegersSortBySignedValue() {
+        assertOrdered(new Integer[]{Integer.MIN_VALUE, -300, -1, 0, 1, 255, 256, Integer.MAX_VALUE},
+                KeyHelpers::putKeyInt, KeyHelpers::getKeyInt);
+        assertOrdered(new Long[]{Long.MIN_VALUE, -1L << 40, -1L, 0L, 1L, 1L << 40, Long.MAX_VALUE},
+                KeyHelpers::putKeyLong, KeyHelpers::getKeyLong);
+        assertOrdered(new Short[]{Short.MIN_VALUE, -1, 0, 1, Short.MAX_VALUE},
+                KeyHelpers::putKeyShort, KeyHelpers::getKeyShort);
+        assertOrdered(new Byte[]{Byte.MIN_VALUE, -1, 0, 1, Byte.MAX_VALUE},
+                KeyHelpers::putKeyByte, KeyHelpers::getKeyByte);
+        assertOrdered(new Character[]{'\0', 'A', 'a', '￿'},
+                KeyHelpers::putKeyChar, KeyHelpers::getKeyChar);
+    }
+
+    @Test
+    void testFloatingPointSortsLikeCompare() {
+        assertOrdered(new Double[]{Double.NEGATIVE_INFINITY, -1e300, -1.5, -Double.MIN_VALUE, -0.0, 0.0,
+                        Double.MIN_VALUE, 1.5, 1e300, Double.POSITIVE_INFINITY, Double.NaN},
+                KeyHelpers::putKeyDouble, KeyHelpers::getKeyDouble);
+        assertOrdered(new Float[]{Float.NEGATIVE_INFINITY, -2.5f, -0.0f, 0.0f, 2.5f, Float.POSITIVE_INFINITY, Float.NaN},
+                KeyHelpers::putKeyFloat, KeyHelpers::getKeyFloat);
+    }
+
+    @Test
+    void testStringsSortAndStayPrefixFree() {
+        assertOrdered(new String[]{"", "\0", "\0\0", "\u0001", "a", "a\0", "a\0b", "a\u0001", "ab", "b", "é", "😀"},
+                KeyHelpers::putKeyString, KeyHelpers::getKeyString);
+
+        // The bytes following a string never outweigh the string itself
+        var buffer = ByteBuffer.allocate(32);
+        KeyHelpers.putKeyString(buffer, "a");
+        buffer.put((byte) 0xFF);
+        var shorter = Arrays.copyOf(buffer.array(), buffer.position());
+        assertTrue(KeyHelpers.compare(shorter, key("a\0", KeyHelpers::putKeyString)) < 0);
+    }
+
+    @Test
+    void testBytesCanBeSkipped() {
+        var buffer = ByteBuffer.allocate(32);
+        KeyHelpers.putKeyBytes(buffer, new byte[]{1, 0, 0, 2});
+        KeyHelpers.putKeyInt(buffer, 42);
+        buffer.flip();
+
+        KeyHelpers.skipKeyBytes(buffer);
+        assertEquals(42, KeyHelpers.getKeyInt(buffer));
+        assertThrows(IllegalStateException.class, () -> KeyHelpers.getKeyBytes(ByteBuffer.wrap(new byte[]{1, 2})));
+    }
+
+    @Test
+    void testBufferComparisonIsUnsigned() {
+        var low = ByteBuffer.wrap(new byte[]{9, 0x7F});
+        var high = ByteBuffer.wrap(new byte[]{0, 9, (byte) 0x80}).position(1);
+
+        assertTrue(KeyHelpers.compare(low, high) < 0);
+        assertTrue(KeyHelpers.compare(high, low) > 0);
+        assertTrue(KeyHelpers.compare(ByteBuffer.wrap(new byte[]{9}), low) < 0);
+        assertEquals(0, KeyHelpers.compare(low, low.duplicate()));
+        assertEquals(1, high.position());
+    }
+}
@@ -0,0 +1,80 @@
+package net.ansinn.ByteBarista;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageRegistryTest {
+
+    record Login(int user, String token) {}
+    record Chat(int channel, String text) {}
+    record Ping(long time) {}
+    record Unregistered(int value) {}
+
+    private static MessageRegistry registry() {
+        return new MessageRegistry()
+                .register(0, Login.class)
+                .register(1, Chat.class)
+                .register(200, Ping.class);
+    }
+
+    @Test
+    void testMixedMessagesRoundTrip() {
+        var registry = registry();
+        var buffer = ByteBuffer.allocate(128);
+
+        registry.encodeTagged(buffer, new Login(7, "secret"));
+        registry.encodeTagged(buffer, new Ping(42L));
+        registry.encodeTagged(buffer, new Chat(3, "hi"));
+        buffer.flip();
+
+        // Ids below 128 take one byte, id 200 takes two
+        assertEquals(0, buffer.get(0));
+        assertEquals(new Login(7, "secret"), registry.decodeTagged(buffer));
+        assertEquals(new Ping(42L), registry.decodeTagged(buffer));
+        assertEquals(new Chat(3, "hi"), registry.decodeTagged(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testStreamsCarryTheSameBytes() {
+        var registry = registry();
+        var buffer = ByteBuffer.allocate(64);
+        var output = new ByteArrayOutputStream();
+
+        registry.encodeTagged(buffer, new Ping(-1L));
+        registry.encodeTagged(output, new Ping(-1L));
+
+        assertArrayEquals(Arrays.copyOf(buffer.array(), buffer.position()), output.toByteArray());
+        assertEquals(new Ping(-1L), registry.decodeTagged(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    @Test
+    void testUnknownTypesAndIdsAreRejected() {
+        var registry = registry();
+
+        assertEquals(200, registry.idOf(Ping.class));
+        assertEquals(-1, registry.idOf(Unregistered.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.encodeTagged(ByteBuffer.allocate(16), new Unregistered(1)));
+        assertThrows(IllegalStateException.class, () -> registry.decodeTagged(ByteBuffer.wrap(new byte[]{5})));
+
+        // A type looked up before it was registered is found afterwards
+        registry.register(5, Unregistered.class);
+        assertEquals(5, registry.idOf(Unregistered.class));
+    }
+
+    @Test
+    void testConflictingRegistrationsAreRejected() {
+        var registry = registry();
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register(1, Unregistered.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(9, Chat.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(-1, Unregistered.class));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(MessageRegistry.MAX_ID + 1, Unregistered.class));
+    }
+}
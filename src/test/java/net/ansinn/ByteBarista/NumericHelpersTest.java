@@ -0,0 +1,134 @@
+package net.ansinn.ByteBarista;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NumericHelpersTest {
+
+    private static final int[] INTS = {0, 1, 127, 128, 300, 16_383, 16_384, 2_097_151, 2_097_152,
+            Integer.MAX_VALUE, -1, -64, Integer.MIN_VALUE};
+    private static final long[] LONGS = {0L, 1L, 127L, 128L, 1L << 35, (1L << 56) - 1, 1L << 56, (1L << 63) - 1,
+            Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+
+    @Test
+    void testVarIntEncoding() {
+        var buffer = ByteBuffer.allocate(16);
+        NumericHelpers.putVarInt(buffer, 300);
+
+        assertEquals(2, buffer.position());
+        assertEquals((byte) 0xAC, buffer.get(0));
+        assertEquals((byte) 0x02, buffer.get(1));
+    }
+
+    @Test
+    void testVarIntRoundTripOnFastAndSlowPaths() {
+        for (var value : INTS) {
+            // Plenty of trailing room takes the word-at-a-time path, an exactly sized buffer the byte loop
+            var padded = ByteBuffer.allocate(16);
+            NumericHelpers.putVarInt(padded, value);
+            var length = padded.position();
+            assertEquals(NumericHelpers.varIntSize(value), length, "size of " + value);
+
+            padded.flip().limit(16);
+            assertEquals(value, NumericHelpers.getVarInt(padded), "fast path for " + value);
+            assertEquals(length, padded.position());
+
+            var exact = ByteBuffer.allocate(length);
+            NumericHelpers.putVarInt(exact, value);
+            exact.flip();
+            assertEquals(value, NumericHelpers.getVarInt(exact), "slow path for " + value);
+        }
+    }
+
+    @Test
+    void testVarLongRoundTripOnFastAndSlowPaths() {
+        for (var value : LONGS) {
+            var padded = ByteBuffer.allocate(24);
+            NumericHelpers.putVarLong(padded, value);
+            var length = padded.position();
+            assertEquals(NumericHelpers.varLongSize(value), length, "size of " + value);
+
+            padded.flip().limit(24);
+            assertEquals(value, NumericHelpers.getVarLong(padded), "fast path for " + value);
+            assertEquals(length, padded.position());
+
+            var exact = ByteBuffer.allocate(length);
+            NumericHelpers.putVarLong(exact, value);
+            exact.flip();
+            assertEquals(value, NumericHelpers.getVarLong(exact), "slow path for " + value);
+        }
+    }
+
+    @Test
+    void testVarIntIgnoresBufferByteOrder() {
+        var buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        NumericHelpers.putVarInt(buffer, 1_000_000);
+        buffer.clear();
+
+        assertEquals(1_000_000, NumericHelpers.getVarInt(buffer));
+    }
+
+    @Test
+    void testMalformedVarInt() {
+        var buffer = ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, 1});
+        assertThrows(IllegalStateException.class, () -> NumericHelpers.getVarInt(buffer));
+    }
+
+    @Test
+    void testZigZagMapping() {
+        assertEquals(0, NumericHelpers.encodeZigZag(0));
+        assertEquals(1, NumericHelpers.encodeZigZag(-1));
+        assertEquals(2, NumericHelpers.encodeZigZag(1));
+        assertEquals(-1, NumericHelpers.encodeZigZag(Integer.MIN_VALUE));
+
+        for (var value : INTS)
+            assertEquals(value, NumericHelpers.decodeZigZag(NumericHelpers.encodeZigZag(value)));
+        for (var value : LONGS)
+            assertEquals(value, NumericHelpers.decodeZigZag(NumericHelpers.encodeZigZag(value)));
+
+        var buffer = ByteBuffer.allocate(16);
+        NumericHelpers.putZigZagInt(buffer, -2);
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void testStreamRoundTrip() {
+        var output = new ByteArrayOutputStream();
+        for (var value : INTS)
+            NumericHelpers.writeZigZagInt(output, value);
+        for (var value : LONGS)
+            NumericHelpers.writeVarLong(output, value);
+
+        var input = new ByteArrayInputStream(output.toByteArray());
+        for (var value : INTS)
+            assertEquals(value, NumericHelpers.readZigZagInt(input));
+        for (var value : LONGS)
+            assertEquals(value, NumericHelpers.readVarLong(input));
+
+        assertThrows(IllegalStateException.class, () -> NumericHelpers.readVarInt(input));
+    }
+
+    @Test
+    void testSkipVarIntAndBytes() {
+        var buffer = ByteBuffer.allocate(128);
+        for (var value : INTS)
+            NumericHelpers.putVarInt(buffer, value);
+        buffer.putInt(7);
+        buffer.flip();
+
+        for (var ignored : INTS)
+            NumericHelpers.skipVarInt(buffer);
+        NumericHelpers.skip(buffer, 2);
+        assertEquals(2, buffer.remaining());
+
+        assertThrows(BufferUnderflowException.class, () -> NumericHelpers.skip(buffer, 3));
+        assertThrows(IllegalStateException.class, () -> NumericHelpers.skipVarInt(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1})));
+    }
+}
@@ -0,0 +1,156 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FieldId;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.Sparse;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordSchemaTest {
+
+    record PlayerV1(int id, String name, long score) {}
+    record SameLayout(int id, String name, long score) {}
+    record PlayerV2(long score, String name, Optional<String> guild, int level) {}
+    record Reencoded(@VarInt int id, String name, long score) {}
+
+    record HealthV1(@FieldId(1) int hp, @FieldId(2) short armor) {}
+    record HealthV2(@FieldId(1) long health, @FieldId(2) OptionalInt armor) {}
+
+    enum ColorV1 { RED, GREEN, BLUE }
+    enum ColorV2 { BLUE, GREEN, RED, PINK }
+    record PaintV1(ColorV1 color, @Nullable String label) {}
+    record PaintV2(ColorV2 color, String label) {}
+
+    record FlagsV1(boolean visible, @Bits(3) int layer, boolean locked, Inner inner) {}
+    record Inner(int a, int b) {}
+    record FlagsV2(boolean locked, @Bits(3) int layer, Extra extra) {}
+    record Extra(String note, int[] values) {}
+
+    @Sparse
+    record SparseV1(int a, boolean b, String c) {}
+    record SparseV2(String c, boolean b, int a) {}
+
+    record Node(int value, @Nullable Node next) {}
+
+    record Clash(@FieldId(3) int a, @FieldId(3) int b) {}
+    record Retyped(String id) {}
+
+    @Test
+    void testFingerprintsFollowTheLayout() {
+        var player = RecordSchema.of(PlayerV1.class);
+
+        assertEquals(player.fingerprint(), RecordSchema.of(SameLayout.class).fingerprint());
+        assertEquals(player.fingerprint(), RecordSchema.of(PlayerV1.class).fingerprint());
+        assertNotEquals(player.fingerprint(), RecordSchema.of(PlayerV2.class).fingerprint());
+        assertNotEquals(player.fingerprint(), RecordSchema.of(Reencoded.class).fingerprint());
+    }
+
+    @Test
+    void testSchemasSurviveSerialization() {
+        for (var type : new Class<?>[]{PlayerV1.class, FlagsV1.class, SparseV1.class, Node.class, PaintV1.class}) {
+            @SuppressWarnings("unchecked")
+            var schema = RecordSchema.of((Class<? extends Record>) type);
+            var read = RecordSchema.read(ByteBuffer.wrap(schema.toByteArray()));
+
+            assertEquals(schema, read, type.getSimpleName());
+            assertEquals(schema.layouts(), read.layouts(), type.getSimpleName());
+            assertEquals(schema.fingerprint(), read.fingerprint(), type.getSimpleName());
+        }
+
+        // Recursive records refer back to their own layout
+        var node = RecordSchema.of(Node.class);
+        assertEquals(1, node.layouts().size());
+        assertEquals(new RecordSchema.Nested(0), node.root().fields().get(1).type());
+    }
+
+    @Test
+    void testRemovedComponentsAreSkippedAndAddedOnesDefaulted() {
+        var buffer = ByteBuffer.allocate(64);
+        buffer.putInt(7);
+        StringHelpers.putString(buffer, "alice");
+        buffer.putLong(900L);
+        buffer.flip();
+
+        var result = SchemaMigrations.decode(buffer, RecordSchema.of(PlayerV1.class), PlayerV2.class);
+
+        assertEquals(new PlayerV2(900L, "alice", Optional.empty(), 0), result);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testComponentsAreMatchedByIdAndWidened() {
+        var buffer = ByteBuffer.allocate(16);
+        buffer.putInt(-40).putShort((short) 12).flip();
+
+        var result = SchemaMigrations.decode(buffer, RecordSchema.of(HealthV1.class), HealthV2.class);
+
+        assertEquals(new HealthV2(-40L, OptionalInt.of(12)), result);
+    }
+
+    @Test
+    void testEnumsAreMatchedByNameAndOptionalsDefaulted() {
+        var buffer = ByteBuffer.allocate(16);
+        buffer.put((byte) 0x00).put((byte) ColorV1.BLUE.ordinal()).flip();
+
+        var result = SchemaMigrations.decode(buffer, RecordSchema.of(PaintV1.class), PaintV2.class);
+
+        assertEquals(new PaintV2(ColorV2.BLUE, ""), result);
+    }
+
+    @Test
+    void testBitFieldsAndNestedRecordsAreMigrated() {
+        // visible, layer and locked share one byte: 1 | 101 | 1 from the top
+        var buffer = ByteBuffer.allocate(16);
+        buffer.put((byte) 0b1101_1000).putInt(1).putInt(2).flip();
+
+        var result = SchemaMigrations.decode(buffer, RecordSchema.of(FlagsV1.class), FlagsV2.class);
+
+        assertEquals(true, result.locked());
+        assertEquals(5, result.layer());
+        assertEquals("", result.extra().note());
+        assertArrayEquals(new int[0], result.extra().values());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testSparseRecordsAreMigrated() {
+        // Bits from the top: a set, b set, c clear
+        var buffer = ByteBuffer.allocate(16);
+        buffer.put((byte) 0b1100_0000).putInt(3).flip();
+
+        var result = SchemaMigrations.decode(buffer, RecordSchema.of(SparseV1.class), SparseV2.class);
+
+        assertEquals(new SparseV2("", true, 3), result);
+    }
+
+    @Test
+    void testMigrationsAreCached() {
+        var writer = RecordSchema.of(PlayerV1.class);
+        var decoder = SchemaMigrations.decoderFor(writer, PlayerV2.class);
+        var buffer = ByteBuffer.allocate(64);
+
+        for (var i = 0; i < 3; i++) {
+            buffer.clear();
+            buffer.putInt(i);
+            StringHelpers.putString(buffer, "p" + i);
+            buffer.putLong(i * 10L);
+            buffer.flip();
+
+            assertEquals(new PlayerV2(i * 10L, "p" + i, Optional.empty(), 0), decoder.apply(buffer));
+        }
+    }
+
+    @Test
+    void testIncompatibleChangesAreRejected() {
+        assertThrows(IllegalStateException.class, () -> RecordSchema.of(Clash.class));
+        assertThrows(IllegalStateException.class,
+                () -> SchemaMigrations.decoderFor(RecordSchema.of(PlayerV1.class), Retyped.class));
+    }
+}
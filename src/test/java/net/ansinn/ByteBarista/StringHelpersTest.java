@@ -0,0 +1,159 @@
+package net.ansinn.ByteBarista;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StringHelpersTest {
+
+    private static final String[] SAMPLES = {
+            "",
+            "plain ascii",
+            "café crème",
+            "日本語",
+            "emoji 😀 pair",
+            "x".repeat(300)
+    };
+
+    @Test
+    void testUtf8LengthMatchesJdk() {
+        for (var sample : SAMPLES)
+            assertEquals(sample.getBytes(StandardCharsets.UTF_8).length, StringHelpers.utf8Length(sample), sample);
+
+        // Unpaired surrogates are replaced by a single '?'
+        assertEquals(3, StringHelpers.utf8Length("a\uD800b"));
+    }
+
+    @Test
+    void testHeapBufferRoundTrip() {
+        var buffer = ByteBuffer.allocate(1024);
+        for (var sample : SAMPLES)
+            StringHelpers.putString(buffer, sample);
+
+        buffer.flip();
+        for (var sample : SAMPLES)
+            assertEquals(sample, StringHelpers.getString(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testDirectBufferRoundTrip() {
+        var buffer = ByteBuffer.allocateDirect(1024);
+        for (var sample : SAMPLES)
+            StringHelpers.putString(buffer, sample);
+
+        buffer.flip();
+        for (var sample : SAMPLES)
+            assertEquals(sample, StringHelpers.getString(buffer));
+    }
+
+    @Test
+    void testEncodingMatchesJdk() {
+        var sample = SAMPLES[4];
+        var buffer = ByteBuffer.allocate(64);
+        StringHelpers.putString(buffer, sample);
+
+        var expected = sample.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, buffer.get(0));
+        assertArrayEquals(expected, java.util.Arrays.copyOfRange(buffer.array(), 1, 1 + expected.length));
+    }
+
+    @Test
+    void testUnpairedSurrogatesMatchJdk() {
+        // Otherwise ASCII strings whose unpaired surrogate takes a single byte, just like an ASCII char
+        for (var sample : new String[]{"\uD800x", "x\uDC00", "\uDFFF", "ab\uD83Dcd"}) {
+            var expected = sample.getBytes(StandardCharsets.UTF_8);
+            var replaced = new String(expected, StandardCharsets.UTF_8);
+
+            var heap = ByteBuffer.allocate(16);
+            StringHelpers.putString(heap, sample);
+            assertArrayEquals(expected, java.util.Arrays.copyOfRange(heap.array(), 1, heap.position()));
+            assertEquals(replaced, StringHelpers.getString(heap.flip()));
+
+            var direct = ByteBuffer.allocateDirect(16);
+            StringHelpers.putFixedString(direct, sample, 8);
+            assertEquals(replaced, StringHelpers.getFixedString(direct.flip(), 8));
+
+            var output = new ByteArrayOutputStream();
+            StringHelpers.writeString(output, sample);
+            assertEquals(replaced, StringHelpers.readString(new ByteArrayInputStream(output.toByteArray())));
+        }
+    }
+
+    @Test
+    void testSlicedHeapBufferHonoursOffset() {
+        var backing = ByteBuffer.allocate(64);
+        backing.position(10);
+        var slice = backing.slice();
+
+        StringHelpers.putString(slice, "offset");
+        slice.flip();
+        assertEquals("offset", StringHelpers.getString(slice));
+        assertEquals(0, backing.get(0));
+    }
+
+    @Test
+    void testStreamRoundTrip() {
+        var output = new ByteArrayOutputStream();
+        for (var sample : SAMPLES)
+            StringHelpers.writeString(output, sample);
+
+        var input = new ByteArrayInputStream(output.toByteArray());
+        for (var sample : SAMPLES)
+            assertEquals(sample, StringHelpers.readString(input));
+    }
+
+    @Test
+    void testOverflowAndTruncation() {
+        var small = ByteBuffer.allocate(4);
+        assertThrows(BufferOverflowException.class, () -> StringHelpers.putString(small, "too long"));
+        assertEquals(0, small.position());
+
+        // The prefix alone fits, but not together with the string
+        var exact = ByteBuffer.allocate(8);
+        assertThrows(BufferOverflowException.class, () -> StringHelpers.putString(exact, "eight ch"));
+        assertEquals(0, exact.position());
+
+        var truncated = ByteBuffer.wrap(new byte[]{5, 'a', 'b'});
+        assertThrows(IllegalStateException.class, () -> StringHelpers.getString(truncated));
+    }
+
+    @Test
+    void testFixedStringsArePaddedAndTrimmed() {
+        var buffer = ByteBuffer.allocate(16);
+        StringHelpers.putFixedString(buffer, "AAPL", 8);
+        StringHelpers.putFixedString(buffer, "é", 8);
+        assertEquals(16, buffer.position());
+
+        buffer.flip();
+        assertEquals("AAPL", StringHelpers.getFixedString(buffer, 8));
+        assertEquals("é", StringHelpers.getFixedString(buffer, 8));
+
+        assertThrows(IllegalStateException.class, () -> StringHelpers.putFixedString(ByteBuffer.allocate(16), "too long", 4));
+    }
+
+    @Test
+    void testFixedStringStreamRoundTrip() {
+        var output = new ByteArrayOutputStream();
+        StringHelpers.writeFixedString(output, "MSFT", 6);
+        assertEquals(6, output.size());
+
+        assertEquals("MSFT", StringHelpers.readFixedString(new ByteArrayInputStream(output.toByteArray()), 6));
+    }
+
+    @Test
+    void testSkipString() {
+        var buffer = ByteBuffer.allocate(32);
+        StringHelpers.putString(buffer, "héllo");
+        buffer.put((byte) 9).flip();
+
+        StringHelpers.skipString(buffer);
+        assertEquals(9, buffer.get());
+    }
+}
@@ -0,0 +1,48 @@
+package net.ansinn.ByteBarista;
+
+import net.ansinn.ByteBarista.codecs.DynamicCodec;
+import net.ansinn.ByteBarista.codecs.FixedCodec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Hand written codecs for tests that exercise code built on top of {@link FixedCodec} and {@link DynamicCodec}
+ * without depending on the bytecode generators.
+ */
+public final class TestCodecs {
+
+    private TestCodecs() {}
+
+    public record Point(int x, int y) {}
+
+    public static final int POINT_SIZE = Integer.BYTES * 2;
+
+    public static FixedCodec<Point> point() {
+        return fixed(POINT_SIZE,
+                buffer -> new Point(buffer.getInt(), buffer.getInt()),
+                (buffer, value) -> buffer.putInt(value.x()).putInt(value.y()));
+    }
+
+    public static <T extends Record> FixedCodec<T> fixed(int size, Function<ByteBuffer, T> decoder, BiConsumer<ByteBuffer, T> encoder) {
+        return new FixedCodec<>(size, dynamic(decoder, encoder));
+    }
+
+    public static <T extends Record> DynamicCodec<T> dynamic(Function<ByteBuffer, T> decoder, BiConsumer<ByteBuffer, T> encoder) {
+        try {
+            var lookup = MethodHandles.lookup();
+            var apply = lookup.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+            var accept = lookup.findVirtual(BiConsumer.class, "accept", MethodType.methodType(void.class, Object.class, Object.class));
+
+            var bufferDecode = apply.bindTo(decoder).asType(MethodType.methodType(Record.class, ByteBuffer.class));
+            var bufferEncode = accept.bindTo(encoder).asType(MethodType.methodType(void.class, ByteBuffer.class, Record.class));
+
+            return new DynamicCodec<>(bufferDecode, null, bufferEncode, null, null, null, null, null);
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
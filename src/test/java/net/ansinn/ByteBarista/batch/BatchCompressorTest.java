@@ -0,0 +1,162 @@
+package net.ansinn.ByteBarista.batch;
+
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchCompressorTest {
+
+    private static ByteBuffer compressible(int length) {
+        var buffer = ByteBuffer.allocate(length);
+        for (var i = 0; i < length; i++)
+            buffer.put((byte) (i % 7 == 0 ? i : 'a'));
+        return buffer.flip();
+    }
+
+    private static ByteBuffer random(int length) {
+        var bytes = new byte[length];
+        new Random(7).nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static ByteBuffer roundTrip(ByteBuffer frame) {
+        var output = ByteBuffer.allocate(BatchCompressor.originalLength(frame));
+        BatchCompressor.decompress(frame, output);
+        assertFalse(frame.hasRemaining());
+        return output.flip();
+    }
+
+    @Test
+    void testCompressibleInputIsDeflated() {
+        var compressor = BatchCompressor.create();
+        var input = compressible(64 * 1024);
+        var frame = ByteBuffer.allocateDirect(BatchCompressor.maxFrameSize(input.remaining()));
+
+        assertTrue(compressor.compress(input, frame));
+        assertFalse(input.hasRemaining());
+        assertTrue(frame.position() < input.limit() / 4);
+
+        assertEquals(input.rewind(), roundTrip(frame.flip()));
+    }
+
+    @Test
+    void testDirectInputAndOutput() {
+        var compressor = BatchCompressor.create().withLevel(6);
+        var input = ByteBuffer.allocateDirect(8192).put(compressible(8192)).flip();
+        var frame = ByteBuffer.allocateDirect(BatchCompressor.maxFrameSize(input.remaining()));
+
+        assertTrue(compressor.compress(input, frame));
+        frame.flip();
+
+        var output = ByteBuffer.allocateDirect(BatchCompressor.originalLength(frame));
+        BatchCompressor.decompress(frame, output);
+        assertEquals(input.rewind(), output.flip());
+    }
+
+    @Test
+    void testSmallInputIsStored() {
+        var compressor = BatchCompressor.create().withMinimumSize(1024);
+        var input = compressible(1000);
+        var frame = ByteBuffer.allocate(BatchCompressor.maxFrameSize(1000));
+
+        assertFalse(compressor.compress(input, frame));
+        assertEquals(BatchCompressor.maxFrameSize(1000), frame.position());
+        assertEquals(input.rewind(), roundTrip(frame.flip()));
+    }
+
+    @Test
+    void testPoorRatiosBackOff() {
+        var compressor = BatchCompressor.create();
+        var frame = ByteBuffer.allocate(1 << 16);
+
+        // The first poor ratio stores one frame without trying, a good ratio resets the stretch
+        assertFalse(compressor.compress(random(4096), frame.clear()));
+        assertFalse(compressor.compress(compressible(4096), frame.clear()));
+        assertTrue(compressor.compress(compressible(4096), frame.clear()));
+
+        // Consecutive poor ratios double the stretch
+        assertFalse(compressor.compress(random(4096), frame.clear()));
+        assertFalse(compressor.compress(compressible(4096), frame.clear()));
+        assertFalse(compressor.compress(random(4096), frame.clear()));
+        assertFalse(compressor.compress(compressible(4096), frame.clear()));
+        assertFalse(compressor.compress(compressible(4096), frame.clear()));
+        assertTrue(compressor.compress(compressible(4096), frame.clear()));
+    }
+
+    @Test
+    void testDeflatesIntoTargetsSmallerThanTheBudget() {
+        var compressor = BatchCompressor.create();
+        var sized = ByteBuffer.allocate(BatchCompressor.maxFrameSize(8192));
+        assertTrue(compressor.compress(compressible(8192), sized));
+        var frameSize = sized.position();
+
+        // Space for the deflated frame and a little slack is enough, well below 90% of the input
+        var small = ByteBuffer.allocate(frameSize + 16);
+        assertTrue(frameSize + 16 < 8192 * 0.9);
+        assertTrue(compressor.compress(compressible(8192), small));
+        assertEquals(compressible(8192), roundTrip(small.flip()));
+
+        // Running out of space neither stores a partial frame nor backs off from the next one
+        var input = compressible(8192);
+        var tooSmall = ByteBuffer.allocate(frameSize / 2);
+        assertThrows(BufferOverflowException.class, () -> compressor.compress(input, tooSmall));
+        assertEquals(0, input.position());
+        assertEquals(0, tooSmall.position());
+        assertTrue(compressor.compress(input, sized.clear()));
+    }
+
+    @Test
+    void testCompressesChecksummedBatches() {
+        var points = IntStream.range(0, 5000).mapToObj(i -> new Point(i, 0)).toList();
+        var batch = ByteBuffer.allocate(ChecksummedBatch.OVERHEAD + points.size() * TestCodecs.POINT_SIZE);
+        ChecksummedBatch.encode(batch, TestCodecs.point(), points);
+
+        var frame = ByteBuffer.allocate(BatchCompressor.maxFrameSize(batch.capacity()));
+        assertTrue(BatchCompressor.create().compress(batch.flip(), frame));
+
+        assertEquals(points, ChecksummedBatch.decode(roundTrip(frame.flip()), TestCodecs.point()));
+    }
+
+    @Test
+    void testCorruptFramesAreRejected() {
+        var frame = ByteBuffer.allocate(1 << 16);
+        BatchCompressor.create().compress(compressible(4096), frame);
+        frame.flip();
+
+        var truncated = frame.duplicate().limit(frame.limit() - 1);
+        assertThrows(IllegalStateException.class, () -> roundTrip(truncated));
+
+        frame.put(BatchCompressor.HEADER_SIZE, (byte) 0xFF);
+        assertThrows(IllegalStateException.class, () -> roundTrip(frame));
+
+        assertThrows(IllegalStateException.class, () -> roundTrip(ByteBuffer.wrap(new byte[]{7, 0, 0, 0, 0, 0, 0, 0, 0})));
+        assertThrows(IllegalStateException.class, () -> roundTrip(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 2, 0, 0, 0, 1, 9})));
+    }
+
+    @Test
+    void testOverflowLeavesBuffersUntouched() {
+        var compressor = BatchCompressor.create();
+        var input = random(2048);
+        var frame = ByteBuffer.allocate(1024);
+
+        assertThrows(BufferOverflowException.class, () -> compressor.compress(input, frame));
+        assertEquals(0, input.position());
+        assertEquals(0, frame.position());
+
+        var stored = ByteBuffer.allocate(BatchCompressor.maxFrameSize(2048));
+        compressor.compress(input, stored);
+        stored.flip();
+        assertThrows(BufferOverflowException.class, () -> BatchCompressor.decompress(stored, ByteBuffer.allocate(2047)));
+        assertEquals(0, stored.position());
+
+        assertThrows(IllegalArgumentException.class, () -> compressor.withMaximumRatio(1));
+        assertThrows(IllegalArgumentException.class, () -> compressor.withLevel(0));
+    }
+}
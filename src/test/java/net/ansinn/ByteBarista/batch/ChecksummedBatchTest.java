@@ -0,0 +1,87 @@
+package net.ansinn.ByteBarista.batch;
+
+import net.ansinn.ByteBarista.StringHelpers;
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChecksummedBatchTest {
+
+    record Note(String text) {}
+
+    private static final List<Point> POINTS = IntStream.range(0, 10_000).mapToObj(i -> new Point(i, -i)).toList();
+
+    @Test
+    void testFixedBatchRoundTrip() {
+        var buffer = ByteBuffer.allocate(ChecksummedBatch.OVERHEAD + POINTS.size() * TestCodecs.POINT_SIZE);
+        ChecksummedBatch.encode(buffer, TestCodecs.point(), POINTS);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        assertEquals(POINTS, ChecksummedBatch.decode(buffer, TestCodecs.point()));
+        assertFalse(buffer.hasRemaining());
+
+        buffer.rewind();
+        assertEquals(POINTS.size(), ChecksummedBatch.verify(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testDynamicBatchesBackToBack() {
+        var codec = TestCodecs.<Note>dynamic(buffer -> new Note(StringHelpers.getString(buffer)),
+                (buffer, value) -> StringHelpers.putString(buffer, value.text()));
+        var first = List.of(new Note("a"), new Note(""), new Note("ü".repeat(20_000)));
+        var second = List.of(new Note("b"));
+
+        var buffer = ByteBuffer.allocateDirect(1 << 16);
+        ChecksummedBatch.encode(buffer, codec, first);
+        ChecksummedBatch.encode(buffer, codec, second);
+        ChecksummedBatch.encode(buffer, codec, List.of());
+
+        buffer.flip();
+        assertEquals(first, ChecksummedBatch.decode(buffer, codec));
+        assertEquals(second, ChecksummedBatch.decode(buffer, codec));
+        assertEquals(List.of(), ChecksummedBatch.decode(buffer, codec));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testCorruptionIsDetected() {
+        var buffer = ByteBuffer.allocate(ChecksummedBatch.OVERHEAD + POINTS.size() * TestCodecs.POINT_SIZE);
+        ChecksummedBatch.encode(buffer, TestCodecs.point(), POINTS);
+        buffer.flip();
+
+        // Every byte is covered, the header as much as any record
+        for (var index : new int[]{0, 5, 12, 40_000, buffer.limit() - 1}) {
+            buffer.put(index, (byte) (buffer.get(index) ^ 0x10));
+            assertThrows(IllegalStateException.class, () -> ChecksummedBatch.decode(buffer, TestCodecs.point()));
+            assertThrows(IllegalStateException.class, () -> ChecksummedBatch.verify(buffer));
+            assertEquals(0, buffer.position());
+            buffer.put(index, (byte) (buffer.get(index) ^ 0x10));
+        }
+
+        assertThrows(IllegalStateException.class, () -> ChecksummedBatch.decode(buffer.limit(buffer.limit() - 1), TestCodecs.point()));
+    }
+
+    @Test
+    void testOverflowLeavesBufferUntouched() {
+        var buffer = ByteBuffer.allocate(64).position(3);
+        var points = new ArrayList<>(POINTS.subList(0, 8));
+
+        assertThrows(BufferOverflowException.class, () -> ChecksummedBatch.encode(buffer, TestCodecs.point(), points));
+        assertEquals(3, buffer.position());
+
+        var codec = TestCodecs.<Point>dynamic(in -> new Point(in.getInt(), in.getInt()),
+                (out, value) -> out.putInt(value.x()).putInt(value.y()));
+        assertThrows(BufferOverflowException.class, () -> ChecksummedBatch.encode(buffer, codec, points));
+        assertEquals(3, buffer.position());
+    }
+}
@@ -0,0 +1,190 @@
+package net.ansinn.ByteBarista.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnCodecTest {
+
+    record Sample(long timestamp, int host, short status, boolean healthy, double value, float load) {}
+
+    record Tagged(long id, String tag) {}
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static List<Sample> samples(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Sample(START + i * 10_000L + (i % 100 == 0 ? 3 : 0), 1000 + i % 16, (short) 200,
+                        i % 7 != 0, 20.0 + (i / 50) * 0.5, (i % 10) * 0.5f))
+                .toList();
+    }
+
+    private static long[] roundTrip(long[] values, ColumnEncoding encoding, ByteOrder order) {
+        var buffer = ByteBuffer.allocate(16 + values.length * 10).order(order);
+        ColumnCodec.putLongs(buffer, values, encoding);
+        var end = buffer.position();
+
+        buffer.flip();
+        ColumnCodec.skip(buffer);
+        assertEquals(end, buffer.position());
+
+        var decoded = ColumnCodec.getLongs(buffer.rewind());
+        assertEquals(end, buffer.position());
+        return decoded;
+    }
+
+    @Test
+    void testEveryEncodingRoundTrips() {
+        var random = new Random(3);
+        var columns = List.of(
+                new long[0],
+                new long[]{42},
+                new long[]{Long.MIN_VALUE, Long.MAX_VALUE},
+                new long[]{Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, 1, Long.MAX_VALUE},
+                random.longs(1000).toArray(),
+                random.longs(1000, -5, 5).toArray(),
+                longs(1000, i -> START + i * 1000));
+
+        for (var values : columns)
+            for (var encoding : ColumnEncoding.values())
+                for (var order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN))
+                    assertArrayEquals(values, roundTrip(values, encoding, order));
+    }
+
+    @Test
+    void testSmallestEncodingIsChosen() {
+        var timestamps = longs(10_000, i -> START + i * 1000 + (i % 1000 == 0 ? 1 : 0));
+        var buffer = ByteBuffer.allocate(1 << 16);
+        assertEquals(ColumnEncoding.DELTA_OF_DELTA, ColumnCodec.putLongs(buffer, timestamps));
+        assertTrue(buffer.position() < timestamps.length / 2, "Took " + buffer.position() + " bytes");
+
+        var gauges = longs(10_000, i -> 5000 + (i * 31) % 200);
+        assertEquals(ColumnEncoding.FRAME_OF_REFERENCE, ColumnCodec.putLongs(buffer.clear(), gauges));
+        assertEquals(1 + 2 + 9 + 10_000, buffer.position());
+
+        var random = new Random(5).longs(100).toArray();
+        assertEquals(ColumnEncoding.RAW, ColumnCodec.putLongs(buffer.clear(), random));
+
+        var doubles = IntStream.range(0, 1000).mapToDouble(i -> 20.0 + (i / 50) * 0.25).toArray();
+        assertEquals(ColumnEncoding.XOR, ColumnCodec.putDoubles(buffer.clear(), doubles));
+        assertTrue(buffer.position() < 1000, "Took " + buffer.position() + " bytes");
+        assertArrayEquals(doubles, ColumnCodec.getDoubles(buffer.flip()));
+
+        var noise = new Random(5).longs(100).mapToDouble(Double::longBitsToDouble).toArray();
+        assertEquals(ColumnEncoding.RAW, ColumnCodec.putDoubles(buffer.clear(), noise));
+    }
+
+    @Test
+    void testDoublesKeepTheirBits() {
+        var values = new double[]{0.0, -0.0, Double.NaN, Double.longBitsToDouble(0x7FF0_0000_0000_0001L),
+                Double.POSITIVE_INFINITY, Double.MIN_VALUE, 1.5, 1.5, -1.5};
+        for (var encoding : ColumnEncoding.values()) {
+            var buffer = ByteBuffer.allocate(256);
+            ColumnCodec.putDoubles(buffer, values, encoding);
+
+            var decoded = ColumnCodec.getDoubles(buffer.flip());
+            for (var i = 0; i < values.length; i++)
+                assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoded[i]));
+        }
+    }
+
+    @Test
+    void testCorruptColumnsAreRejected() {
+        var values = longs(100, i -> i * 3);
+        var buffer = ByteBuffer.allocate(1024);
+        ColumnCodec.putLongs(buffer, values, ColumnEncoding.FRAME_OF_REFERENCE);
+        buffer.flip();
+
+        var truncated = buffer.duplicate().limit(buffer.limit() - 1);
+        assertThrows(IllegalStateException.class, () -> ColumnCodec.getLongs(truncated));
+        assertThrows(IllegalStateException.class, () -> ColumnCodec.skip(truncated.rewind()));
+
+        buffer.put(0, (byte) 9);
+        assertThrows(IllegalStateException.class, () -> ColumnCodec.getLongs(buffer.rewind()));
+
+        buffer.put(0, (byte) ColumnEncoding.FRAME_OF_REFERENCE.ordinal()).put(10, (byte) 65);
+        assertThrows(IllegalStateException.class, () -> ColumnCodec.getLongs(buffer.rewind()));
+    }
+
+    @Test
+    void testOverflowLeavesBufferUntouched() {
+        var buffer = ByteBuffer.allocate(64).position(5);
+        for (var encoding : ColumnEncoding.values()) {
+            assertThrows(BufferOverflowException.class, () -> ColumnCodec.putLongs(buffer, new Random(1).longs(100).toArray(), encoding));
+            assertEquals(5, buffer.position());
+        }
+    }
+
+    @Test
+    void testBatchRoundTrip() {
+        var batch = ColumnBatch.of(Sample.class);
+        var samples = samples(5000);
+        var buffer = ByteBuffer.allocateDirect(1 << 18);
+
+        batch.encode(buffer, samples);
+        batch.encode(buffer, List.of());
+        var end = buffer.position();
+
+        // Far smaller than the 27 bytes every sample takes at full width
+        assertTrue(end < samples.size() * 27 / 5, "Took " + end + " bytes");
+
+        buffer.flip();
+        assertEquals(samples, batch.decode(buffer));
+        assertEquals(List.of(), batch.decode(buffer));
+        assertEquals(end, buffer.position());
+    }
+
+    @Test
+    void testFailedDecodeLeavesBufferUntouched() {
+        var batch = ColumnBatch.of(Sample.class);
+        var buffer = ByteBuffer.allocate(1 << 16).position(3);
+        batch.encode(buffer, samples(100));
+        buffer.flip().position(3);
+
+        // The count no longer matches the columns, which are only checked after reading them
+        buffer.put(3, (byte) 99);
+        assertThrows(IllegalStateException.class, () -> batch.decode(buffer));
+        assertEquals(3, buffer.position());
+
+        var truncated = buffer.duplicate().limit(buffer.limit() - 1).position(3);
+        truncated.put(3, (byte) 100);
+        assertThrows(IllegalStateException.class, () -> batch.decode(truncated));
+        assertEquals(3, truncated.position());
+    }
+
+    @Test
+    void testSingleColumnsAreReadIntoArrays() {
+        var batch = ColumnBatch.of(Sample.class);
+        var samples = samples(300);
+        var buffer = ByteBuffer.allocate(1 << 16);
+        batch.encode(buffer, samples);
+        batch.encode(buffer, samples.subList(0, 2));
+        buffer.flip();
+
+        var timestamps = batch.getLongs(buffer, "timestamp");
+        assertArrayEquals(samples.stream().mapToLong(Sample::timestamp).toArray(), timestamps);
+
+        var values = batch.getDoubles(buffer, "value");
+        assertArrayEquals(new double[]{samples.get(0).value(), samples.get(1).value()}, values);
+        assertFalse(buffer.hasRemaining());
+
+        assertArrayEquals(samples.stream().mapToLong(sample -> sample.healthy() ? 1 : 0).toArray(),
+                batch.getLongs(buffer.rewind(), "healthy"));
+
+        assertThrows(IllegalArgumentException.class, () -> batch.getDoubles(buffer.rewind(), "timestamp"));
+        assertThrows(IllegalArgumentException.class, () -> batch.getLongs(buffer.rewind(), "missing"));
+        assertThrows(IllegalArgumentException.class, () -> ColumnBatch.of(Tagged.class));
+    }
+
+    private static long[] longs(int count, IntToLongFunction value) {
+        return IntStream.range(0, count).mapToLong(value).toArray();
+    }
+}
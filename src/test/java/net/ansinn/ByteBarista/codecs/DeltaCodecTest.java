@@ -0,0 +1,100 @@
+package net.ansinn.ByteBarista.codecs;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaCodecTest {
+
+    enum Level { LOW, HIGH }
+
+    record Position(int x, int y) {}
+    record PlayerState(int id, long tick, float x, float y, boolean crouching, Level level, String name,
+                       @Nullable String title, Position spawn) {}
+
+    record Tree(String label, Optional<Tree> child) {}
+
+    record Samples(int channel, int[] values) {}
+    record Frame(long tick, Samples samples) {}
+
+    private static <T extends Record> T roundTrip(Codec<T> codec, T previous, T current, int expectedBytes) {
+        var buffer = ByteBuffer.allocate(256);
+        codec.encodeDelta(buffer, previous, current);
+        assertEquals(expectedBytes, buffer.position());
+
+        var decoded = codec.decodeDelta(buffer.flip(), previous);
+        assertFalse(buffer.hasRemaining());
+        return decoded;
+    }
+
+    @Test
+    void testDeltaEncodingOnlyWritesChanges() {
+        var codec = CodecManager.getCodec(PlayerState.class);
+        var previous = new PlayerState(7, 1000L, 1f, 2f, false, Level.LOW, "bob", null, new Position(0, 0));
+
+        // An unchanged record costs only its changed bitmap
+        assertEquals(previous, roundTrip(codec, previous, previous, 2));
+
+        // The tick advances by a single byte step, the flipped boolean lives in its bit
+        var current = new PlayerState(7, 1001L, 1.5f, 2f, true, Level.LOW, "bob", null, new Position(0, 0));
+        assertEquals(current, roundTrip(codec, previous, current, 2 + 1 + Float.BYTES));
+
+        previous = current;
+        current = new PlayerState(6, 1001L, 1.5f, 2f, true, Level.LOW, "bob", "hi", new Position(1, 2));
+        assertEquals(current, roundTrip(codec, previous, current, 2 + 1 + (1 + 1 + 2) + 2 * Integer.BYTES));
+
+        // An optional turning absent is written as its presence byte alone, next to the changed enum
+        previous = current;
+        current = new PlayerState(6, 1001L, 1.5f, 2f, false, Level.HIGH, "bob", null, new Position(1, 2));
+        assertEquals(current, roundTrip(codec, previous, current, 2 + 1 + 1));
+    }
+
+    @Test
+    void testNestedArraysCompareByElements() {
+        var codec = CodecManager.getCodec(Frame.class);
+        var previous = new Frame(10L, new Samples(1, new int[]{1, 2, 3}));
+
+        // Equal elements in a distinct array leave the nested record unchanged
+        var current = new Frame(11L, new Samples(1, new int[]{1, 2, 3}));
+        var decoded = roundTrip(codec, previous, current, 1 + 1);
+        assertEquals(11L, decoded.tick());
+        assertArrayEquals(current.samples().values(), decoded.samples().values());
+
+        current = new Frame(11L, new Samples(1, new int[]{1, 2, 4}));
+        var samples = ByteBuffer.allocate(64);
+        codec.encode(samples, new Frame(0L, current.samples()));
+
+        decoded = roundTrip(codec, previous, current, 1 + 1 + samples.position() - Long.BYTES);
+        assertArrayEquals(current.samples().values(), decoded.samples().values());
+    }
+
+    @Test
+    void testFixedCodecsDelegate() {
+        var codec = CodecManager.getCodec(Position.class);
+        assertInstanceOf(FixedCodec.class, codec);
+
+        var previous = new Position(100, -5);
+        assertEquals(new Position(99, -5), roundTrip(codec, previous, new Position(99, -5), 1 + 1));
+        assertEquals(new Position(Integer.MIN_VALUE, Integer.MAX_VALUE),
+                roundTrip(codec, previous, new Position(Integer.MIN_VALUE, Integer.MAX_VALUE), 1 + 5 + 5));
+    }
+
+    @Test
+    void testRecursiveRecords() {
+        var codec = CodecManager.getCodec(Tree.class);
+        var previous = new Tree("root", Optional.of(new Tree("leaf", Optional.empty())));
+        var current = new Tree("root", Optional.of(new Tree("leaf", Optional.of(new Tree("new", Optional.empty())))));
+
+        // The changed child is written whole behind the changed bitmap and its presence byte
+        var child = ByteBuffer.allocate(64);
+        codec.encode(child, current.child().get());
+
+        var decoded = roundTrip(codec, previous, current, 1 + 1 + child.position());
+        assertEquals(current, decoded);
+    }
+}
@@ -0,0 +1,89 @@
+package net.ansinn.ByteBarista.codecs;
+
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedCodecStreamTest {
+
+    private static ByteBuffer encodePoints(int count) {
+        var codec = TestCodecs.point();
+        var buffer = ByteBuffer.allocate(count * codec.size());
+        for (var i = 0; i < count; i++)
+            codec.encode(buffer, new Point(i, i * 3));
+        return buffer.flip();
+    }
+
+    @Test
+    void testSequentialStreamDecodesInOrder() {
+        var buffer = encodePoints(100);
+        var points = TestCodecs.point().stream(buffer).toList();
+
+        assertEquals(100, points.size());
+        for (var i = 0; i < 100; i++)
+            assertEquals(new Point(i, i * 3), points.get(i));
+
+        assertEquals(0, buffer.position(), "Streaming must not move the source buffer");
+    }
+
+    @Test
+    void testParallelStreamDecodesEveryRecord() {
+        var buffer = encodePoints(10_000);
+
+        var sum = TestCodecs.point().stream(buffer).parallel().mapToLong(Point::x).sum();
+        assertEquals(10_000L * 9_999 / 2, sum);
+
+        var ordered = TestCodecs.point().stream(buffer).parallel().map(Point::x).collect(Collectors.toList());
+        for (var i = 0; i < ordered.size(); i++)
+            assertEquals(i, ordered.get(i));
+    }
+
+    @Test
+    void testSplitsAtRecordBoundaries() {
+        var spliterator = TestCodecs.point().stream(encodePoints(7)).spliterator();
+
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        assertEquals(7, spliterator.estimateSize());
+
+        var prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertEquals(3, prefix.estimateSize());
+        assertEquals(4, spliterator.estimateSize());
+
+        prefix.tryAdvance(point -> assertEquals(new Point(0, 0), point));
+        spliterator.tryAdvance(point -> assertEquals(new Point(3, 9), point));
+    }
+
+    @Test
+    void testStreamOverSegment() {
+        try (var arena = Arena.ofShared()) {
+            var segment = arena.allocate(50L * TestCodecs.POINT_SIZE);
+            segment.asByteBuffer().put(encodePoints(50));
+
+            assertEquals(50, TestCodecs.point().stream(segment).parallel().count());
+            assertEquals(new Point(49, 147), TestCodecs.point().stream(segment).skip(49).findFirst().orElseThrow());
+        }
+    }
+
+    @Test
+    void testRespectsBufferByteOrder() {
+        var buffer = ByteBuffer.allocate(TestCodecs.POINT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, 1).putInt(4, 2);
+
+        assertEquals(new Point(1, 2), TestCodecs.point().stream(buffer).findFirst().orElseThrow());
+    }
+
+    @Test
+    void testRejectsPartialRecords() {
+        var buffer = ByteBuffer.allocate(TestCodecs.POINT_SIZE + 1);
+        assertThrows(IllegalArgumentException.class, () -> TestCodecs.point().stream(buffer));
+    }
+}
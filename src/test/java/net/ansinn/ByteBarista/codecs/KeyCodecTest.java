@@ -0,0 +1,71 @@
+package net.ansinn.ByteBarista.codecs;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.KeyHelpers;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyCodecTest {
+
+    enum Region { EU, US, ASIA }
+
+    record Timestamp(long seconds, int nanos) {}
+
+    record EventKey(Region region, String tenant, @VarInt int shard, Timestamp time, @Nullable String tag, Optional<Double> score) {}
+
+    record Node(int value, @Nullable Node next) {}
+
+    private static final Comparator<EventKey> NATURAL = Comparator
+            .comparing(EventKey::region)
+            .thenComparing(EventKey::tenant)
+            .thenComparingInt(EventKey::shard)
+            .thenComparingLong(key -> key.time().seconds())
+            .thenComparingInt(key -> key.time().nanos())
+            .thenComparing(EventKey::tag, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(key -> key.score().orElse(null), Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    @Test
+    void testKeysSortLikeTheirComponents() {
+        var keys = new ArrayList<EventKey>();
+        for (var region : Region.values())
+            for (var tenant : List.of("", "a", "a\0", "ab"))
+                for (var shard : new int[]{-5, 0, 7})
+                    for (var tag : new String[]{null, "x"})
+                        keys.add(new EventKey(region, tenant, shard, new Timestamp(shard * 3L, -shard), tag,
+                                tag == null ? Optional.empty() : Optional.of(shard / 2.0)));
+
+        var codec = CodecManager.getKeyCodec(EventKey.class);
+        var expected = new ArrayList<>(keys);
+        expected.sort(NATURAL);
+
+        var byKey = new ArrayList<>(keys);
+        byKey.sort((left, right) -> KeyHelpers.compare(codec.toKey(left), codec.toKey(right)));
+
+        assertEquals(expected, byKey);
+    }
+
+    @Test
+    void testKeysRoundTrip() {
+        var codec = CodecManager.getKeyCodec(EventKey.class);
+        var value = new EventKey(Region.US, "tenant\0zero", -1, new Timestamp(-9L, 3), null, Optional.of(-0.0));
+        var buffer = ByteBuffer.allocate(128);
+
+        codec.encode(buffer, value);
+        assertEquals(value, codec.decode(buffer.flip()));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testRecursiveRecordsAreRejected() {
+        assertThrows(IllegalStateException.class, () -> CodecManager.getKeyCodec(Node.class));
+    }
+}
@@ -0,0 +1,118 @@
+package net.ansinn.ByteBarista.codecs;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.Sparse;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SkipAndSizeTest {
+
+    enum Kind { TEXT, IMAGE }
+
+    sealed interface Attachment permits Link, Blob {}
+    record Link(String url) implements Attachment {}
+    record Blob(int width, int height) implements Attachment {}
+
+    record Header(long id, Kind kind, @Bits(3) int priority, boolean pinned) {}
+
+    record Message(Header header, @VarInt int thread, @ZigZag long delta, String body, @FixedLength(4) String lang,
+                   int[] reactions, boolean[] seen, Optional<String> subject, OptionalLong edited,
+                   @Nullable Attachment attachment) {}
+
+    @Sparse
+    record Settings(int volume, boolean muted, String name, double gain) {}
+
+    record Level5(String leaf, @VarInt long counter) {}
+    record Level4(Level5 next, String name) {}
+    record Level3(Level4 next, short tag) {}
+    record Level2(Level3 next, Optional<String> note) {}
+    record Level1(Level2 next, byte[] payload) {}
+    record Level0(Level1 next, Level1 other) {}
+
+    private static final List<Message> MESSAGES = List.of(
+            new Message(new Header(1, Kind.TEXT, 3, true), 0, -1, "", "en", new int[0], new boolean[0],
+                    Optional.empty(), OptionalLong.empty(), null),
+            new Message(new Header(Long.MIN_VALUE, Kind.IMAGE, 7, false), Integer.MAX_VALUE, Long.MIN_VALUE,
+                    "héllo wörld 😀", "de", new int[]{1, 2, 3}, new boolean[]{true, false, true, true, false, false, true, false, true},
+                    Optional.of("subject"), OptionalLong.of(42), new Link("https://example.com")),
+            new Message(new Header(5, Kind.TEXT, 0, false), -1, 300, "x".repeat(200), "fr", new int[130], new boolean[1],
+                    Optional.of(""), OptionalLong.empty(), new Blob(640, 480))
+    );
+
+    private static <T extends Record> void assertSizedAndSkipped(Class<T> type, List<T> values) {
+        var codec = CodecManager.getCodec(type);
+        var buffer = ByteBuffer.allocate(1 << 16);
+        var ends = new int[values.size()];
+
+        for (var i = 0; i < values.size(); i++) {
+            var start = buffer.position();
+            codec.encode(buffer, values.get(i));
+            ends[i] = buffer.position();
+            assertEquals(ends[i] - start, codec.sizeOf(values.get(i)), "Size of " + values.get(i));
+        }
+        buffer.flip();
+
+        for (var end : ends) {
+            codec.skip(buffer);
+            assertEquals(end, buffer.position());
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void testDynamicRecords() {
+        assertSizedAndSkipped(Message.class, MESSAGES);
+    }
+
+    @Test
+    void testSparseRecords() {
+        assertSizedAndSkipped(Settings.class, List.of(
+                new Settings(0, false, "", 0.0),
+                new Settings(7, true, "loud", -0.0),
+                new Settings(0, true, "", 1.5)));
+    }
+
+    @Test
+    void testRecordsNestedPastTheInliningDepth() {
+        var deep = new Level1(new Level2(new Level3(new Level4(new Level5("leaf", 1L << 40), "four"), (short) 3), Optional.of("note")), new byte[]{1, 2});
+        var shallow = new Level1(new Level2(new Level3(new Level4(new Level5("", 0), ""), (short) 0), Optional.empty()), new byte[0]);
+
+        assertSizedAndSkipped(Level0.class, List.of(new Level0(deep, shallow), new Level0(shallow, deep)));
+    }
+
+    @Test
+    void testFixedRecords() {
+        var codec = CodecManager.getCodec(Header.class);
+        var header = new Header(9, Kind.IMAGE, 2, true);
+        assertInstanceOf(FixedCodec.class, codec);
+        assertEquals(CodecManager.getSafe(Header.class).size(), codec.sizeOf(header));
+
+        assertSizedAndSkipped(Header.class, List.of(header, new Header(10, Kind.TEXT, 1, false)));
+        assertThrows(IllegalStateException.class, () -> codec.skip(ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    void testSkipToNthRecord() {
+        var codec = CodecManager.getCodec(Message.class);
+        var buffer = ByteBuffer.allocate(MESSAGES.stream().mapToInt(codec::sizeOf).sum());
+        for (var message : MESSAGES)
+            codec.encode(buffer, message);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        codec.skip(buffer);
+        codec.skip(buffer);
+        assertEquals(MESSAGES.get(2).body(), codec.decode(buffer).body());
+    }
+}
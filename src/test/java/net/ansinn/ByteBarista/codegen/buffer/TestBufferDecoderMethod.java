@@ -1,4 +1,85 @@
 package net.ansinn.ByteBarista.codegen.buffer;
 
+import net.ansinn.ByteBarista.NumericHelpers;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import net.ansinn.ByteBarista.codegen.CodegenConstants;
+import org.junit.jupiter.api.Test;
+
+import java.lang.classfile.ClassFile;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class TestBufferDecoderMethod {
+
+    private static MethodHandle getTestHandle(Class<? extends Record> recordClazz) throws IllegalAccessException, NoSuchMethodException {
+        var lookup = MethodHandles.lookup();
+        var hidden = lookup.defineHiddenClass(emitBufferDecoderBytes(recordClazz), true);
+        var clazz = hidden.lookupClass();
+        var methodType = MethodType.methodType(Object.class, ByteBuffer.class);
+
+        return hidden.findStatic(clazz, "decode", methodType);
+    }
+
+    private static byte[] emitBufferDecoderBytes(Class<? extends Record> clazz) {
+        var desc = ClassDesc.of("net.ansinn.ByteBarista.codegen.buffer", clazz.getSimpleName() + "_BufferCodec");
+
+        return ClassFile.of().build(
+                desc,
+                builder -> {
+                    builder.withFlags(0);
+
+                    var methodType = MethodTypeDesc.of(ConstantDescs.CD_Object, CodegenConstants.BUFFER_DESC);
+
+                    builder.withMethod("decode", methodType, ClassFile.ACC_STATIC, methodBuilder ->
+                            methodBuilder.withCode(codeBuilder ->
+                                    BufferDecoderBuilder.emitReadFunction(codeBuilder, clazz)
+                            )
+                    );
+                }
+        );
+    }
+
+    @Test
+    void testDecodeMixedPrimitives() throws Throwable {
+        record Mixed(long a, int b, double c, byte d) {}
+        var handle = getTestHandle(Mixed.class);
+        var buffer = ByteBuffer.allocate(21).putLong(-5L).putInt(42).putDouble(0.5).put((byte) 7).flip();
+
+        assertEquals(new Mixed(-5L, 42, 0.5, (byte) 7), handle.invoke(buffer));
+    }
+
+    @Test
+    void testDecodeUnsigned() throws Throwable {
+        record Unsigned(@UnsignedByte int a, @UnsignedInteger long b) {}
+        var handle = getTestHandle(Unsigned.class);
+        var buffer = ByteBuffer.allocate(5).put((byte) 0xFF).putInt(0xFFFFFFFF).flip();
+
+        assertEquals(new Unsigned(255, 0xFFFFFFFFL), handle.invoke(buffer));
+    }
+
+    @Test
+    void testDecodeVarInts() throws Throwable {
+        record Counters(@VarInt int small, @VarInt long large, @ZigZag int negative, @ZigZag long wide) {}
+        var handle = getTestHandle(Counters.class);
+        var buffer = ByteBuffer.allocate(32);
+        NumericHelpers.putVarInt(buffer, 5);
+        NumericHelpers.putVarLong(buffer, 1L << 40);
+        NumericHelpers.putZigZagInt(buffer, -3);
+        NumericHelpers.putZigZagLong(buffer, Long.MIN_VALUE);
+        var length = buffer.position();
+        buffer.flip();
+
+        assertEquals(new Counters(5, 1L << 40, -3, Long.MIN_VALUE), handle.invoke(buffer));
+        assertEquals(length, buffer.position());
+    }
 }
@@ -0,0 +1,327 @@
+package net.ansinn.ByteBarista.codegen.buffer;
+
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.Sparse;
+import net.ansinn.ByteBarista.annotations.Tag;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import net.ansinn.ByteBarista.codegen.CodegenConstants;
+import org.junit.jupiter.api.Test;
+
+import java.lang.classfile.ClassFile;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBufferEncoderMethod {
+
+    private record Handles(java.lang.invoke.MethodHandle encode, java.lang.invoke.MethodHandle decode) {}
+
+    private static Handles getTestHandles(Class<? extends Record> recordClazz) throws IllegalAccessException, NoSuchMethodException {
+        var lookup = MethodHandles.lookup();
+        var hidden = lookup.defineHiddenClass(emitBufferCodecBytes(recordClazz), true);
+        var clazz = hidden.lookupClass();
+
+        return new Handles(
+                hidden.findStatic(clazz, "encode", MethodType.methodType(void.class, ByteBuffer.class, Object.class)),
+                hidden.findStatic(clazz, "decode", MethodType.methodType(Object.class, ByteBuffer.class))
+        );
+    }
+
+    private static byte[] emitBufferCodecBytes(Class<? extends Record> clazz) {
+        var desc = ClassDesc.of("net.ansinn.ByteBarista.codegen.buffer", clazz.getSimpleName() + "_BufferCodec");
+
+        return ClassFile.of().build(
+                desc,
+                builder -> {
+                    builder.withFlags(0);
+
+                    builder.withMethod("encode", MethodTypeDesc.of(ConstantDescs.CD_void, CodegenConstants.BUFFER_DESC, ConstantDescs.CD_Object), ClassFile.ACC_STATIC, methodBuilder ->
+                            methodBuilder.withCode(codeBuilder -> BufferEncoderBuilder.emitWriteFunction(codeBuilder, clazz))
+                    );
+                    builder.withMethod("decode", MethodTypeDesc.of(ConstantDescs.CD_Object, CodegenConstants.BUFFER_DESC), ClassFile.ACC_STATIC, methodBuilder ->
+                            methodBuilder.withCode(codeBuilder -> BufferDecoderBuilder.emitReadFunction(codeBuilder, clazz))
+                    );
+                }
+        );
+    }
+
+    private static Object roundTrip(Record value, int expectedSize) throws Throwable {
+        var handles = getTestHandles(value.getClass());
+        var buffer = ByteBuffer.allocate(64);
+
+        handles.encode().invoke(buffer, value);
+        assertEquals(expectedSize, buffer.position(), "unexpected encoded size");
+
+        return handles.decode().invoke(buffer.flip());
+    }
+
+    @Test
+    void testEncodePrimitives() throws Throwable {
+        record Primitives(long a, int b, short c, byte d, double e, float f, char g) {}
+        var value = new Primitives(Long.MIN_VALUE, -7, (short) 300, (byte) -1, Math.PI, 1.5f, 'x');
+
+        assertEquals(value, roundTrip(value, 8 + 4 + 2 + 1 + 8 + 4 + 2));
+    }
+
+    @Test
+    void testEncodeUnsigned() throws Throwable {
+        record Unsigned(@UnsignedByte int a, @UnsignedShort long b, @UnsignedInteger long c) {}
+        var value = new Unsigned(200, 60_000L, 0xFFFF_FFF0L);
+
+        assertEquals(value, roundTrip(value, 1 + 2 + 4));
+    }
+
+    @Test
+    void testEncodeVarInts() throws Throwable {
+        record Counters(@VarInt int id, @VarInt long total, @ZigZag int delta, @ZigZag long offset) {}
+        var value = new Counters(3, 128L, -1, -64L);
+
+        assertEquals(value, roundTrip(value, 1 + 2 + 1 + 1));
+    }
+
+    @Test
+    void testEncodePackedBits() throws Throwable {
+        record State(boolean alive, @Bits(3) int kind, @Bits(4) byte level, @Bits(12) short health, boolean moving, long tick) {}
+        var value = new State(true, 5, (byte) 15, (short) 4000, false, 99L);
+
+        // 21 packed bits round up to three bytes
+        assertEquals(value, roundTrip(value, 3 + 8));
+    }
+
+    @Test
+    void testEncodeFullWidthBits() throws Throwable {
+        record Full(@Bits(8) byte a, @Bits(32) int b, @Bits(16) char c) {}
+        var value = new Full((byte) -1, -123456, '\uFFFF');
+
+        assertEquals(value, roundTrip(value, 7));
+    }
+
+    enum Suit { CLUBS, DIAMONDS, HEARTS, SPADES }
+
+    @Test
+    void testEncodeEnums() throws Throwable {
+        record Card(Suit suit, byte rank, Suit trump) {}
+        var value = new Card(Suit.HEARTS, (byte) 12, Suit.SPADES);
+
+        assertEquals(value, roundTrip(value, 3));
+    }
+
+    @Test
+    void testEncodeStrings() throws Throwable {
+        record Player(int id, String name, String motto) {}
+        var value = new Player(7, "Zoë", "gg");
+
+        // Each string is a one byte length followed by its UTF-8 bytes
+        assertEquals(value, roundTrip(value, 4 + 1 + 4 + 1 + 2));
+    }
+
+    @Test
+    void testEncodeFixedLength() throws Throwable {
+        record Quote(@FixedLength(6) String symbol, @FixedLength(4) byte[] id, @FixedLength(2) float[] levels) {}
+        var value = new Quote("IBM", new byte[]{1, 2, 3, 4}, new float[]{1.5f});
+
+        var result = (Quote) roundTrip(value, 6 + 4 + 2 * Float.BYTES);
+        assertEquals("IBM", result.symbol());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, result.id());
+        assertArrayEquals(new float[]{1.5f, 0f}, result.levels());
+    }
+
+    @Test
+    void testEncodePrimitiveArrays() throws Throwable {
+        record Samples(int channel, float[] values, long[] stamps, boolean[] valid) {}
+        var value = new Samples(2, new float[]{0.5f, -1f, 3f}, new long[]{10L}, new boolean[]{true, false, true});
+
+        var result = (Samples) roundTrip(value, 4 + (1 + 3 * Float.BYTES) + (1 + Long.BYTES) + (1 + 1));
+        assertEquals(2, result.channel());
+        assertArrayEquals(value.values(), result.values());
+        assertArrayEquals(value.stamps(), result.stamps());
+        assertArrayEquals(value.valid(), result.valid());
+    }
+
+    @Test
+    void testEncodeNestedRecords() throws Throwable {
+        record Point(int x, int y) {}
+        record Line(Point from, Point to, boolean dashed) {}
+        var value = new Line(new Point(1, -2), new Point(300, 4), true);
+
+        assertEquals(value, roundTrip(value, 4 * Integer.BYTES + 1));
+    }
+
+    @Test
+    void testDeepNestingFallsBackToMethods() throws Throwable {
+        record L6(long v) {}
+        record L5(L6 next, byte b) {}
+        record L4(L5 next, byte b) {}
+        record L3(L4 next, byte b) {}
+        record L2(L3 next, byte b) {}
+        record L1(L2 next, byte b) {}
+        record L0(L1 next, L6 leaf, byte b) {}
+        var value = new L0(new L1(new L2(new L3(new L4(new L5(new L6(42L), (byte) 5), (byte) 4), (byte) 3), (byte) 2), (byte) 1), new L6(-1L), (byte) 0);
+
+        var desc = ClassDesc.of("net.ansinn.ByteBarista.codegen.buffer", "L0_NestedCodec");
+        var bytes = ClassFile.of().build(desc, builder -> {
+            BufferEncoderBuilder.emitEncoder(builder, desc, "encode", L0.class);
+            BufferDecoderBuilder.emitDecoder(builder, desc, "decode", L0.class);
+        });
+
+        // Records past the inlining depth are emitted as one private method per type and direction
+        var model = ClassFile.of().parse(bytes);
+        assertTrue(model.methods().stream().anyMatch(method -> method.methodName().stringValue().startsWith("encode$")));
+        assertTrue(model.methods().stream().anyMatch(method -> method.methodName().stringValue().startsWith("decode$")));
+
+        var hidden = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        var clazz = hidden.lookupClass();
+        var encode = hidden.findStatic(clazz, "encode", MethodType.methodType(void.class, ByteBuffer.class, Object.class));
+        var decode = hidden.findStatic(clazz, "decode", MethodType.methodType(Object.class, ByteBuffer.class));
+
+        var buffer = ByteBuffer.allocate(64);
+        encode.invoke(buffer, value);
+        assertEquals(2 * Long.BYTES + 6, buffer.position());
+        assertEquals(value, decode.invoke(buffer.flip()));
+    }
+
+    record Chain(int value, Chain next) {}
+
+    @Test
+    void testInfinitelyNestedRecordsAreRejected() {
+        assertThrows(IllegalStateException.class, () -> getTestHandles(Chain.class));
+    }
+
+    enum Level { LOW, HIGH }
+
+    @Test
+    void testEncodeOptionalComponents() throws Throwable {
+        record Point(int x, int y) {}
+        record Sparse(int id, @Nullable String name, Optional<Point> at, OptionalInt count, OptionalLong total,
+                      OptionalDouble ratio, Optional<Level> level, @Nullable int[] samples) {}
+
+        var full = new Sparse(1, "a", Optional.of(new Point(2, 3)), OptionalInt.of(4), OptionalLong.of(5L),
+                OptionalDouble.of(0.5), Optional.of(Level.HIGH), new int[]{6});
+        var result = (Sparse) roundTrip(full, 1 + 4 + (1 + 1) + 8 + 4 + 8 + 8 + 1 + (1 + 4));
+        assertEquals(full.at(), result.at());
+        assertEquals(full.level(), result.level());
+        assertArrayEquals(full.samples(), result.samples());
+
+        // Absent components cost nothing beyond their bit in the leading bitmap
+        var empty = new Sparse(1, null, Optional.empty(), OptionalInt.empty(), OptionalLong.empty(),
+                OptionalDouble.empty(), Optional.empty(), null);
+        assertEquals(empty, roundTrip(empty, 1 + 4));
+    }
+
+    record Node(int value, @Nullable Node next) {}
+
+    @Test
+    void testRecursiveRecordsUseFallbackMethods() throws Throwable {
+        var desc = ClassDesc.of("net.ansinn.ByteBarista.codegen.buffer", "Node_RecursiveCodec");
+        var bytes = ClassFile.of().build(desc, builder -> {
+            BufferEncoderBuilder.emitEncoder(builder, desc, "encode", Node.class);
+            BufferDecoderBuilder.emitDecoder(builder, desc, "decode", Node.class);
+        });
+
+        var hidden = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        var clazz = hidden.lookupClass();
+        var encode = hidden.findStatic(clazz, "encode", MethodType.methodType(void.class, ByteBuffer.class, Object.class));
+        var decode = hidden.findStatic(clazz, "decode", MethodType.methodType(Object.class, ByteBuffer.class));
+
+        Node list = null;
+        for (var i = 0; i < 10; i++)
+            list = new Node(i, list);
+
+        var buffer = ByteBuffer.allocate(64);
+        encode.invoke(buffer, list);
+        assertEquals(10 * (1 + Integer.BYTES), buffer.position());
+        assertEquals(list, decode.invoke(buffer.flip()));
+
+        // Without a class to fall back to, a recursive record can't be inlined
+        assertThrows(IllegalStateException.class, () -> getTestHandles(Node.class));
+    }
+
+    @Sparse
+    record Config(int a, long b, short c, byte d, char e, float f, double g, boolean h, boolean i, Level level,
+                  String name, int[] values, @Nullable String note, int j) {}
+
+    @Test
+    void testSparseRecordsOnlyWriteNonDefaults() throws Throwable {
+        var defaults = new Config(0, 0L, (short) 0, (byte) 0, '\0', 0f, 0.0, false, false, Level.LOW, "", new int[0], null, 0);
+        var result = (Config) roundTrip(defaults, 2);
+        assertEquals(Level.LOW, result.level());
+        assertEquals("", result.name());
+        assertEquals(0, result.values().length);
+
+        // Two booleans and two numbers differ from their defaults, negative zero is not a default
+        var few = new Config(0, 9L, (short) 0, (byte) 0, '\0', 0f, -0.0, true, false, Level.HIGH, "", new int[0], null, 0);
+        result = (Config) roundTrip(few, 2 + Long.BYTES + Double.BYTES + 1);
+        assertEquals(9L, result.b());
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(result.g()));
+        assertTrue(result.h());
+        assertFalse(result.i());
+        assertEquals(Level.HIGH, result.level());
+    }
+
+    sealed interface Event permits Joined, Left, Moved {}
+    record Joined(int id, String name) implements Event {}
+    @Tag(1000)
+    record Left(int id) implements Event {}
+    record Moved(int id, float x, float y) implements Event {}
+    record Envelope(long sequence, Event event) {}
+
+    @Test
+    void testEncodeSealedComponents() throws Throwable {
+        // The explicit tag widens every tag to two bytes
+        var joined = new Envelope(1L, new Joined(7, "ann"));
+        assertEquals(joined, roundTrip(joined, Long.BYTES + 2 + Integer.BYTES + (1 + 3)));
+
+        var left = new Envelope(2L, new Left(7));
+        assertEquals(left, roundTrip(left, Long.BYTES + 2 + Integer.BYTES));
+
+        var moved = new Envelope(3L, new Moved(7, 1f, -1f));
+        assertEquals(moved, roundTrip(moved, Long.BYTES + 2 + Integer.BYTES + 2 * Float.BYTES));
+
+        var handles = getTestHandles(Envelope.class);
+        assertThrows(IllegalStateException.class, () -> handles.encode().invoke(ByteBuffer.allocate(64), new Envelope(4L, null)));
+        assertThrows(IllegalStateException.class, () -> handles.decode().invoke(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 5})));
+    }
+
+    sealed interface Expr permits Literal, Sum {}
+    record Literal(int value) implements Expr {}
+    record Sum(Expr left, Expr right) implements Expr {}
+
+    @Test
+    void testRecursiveSealedHierarchiesUseFallbackMethods() throws Throwable {
+        var desc = ClassDesc.of("net.ansinn.ByteBarista.codegen.buffer", "Sum_SealedCodec");
+        var bytes = ClassFile.of().build(desc, builder -> {
+            BufferEncoderBuilder.emitEncoder(builder, desc, "encode", Sum.class);
+            BufferDecoderBuilder.emitDecoder(builder, desc, "decode", Sum.class);
+        });
+
+        var hidden = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        var clazz = hidden.lookupClass();
+        var encode = hidden.findStatic(clazz, "encode", MethodType.methodType(void.class, ByteBuffer.class, Object.class));
+        var decode = hidden.findStatic(clazz, "decode", MethodType.methodType(Object.class, ByteBuffer.class));
+
+        Expr expression = new Literal(0);
+        for (var i = 1; i <= 8; i++)
+            expression = new Sum(expression, new Literal(i));
+
+        var buffer = ByteBuffer.allocate(128);
+        encode.invoke(buffer, expression);
+        // Eight sums hold nine literals, and every value but the outermost sum is led by its tag
+        assertEquals(9 * (1 + Integer.BYTES) + 7, buffer.position());
+        assertEquals(expression, decode.invoke(buffer.flip()));
+    }
+}
@@ -3,6 +3,8 @@ package net.ansinn.ByteBarista.codegen.stream;
 import net.ansinn.ByteBarista.annotations.UnsignedByte;
 import net.ansinn.ByteBarista.annotations.UnsignedInteger;
 import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
 import net.ansinn.ByteBarista.codegen.CodegenConstants;
 
 import java.io.ByteArrayInputStream;
@@ -138,4 +140,23 @@ public class TestStreamDecoderMethod {
         var result = (UnsignedIntRecord) handle.invoke(input);
         assertEquals(0xFFFFFFFFL, result.value());
     }
+
+    @Test
+    void testDecodeVarInt() throws Throwable {
+        record VarIntRecord(@VarInt int value) {}
+        var handle = getTestHandle(VarIntRecord.class);
+        var input = new ByteArrayInputStream(new byte[]{(byte) 0xAC, 0x02});
+        var result = (VarIntRecord) handle.invoke(input);
+        assertEquals(300, result.value());
+    }
+
+    @Test
+    void testDecodeZigZagLong() throws Throwable {
+        record ZigZagRecord(@ZigZag long value, byte trailing) {}
+        var handle = getTestHandle(ZigZagRecord.class);
+        var input = new ByteArrayInputStream(new byte[]{0x03, 0x2A});
+        var result = (ZigZagRecord) handle.invoke(input);
+        assertEquals(-2L, result.value());
+        assertEquals((byte) 42, result.trailing());
+    }
 }
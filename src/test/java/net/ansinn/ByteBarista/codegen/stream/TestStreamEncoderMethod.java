@@ -0,0 +1,203 @@
+package net.ansinn.ByteBarista.codegen.stream;
+
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.FixedLength;
+import net.ansinn.ByteBarista.annotations.Nullable;
+import net.ansinn.ByteBarista.annotations.Sparse;
+import net.ansinn.ByteBarista.annotations.Tag;
+import net.ansinn.ByteBarista.annotations.UnsignedByte;
+import net.ansinn.ByteBarista.annotations.UnsignedInteger;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import net.ansinn.ByteBarista.annotations.ZigZag;
+import net.ansinn.ByteBarista.codegen.CodegenConstants;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.classfile.ClassFile;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStreamEncoderMethod {
+
+    private static byte[] emitStreamCodecBytes(Class<? extends Record> clazz) {
+        var desc = ClassDesc.of("net.ansinn.ByteBarista.codegen.stream", clazz.getSimpleName() + "_StreamCodec");
+
+        return ClassFile.of().build(
+                desc,
+                builder -> {
+                    builder.withFlags(0);
+
+                    builder.withMethod("encode", MethodTypeDesc.of(ConstantDescs.CD_void, CodegenConstants.OUTPUT_DESC, ConstantDescs.CD_Object), ClassFile.ACC_STATIC, methodBuilder ->
+                            methodBuilder.withCode(codeBuilder -> StreamEncoderBuilder.emitWriteFunction(codeBuilder, clazz))
+                    );
+                    builder.withMethod("decode", MethodTypeDesc.of(ConstantDescs.CD_Object, CodegenConstants.INPUT_DESC), ClassFile.ACC_STATIC, methodBuilder ->
+                            methodBuilder.withCode(codeBuilder -> StreamDecoderBuilder.emitReadFunction(codeBuilder, clazz))
+                    );
+                }
+        );
+    }
+
+    private static Object roundTrip(Record value, int expectedSize) throws Throwable {
+        var lookup = MethodHandles.lookup();
+        var hidden = lookup.defineHiddenClass(emitStreamCodecBytes(value.getClass()), true);
+        var clazz = hidden.lookupClass();
+
+        var encode = hidden.findStatic(clazz, "encode", MethodType.methodType(void.class, ByteArrayOutputStream.class, Object.class));
+        var decode = hidden.findStatic(clazz, "decode", MethodType.methodType(Object.class, ByteArrayInputStream.class));
+
+        var output = new ByteArrayOutputStream();
+        encode.invoke(output, value);
+        assertEquals(expectedSize, output.size(), "unexpected encoded size");
+
+        return decode.invoke(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    @Test
+    void testEncodeLongAndInt() throws Throwable {
+        record Numbers(long a, int b) {}
+        var value = new Numbers(0x0102030405060708L, -2);
+
+        assertEquals(value, roundTrip(value, 12));
+    }
+
+    @Test
+    void testEncodeFloatingPoint() throws Throwable {
+        record Floating(double a, float b) {}
+        var value = new Floating(-1.25, 3.5f);
+
+        assertEquals(value, roundTrip(value, 12));
+    }
+
+    @Test
+    void testEncodeUnsigned() throws Throwable {
+        record Unsigned(@UnsignedByte int a, @UnsignedShort int b, @UnsignedInteger long c) {}
+        var value = new Unsigned(255, 65_535, 0xFFFFFFFFL);
+
+        assertEquals(value, roundTrip(value, 7));
+    }
+
+    @Test
+    void testEncodeVarInts() throws Throwable {
+        record Counters(@VarInt int id, @ZigZag long delta) {}
+        var value = new Counters(300, -1L);
+
+        assertEquals(value, roundTrip(value, 3));
+    }
+
+    @Test
+    void testEncodePackedBits() throws Throwable {
+        record State(boolean alive, @Bits(3) int kind, @Bits(4) byte level, @Bits(12) short health, boolean moving, long tick) {}
+        var value = new State(true, 5, (byte) 15, (short) 4000, false, 99L);
+
+        // 21 packed bits round up to three bytes
+        assertEquals(value, roundTrip(value, 3 + 8));
+    }
+
+    @Test
+    void testEncodeFullWidthBits() throws Throwable {
+        record Full(@Bits(8) byte a, @Bits(32) int b, @Bits(16) char c) {}
+        var value = new Full((byte) -1, -123456, '\uFFFF');
+
+        assertEquals(value, roundTrip(value, 7));
+    }
+
+    enum Suit { CLUBS, DIAMONDS, HEARTS, SPADES }
+
+    @Test
+    void testEncodeEnums() throws Throwable {
+        record Card(Suit suit, byte rank, Suit trump) {}
+        var value = new Card(Suit.HEARTS, (byte) 12, Suit.SPADES);
+
+        assertEquals(value, roundTrip(value, 3));
+    }
+
+    @Test
+    void testEncodeStrings() throws Throwable {
+        record Player(int id, String name, String motto) {}
+        var value = new Player(7, "Zoë", "gg");
+
+        // Each string is a one byte length followed by its UTF-8 bytes
+        assertEquals(value, roundTrip(value, 4 + 1 + 4 + 1 + 2));
+    }
+
+    @Test
+    void testEncodeFixedLength() throws Throwable {
+        record Quote(@FixedLength(6) String symbol, @FixedLength(4) byte[] id, @FixedLength(2) float[] levels) {}
+        var value = new Quote("IBM", new byte[]{1, 2, 3, 4}, new float[]{1.5f});
+
+        var result = (Quote) roundTrip(value, 6 + 4 + 2 * Float.BYTES);
+        assertEquals("IBM", result.symbol());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, result.id());
+        assertArrayEquals(new float[]{1.5f, 0f}, result.levels());
+    }
+
+    @Test
+    void testEncodePrimitiveArrays() throws Throwable {
+        record Samples(int channel, float[] values, long[] stamps, boolean[] valid) {}
+        var value = new Samples(2, new float[]{0.5f, -1f, 3f}, new long[]{10L}, new boolean[]{true, false, true});
+
+        var result = (Samples) roundTrip(value, 4 + (1 + 3 * Float.BYTES) + (1 + Long.BYTES) + (1 + 1));
+        assertEquals(2, result.channel());
+        assertArrayEquals(value.values(), result.values());
+        assertArrayEquals(value.stamps(), result.stamps());
+        assertArrayEquals(value.valid(), result.valid());
+    }
+
+    @Test
+    void testEncodeNestedRecords() throws Throwable {
+        record Point(short x, short y) {}
+        record Label(Point at, String text) {}
+        var value = new Label(new Point((short) -3, (short) 9), "here");
+
+        assertEquals(value, roundTrip(value, 2 * Short.BYTES + 1 + 4));
+    }
+
+    @Test
+    void testEncodeOptionalComponents() throws Throwable {
+        record Point(short x, short y) {}
+        record Sparse(@Nullable String name, Optional<Point> at, OptionalInt count, @Nullable Point origin) {}
+
+        var full = new Sparse("z", Optional.of(new Point((short) 1, (short) 2)), OptionalInt.of(-1), new Point((short) 3, (short) 4));
+        assertEquals(full, roundTrip(full, 1 + (1 + 1) + 4 + 4 + 4));
+
+        var empty = new Sparse(null, Optional.empty(), OptionalInt.empty(), null);
+        assertEquals(empty, roundTrip(empty, 1));
+    }
+
+    @Sparse
+    record State(int health, boolean alive, String name, float speed, long score) {}
+
+    @Test
+    void testSparseRecordsOnlyWriteNonDefaults() throws Throwable {
+        var value = new State(0, true, "", 0f, 12L);
+        assertEquals(value, roundTrip(value, 1 + Long.BYTES));
+
+        var full = new State(5, false, "x", 1.5f, 1L);
+        assertEquals(full, roundTrip(full, 1 + Integer.BYTES + 2 + Float.BYTES + Long.BYTES));
+    }
+
+    sealed interface Command permits Start, Stop {}
+    record Start(short speed) implements Command {}
+    @Tag(300)
+    record Stop(boolean hard) implements Command {}
+    record Queued(int id, Command command, Optional<Command> next) {}
+
+    @Test
+    void testEncodeSealedComponents() throws Throwable {
+        // Tags above 255 are written in two bytes
+        var value = new Queued(1, new Start((short) 3), Optional.of(new Stop(true)));
+        assertEquals(value, roundTrip(value, 1 + Integer.BYTES + (2 + Short.BYTES) + (2 + 1)));
+
+        var last = new Queued(2, new Stop(false), Optional.empty());
+        assertEquals(last, roundTrip(last, 1 + Integer.BYTES + (2 + 1)));
+    }
+}
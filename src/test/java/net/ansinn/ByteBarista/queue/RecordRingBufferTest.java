@@ -0,0 +1,143 @@
+package net.ansinn.ByteBarista.queue;
+
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordRingBufferTest {
+
+    @Test
+    void testOfferAndPollInOrder() {
+        var ring = new RecordRingBuffer<>(TestCodecs.point(), 8);
+
+        for (var i = 0; i < 5; i++)
+            assertTrue(ring.offer(new Point(i, -i)));
+
+        assertEquals(5, ring.size());
+        for (var i = 0; i < 5; i++)
+            assertEquals(new Point(i, -i), ring.poll());
+
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void testOfferFailsWhenFull() {
+        var ring = new RecordRingBuffer<>(TestCodecs.point(), 4);
+
+        for (var i = 0; i < 4; i++)
+            assertTrue(ring.offer(new Point(i, i)));
+        assertFalse(ring.offer(new Point(9, 9)));
+
+        ring.poll();
+        assertTrue(ring.offer(new Point(9, 9)));
+    }
+
+    @Test
+    void testDrainEncodedExposesSlots() {
+        var ring = new RecordRingBuffer<>(TestCodecs.point(), 4);
+        ring.offer(new Point(3, 4));
+
+        var xs = new ArrayList<Integer>();
+        assertEquals(1, ring.drainEncoded(slot -> xs.add(slot.getInt(slot.position())), 16));
+        assertEquals(3, xs.getFirst());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void testFailedEncodesAreSkipped() {
+        var ring = new RecordRingBuffer<>(TestCodecs.point(), 4);
+
+        // The slots claimed for records that fail to encode must not stall the consumer, even once the ring wraps
+        for (var i = 0; i < 10; i++) {
+            assertThrows(IllegalStateException.class, () -> ring.put(null));
+            ring.put(new Point(i, i));
+            assertEquals(new Point(i, i), ring.poll());
+            assertNull(ring.poll());
+        }
+
+        ring.offer(new Point(1, 1));
+        assertThrows(IllegalStateException.class, () -> ring.offer(null));
+        ring.offer(new Point(2, 2));
+
+        var xs = new ArrayList<Integer>();
+        assertEquals(2, ring.drain(point -> xs.add(point.x()), 16));
+        assertEquals(List.of(1, 2), xs);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void testFailedDecodesAreRemoved() {
+        var codec = TestCodecs.<Point>fixed(TestCodecs.POINT_SIZE, buffer -> {
+            var point = new Point(buffer.getInt(), buffer.getInt());
+            if (point.x() < 0)
+                throw new IllegalArgumentException("Negative point.");
+            return point;
+        }, (buffer, value) -> buffer.putInt(value.x()).putInt(value.y()));
+        var ring = new RecordRingBuffer<>(codec, 4);
+
+        ring.offer(new Point(-1, 0));
+        ring.offer(new Point(5, 5));
+
+        assertThrows(IllegalStateException.class, ring::poll);
+        assertEquals(new Point(5, 5), ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void testRejectsNonPowerOfTwoCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RecordRingBuffer<>(TestCodecs.point(), 6));
+    }
+
+    @Test
+    void testMultipleProducers() throws InterruptedException {
+        var producers = 4;
+        var perProducer = 20_000;
+        var ring = new RecordRingBuffer<>(TestCodecs.point(), 256);
+        var start = new CountDownLatch(1);
+
+        var threads = new ArrayList<Thread>();
+        for (var p = 0; p < producers; p++) {
+            var producer = p;
+            var thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException exception) {
+                    return;
+                }
+                for (var i = 0; i < perProducer; i++) {
+                    if (i % 2 == 0)
+                        ring.put(new Point(producer, i));
+                    else while (!ring.offer(new Point(producer, i)))
+                        Thread.onSpinWait();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        var next = new int[producers];
+        var received = 0;
+        start.countDown();
+
+        while (received < producers * perProducer) {
+            received += ring.drain(point -> {
+                // Records of a single producer must arrive in the order they were put
+                assertEquals(next[point.x()], point.y());
+                next[point.x()]++;
+            }, 64);
+        }
+
+        for (var thread : threads)
+            thread.join();
+
+        for (var count : next)
+            assertEquals(perProducer, count);
+        assertNull(ring.poll());
+    }
+}
@@ -0,0 +1,97 @@
+package net.ansinn.ByteBarista.queue;
+
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedMemoryQueueTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testOfferAndPoll() throws IOException {
+        try (var queue = SharedMemoryQueue.open(directory.resolve("queue"), TestCodecs.point(), 4)) {
+            for (var i = 0; i < 4; i++)
+                assertTrue(queue.offer(new Point(i, i)));
+            assertFalse(queue.offer(new Point(4, 4)));
+
+            assertEquals(new Point(0, 0), queue.poll());
+            assertTrue(queue.offer(new Point(4, 4)));
+
+            var drained = new ArrayList<Point>();
+            assertEquals(4, queue.drain(drained::add, 10));
+            assertEquals(new Point(4, 4), drained.getLast());
+            assertNull(queue.poll());
+        }
+    }
+
+    @Test
+    void testSecondMappingSeesQueuedRecords() throws IOException {
+        var path = directory.resolve("queue");
+
+        try (var producer = SharedMemoryQueue.open(path, TestCodecs.point(), 8);
+             var consumer = SharedMemoryQueue.open(path, TestCodecs.point(), 8)) {
+            producer.offer(new Point(7, 8));
+
+            assertEquals(1, consumer.size());
+            assertEquals(new Point(7, 8), consumer.poll());
+            assertEquals(0, producer.size());
+        }
+    }
+
+    @Test
+    void testRejectsMismatchedLayout() throws IOException {
+        var path = directory.resolve("queue");
+
+        try (var _ = SharedMemoryQueue.open(path, TestCodecs.point(), 8)) {
+            assertThrows(IOException.class, () -> SharedMemoryQueue.open(path, TestCodecs.point(), 16));
+        }
+    }
+
+    @Test
+    void testProducersAndConsumerOnSeparateMappings() throws Exception {
+        var path = directory.resolve("queue");
+        var producers = 3;
+        var perProducer = 10_000;
+
+        try (var consumer = SharedMemoryQueue.open(path, TestCodecs.point(), 64)) {
+            var threads = new ArrayList<Thread>();
+            for (var p = 0; p < producers; p++) {
+                var producer = p;
+                var thread = new Thread(() -> {
+                    try (var queue = SharedMemoryQueue.open(path, TestCodecs.point(), 64)) {
+                        for (var i = 0; i < perProducer; i++)
+                            while (!queue.offer(new Point(producer, i)))
+                                Thread.onSpinWait();
+                    } catch (IOException exception) {
+                        throw new RuntimeException(exception);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+
+            var next = new int[producers];
+            var received = 0;
+            while (received < producers * perProducer) {
+                received += consumer.drain(point -> {
+                    assertEquals(next[point.x()], point.y());
+                    next[point.x()]++;
+                }, 32);
+            }
+
+            for (var thread : threads)
+                thread.join();
+            for (var count : next)
+                assertEquals(perProducer, count);
+        }
+    }
+}
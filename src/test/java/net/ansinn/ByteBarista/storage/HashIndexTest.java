@@ -0,0 +1,136 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.VarInt;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashIndexTest {
+
+    enum Side { BUY, SELL }
+
+    record Trade(long id, Side side, @Bits(3) int venue, boolean cleared, double price) {}
+
+    record TradeKey(long id) {}
+
+    record VenueKey(int venue, Side side) {}
+
+    record Account(@VarInt int id, String name, int[] tags, Optional<String> email, String region) {}
+
+    record AccountKey(String region, String name) {}
+
+    @TempDir
+    Path directory;
+
+    private Path writeTrades(int count) throws IOException {
+        var path = directory.resolve("trades.bin");
+        try (var file = MappedRecordFile.open(path, CodecManager.getSafe(Trade.class))) {
+            for (var i = 0; i < count; i++)
+                file.append(new Trade(i * 7L, Side.values()[i % 2], i % 8, i % 3 == 0, i * 0.5));
+        }
+        return path;
+    }
+
+    @Test
+    void testIndexesRecordFile() throws IOException {
+        var records = writeTrades(100);
+
+        try (var index = HashIndex.build(records, HashIndex.Source.RECORD_FILE, directory.resolve("trades.idx"), Trade.class, TradeKey.class)) {
+            assertEquals(100, index.size());
+            for (var i = 0; i < 100; i++)
+                assertEquals(i, index.find(new TradeKey(i * 7L)));
+
+            assertEquals(Optional.of(new Trade(42 * 7L, Side.BUY, 2, true, 21.0)), index.get(new TradeKey(42 * 7L)));
+            assertEquals(-1, index.find(new TradeKey(3)));
+            assertEquals(Optional.empty(), index.get(new TradeKey(-7)));
+        }
+    }
+
+    @Test
+    void testCompositeKeyKeepsLatestRecord() throws IOException {
+        var records = writeTrades(100);
+
+        // Venue and side repeat every 8 records, so each key is held by the last of its records
+        try (var index = HashIndex.build(records, HashIndex.Source.RECORD_FILE, directory.resolve("venues.idx"), Trade.class, VenueKey.class)) {
+            assertEquals(8, index.size());
+            assertEquals(99, index.find(new VenueKey(3, Side.SELL)));
+            assertEquals(96, index.find(new VenueKey(0, Side.BUY)));
+            assertEquals(-1, index.find(new VenueKey(1, Side.BUY)));
+        }
+    }
+
+    @Test
+    void testIndexesRecordLog() throws IOException {
+        var records = directory.resolve("accounts.log");
+        var offsets = new long[50];
+
+        try (var log = RecordLog.open(records, CodecManager.getCodec(Account.class))) {
+            for (var i = 0; i < 50; i++)
+                offsets[i] = log.append(new Account(i, "user" + i, new int[i % 4],
+                        i % 2 == 0 ? Optional.of("user" + i + "@example.com") : Optional.empty(), i % 3 == 0 ? "eu" : "us"));
+
+            log.append(new Account(1000, "user7", new int[]{1, 2}, Optional.empty(), "us"));
+        }
+
+        try (var index = HashIndex.build(records, HashIndex.Source.RECORD_LOG, directory.resolve("accounts.idx"), Account.class, AccountKey.class)) {
+            assertEquals(50, index.size());
+            assertEquals(offsets[12], index.find(new AccountKey("eu", "user12")));
+            assertEquals(-1, index.find(new AccountKey("us", "user12")));
+
+            var replaced = index.get(new AccountKey("us", "user7"));
+            assertTrue(replaced.isPresent());
+            assertEquals(1000, replaced.get().id());
+
+            var account = index.get(new AccountKey("us", "user10")).orElseThrow();
+            assertEquals(Optional.of("user10@example.com"), account.email());
+            assertEquals(2, account.tags().length);
+        }
+    }
+
+    @Test
+    void testRecordLogIndexStopsAtTornFrame() throws IOException {
+        var records = directory.resolve("accounts.log");
+        try (var log = RecordLog.open(records, CodecManager.getCodec(Account.class))) {
+            for (var i = 0; i < 10; i++)
+                log.append(new Account(i, "user" + i, new int[0], Optional.empty(), "eu"));
+        }
+        Files.write(records, new byte[]{0, 1, 2, 3, 0, 0, 0, 9, 4}, StandardOpenOption.APPEND);
+
+        try (var index = HashIndex.build(records, HashIndex.Source.RECORD_LOG, directory.resolve("accounts.idx"), Account.class, AccountKey.class)) {
+            assertEquals(10, index.size());
+            assertTrue(index.get(new AccountKey("eu", "user9")).isPresent());
+        }
+    }
+
+    @Test
+    void testReopen() throws IOException {
+        var records = writeTrades(20);
+        var path = directory.resolve("trades.idx");
+
+        HashIndex.build(records, HashIndex.Source.RECORD_FILE, path, Trade.class, TradeKey.class).close();
+
+        try (var index = HashIndex.open(records, HashIndex.Source.RECORD_FILE, path, Trade.class, TradeKey.class)) {
+            assertEquals(20, index.size());
+            assertEquals(5, index.find(new TradeKey(35)));
+        }
+
+        assertThrows(IOException.class, () -> HashIndex.open(records, HashIndex.Source.RECORD_FILE, path, Trade.class, VenueKey.class));
+        assertThrows(IOException.class, () -> HashIndex.open(records, HashIndex.Source.RECORD_LOG, path, Trade.class, TradeKey.class));
+    }
+
+    @Test
+    void testRejectsUnknownKeyComponent() {
+        record Unknown(long serial) {}
+
+        assertThrows(IllegalStateException.class, () -> CodecManager.getKeyExtractor(Trade.class, Unknown.class));
+    }
+}
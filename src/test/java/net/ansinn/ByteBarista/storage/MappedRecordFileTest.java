@@ -0,0 +1,128 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedRecordFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendAndGet() throws IOException {
+        try (var file = MappedRecordFile.open(directory.resolve("points.bin"), TestCodecs.point(), 4)) {
+            for (var i = 0; i < 10; i++)
+                assertEquals(i, file.append(new Point(i, -i)));
+
+            assertEquals(10, file.size());
+            assertEquals(new Point(7, -7), file.get(7));
+            assertEquals(new Point(0, 0), file.get(0));
+        }
+    }
+
+    @Test
+    void testSetOverwritesInPlace() throws IOException {
+        try (var file = MappedRecordFile.open(directory.resolve("points.bin"), TestCodecs.point(), 4)) {
+            for (var i = 0; i < 6; i++)
+                file.append(new Point(i, i));
+
+            file.set(5, new Point(50, 51));
+            assertEquals(new Point(50, 51), file.get(5));
+            assertEquals(new Point(4, 4), file.get(4));
+        }
+    }
+
+    @Test
+    void testOutOfBoundsAccess() throws IOException {
+        try (var file = MappedRecordFile.open(directory.resolve("points.bin"), TestCodecs.point())) {
+            file.append(new Point(1, 1));
+
+            assertThrows(IndexOutOfBoundsException.class, () -> file.get(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> file.set(-1, new Point(0, 0)));
+        }
+    }
+
+    @Test
+    void testReopenKeepsRecordsAndTrimsFile() throws IOException {
+        var path = directory.resolve("points.bin");
+
+        try (var file = MappedRecordFile.open(path, TestCodecs.point(), 16)) {
+            for (var i = 0; i < 20; i++)
+                file.append(new Point(i, i * 2));
+        }
+
+        assertEquals(MappedRecordFile.HEADER_SIZE + 20L * TestCodecs.POINT_SIZE, Files.size(path));
+
+        try (var file = MappedRecordFile.open(path, TestCodecs.point(), 16)) {
+            assertEquals(20, file.size());
+            assertEquals(new Point(19, 38), file.get(19));
+        }
+    }
+
+    @Test
+    void testForEachVisitsRecordsInOrder() throws IOException {
+        try (var file = MappedRecordFile.open(directory.resolve("points.bin"), TestCodecs.point(), 3)) {
+            for (var i = 0; i < 10; i++)
+                file.append(new Point(i, 0));
+
+            var seen = new ArrayList<Integer>();
+            file.forEach(point -> seen.add(point.x()));
+
+            assertEquals(10, seen.size());
+            for (var i = 0; i < 10; i++)
+                assertEquals(i, seen.get(i));
+        }
+    }
+
+    @Test
+    void testForEachEncodedReadsInPlace() throws IOException {
+        try (var file = MappedRecordFile.open(directory.resolve("points.bin"), TestCodecs.point(), 3)) {
+            for (var i = 0; i < 10; i++)
+                file.append(new Point(i, i * 3));
+
+            var offsets = new ArrayList<Integer>();
+            var sum = new long[1];
+            file.forEachEncoded((chunk, offset) -> {
+                offsets.add(offset);
+                sum[0] += chunk.getInt(offset + Integer.BYTES);
+            });
+
+            assertEquals(List.of(0, 8, 16, 0, 8, 16, 0, 8, 16, 0), offsets);
+            assertEquals(3 * 45, sum[0]);
+        }
+    }
+
+    @Test
+    void testCloseIsIdempotent() throws IOException {
+        var path = directory.resolve("points.bin");
+        var file = MappedRecordFile.open(path, TestCodecs.point());
+        file.append(new Point(1, 2));
+
+        file.close();
+        assertDoesNotThrow(file::close);
+        assertEquals(MappedRecordFile.HEADER_SIZE + TestCodecs.POINT_SIZE, Files.size(path));
+    }
+
+    @Test
+    void testRejectsMismatchedRecordSize() throws IOException {
+        var path = directory.resolve("points.bin");
+
+        try (var file = MappedRecordFile.open(path, TestCodecs.point())) {
+            file.append(new Point(1, 2));
+        }
+
+        var wider = TestCodecs.<Point>fixed(12, buffer -> new Point(buffer.getInt(), buffer.getInt()),
+                (buffer, value) -> buffer.putInt(value.x()).putInt(value.y()).putInt(0));
+        assertThrows(IOException.class, () -> MappedRecordFile.open(path, wider));
+    }
+}
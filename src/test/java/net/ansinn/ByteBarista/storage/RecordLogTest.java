@@ -0,0 +1,162 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.TestCodecs;
+import net.ansinn.ByteBarista.TestCodecs.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordLogTest {
+
+    private static final int FRAME_SIZE = RecordLog.FRAME_HEADER_SIZE + TestCodecs.POINT_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppendAndReplay() throws IOException {
+        try (var log = RecordLog.open(directory.resolve("points.log"), TestCodecs.point())) {
+            for (var i = 0; i < 100; i++)
+                assertEquals((long) i * FRAME_SIZE, log.append(new Point(i, i + 1)));
+
+            var replayed = new ArrayList<Point>();
+            log.replay(replayed::add);
+
+            assertEquals(100, replayed.size());
+            assertEquals(new Point(42, 43), replayed.get(42));
+        }
+    }
+
+    @Test
+    void testReopenContinuesAtEnd() throws IOException {
+        var path = directory.resolve("points.log");
+
+        try (var log = RecordLog.open(path, TestCodecs.point())) {
+            log.append(new Point(1, 1));
+        }
+
+        try (var log = RecordLog.open(path, TestCodecs.point())) {
+            assertEquals(FRAME_SIZE, log.append(new Point(2, 2)));
+
+            var replayed = new ArrayList<Point>();
+            log.replay(replayed::add);
+            assertEquals(2, replayed.size());
+        }
+    }
+
+    @Test
+    void testTornTailIsTruncated() throws IOException {
+        var path = directory.resolve("points.log");
+
+        try (var log = RecordLog.open(path, TestCodecs.point())) {
+            for (var i = 0; i < 3; i++)
+                log.append(new Point(i, i));
+        }
+
+        // Simulate a crash halfway through writing a fourth frame
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 0, 0, 0, 8, 9}));
+        }
+
+        try (var log = RecordLog.open(path, TestCodecs.point())) {
+            assertEquals(3L * FRAME_SIZE, Files.size(path));
+
+            var replayed = new ArrayList<Point>();
+            log.replay(replayed::add);
+            assertEquals(3, replayed.size());
+        }
+    }
+
+    @Test
+    void testCorruptFrameIsTruncated() throws IOException {
+        var path = directory.resolve("points.log");
+
+        try (var log = RecordLog.open(path, TestCodecs.point())) {
+            for (var i = 0; i < 3; i++)
+                log.append(new Point(i, i));
+        }
+
+        // Flip a payload byte inside the second frame
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), FRAME_SIZE + RecordLog.FRAME_HEADER_SIZE);
+        }
+
+        try (var log = RecordLog.open(path, TestCodecs.point())) {
+            assertEquals(FRAME_SIZE, log.length());
+        }
+    }
+
+    @Test
+    void testOversizedLengthIsTruncated() throws IOException {
+        var path = directory.resolve("points.log");
+
+        // Lengths that overflow the frame size, or would need a read buffer of more than 1 GiB
+        for (var length : new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE - RecordLog.FRAME_HEADER_SIZE + 1, (1 << 30) + 1}) {
+            try (var log = RecordLog.open(path, TestCodecs.point())) {
+                for (var i = 0; i < 3; i++)
+                    log.append(new Point(i, i));
+            }
+
+            // A garbage header followed by a sparse hole large enough to pass for the frame's payload
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                var header = ByteBuffer.allocate(RecordLog.FRAME_HEADER_SIZE).putInt(0).putInt(length).flip();
+                channel.write(header, 3L * FRAME_SIZE);
+                channel.write(ByteBuffer.wrap(new byte[1]), 3L * FRAME_SIZE + RecordLog.FRAME_HEADER_SIZE + length);
+            }
+
+            try (var log = RecordLog.open(path, TestCodecs.point())) {
+                assertEquals(3L * FRAME_SIZE, Files.size(path));
+
+                var replayed = new ArrayList<Point>();
+                log.replay(replayed::add);
+                assertEquals(3, replayed.size());
+            }
+
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    void testConcurrentAppendsAreAllDurable() throws Exception {
+        var threads = 8;
+        var perThread = 500;
+
+        try (var log = RecordLog.open(directory.resolve("points.log"), TestCodecs.point(), 1024)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                var futures = new ArrayList<Future<?>>();
+                for (var t = 0; t < threads; t++) {
+                    var thread = t;
+                    futures.add(executor.submit(() -> {
+                        for (var i = 0; i < perThread; i++)
+                            log.append(new Point(thread, i));
+                        return null;
+                    }));
+                }
+                for (var future : futures)
+                    future.get();
+            } finally {
+                executor.shutdown();
+            }
+
+            var seen = new HashSet<Point>();
+            log.replay(seen::add);
+
+            assertEquals(threads * perThread, seen.size());
+            assertEquals((long) threads * perThread * FRAME_SIZE, log.length());
+        }
+    }
+}
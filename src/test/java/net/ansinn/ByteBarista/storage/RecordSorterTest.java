@@ -0,0 +1,103 @@
+package net.ansinn.ByteBarista.storage;
+
+import net.ansinn.ByteBarista.CodecManager;
+import net.ansinn.ByteBarista.annotations.Bits;
+import net.ansinn.ByteBarista.annotations.UnsignedShort;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordSorterTest {
+
+    enum Level { DEBUG, INFO, WARN }
+
+    record Stamp(long seconds, @UnsignedShort int millis) {}
+
+    record Event(Level level, @Bits(3) int shard, boolean urgent, Stamp stamp, double score, int sequence) {}
+
+    @TempDir
+    Path directory;
+
+    private List<Event> events(int count) {
+        var random = new Random(42);
+        var events = new ArrayList<Event>();
+        for (var i = 0; i < count; i++)
+            events.add(new Event(Level.values()[random.nextInt(3)], random.nextInt(8), random.nextBoolean(),
+                    new Stamp(random.nextInt(20) - 10, random.nextInt(65536)), random.nextInt(5) - 2.5, i));
+        return events;
+    }
+
+    private Path write(List<Event> events) throws IOException {
+        var codec = CodecManager.getSafe(Event.class);
+        var buffer = ByteBuffer.allocate(events.size() * codec.size());
+        for (var event : events)
+            codec.encode(buffer, event);
+
+        var path = directory.resolve("input.bin");
+        Files.write(path, buffer.array());
+        return path;
+    }
+
+    private List<Event> read(Path path) throws IOException {
+        var codec = CodecManager.getSafe(Event.class);
+        var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        var events = new ArrayList<Event>();
+        while (buffer.hasRemaining())
+            events.add(codec.decode(buffer));
+        return events;
+    }
+
+    @Test
+    void testSortsAcrossSpilledRunsAndStaysStable() throws IOException {
+        var events = events(5000);
+        var output = directory.resolve("output.bin");
+        var sorter = RecordSorter.by(Event.class, "stamp.seconds", "-stamp.millis")
+                .withChunkBytes(CodecManager.getSafe(Event.class).size() * 64)
+                .withParallelism(3)
+                .withTempDirectory(directory);
+
+        assertEquals(5000, sorter.sort(write(events), output));
+
+        var expected = new ArrayList<>(events);
+        expected.sort(Comparator.<Event>comparingLong(event -> event.stamp().seconds())
+                .thenComparing(event -> event.stamp().millis(), Comparator.reverseOrder()));
+        assertEquals(expected, read(output));
+
+        try (var files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void testComparesEnumsBitFieldsAndDoubles() throws IOException {
+        var events = events(300);
+        var output = directory.resolve("output.bin");
+
+        RecordSorter.by(Event.class, "level", "shard", "urgent", "score").sort(write(events), output);
+
+        var expected = new ArrayList<>(events);
+        expected.sort(Comparator.comparing(Event::level)
+                .thenComparingInt(Event::shard)
+                .thenComparing(Event::urgent)
+                .thenComparingDouble(Event::score));
+        assertEquals(expected, read(output));
+    }
+
+    @Test
+    void testTruncatedInputIsRejected() throws IOException {
+        var input = directory.resolve("input.bin");
+        Files.write(input, new byte[CodecManager.getSafe(Event.class).size() + 1]);
+
+        assertThrows(IOException.class, () -> RecordSorter.by(Event.class, "sequence").sort(input, directory.resolve("output.bin")));
+    }
+}